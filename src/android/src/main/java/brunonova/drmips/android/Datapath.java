@@ -111,12 +111,16 @@ public class Datapath extends RelativeLayout implements View.OnClickListener, Vi
 	
 	/**
 	 * Refreshes the values of the datapath.
+	 * <p>While the simulation runs in the background, the values of the CPU
+	 * aren't shown and the wires are drawn with their normal colors.</p>
 	 */
 	public void refresh() {
 		for(DatapathComponent comp: components.values())
 			comp.refresh();
-		for(Wire w: wires)
-			w.refreshTips();
+		if(!activity.isRunningInBackground()) { // refreshed when the run ends
+			for(Wire w: wires)
+				w.refreshTips();
+		}
 		invalidate();	
 	}
 	
@@ -130,8 +134,10 @@ public class Datapath extends RelativeLayout implements View.OnClickListener, Vi
 			if(c.getComponent().isInControlPath())
 				c.setVisibility(visible ? VISIBLE : INVISIBLE);
 		}
-		for(Wire w: wires)
-			w.refreshTips();
+		if(!activity.isRunningInBackground()) {
+			for(Wire w: wires)
+				w.refreshTips();
+		}
 		invalidate();
 	}
 	
@@ -294,9 +300,10 @@ public class Datapath extends RelativeLayout implements View.OnClickListener, Vi
 		 */
 		public void paint(Canvas canvas) {
 			if(!out.isInControlPath() || controlPathVisible) {
-				if(performanceMode && out.isInCriticalPath())
+				boolean running = activity.isRunningInBackground(); // the CPU can't be read
+				if(!running && performanceMode && out.isInCriticalPath())
 					paint.setColor(Color.RED);
-				else if(!out.isRelevant() && (!isInPerformanceMode() || activity.getCPU().isPerformanceInstructionDependent()))
+				else if(!running && !out.isRelevant() && (!isInPerformanceMode() || activity.getCPU().isPerformanceInstructionDependent()))
 					paint.setColor(Color.GRAY);
 				else if(out.isInControlPath())
 					paint.setColor(controlColor);
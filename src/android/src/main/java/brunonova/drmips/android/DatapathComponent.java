@@ -98,9 +98,9 @@ public class DatapathComponent extends TextView {
 	 * Refreshes the component's information, and possibly other things.
 	 */
 	public void refresh() {
-		// Set fork gray if irrelevant
+		// Set fork gray if irrelevant (not known while running in the background)
 		if(getComponent() instanceof Fork) {
-			if(!((Fork)component).getInput().isRelevant() && (!activity.getDatapath().isInPerformanceMode() || activity.getCPU().isPerformanceInstructionDependent()))
+			if(!activity.isRunningInBackground() && !((Fork)component).getInput().isRelevant() && (!activity.getDatapath().isInPerformanceMode() || activity.getCPU().isPerformanceInstructionDependent()))
 				setBackgroundResource(R.drawable.aux_comp_back_gray);
 			else if(component.isInControlPath())
 				setBackgroundResource(R.drawable.aux_control_comp_back);
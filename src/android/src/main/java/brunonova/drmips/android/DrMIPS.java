@@ -24,7 +24,10 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.InputStreamReader;
 
+import brunonova.drmips.simulator.AssemblyCache;
 import brunonova.drmips.simulator.CPU;
+import brunonova.drmips.simulator.ModelCache;
+import brunonova.drmips.simulator.ProgramImage;
 
 import android.app.Application;
 import android.content.Context;
@@ -50,6 +53,8 @@ public class DrMIPS extends Application {
 	public static final String LAST_FILE_PREF = "last_file";
 	/** The key of the preference with the name of the last CPU opened. */
 	public static final String LAST_CPU_PREF = "last_cpu";
+	/** The key of the preference that identifies the program in the last program file (CPU and hash of the code). */
+	public static final String LAST_PROGRAM_PREF = "last_program";
 	/** The name of the default CPU to load at startup. */
 	public static final String DEFAULT_CPU = "unicycle.cpu";
 	/** The key of the registers display format preference. */
@@ -98,6 +103,10 @@ public class DrMIPS extends Application {
 	public static final boolean DEFAULT_OVERLAYED_SHOW_NAMES = false;
 	/** Whether the in/out tips should be displayed for (almost) all components by default. */
 	public static final boolean DEFAULT_OVERLAYED_SHOW_FOR_ALL = false;
+	/** Preference with the index of the clock rate of the animated run. */
+	public static final String ANIMATION_RATE_PREF = "animation_rate";
+	/** The index of the default clock rate of the animated run (10 Hz). */
+	public static final int DEFAULT_ANIMATION_RATE = 3;
 	
 	/** The current application. */
 	private static DrMIPS app = null;
@@ -111,6 +120,10 @@ public class DrMIPS extends Application {
 	private File codeDir = null;
 	/** The currently loaded CPU. */
 	private CPU cpu = null;
+	/** The cache of the loaded CPU files. */
+	private ModelCache modelCache = null;
+	/** The cache of the assembled programs. */
+	private AssemblyCache assemblyCache = null;
 	
 	@Override
 	public void onCreate() {
@@ -155,6 +168,28 @@ public class DrMIPS extends Application {
 		this.cpu = cpu;
 	}
 	
+	/**
+	 * Returns the cache used to load the CPU files.
+	 * <p>The parsed files are saved in the app's cache directory.</p>
+	 * @return The cache of the loaded CPU files.
+	 */
+	public ModelCache getModelCache() {
+		if(modelCache == null)
+			modelCache = new ModelCache(new File(getCacheDir(), "models"));
+		return modelCache;
+	}
+
+	/**
+	 * Returns the cache used to assemble the code.
+	 * <p>The assembled programs are saved in the app's cache directory.</p>
+	 * @return The cache of the assembled programs.
+	 */
+	public AssemblyCache getAssemblyCache() {
+		if(assemblyCache == null)
+			assemblyCache = new AssemblyCache(AssemblyCache.DEFAULT_CAPACITY, new File(getCacheDir(), "programs"));
+		return assemblyCache;
+	}
+
 	/**
 	 * Returns whether there is a CPU loaded.
 	 * @return <tt>True</tt> if the is a CPU loaded.
@@ -213,6 +248,14 @@ public class DrMIPS extends Application {
 		return codeDir;
 	}
 
+	/**
+	 * Returns the file where the last assembled program is saved.
+	 * @return The last program file, in the app's cache directory.
+	 */
+	public File getLastProgramFile() {
+		return new File(getCacheDir(), "last_program." + ProgramImage.FILE_EXTENSION);
+	}
+
 	/**
 	 * Returns the application's preferences.
 	 * @return App's preferences.
@@ -22,6 +22,7 @@ import android.app.Activity;
 import android.content.SharedPreferences;
 import android.graphics.Typeface;
 import android.os.Bundle;
+import android.os.Handler;
 import android.text.Editable;
 import android.text.TextUtils.TruncateAt;
 import android.text.TextWatcher;
@@ -47,9 +48,14 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import brunonova.drmips.android.dialogs.*;
+import brunonova.drmips.simulator.Animation;
 import brunonova.drmips.simulator.AssembledInstruction;
 import brunonova.drmips.simulator.CPU;
+import brunonova.drmips.simulator.CPUSnapshot;
+import brunonova.drmips.simulator.ChangeSet;
 import brunonova.drmips.simulator.Data;
+import brunonova.drmips.simulator.ProgramImage;
+import brunonova.drmips.simulator.Watchpoints;
 import brunonova.drmips.simulator.exceptions.*;
 import org.json.JSONException;
 
@@ -62,6 +68,8 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 public class DrMIPSActivity extends Activity {
@@ -86,12 +94,40 @@ public class DrMIPSActivity extends Activity {
 	private MenuItem mnuDelete = null, mnuStep = null, mnuBackStep = null, mnuControlPath = null,
 	                 mnuArrowsInWires = null, mnuPerformanceMode = null, mnuOverlayedData = null,
 	                 mnuOverlayedShowNames = null, mnuOverlayedShowForAll = null, mnuRestart = null,
-	                 mnuRun = null, mnuRestoreLatencies = null, mnuRemoveLatencies = null;
+	                 mnuRun = null, mnuBreakpoints = null, mnuWatchpoints = null, mnuRestoreLatencies = null, mnuRemoveLatencies = null,
+	                 mnuAnimate = null, mnuPause = null, mnuStop = null, mnuAssemble = null, mnuLoadCPU = null;
 	private ImageButton cmdStep;
 	private TableLayout tblAssembledCode, tblRegisters, tblDataMemory, tblExec;
 	private Spinner cmbAssembledCodeFormat, cmbRegistersFormat, cmbDataMemoryFormat, cmbDatapathFormat, cmbDatapathPerformance;
 	private HorizontalScrollView datapathScroll;
 	private TableRow tblExecRow;
+	/** The retained fragment that runs the simulation in the background. */
+	private SimulationFragment simulation;
+	/** Handler that schedules the ticks of the animated run. */
+	private final Handler animationHandler = new Handler();
+	/** The format of the values in the registers table, or -1 if they must all be refreshed. */
+	private int registersTableFormat = -1;
+	/** The format of the values in the data memory table, or -1 if they must all be refreshed. */
+	private int dataMemoryTableFormat = -1;
+	/** The animated run, or <tt>null</tt> if it isn't running. */
+	private Animation animation = null;
+	/** Executes the due cycles of the animated run and schedules the next tick. */
+	private final Runnable animationTick = new Runnable() {
+		@Override
+		public void run() {
+			if(animation == null) return;
+			if(animation.tick() > 0)
+				refreshValues();
+			if(animation.isStopped()) {
+				CPU.RunStatus status = animation.getStatus();
+				stopAnimation();
+				if(status == CPU.RunStatus.WATCHPOINT)
+					showTriggeredWatchpoint();
+			}
+			else
+				animationHandler.postDelayed(this, animation.getFrameInterval());
+		}
+	};
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -101,6 +137,13 @@ public class DrMIPSActivity extends Activity {
 
 		createTabs();
 		
+		// Find the simulation fragment (kept when the activity is recreated) or create it
+		simulation = (SimulationFragment)getFragmentManager().findFragmentByTag(SimulationFragment.TAG);
+		if(simulation == null) {
+			simulation = SimulationFragment.newInstance();
+			getFragmentManager().beginTransaction().add(simulation, SimulationFragment.TAG).commit();
+		}
+		
 		// Open last or default CPU (but not when restoring from a screen rotation, etc.)
 		if(savedInstanceState == null || getCPU() == null)
 			loadFirstCPU();
@@ -110,8 +153,11 @@ public class DrMIPSActivity extends Activity {
 		String name = DrMIPS.getApplication().getPreferences().getString(DrMIPS.LAST_FILE_PREF, null);
 		if(name != null) {
 			File file = new File(DrMIPS.getApplication().getCodeDir() + File.separator + name);
-			if(file.exists())
+			if(file.exists()) {
 				openFile(file);
+				if(savedInstanceState == null)
+					restoreLastProgram();
+			}
 		}
 	}
 
@@ -125,6 +171,18 @@ public class DrMIPSActivity extends Activity {
 		mnuBackStep = menu.findItem(R.id.mnuBackStep);
 		mnuRestart = menu.findItem(R.id.mnuRestart);
 		mnuRun = menu.findItem(R.id.mnuRun);
+		mnuBreakpoints = menu.findItem(R.id.mnuBreakpoints);
+		mnuWatchpoints = menu.findItem(R.id.mnuWatchpoints);
+		mnuAnimate = menu.findItem(R.id.mnuAnimate);
+		mnuPause = menu.findItem(R.id.mnuPause);
+		mnuStop = menu.findItem(R.id.mnuStop);
+		mnuAssemble = menu.findItem(R.id.mnuAssemble);
+		mnuLoadCPU = menu.findItem(R.id.mnuLoadCPU);
+		boolean running = isSimulationRunning();
+		mnuPause.setVisible(running);
+		mnuStop.setVisible(running);
+		mnuAssemble.setVisible(!running);
+		mnuLoadCPU.setVisible(!running);
 		MenuItem mnuSwitchTheme = menu.findItem(R.id.mnuSwitchTheme);
 		mnuSwitchTheme.setChecked(DrMIPS.getApplication().getCurrentTheme() == R.style.DarkTheme);
 		mnuControlPath = menu.findItem(R.id.mnuControlPath);
@@ -162,6 +220,12 @@ public class DrMIPSActivity extends Activity {
 		super.onSaveInstanceState(outState);
 	}
 	
+	@Override
+	protected void onPause() {
+		stopAnimation(); // don't keep running in the background
+		super.onPause();
+	}
+	
 	@Override
 	public void onBackPressed() {
 		DlgConfirmExit.newInstance().show(getFragmentManager(), "confirm-exit-dialog");
@@ -175,6 +239,8 @@ public class DrMIPSActivity extends Activity {
 			setSimulationControlsEnabled(savedInstanceState.getBoolean("step_enabled", false)); // restore simulation controls state
 			tabHost.setCurrentTab(savedInstanceState.getInt("tab", 0)); // restore current tab
 			
+			// Only the structure is recreated during a run, the values are
+			// filled in by the next snapshot or when the run ends
 			refreshDatapath(); // recreate datapath
 			datapath.setControlPathVisible(DrMIPS.getApplication().getPreferences().getBoolean(DrMIPS.SHOW_CONTROL_PATH_PREF, DrMIPS.DEFAULT_SHOW_CONTROL_PATH));
 			datapath.setShowArrows(DrMIPS.getApplication().getPreferences().getBoolean(DrMIPS.SHOW_ARROWS_PREF, DrMIPS.DEFAULT_SHOW_ARROWS));
@@ -327,6 +393,26 @@ public class DrMIPSActivity extends Activity {
 		run();
 	}
 	
+	public void mnuAnimateOnClick(MenuItem menu) {
+		DlgAnimate.newInstance().show(getFragmentManager(), "animate-dialog");
+	}
+	
+	public void mnuPauseOnClick(MenuItem menu) {
+		pauseSimulation();
+	}
+	
+	public void mnuStopOnClick(MenuItem menu) {
+		stopSimulation();
+	}
+	
+	public void mnuBreakpointsOnClick(MenuItem menu) {
+		DlgBreakpoints.newInstance().show(getFragmentManager(), "breakpoints-dialog");
+	}
+	
+	public void mnuWatchpointsOnClick(MenuItem menu) {
+		DlgWatchpoints.newInstance().show(getFragmentManager(), "watchpoints-dialog");
+	}
+	
 	public void lblFilenameOnClick(View view) {
 		if(openFile != null)
 			Toast.makeText(this, openFile.getAbsolutePath(), Toast.LENGTH_LONG).show();
@@ -517,6 +603,11 @@ public class DrMIPSActivity extends Activity {
 	 * @param file The file to open.
 	 */
 	public void openFile(File file) {
+		if(ProgramImage.isProgramFile(file)) {
+			openProgram(file);
+			return;
+		}
+		
 		try {
 			String code = "", line;
 			
@@ -537,6 +628,79 @@ public class DrMIPSActivity extends Activity {
 		}
 	}
 	
+	/**
+	 * Loads the assembled program in the given program file into the CPU.
+	 * @param file The program file.
+	 */
+	private void openProgram(File file) {
+		try {
+			ProgramImage image = ProgramImage.load(file, getCPU());
+			getCPU().resetData();
+			loadProgram(image);
+		}
+		catch(IOException ex) {
+			String msg = getString(R.string.error_opening_file).replace("#1", file.getName());
+			msg += "\n" + ex.getMessage();
+			Toast.makeText(this, msg, Toast.LENGTH_SHORT).show();
+			Log.e(getClass().getName(), "error opening program file \"" + file.getName() + "\"", ex);
+		}
+	}
+	
+	/**
+	 * Loads the program assembled in the previous session, if it was assembled
+	 * from the current code and CPU, without assembling the code again.
+	 */
+	private void restoreLastProgram() {
+		File file = DrMIPS.getApplication().getLastProgramFile();
+		String key = DrMIPS.getApplication().getPreferences().getString(DrMIPS.LAST_PROGRAM_PREF, null);
+		if(key == null || !file.exists() || !key.equals(getProgramKey(txtCode.getText().toString())))
+			return;
+		
+		try {
+			ProgramImage image = ProgramImage.load(file, getCPU());
+			getCPU().resetData();
+			loadProgram(image);
+			tabHost.setCurrentTabByTag("tabCode");
+		}
+		catch(IOException ex) {
+			Log.w(getClass().getName(), "error loading the last program", ex);
+		}
+	}
+	
+	/**
+	 * Saves the given program (assembled from the given code) to the last program file.
+	 * @param image The assembled program.
+	 * @param code The code of the program.
+	 */
+	private void saveLastProgram(ProgramImage image, String code) {
+		try {
+			image.save(DrMIPS.getApplication().getLastProgramFile());
+			SharedPreferences.Editor editor = DrMIPS.getApplication().getPreferences().edit();
+			editor.putString(DrMIPS.LAST_PROGRAM_PREF, getProgramKey(code));
+			editor.apply();
+		}
+		catch(IOException ex) {
+			Log.w(getClass().getName(), "error saving the last program", ex);
+		}
+	}
+	
+	/**
+	 * Returns the key that identifies a program assembled from the given code in the current CPU.
+	 * @param code The code.
+	 * @return The name of the CPU file and the SHA-1 hash of the code.
+	 */
+	private String getProgramKey(String code) {
+		String key = getCPU().getFile().getName() + ":";
+		try {
+			for(byte b: MessageDigest.getInstance("SHA-1").digest(code.getBytes("UTF-8")))
+				key += Integer.toHexString((b & 0xFF) | 0x100).substring(1);
+		}
+		catch(NoSuchAlgorithmException | IOException ex) { // shouldn't happen
+			key += code.hashCode();
+		}
+		return key;
+	}
+	
 	/**
 	 * Saves the code to the specified file.
 	 * @param file File to save to.
@@ -562,8 +726,9 @@ public class DrMIPSActivity extends Activity {
 	 * @param file File to load the CPU from.
 	 */
 	public void loadCPU(File file) throws ArrayIndexOutOfBoundsException, NumberFormatException, IOException, JSONException, InvalidCPUException, InvalidInstructionSetException {
+		stopAnimation();
 		setSimulationControlsEnabled(false);
-		CPU cpu = CPU.createFromJSONFile(file.getAbsolutePath()); // load CPU from file
+		CPU cpu = DrMIPS.getApplication().getModelCache().load(file.getAbsolutePath()); // load CPU from file (or cache)
 		cpu.setPerformanceInstructionDependent(cmbDatapathPerformance.getSelectedItemPosition() == Util.INSTRUCTION_PERFORMANCE_TYPE_INDEX);
 		DrMIPS.getApplication().setCPU(cpu);
 		
@@ -620,6 +785,9 @@ public class DrMIPSActivity extends Activity {
 			if(mnuRestart != null) mnuRestart.setVisible(false);
 			if(mnuStep != null) mnuStep.setVisible(false);
 			if(mnuRun != null) mnuRun.setVisible(false);
+			if(mnuBreakpoints != null) mnuBreakpoints.setVisible(false);
+			if(mnuWatchpoints != null) mnuWatchpoints.setVisible(false);
+			if(mnuAnimate != null) mnuAnimate.setVisible(false);
 			cmdStep.setVisibility(View.GONE);
 		}
 		else {
@@ -632,34 +800,48 @@ public class DrMIPSActivity extends Activity {
 	 * Sets the "step" controls enabled or disabled according to <tt>cpu.isProgramFinished()</tt>.
 	 */
 	private void updateStepEnabled() {
-		boolean enable = !getCPU().isProgramFinished();
+		boolean enable = !isSimulationRunning() && !getCPU().isProgramFinished();
 		cmdStep.setVisibility(enable ? View.VISIBLE : View.GONE);
 		if(mnuStep != null) mnuStep.setVisible(enable);
 		if(mnuRun != null) mnuRun.setVisible(enable);
+		if(mnuBreakpoints != null) mnuBreakpoints.setVisible(enable);
+		if(mnuWatchpoints != null) mnuWatchpoints.setVisible(enable);
+		if(mnuAnimate != null) mnuAnimate.setVisible(enable);
 	}
 	
 	/**
 	 * Sets the "step back" controls enabled or disabled according to <tt>cpu.hasPreviousCycle()</tt>.
 	 */
 	private void updateStepBackEnabled() {
-		boolean enable = getCPU().hasPreviousCycle();
+		boolean enable = !isSimulationRunning() && getCPU().hasPreviousCycle();
 		if(mnuBackStep != null) mnuBackStep.setVisible(enable);
 		if(mnuRestart != null) mnuRestart.setVisible(enable);
 	}
 	
+	/**
+	 * Loads the given assembled program into the CPU and updates the simulation controls.
+	 * @param image The assembled program.
+	 */
+	private void loadProgram(ProgramImage image) {
+		stopAnimation();
+		getCPU().load(image);
+		if(datapath != null) datapath.refresh();
+		setSimulationControlsEnabled(true);
+		refreshAssembledCodeTable();
+		refreshValues();
+		tabHost.setCurrentTabByTag("tabAssembledCode");
+	}
+	
 	/**
 	 * Assembles and loads the code from the Code tab.
 	 */
 	private void assemble() {
 		getCPU().resetData();
 		try {
-			getCPU().assembleCode(txtCode.getText().toString());
-			
-			if(datapath != null) datapath.refresh();
-			setSimulationControlsEnabled(true);
-			refreshAssembledCodeTable();
-			refreshValues();
-			tabHost.setCurrentTabByTag("tabAssembledCode");
+			String code = txtCode.getText().toString();
+			ProgramImage image = DrMIPS.getApplication().getAssemblyCache().assemble(getCPU(), code);
+			loadProgram(image);
+			saveLastProgram(image, code);
 		}
 		catch(SyntaxErrorException ex) {
 			String message = getString(R.string.line).replace("#1", "" + ex.getLine()) + ": ";
@@ -751,15 +933,146 @@ public class DrMIPSActivity extends Activity {
 	}
 	
 	/**
-	 * Executes all the instructions at once.
+	 * Executes all the instructions in the background.
+	 * <p>The values displayed are refreshed periodically, and the simulation
+	 * controls are disabled until the run ends or is paused/stopped.</p>
 	 */
 	private void run() {
-		try {
-			getCPU().executeAll();
+		if(isSimulationRunning()) return;
+		setSimulationRunning(true);
+		simulation.start(getCPU());
+		if(datapath != null) datapath.refresh(); // stop showing the state of the CPU
+	}
+	
+	/**
+	 * Called by the simulation fragment, in the main thread, with the state of the CPU during a run.
+	 * @param snapshot The snapshot of the CPU.
+	 */
+	public void onSimulationProgress(CPUSnapshot snapshot) {
+		int numRegs = snapshot.getNumberOfRegisters();
+		int format = cmbRegistersFormat.getSelectedItemPosition();
+		for(int i = 0; i < numRegs && i + 1 < tblRegisters.getChildCount(); i++) {
+			TableRow row = (TableRow)tblRegisters.getChildAt(i + 1);
+			((TextView)row.getChildAt(1)).setText(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, snapshot.getRegister(i)), format));
+			row.setBackgroundResource(0);
+		}
+		if(numRegs + 1 < tblRegisters.getChildCount()) { // PC
+			TableRow row = (TableRow)tblRegisters.getChildAt(numRegs + 1);
+			((TextView)row.getChildAt(1)).setText(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, snapshot.getPC()), format));
 		}
-		catch(InfiniteLoopException e) {
+		tblRegisters.requestLayout();
+		
+		if(snapshot.getMemorySize() > 0) {
+			format = cmbDataMemoryFormat.getSelectedItemPosition();
+			for(int i = 0; i < snapshot.getMemorySize() && i + 1 < tblDataMemory.getChildCount(); i++) {
+				TableRow row = (TableRow)tblDataMemory.getChildAt(i + 1);
+				((TextView)row.getChildAt(1)).setText(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, snapshot.getDataInIndex(i)), format));
+				row.setBackgroundResource(0);
+			}
+			tblDataMemory.requestLayout();
+		}
+	}
+	
+	/**
+	 * Called by the simulation fragment, in the main thread, when a run ends.
+	 * @param status The reason why the run ended.
+	 * @param stopped Whether the run was stopped (and the execution should revert to the first cycle).
+	 * @param error The error that ended the run, or <tt>null</tt>.
+	 */
+	public void onSimulationFinished(CPU.RunStatus status, boolean stopped, Throwable error) {
+		setSimulationRunning(false);
+		if(error != null)
+			Toast.makeText(this, getString(R.string.error_running_simulation) + "\n" + error.getClass().getName() + " (" + error.getMessage() + ")", Toast.LENGTH_LONG).show();
+		if(stopped)
+			getCPU().resetToFirstCycle();
+		else if(status == CPU.RunStatus.CYCLE_LIMIT)
 			Toast.makeText(this, getString(R.string.possible_infinite_loop).replace("#1", "" + CPU.EXECUTE_ALL_LIMIT_CYCLES), Toast.LENGTH_SHORT).show();
+		else if(status == CPU.RunStatus.WATCHPOINT)
+			showTriggeredWatchpoint();
+		refreshValues();
+	}
+	
+	/**
+	 * Shows a message with the watchpoint that stopped the execution, if any.
+	 */
+	private void showTriggeredWatchpoint() {
+		Watchpoints.Watchpoint watchpoint = getCPU().getTriggeredWatchpoint();
+		if(watchpoint != null)
+			Toast.makeText(this, getString(R.string.watchpoint_triggered).replace("#1", DlgWatchpoints.toString(this, watchpoint)), Toast.LENGTH_LONG).show();
+	}
+	
+	/**
+	 * Returns whether the simulation is running in the background or animated.
+	 * @return <tt>True</tt> if the simulation is running.
+	 */
+	private boolean isSimulationRunning() {
+		return animation != null || isRunningInBackground();
+	}
+	
+	/**
+	 * Returns whether the simulation is running in the background.
+	 * <p>While it is, the CPU belongs to the simulation thread, and the values
+	 * displayed are only updated with its snapshots and when the run ends.</p>
+	 * @return <tt>True</tt> if the simulation is running in the background.
+	 */
+	public boolean isRunningInBackground() {
+		return simulation != null && simulation.isRunning();
+	}
+	
+	/**
+	 * Updates the controls when a run or animated run starts or ends.
+	 * @param running Whether the simulation is running.
+	 */
+	private void setSimulationRunning(boolean running) {
+		if(mnuPause != null) mnuPause.setVisible(running);
+		if(mnuStop != null) mnuStop.setVisible(running);
+		if(mnuAssemble != null) mnuAssemble.setVisible(!running);
+		if(mnuLoadCPU != null) mnuLoadCPU.setVisible(!running);
+		setSimulationControlsEnabled(!running);
+	}
+	
+	/**
+	 * Pauses the run or the animated run, if running.
+	 */
+	private void pauseSimulation() {
+		if(animation != null)
+			stopAnimation();
+		else
+			simulation.pause();
+	}
+	
+	/**
+	 * Stops the run or the animated run, if running, and reverts the execution to the first cycle.
+	 */
+	private void stopSimulation() {
+		if(animation != null) {
+			stopAnimation();
+			restart();
 		}
+		else
+			simulation.stop();
+	}
+	
+	/**
+	 * Executes the program at the given clock rate, refreshing the values
+	 * displayed after the cycles of each frame.
+	 * @param rate The clock rate, in Hz, or 0 to execute one cycle per frame.
+	 */
+	public void animate(double rate) {
+		if(isSimulationRunning() || getCPU().isProgramFinished()) return;
+		animation = new Animation(getCPU(), rate);
+		setSimulationRunning(true);
+		animationHandler.post(animationTick);
+	}
+	
+	/**
+	 * Stops the animated run, if running.
+	 */
+	private void stopAnimation() {
+		if(animation == null) return;
+		animationHandler.removeCallbacks(animationTick);
+		animation = null;
+		setSimulationRunning(false);
 		refreshValues();
 	}
 	
@@ -808,6 +1121,7 @@ public class DrMIPSActivity extends Activity {
 	 * Refreshes the assembled code table highlights.
 	 */
 	private void refreshAssembledCodeTableValues() {
+		if(isRunningInBackground()) return;
 		TableRow row;
 		CPU cpu = getCPU();
 		
@@ -882,15 +1196,25 @@ public class DrMIPSActivity extends Activity {
 		row.addView(value);
 		tblRegisters.addView(row);
 		
+		registersTableFormat = -1; // new rows
 		refreshRegistersTableValues(); // refresh values
 	}
 	
 	/**
 	 * Refreshes the values of the registers table.
+	 * <p>Only the registers that changed since the last refresh are updated,
+	 * unless the format changed. The highlights are updated for all.</p>
 	 */
 	public void refreshRegistersTableValues() {
+		if(isRunningInBackground()) return;
 		CPU cpu = getCPU();
 		int numRegs = cpu.getRegBank().getNumberOfRegisters();
+		int format = cmbRegistersFormat.getSelectedItemPosition();
+		ChangeSet changes = cpu.getRegBank().getChanges();
+		if(format != registersTableFormat) {
+			changes.markAll();
+			registersTableFormat = format;
+		}
 		TextView value;
 		TableRow row;
 
@@ -901,8 +1225,10 @@ public class DrMIPSActivity extends Activity {
 
 		for(int i = 0; i < numRegs; i++) { // registers
 			row = (TableRow)tblRegisters.getChildAt(i + 1);
-			value = (TextView)row.getChildAt(1);
-			value.setText(Util.formatDataAccordingToFormat(cpu.getRegBank().getRegister(i), cmbRegistersFormat.getSelectedItemPosition()));
+			if(changes.isChanged(i)) {
+				value = (TextView)row.getChildAt(1);
+				value.setText(Util.formatDataAccordingToFormat(cpu.getRegBank().getRegister(i), format));
+			}
 			
 			// Highlight registers being accessed
 			if(write && i == regW && !cpu.getRegBank().isRegisterConstant(regW)) {
@@ -916,6 +1242,7 @@ public class DrMIPSActivity extends Activity {
 			else
 				row.setBackgroundResource(0); // remove background color
 		}
+		changes.clear();
 		
 		// Special "registers"
 		value = (TextView)((TableRow)tblRegisters.getChildAt(numRegs + 1)).getChildAt(1);
@@ -950,25 +1277,40 @@ public class DrMIPSActivity extends Activity {
 				tblDataMemory.addView(row);
 			}
 			
+			dataMemoryTableFormat = -1; // new rows
 			refreshDataMemoryTableValues(); // refresh values
 		}
 	}
 	
 	/**
-	 * Refreshes the values of the registers table.
+	 * Refreshes the values of the data memory table.
+	 * <p>Only the positions that changed since the last refresh are updated,
+	 * unless the format changed. The highlights are updated for all.</p>
 	 */
 	public void refreshDataMemoryTableValues() {
+		if(isRunningInBackground()) return;
 		CPU cpu = getCPU();
 		if(cpu.hasDataMemory()) {
 			TextView address, value;
 			TableRow row;
+			int format = cmbDataMemoryFormat.getSelectedItemPosition();
+			ChangeSet changes = cpu.getDataMemory().getChanges();
+			boolean all = format != dataMemoryTableFormat;
+			if(all) {
+				changes.markAll();
+				dataMemoryTableFormat = format;
+			}
 
 			for(int i = 0; i < cpu.getDataMemory().getMemorySize(); i++) {
 				row = (TableRow)tblDataMemory.getChildAt(i + 1);
-				address = (TextView)row.getChildAt(0);
-				value = (TextView)row.getChildAt(1);
-				address.setText(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, i * (Data.DATA_SIZE / 8)), cmbDataMemoryFormat.getSelectedItemPosition()) + " ");
-				value.setText(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, cpu.getDataMemory().getDataInIndex(i)), cmbDataMemoryFormat.getSelectedItemPosition()));
+				if(all) {
+					address = (TextView)row.getChildAt(0);
+					address.setText(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, i * (Data.DATA_SIZE / 8)), format) + " ");
+				}
+				if(changes.isChanged(i)) {
+					value = (TextView)row.getChildAt(1);
+					value.setText(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, cpu.getDataMemory().getDataInIndex(i)), format));
+				}
 				
 				// Highlight memory positions being accessed
 				int index = cpu.getDataMemory().getAddress().getValue() / (Data.DATA_SIZE / 8);
@@ -986,6 +1328,7 @@ public class DrMIPSActivity extends Activity {
 				else
 					row.setBackgroundResource(0); // remove background color
 			}
+			changes.clear();
 			tblDataMemory.requestLayout();
 		}
 	}
@@ -1121,6 +1464,7 @@ public class DrMIPSActivity extends Activity {
 	 * Refreshes the values of the exec table.
 	 */
 	private void refreshExecTableValues() {
+		if(isRunningInBackground()) return;
 		CPU cpu = getCPU();
 		((TextView)tblExecRow.getChildAt(0)).setText(getInstructionInIndex(cpu.getPC().getCurrentInstructionIndex()));
 		if(cpu.isPipeline()) {
@@ -1169,6 +1513,7 @@ public class DrMIPSActivity extends Activity {
 	private class RegistersRowOnLongClickListener implements OnLongClickListener {
 		@Override
 		public boolean onLongClick(View v) {
+			if(isSimulationRunning()) return true;
 			int index = tblRegisters.indexOfChild(v) - 1;
 			if(index >= 0 && index <= getCPU().getRegBank().getNumberOfRegisters()) {
 				String name = getRegisterName(index);
@@ -1187,6 +1532,7 @@ public class DrMIPSActivity extends Activity {
 	private class DataMemoryRowOnLongClickListener implements OnLongClickListener {
 		@Override
 		public boolean onLongClick(View v) {
+			if(isSimulationRunning()) return true;
 			int index = tblDataMemory.indexOfChild(v) - 1;
 			if(index >= 0 && index < getCPU().getDataMemory().getMemorySize()) {
 				int value = getCPU().getDataMemory().getDataInIndex(index);
@@ -1201,6 +1547,17 @@ public class DrMIPSActivity extends Activity {
 		@Override
 		public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
 			SharedPreferences.Editor editor = DrMIPS.getApplication().getPreferences().edit();
+			if(isSimulationRunning()) { // the CPU can't be read now, the new format is used after the run
+				if(parent == cmbRegistersFormat)
+					editor.putInt(DrMIPS.REGISTER_FORMAT_PREF, cmbRegistersFormat.getSelectedItemPosition()).apply();
+				else if(parent == cmbDataMemoryFormat)
+					editor.putInt(DrMIPS.DATA_MEMORY_FORMAT_PREF, cmbDataMemoryFormat.getSelectedItemPosition()).apply();
+				else if(parent == cmbAssembledCodeFormat)
+					editor.putInt(DrMIPS.ASSEMBLED_CODE_FORMAT_PREF, cmbAssembledCodeFormat.getSelectedItemPosition()).apply();
+				else if(parent == cmbDatapathFormat)
+					editor.putInt(DrMIPS.DATAPATH_DATA_FORMAT_PREF, cmbDatapathFormat.getSelectedItemPosition()).apply();
+				return;
+			}
 			if(parent == cmbAssembledCodeFormat) { 
 				refreshAssembledCodeTable();
 				editor.putInt(DrMIPS.ASSEMBLED_CODE_FORMAT_PREF, cmbAssembledCodeFormat.getSelectedItemPosition());
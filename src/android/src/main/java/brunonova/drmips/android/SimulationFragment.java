@@ -0,0 +1,242 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.android;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import brunonova.drmips.simulator.CPU;
+import brunonova.drmips.simulator.CPUSnapshot;
+import brunonova.drmips.simulator.RunOptions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Headless fragment that runs the simulation in a background thread, so that
+ * long runs don't block the user interface.
+ *
+ * <p>The fragment is retained across configuration changes (like screen
+ * rotations), so a run continues while the activity is recreated and its
+ * result is delivered to the new activity. While a run is in progress it owns
+ * the CPU, which must not be accessed by the activity until
+ * <tt>DrMIPSActivity.onSimulationFinished()</tt> is called. The activity
+ * receives snapshots of the CPU in the main thread, at most
+ * <tt>REFRESH_RATE</tt> times per second.</p>
+ *
+ * @author Bruno Nova
+ */
+public class SimulationFragment extends Fragment {
+	/** The tag of the fragment. */
+	public static final String TAG = "simulation-fragment";
+	/** The maximum number of times per second the activity is refreshed during a run. */
+	public static final int REFRESH_RATE = 10;
+	/** The number of cycles executed between checks of the pause/stop requests. */
+	private static final int CHECK_INTERVAL = 64;
+
+	/** The thread that runs the simulation. */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	/** Handler used to post the updates to the main thread. */
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	/** The activity the fragment is attached to, or <tt>null</tt> (while it is being recreated). */
+	private DrMIPSActivity activity = null;
+	/** The token used to pause or stop the current run, or <tt>null</tt> if not running. */
+	private RunOptions.CancellationToken token = null;
+	/** Whether the current run was stopped (and not paused). */
+	private volatile boolean stopped = false;
+	/** The most recent snapshot not yet shown by the activity, or <tt>null</tt>. */
+	private final AtomicReference<CPUSnapshot> pendingProgress = new AtomicReference<>();
+	/** Shows the most recent snapshot in the activity (in the main thread). */
+	private final Runnable deliverProgress = new Runnable() {
+		@Override
+		public void run() {
+			CPUSnapshot snapshot = pendingProgress.getAndSet(null);
+			if(snapshot != null && activity != null && isRunning())
+				activity.onSimulationProgress(snapshot);
+		}
+	};
+	/** The result of a run that ended while no activity was attached, or <tt>null</tt>. */
+	private CPU.RunStatus pendingStatus = null;
+	/** The error that ended that run, or <tt>null</tt>. */
+	private Throwable pendingError = null;
+
+	/**
+	 * Creates a new fragment.
+	 * @return The fragment.
+	 */
+	public static SimulationFragment newInstance() {
+		return new SimulationFragment();
+	}
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setRetainInstance(true);
+	}
+
+	@Override
+	public void onAttach(Activity activity) {
+		super.onAttach(activity);
+		this.activity = (DrMIPSActivity)activity;
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+		if(pendingStatus != null) // the run ended while the activity was being recreated
+			deliverResult(pendingStatus, pendingError);
+	}
+
+	@Override
+	public void onDetach() {
+		activity = null;
+		super.onDetach();
+	}
+
+	@Override
+	public void onDestroy() {
+		if(token != null) token.cancel();
+		executor.shutdownNow();
+		super.onDestroy();
+	}
+
+	/**
+	 * Returns whether a run is in progress.
+	 * @return <tt>True</tt> if the simulation is running.
+	 */
+	public boolean isRunning() {
+		return token != null;
+	}
+
+	/**
+	 * Starts running the simulation in the background.
+	 * <p>Does nothing if it is already running.</p>
+	 * @param cpu The CPU with the loaded program.
+	 */
+	public void start(final CPU cpu) {
+		if(isRunning()) return;
+		final RunOptions.CancellationToken runToken = new RunOptions.CancellationToken();
+		token = runToken;
+		stopped = false;
+		pendingProgress.set(null);
+		pendingStatus = null;
+		pendingError = null;
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				RunOptions options = new RunOptions();
+				options.setMaxCycles(CPU.EXECUTE_ALL_LIMIT_CYCLES + 1);
+				options.setCheckInterval(CHECK_INTERVAL);
+				options.setCancellationToken(runToken);
+				options.setProgressListener(new RunOptions.ProgressListener() {
+					private long lastPost = System.nanoTime();
+
+					@Override
+					public void progress(CPU cpu, int cycles) {
+						long now = System.nanoTime();
+						if(now - lastPost >= 1000000000L / REFRESH_RATE) {
+							postProgress(cpu.snapshot());
+							lastPost = now;
+						}
+					}
+				});
+
+				CPU.RunStatus status = CPU.RunStatus.CANCELLED;
+				Throwable error = null;
+				try {
+					status = cpu.run(options);
+				}
+				catch(Throwable ex) { // reported to the activity
+					Log.e(getClass().getName(), "error running the simulation", ex);
+					error = ex;
+				}
+				finally {
+					postResult(status, error);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Posts the result of the run to the main thread, ending the run.
+	 * @param status The reason why the run ended.
+	 * @param error The error that ended the run, or <tt>null</tt>.
+	 */
+	private void postResult(final CPU.RunStatus status, final Throwable error) {
+		mainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				token = null;
+				pendingProgress.set(null);
+				if(activity != null)
+					deliverResult(status, error);
+				else { // delivered when the activity is recreated
+					pendingStatus = status;
+					pendingError = error;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Pauses the run, leaving the CPU in the current cycle.
+	 */
+	public void pause() {
+		if(token != null) token.cancel();
+	}
+
+	/**
+	 * Stops the run.
+	 * <p>The activity is told that the run was stopped, so that it can revert
+	 * the execution to the first cycle.</p>
+	 */
+	public void stop() {
+		if(token != null) {
+			stopped = true;
+			token.cancel();
+		}
+	}
+
+	/**
+	 * Posts the given snapshot to the main thread.
+	 * <p>The snapshots are coalesced: if the previous one wasn't shown yet, only
+	 * the most recent one is.</p>
+	 * @param snapshot The snapshot of the CPU.
+	 */
+	private void postProgress(CPUSnapshot snapshot) {
+		if(pendingProgress.getAndSet(snapshot) == null) // not scheduled yet
+			mainHandler.post(deliverProgress);
+	}
+
+	/**
+	 * Tells the attached activity that the run ended.
+	 * @param status The reason why the run ended.
+	 * @param error The error that ended the run, or <tt>null</tt>.
+	 */
+	private void deliverResult(CPU.RunStatus status, Throwable error) {
+		pendingStatus = null;
+		pendingError = null;
+		activity.onSimulationFinished(status, stopped, error);
+	}
+}
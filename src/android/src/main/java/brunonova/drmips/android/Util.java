@@ -23,6 +23,7 @@ import android.util.Log;
 import android.util.TypedValue;
 
 import brunonova.drmips.simulator.Data;
+import brunonova.drmips.simulator.DataFormatCache;
 
 /**
  * Utility functions.
@@ -49,9 +50,9 @@ public class Util {
 	 */
 	public static String formatDataAccordingToFormat(Data data, int format) {
 		switch(format) {
-			case BINARY_FORMAT_INDEX: return data.toBinary();
-			case HEXADECIMAL_FORMAT_INDEX: return data.toHexadecimal();
-			default: return "" + data.getValue();
+			case BINARY_FORMAT_INDEX: return DataFormatCache.format(data, DataFormatCache.BINARY);
+			case HEXADECIMAL_FORMAT_INDEX: return DataFormatCache.format(data, DataFormatCache.HEXADECIMAL);
+			default: return DataFormatCache.format(data, DataFormatCache.DECIMAL);
 		}
 	}
 
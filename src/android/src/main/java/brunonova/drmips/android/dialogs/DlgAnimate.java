@@ -0,0 +1,77 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.android.dialogs;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.content.DialogInterface;
+import android.os.Bundle;
+
+import brunonova.drmips.android.R;
+import brunonova.drmips.android.DrMIPS;
+import brunonova.drmips.android.DrMIPSActivity;
+
+/**
+ * Dialog fragment to choose the clock rate of an animated run.
+ *
+ * Use the method {@link #newInstance} to create the dialog.
+ *
+ * @author Bruno Nova
+ */
+public class DlgAnimate extends DialogFragment implements DialogInterface.OnClickListener {
+	/** The clock rates that can be chosen, in Hz (0 is the maximum rate). */
+	private static final double[] RATES = {1, 2, 5, 10, 20, 50, 100, 1000, 0};
+
+	/**
+	 * Creates a new dialog.
+	 * @return The dialog.
+	 */
+	public static DlgAnimate newInstance() {
+		return new DlgAnimate();
+	}
+
+	@Override
+	public Dialog onCreateDialog(Bundle savedInstanceState) {
+		super.onCreateDialog(savedInstanceState);
+
+		String[] items = new String[RATES.length];
+		for(int i = 0; i < RATES.length - 1; i++)
+			items[i] = (int)RATES[i] + " Hz";
+		items[RATES.length - 1] = getString(R.string.max_rate);
+		int selected = DrMIPS.getApplication().getPreferences().getInt(DrMIPS.ANIMATION_RATE_PREF, DrMIPS.DEFAULT_ANIMATION_RATE);
+
+		return new AlertDialog.Builder(getActivity())
+			.setTitle(R.string.clock_rate)
+			.setSingleChoiceItems(items, selected >= 0 && selected < RATES.length ? selected : DrMIPS.DEFAULT_ANIMATION_RATE, this)
+			.setNegativeButton(android.R.string.cancel, this)
+			.create();
+	}
+
+	@Override
+	public void onClick(DialogInterface dialog, int which) {
+		if(which >= 0) { // rate chosen
+			DrMIPS.getApplication().getPreferences().edit().putInt(DrMIPS.ANIMATION_RATE_PREF, which).apply();
+			dismiss();
+			((DrMIPSActivity)getActivity()).animate(RATES[which]);
+		}
+		else if(which == AlertDialog.BUTTON_NEGATIVE) // Cancel
+			dismiss();
+	}
+}
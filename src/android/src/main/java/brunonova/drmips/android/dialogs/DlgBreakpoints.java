@@ -0,0 +1,173 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.android.dialogs;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.text.InputType;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.Toast;
+
+import brunonova.drmips.android.R;
+import brunonova.drmips.android.DrMIPSActivity;
+import brunonova.drmips.simulator.Breakpoints;
+import java.util.List;
+
+/**
+ * Dialog fragment to add and remove breakpoints.
+ *
+ * <p>The existing breakpoints are listed checked, and the unchecked ones are
+ * removed when the dialog is confirmed. A new breakpoint is added if an
+ * address is entered.</p>
+ *
+ * Use the method {@link #newInstance} to create the dialog.
+ *
+ * @author Bruno Nova
+ */
+public class DlgBreakpoints extends DialogFragment implements DialogInterface.OnClickListener, DialogInterface.OnMultiChoiceClickListener {
+	private EditText txtAddress, txtCondition, txtHitCount;
+	private List<Breakpoints.Breakpoint> breakpoints;
+	private boolean[] kept;
+
+	/**
+	 * Creates a new dialog.
+	 * @return The dialog.
+	 */
+	public static DlgBreakpoints newInstance() {
+		return new DlgBreakpoints();
+	}
+
+	@Override
+	public Dialog onCreateDialog(Bundle savedInstanceState) {
+		super.onCreateDialog(savedInstanceState);
+
+		DrMIPSActivity activity = (DrMIPSActivity)getActivity();
+		breakpoints = activity.getCPU().getBreakpoints().getAll();
+		String[] items = new String[breakpoints.size()];
+		for(int i = 0; i < items.length; i++)
+			items[i] = breakpoints.get(i).toString();
+		kept = savedInstanceState != null ? savedInstanceState.getBooleanArray("kept") : null;
+		if(kept == null || kept.length != items.length) {
+			kept = new boolean[items.length];
+			for(int i = 0; i < kept.length; i++) kept[i] = true;
+		}
+
+		txtAddress = new EditText(activity);
+		txtAddress.setHint(R.string.address);
+		txtAddress.setInputType(InputType.TYPE_CLASS_NUMBER);
+		txtCondition = new EditText(activity);
+		txtCondition.setHint(R.string.condition_hint);
+		txtCondition.setInputType(InputType.TYPE_CLASS_TEXT);
+		txtHitCount = new EditText(activity);
+		txtHitCount.setHint(R.string.hit_count);
+		txtHitCount.setInputType(InputType.TYPE_CLASS_NUMBER);
+		if(savedInstanceState != null) {
+			txtAddress.setText(savedInstanceState.getString("address", ""));
+			txtCondition.setText(savedInstanceState.getString("condition", ""));
+			txtHitCount.setText(savedInstanceState.getString("hit_count", ""));
+		}
+		LinearLayout layout = new LinearLayout(activity);
+		layout.setOrientation(LinearLayout.VERTICAL);
+		layout.addView(txtAddress);
+		layout.addView(txtCondition);
+		layout.addView(txtHitCount);
+
+		return new AlertDialog.Builder(activity)
+			.setTitle(R.string.breakpoints)
+			.setMultiChoiceItems(items, kept, this)
+			.setView(layout)
+			.setPositiveButton(android.R.string.ok, this)
+			.setNeutralButton(R.string.remove_all, this)
+			.setNegativeButton(android.R.string.cancel, this)
+			.create();
+	}
+
+	@Override
+	public void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		outState.putBooleanArray("kept", kept);
+		outState.putString("address", txtAddress.getText().toString());
+		outState.putString("condition", txtCondition.getText().toString());
+		outState.putString("hit_count", txtHitCount.getText().toString());
+	}
+
+	@Override
+	public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+		kept[which] = isChecked;
+	}
+
+	@Override
+	public void onClick(DialogInterface dialog, int which) {
+		DrMIPSActivity activity = (DrMIPSActivity)getActivity();
+		Breakpoints cpuBreakpoints = activity.getCPU().getBreakpoints();
+
+		switch(which) {
+			case AlertDialog.BUTTON_POSITIVE: //OK
+				for(int i = 0; i < kept.length; i++) {
+					if(!kept[i]) cpuBreakpoints.remove(breakpoints.get(i).getAddress());
+				}
+				String address = txtAddress.getText().toString().trim();
+				if(!address.isEmpty())
+					addBreakpoint(activity, cpuBreakpoints, address, txtCondition.getText().toString().trim(), txtHitCount.getText().toString().trim());
+				break;
+
+			case AlertDialog.BUTTON_NEUTRAL: // Remove all
+				cpuBreakpoints.clear();
+				break;
+
+			case AlertDialog.BUTTON_NEGATIVE: // Cancel
+				dismiss();
+				break;
+		}
+	}
+
+	/**
+	 * Adds a breakpoint, showing an error message if it is invalid.
+	 * @param activity The activity.
+	 * @param breakpoints The breakpoints of the CPU.
+	 * @param address The address of the instruction.
+	 * @param condition The condition (empty to always stop).
+	 * @param hitCount The number of times the breakpoint must be reached before stopping.
+	 */
+	private void addBreakpoint(DrMIPSActivity activity, Breakpoints breakpoints, String address, String condition, String hitCount) {
+		int addr, hits;
+		try {
+			addr = Integer.parseInt(address);
+			hits = hitCount.isEmpty() ? 1 : Integer.parseInt(hitCount);
+		} catch(NumberFormatException ex) {
+			Toast.makeText(activity, R.string.invalid_value, Toast.LENGTH_SHORT).show();
+			return;
+		}
+		if(addr < 0 || addr % 4 != 0) {
+			Toast.makeText(activity, R.string.invalid_breakpoint_address, Toast.LENGTH_SHORT).show();
+			return;
+		}
+
+		try {
+			Breakpoints.Condition cond = condition.isEmpty() ? null : Breakpoints.Condition.parse(activity.getCPU(), condition);
+			breakpoints.add(addr, cond, Math.max(hits, 1));
+		} catch(IllegalArgumentException ex) {
+			Toast.makeText(activity, activity.getString(R.string.invalid_condition).replace("#1", condition), Toast.LENGTH_SHORT).show();
+		}
+	}
+}
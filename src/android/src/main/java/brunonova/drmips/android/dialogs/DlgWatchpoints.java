@@ -0,0 +1,189 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.android.dialogs;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.text.InputType;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.Spinner;
+import android.widget.Toast;
+
+import brunonova.drmips.android.R;
+import brunonova.drmips.android.DrMIPSActivity;
+import brunonova.drmips.simulator.CPU;
+import brunonova.drmips.simulator.Watchpoints;
+import java.util.List;
+
+/**
+ * Dialog fragment to add and remove watchpoints on the registers and on the data memory.
+ *
+ * <p>The existing watchpoints are listed checked, and the unchecked ones are
+ * removed when the dialog is confirmed. A new watchpoint is added if a
+ * register or address is entered.</p>
+ *
+ * Use the method {@link #newInstance} to create the dialog.
+ *
+ * @author Bruno Nova
+ */
+public class DlgWatchpoints extends DialogFragment implements DialogInterface.OnClickListener, DialogInterface.OnMultiChoiceClickListener {
+	private EditText txtTarget, txtValue;
+	private Spinner cmbType;
+	private List<Watchpoints.Watchpoint> watchpoints;
+	private boolean[] kept;
+
+	/**
+	 * Creates a new dialog.
+	 * @return The dialog.
+	 */
+	public static DlgWatchpoints newInstance() {
+		return new DlgWatchpoints();
+	}
+
+	/**
+	 * Returns the translated description of the given watchpoint.
+	 * @param context The context used to get the strings.
+	 * @param watchpoint The watchpoint.
+	 * @return The description of the watchpoint.
+	 */
+	public static String toString(Context context, Watchpoints.Watchpoint watchpoint) {
+		switch(watchpoint.getType()) {
+			case WRITE: return context.getString(R.string.watchpoint_written).replace("#1", watchpoint.getTarget());
+			case READ: return context.getString(R.string.watchpoint_read).replace("#1", watchpoint.getTarget());
+			default: return context.getString(R.string.watchpoint_value).replace("#1", watchpoint.getTarget()).replace("#2", "" + watchpoint.getValue());
+		}
+	}
+
+	@Override
+	public Dialog onCreateDialog(Bundle savedInstanceState) {
+		super.onCreateDialog(savedInstanceState);
+
+		DrMIPSActivity activity = (DrMIPSActivity)getActivity();
+		watchpoints = activity.getCPU().getAllWatchpoints();
+		String[] items = new String[watchpoints.size()];
+		for(int i = 0; i < items.length; i++)
+			items[i] = toString(activity, watchpoints.get(i));
+		kept = savedInstanceState != null ? savedInstanceState.getBooleanArray("kept") : null;
+		if(kept == null || kept.length != items.length) {
+			kept = new boolean[items.length];
+			for(int i = 0; i < kept.length; i++) kept[i] = true;
+		}
+
+		txtTarget = new EditText(activity);
+		txtTarget.setHint(R.string.watchpoint_target_hint);
+		txtTarget.setInputType(InputType.TYPE_CLASS_TEXT);
+		cmbType = new Spinner(activity);
+		ArrayAdapter<String> types = new ArrayAdapter<>(activity, android.R.layout.simple_spinner_item,
+			new String[] {getString(R.string.watch_write), getString(R.string.watch_read), getString(R.string.watch_value)});
+		types.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+		cmbType.setAdapter(types);
+		txtValue = new EditText(activity);
+		txtValue.setHint(R.string.value);
+		txtValue.setInputType(InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_SIGNED);
+		if(savedInstanceState != null) {
+			txtTarget.setText(savedInstanceState.getString("target", ""));
+			cmbType.setSelection(savedInstanceState.getInt("type", 0));
+			txtValue.setText(savedInstanceState.getString("value", ""));
+		}
+		LinearLayout layout = new LinearLayout(activity);
+		layout.setOrientation(LinearLayout.VERTICAL);
+		layout.addView(txtTarget);
+		layout.addView(cmbType);
+		layout.addView(txtValue);
+
+		return new AlertDialog.Builder(activity)
+			.setTitle(R.string.watchpoints)
+			.setMultiChoiceItems(items, kept, this)
+			.setView(layout)
+			.setPositiveButton(android.R.string.ok, this)
+			.setNeutralButton(R.string.remove_all, this)
+			.setNegativeButton(android.R.string.cancel, this)
+			.create();
+	}
+
+	@Override
+	public void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		outState.putBooleanArray("kept", kept);
+		outState.putString("target", txtTarget.getText().toString());
+		outState.putInt("type", cmbType.getSelectedItemPosition());
+		outState.putString("value", txtValue.getText().toString());
+	}
+
+	@Override
+	public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+		kept[which] = isChecked;
+	}
+
+	@Override
+	public void onClick(DialogInterface dialog, int which) {
+		DrMIPSActivity activity = (DrMIPSActivity)getActivity();
+		CPU cpu = activity.getCPU();
+
+		switch(which) {
+			case AlertDialog.BUTTON_POSITIVE: //OK
+				for(int i = 0; i < kept.length; i++) {
+					if(!kept[i]) cpu.removeWatchpoint(watchpoints.get(i));
+				}
+				String target = txtTarget.getText().toString().trim();
+				if(!target.isEmpty())
+					addWatchpoint(activity, target, Watchpoints.Type.values()[cmbType.getSelectedItemPosition()], txtValue.getText().toString().trim());
+				break;
+
+			case AlertDialog.BUTTON_NEUTRAL: // Remove all
+				cpu.clearWatchpoints();
+				break;
+
+			case AlertDialog.BUTTON_NEGATIVE: // Cancel
+				dismiss();
+				break;
+		}
+	}
+
+	/**
+	 * Adds a watchpoint, showing an error message if it is invalid.
+	 * @param activity The activity.
+	 * @param target The register or the address of the data memory position between brackets.
+	 * @param type The type of watchpoint.
+	 * @param value The value of a <tt>VALUE</tt> watchpoint.
+	 */
+	private void addWatchpoint(DrMIPSActivity activity, String target, Watchpoints.Type type, String value) {
+		int val = 0;
+		if(type == Watchpoints.Type.VALUE) {
+			try {
+				val = Integer.parseInt(value);
+			} catch(NumberFormatException ex) {
+				Toast.makeText(activity, R.string.invalid_value, Toast.LENGTH_SHORT).show();
+				return;
+			}
+		}
+
+		try {
+			activity.getCPU().addWatchpoint(target, type, val);
+		} catch(IllegalArgumentException ex) {
+			Toast.makeText(activity, activity.getString(R.string.invalid_watchpoint).replace("#1", target), Toast.LENGTH_SHORT).show();
+		}
+	}
+}
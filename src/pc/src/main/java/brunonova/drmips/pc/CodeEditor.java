@@ -19,16 +19,26 @@
 package brunonova.drmips.pc;
 
 import brunonova.drmips.simulator.*;
+import brunonova.drmips.simulator.exceptions.SyntaxErrorException;
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JPopupMenu;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.JTextComponent;
 import javax.swing.text.Segment;
@@ -55,6 +65,19 @@ import org.fife.ui.rtextarea.RTextScrollPane;
 public class CodeEditor extends TextEditorPane {
 	/** The icon used to display errors in the line numbers column. */
 	public static final Icon ERROR_ICON = new ImageIcon(CodeEditor.class.getResource("/res/icons/x16/error.png"));
+	/** The time without edits after which the code is checked for syntax errors (in milliseconds). */
+	public static final int CHECK_DELAY = 500;
+	
+	/** The thread where the code is checked for syntax errors, shared by all editors. */
+	private static final ExecutorService CHECKER_THREAD = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Syntax checker");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
 		
 	/** The editor's scroll pane. */
 	private RTextScrollPane scrollPane;
@@ -64,6 +87,12 @@ public class CodeEditor extends TextEditorPane {
 	private AutoCompletion complete;
 	/** The cpu with the supported instructions. */
 	private CPU cpu = null;
+	/** The assembler used to check the code for syntax errors (only used in the checker thread). */
+	private Assembler checker = null;
+	/** The timer that checks the code after <tt>CHECK_DELAY</tt> milliseconds without edits. */
+	private final Timer checkTimer;
+	/** The number of the current version of the code (incremented on each edit). */
+	private int codeVersion = 0;
 	
 	/** Class logger. */
 	private static final Logger LOG = Logger.getLogger(CodeEditor.class.getName());
@@ -88,6 +117,15 @@ public class CodeEditor extends TextEditorPane {
 		complete.setShowDescWindow(true);
 		complete.setAutoCompleteSingleChoices(false);
 		complete.install(this);
+		
+		checkTimer = new Timer(CHECK_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				checkCode();
+			}
+		});
+		checkTimer.setRepeats(false);
+		getDocument().addDocumentListener(new CheckDocumentListener());
 	}
 	
 	/**
@@ -139,14 +177,55 @@ public class CodeEditor extends TextEditorPane {
 		}
 	}
 	
+	/**
+	 * Adds the error icons of the given syntax errors, with their translated messages.
+	 * @param errors The syntax errors.
+	 */
+	public void addErrorIcons(List<SyntaxErrorException> errors) {
+		for(SyntaxErrorException e: errors)
+			addErrorIcon(e.getLine(), Util.getTranslatedSyntaxErrorMessage(e));
+	}
+	
+	/**
+	 * Checks the code for syntax errors in the background and updates the error icons.
+	 * <p>The code is checked in another thread, without changing the CPU. The
+	 * icons are only updated if the code wasn't edited in the meantime
+	 * (another check is made after the edit).</p>
+	 */
+	public void checkCode() {
+		checkTimer.stop();
+		if(checker == null) return;
+		
+		final Assembler assembler = checker;
+		final String code = getText();
+		final int version = codeVersion;
+		CHECKER_THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				final List<SyntaxErrorException> errors = assembler.checkCode(code);
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if(version == codeVersion && assembler == checker) {
+							clearErrorIcons();
+							addErrorIcons(errors);
+						}
+					}
+				});
+			}
+		});
+	}
+	
 	/**
 	 * Sets the CPU for the code editor.
 	 * @param cpu The cpu with the supported instructions.
 	 */
 	public void setCPU(CPU cpu) {
 		this.cpu = cpu;
+		checker = new Assembler(cpu);
 		setSyntaxEditingStyleForCPU();
 		setAutoComplete();
+		checkCode();
 	}
 	
 	/**
@@ -350,6 +429,29 @@ public class CodeEditor extends TextEditorPane {
 	}
 	
 	
+	/**
+	 * Listener that schedules a syntax check when the code is edited.
+	 */
+	private class CheckDocumentListener implements DocumentListener {
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			codeEdited();
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			codeEdited();
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) { }
+
+		private void codeEdited() {
+			codeVersion++;
+			if(checker != null) checkTimer.restart();
+		}
+	}
+	
 	/**
 	 * Completion provider for the MIPS instructions.
 	 * <p>This checks the text entered up to the caret position to provide the
@@ -20,7 +20,10 @@ package brunonova.drmips.pc;
 
 import brunonova.drmips.simulator.AppInfo;
 import brunonova.drmips.simulator.CPU;
+import brunonova.drmips.simulator.CPUSnapshot;
+import brunonova.drmips.simulator.ChangeSet;
 import brunonova.drmips.simulator.Data;
+import brunonova.drmips.simulator.ProgramImage;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Font;
@@ -30,10 +33,15 @@ import javax.swing.JOptionPane;
 import javax.swing.JTable;
 import javax.swing.SwingConstants;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 
 /**
  * The table with the data memory positions.
+ *
+ * <p>The table model reads the values directly from the data memory (or from
+ * a snapshot while the CPU is running in another thread), and the cells are
+ * only formatted when they are painted, so only the visible rows cost
+ * anything.</p>
  * 
  * @author Bruno Nova
  */
@@ -44,7 +52,7 @@ public class DataMemoryTable extends JTable implements MouseListener {
 	private static final int VALUE_COLUMN_INDEX = 1;
 	
 	/** The model of the table. */
-	private DefaultTableModel model = null;
+	private DataMemoryTableModel model = null;
 	/** The renderer of the table cells. */
 	private DataMemoryTableCellRenderer cellRenderer = null;
 	/** The CPU with the memory to be displayed. */
@@ -55,13 +63,15 @@ public class DataMemoryTable extends JTable implements MouseListener {
 	private int memorySize = 0;
 	/** The format of the data (<tt>Util.BINARYL_FORMAT_INDEX/Util.DECIMAL_FORMAT_INDEX/Util.HEXADECIMAL_FORMAT_INDEX</tt>). */
 	private int dataFormat = DrMIPS.DEFAULT_DATA_MEMORY_FORMAT;
+	/** The snapshot shown while the CPU is running in another thread, or <tt>null</tt> to show the CPU. */
+	private CPUSnapshot snapshot = null;
 
 	/**
 	 * Creates the data memory table.
 	 */
 	public DataMemoryTable() {
 		super();
-		model = new DefaultTableModel(0, 2);
+		model = new DataMemoryTableModel();
 		cellRenderer = new DataMemoryTableCellRenderer();
 		setDefaultRenderer(Object.class, cellRenderer);
 		setModel(model);
@@ -83,37 +93,103 @@ public class DataMemoryTable extends JTable implements MouseListener {
 		this.dataFormat = format;
 		this.datapath = datapath;
 		
-		// Initialize registers table
-		model.setRowCount(0);
-		if(cpu.hasDataMemory()) {
-			memorySize = cpu.getDataMemory().getMemorySize();
-			for(int i = 0; i < memorySize; i++) {
-				Object[] data = new Object[2];
-				data[0] = Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, i * (Data.DATA_SIZE / 8)), format);
-				data[1] = "";
-				model.addRow(data);
-			}
-
-			refreshValues(format);
-		}
+		// Initialize data memory table
+		snapshot = null;
+		memorySize = cpu.hasDataMemory() ? cpu.getDataMemory().getMemorySize() : 0;
+		model.fireTableDataChanged();
+		if(cpu.hasDataMemory())
+			cpu.getDataMemory().getChanges().clear(); // all values are read when painted
 	}
 	
 	/**
 	 * Refreshes the values in the table.
+	 * <p>Only the positions that changed since the last refresh are updated,
+	 * unless the format changed.</p>
 	 * @param format The data format (<tt>Util.BINARYL_FORMAT_INDEX/Util.DECIMAL_FORMAT_INDEX/Util.HEXADECIMAL_FORMAT_INDEX</tt>).
 	 */
 	public void refreshValues(int format) {
-		if(model == null || cpu == null || !cpu.hasDataMemory()) return;
+		refreshValues(format, format != dataFormat);
+	}
+	
+	/**
+	 * Refreshes the values in the table.
+	 * <p>Does nothing while the table is disabled (the CPU is running in
+	 * another thread), as the new format is applied when the run ends.</p>
+	 * @param format The data format (<tt>Util.BINARYL_FORMAT_INDEX/Util.DECIMAL_FORMAT_INDEX/Util.HEXADECIMAL_FORMAT_INDEX</tt>).
+	 * @param all Whether to update all the positions (and addresses), or only the changed ones.
+	 */
+	private void refreshValues(int format, boolean all) {
+		if(model == null || cpu == null || !cpu.hasDataMemory() || !isEnabled()) return;
 		this.dataFormat = format;
 		
-		String data;
-		for(int i = 0; i < memorySize; i++) {
-			model.setValueAt(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, i * (Data.DATA_SIZE / 8)), format), i, ADDRESS_COLUMN_INDEX);
-			model.setValueAt(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, cpu.getDataMemory().getDataInIndex(i)), format), i, VALUE_COLUMN_INDEX);
+		ChangeSet changes = cpu.getDataMemory().getChanges();
+		if(all || snapshot != null) // the snapshot may differ anywhere the changes weren't cleared
+			model.fireTableRowsUpdated(0, memorySize - 1);
+		else {
+			for(int i = changes.nextChanged(0); i >= 0 && i < memorySize; i = changes.nextChanged(i + 1))
+				model.fireTableRowsUpdated(i, i);
 		}
+		snapshot = null;
+		changes.clear();
 		repaint();
 	}
 	
+	/**
+	 * Shows the values of the data memory in the given snapshot, taken while
+	 * the CPU is running in another thread.
+	 * @param snapshot The snapshot of the CPU.
+	 */
+	public void showValues(CPUSnapshot snapshot) {
+		if(model == null || cpu == null || snapshot.getMemorySize() != memorySize) return;
+
+		this.snapshot = snapshot;
+		model.fireTableRowsUpdated(0, memorySize - 1);
+	}
+	
+	@Override
+	public void setEnabled(boolean enabled) {
+		// Keep showing the current values until the first snapshot of the run
+		// arrives, as the CPU can't be read while it runs in another thread
+		if(!enabled && isEnabled() && snapshot == null && cpu != null && cpu.hasDataMemory())
+			snapshot = cpu.snapshot();
+		super.setEnabled(enabled);
+	}
+
+	/**
+	 * Selects the row of the given memory position and scrolls it into view.
+	 * @param index The index of the memory position.
+	 */
+	public void goToIndex(int index) {
+		if(index < 0 || index >= memorySize) return;
+		setRowSelectionInterval(index, index);
+		scrollRectToVisible(getCellRect(index, ADDRESS_COLUMN_INDEX, true));
+	}
+
+	/**
+	 * Selects and scrolls into view the memory position of the given address or data label.
+	 * @param target The address (decimal or hexadecimal with <tt>0x</tt>) or the name of a data label.
+	 * @param program The loaded program, with the data labels (may be <tt>null</tt>).
+	 * @return Whether the address/label is valid.
+	 */
+	public boolean goTo(String target, ProgramImage program) {
+		target = target.trim();
+		if(program != null && program.getDataLabels().containsKey(target)) {
+			goToIndex(program.getDataLabels().get(target) / (Data.DATA_SIZE / 8));
+			return true;
+		}
+
+		int address;
+		try {
+			address = Integer.decode(target);
+		} catch(NumberFormatException ex) {
+			return false;
+		}
+		int index = address / (Data.DATA_SIZE / 8);
+		if(address < 0 || index >= memorySize) return false;
+		goToIndex(index);
+		return true;
+	}
+
 	/**
 	 * Translates the table.
 	 */
@@ -133,7 +209,7 @@ public class DataMemoryTable extends JTable implements MouseListener {
 
 	@Override
 	public void mousePressed(MouseEvent e) {
-		if(e.getClickCount() == 2) {
+		if(e.getClickCount() == 2 && isEnabled()) {
 			int row = rowAtPoint(e.getPoint());
 			String res = (String)JOptionPane.showInputDialog(this.getParent(), Lang.t("edit_value", row * (Data.DATA_SIZE / 8)) + ":", AppInfo.NAME, JOptionPane.QUESTION_MESSAGE, null, null, cpu.getDataMemory().getDataInIndex(row));
 			if(res != null) {
@@ -161,6 +237,33 @@ public class DataMemoryTable extends JTable implements MouseListener {
 	public void mouseExited(MouseEvent e) {
 	}
 	
+	/**
+	 * The table model, that formats the addresses and values on demand.
+	 */
+	private class DataMemoryTableModel extends AbstractTableModel {
+		@Override
+		public int getRowCount() {
+			return memorySize;
+		}
+
+		@Override
+		public int getColumnCount() {
+			return 2;
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			if(column == ADDRESS_COLUMN_INDEX)
+				return Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, row * (Data.DATA_SIZE / 8)), dataFormat);
+			else if(snapshot != null)
+				return Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, snapshot.getDataInIndex(row)), dataFormat);
+			else if(isEnabled() && cpu != null && cpu.hasDataMemory())
+				return Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, cpu.getDataMemory().getDataInIndex(row)), dataFormat);
+			else // no data memory, or the CPU is running in another thread
+				return "";
+		}
+	}
+	
 	private class DataMemoryTableCellRenderer extends DefaultTableCellRenderer {
 		@Override
 		public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
@@ -169,7 +272,11 @@ public class DataMemoryTable extends JTable implements MouseListener {
 			
 			setHorizontalAlignment(column == 1 ? SwingConstants.RIGHT : SwingConstants.LEFT); // align 2nd column to the right
 			
-			if(cpu.hasDataMemory()) { // Highlight memory positions being accessed
+			if(!table.isEnabled()) { // the CPU is running in another thread
+				setBackground(background);
+				setToolTipText(null);
+			}
+			else if(cpu.hasDataMemory()) { // Highlight memory positions being accessed
 				int index = cpu.getDataMemory().getAddress().getValue() / (Data.DATA_SIZE / 8);
 				boolean read = cpu.getDataMemory().getMemRead().getValue() == 1;
 				boolean write = cpu.getDataMemory().getMemWrite().getValue() == 1;
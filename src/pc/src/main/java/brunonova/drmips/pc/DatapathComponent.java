@@ -111,6 +111,8 @@ public final class DatapathComponent extends JLabel implements MouseListener {
 
 	/**
 	 * Refreshes the component tooltip with the current information, and possibly other things.
+	 * <p>While the datapath is disabled (the CPU is running in another thread)
+	 * the component is shown without any information.</p>
 	 */
 	public void refresh() {
 		boolean dark = DrMIPS.prefs.getBoolean(DrMIPS.DARK_THEME_PREF, DrMIPS.DEFAULT_DARK_THEME);
@@ -118,7 +120,9 @@ public final class DatapathComponent extends JLabel implements MouseListener {
 		// Set fork gray if irrelevant
 		if(getComponent() instanceof Fork) {
 			Color color;
-			if(!((Fork)component).getInput().isRelevant() && (!datapath.isInPerformanceMode() || datapath.getCPU().isPerformanceInstructionDependent()))
+			if(!datapath.isEnabled())
+				color = component.isInControlPath() ? Util.controlPathColor : Util.wireColor;
+			else if(!((Fork)component).getInput().isRelevant() && (!datapath.isInPerformanceMode() || datapath.getCPU().isPerformanceInstructionDependent()))
 				color = Util.irrelevantColor;
 			else if(component.isInControlPath())
 				color = Util.controlPathColor;
@@ -127,7 +131,10 @@ public final class DatapathComponent extends JLabel implements MouseListener {
 			setBackground(color);
 			setBorder(BorderFactory.createLineBorder(color));
 		}
-
+		if(!datapath.isEnabled()) {
+			setToolTipText(null);
+			return;
+		}
 
 		// Refresh the tooltip
 		String tip = "<html><table width='" + TOOLTIP_WIDTH + "' cellspacing=0 cellpadding=0>";
@@ -218,7 +225,7 @@ public final class DatapathComponent extends JLabel implements MouseListener {
 
 	@Override
 	public void mousePressed(MouseEvent e) {
-		if(datapath.isInPerformanceMode() && e.getButton() == MouseEvent.BUTTON1 && e.getClickCount() == 2) {
+		if(datapath.isEnabled() && datapath.isInPerformanceMode() && e.getButton() == MouseEvent.BUTTON1 && e.getClickCount() == 2) {
 			String res = (String)JOptionPane.showInputDialog(datapath, Lang.t("latency_of_x", component.getId()), AppInfo.NAME, JOptionPane.QUESTION_MESSAGE, null, null, component.getLatency());
 			if(res != null) {
 				try {
@@ -33,6 +33,10 @@ import javax.swing.SwingUtilities;
 
 /**
  * Special JPanel that handles the display of the CPU datapath.
+ *
+ * <p>The datapath is disabled while the CPU is running in another thread. It
+ * then doesn't read the CPU: the wires are drawn in neutral colors and the
+ * data tips show the values of the snapshots passed to <tt>showValues()</tt>.</p>
  * 
  * @author Bruno Nova
  */
@@ -133,7 +137,28 @@ public class DatapathPanel extends JLayeredPane {
 		for(Wire w: wires)
 			w.refreshTips();
 		repaint();
-		parent.refreshStatistics(); // refresh the statistics dialog
+		if(isEnabled())
+			parent.refreshStatistics(); // refresh the statistics dialog
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		super.setEnabled(enabled);
+		if(components != null && !enabled)
+			refresh(); // stop showing the state of the CPU
+	}
+
+	/**
+	 * Shows the values of the wires in the given snapshot, taken while
+	 * the CPU is running in another thread.
+	 * <p>Only the data tips are updated. The critical path and the relevance
+	 * of the wires aren't part of the snapshot.</p>
+	 * @param snapshot The snapshot of the CPU.
+	 */
+	public void showValues(CPUSnapshot snapshot) {
+		if(wires == null || performanceMode) return;
+		for(Wire w: wires)
+			w.showTips(snapshot);
 	}
 	
 	/**
@@ -428,8 +453,19 @@ public class DatapathPanel extends JLayeredPane {
 		
 		/**
 		 * Refreshes the values on the in/out tips (if any).
+		 * <p>While the datapath is disabled the values are left as they are,
+		 * and the performance tips are hidden.</p>
 		 */
 		public void refreshTips() {
+			if(!isEnabled()) {
+				if(outTip != null)
+					outTip.setVisible(!performanceMode && showTips && (out.shouldShowTip() || showTipsForAllComps) && (controlPathVisible || !out.isInControlPath()));
+				if(inTip != null && out.isConnected()) {
+					Input in = out.getConnectedInput();
+					inTip.setVisible(!performanceMode && showTips && (in.shouldShowTip() || showTipsForAllComps) && (controlPathVisible || !in.isInControlPath()));
+				}
+				return;
+			}
 			if(outTip != null) {
 				String v = performanceMode ? "" + out.getComponent().getAccumulatedLatency() :
 				                             Util.formatDataAccordingToFormat(out.getData(), dataFormat);
@@ -445,6 +481,18 @@ public class DatapathPanel extends JLayeredPane {
 			}
 		}
 		
+		/**
+		 * Shows the values of the wire in the given snapshot on the in/out tips (if any).
+		 * @param snapshot The snapshot of the CPU.
+		 */
+		public void showTips(CPUSnapshot snapshot) {
+			int value = snapshot.getValue(out);
+			if(outTip != null)
+				outTip.setValue(Util.formatDataAccordingToFormat(new Data(out.getSize(), value), dataFormat), showTipsNames);
+			if(inTip != null && out.isConnected())
+				inTip.setValue(Util.formatDataAccordingToFormat(new Data(out.getConnectedInput().getSize(), value), dataFormat), showTipsNames);
+		}
+
 		/**
 		 * Removes the in/out tips (if any).
 		 */
@@ -466,7 +514,9 @@ public class DatapathPanel extends JLayeredPane {
 		 */
 		public void paint(Graphics g, boolean dark) {
 			if(!out.isInControlPath() || controlPathVisible) {
-				if(performanceMode && out.isInCriticalPath())
+				if(!isEnabled()) // the CPU is running in another thread
+					g.setColor(out.isInControlPath() ? Util.controlPathColor : Util.wireColor);
+				else if(performanceMode && out.isInCriticalPath())
 					g.setColor(Util.criticalPathColor);
 				else if(!out.isRelevant() && (!performanceMode || cpu.isPerformanceInstructionDependent()))
 					g.setColor(Util.irrelevantColor);
@@ -19,8 +19,17 @@
 package brunonova.drmips.pc;
 
 import brunonova.drmips.simulator.AppInfo;
+import brunonova.drmips.simulator.AssemblyCache;
+import brunonova.drmips.simulator.BatchRunner;
+import brunonova.drmips.simulator.ModelCache;
+import brunonova.drmips.simulator.ProgramImage;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
@@ -49,6 +58,10 @@ public class DrMIPS {
 	public static Preferences prefs = Preferences.userNodeForPackage(DrMIPS.class);
 	/** The full path to the program's jar folder, or '.' if not running from a jar (when running from the IDE, for example). */
 	public static String path = ".";
+	/** The cache of the loaded CPU files, saved in the user's home directory. */
+	public static final ModelCache modelCache = new ModelCache(new File(System.getProperty("user.home"), ".drmips" + File.separator + "cache"));
+	/** The cache of the assembled programs, saved in the user's home directory. */
+	public static final AssemblyCache assemblyCache = new AssemblyCache(AssemblyCache.DEFAULT_CAPACITY, new File(System.getProperty("user.home"), ".drmips" + File.separator + "cache"));
 	/** The CPU file loaded by default. */
 	public static final String DEFAULT_CPU = "cpu" + File.separator + "unicycle.cpu";
 	/** Relative path to the documentation directory. */
@@ -92,6 +105,7 @@ public class DrMIPS {
 	public static final String SCALE_PREF = "scale";
 	public static final String AUTO_SCALE_PREF = "auto_scale";
 	public static final String OPENGL_PREF = "use_opengl";
+	public static final String ANIMATION_RATE_PREF = "animation_rate";
 
 	// Default values of the preferences
 	public static final int DEFAULT_REGISTER_FORMAT = Util.DECIMAL_FORMAT_INDEX;
@@ -121,6 +135,7 @@ public class DrMIPS {
 	public static final double DEFAULT_SCALE = 1.0;
 	public static final boolean DEFAULT_AUTO_SCALE = false;
 	public static final boolean DEFAULT_OPENGL = false;
+	public static final String DEFAULT_ANIMATION_RATE = "10";
 
 	/** "Loading" dialog. */
 	private static DlgLoading dlgLoading = null;
@@ -128,6 +143,22 @@ public class DrMIPS {
 	private static FrmSimulator frmSim = null;
 	/** Optional filename to open. */
 	private static String filename = null;
+	/** Whether to run the given files in batch mode, without the GUI. */
+	private static boolean batch = false;
+	/** Whether to only assemble the given files to program files in batch mode. */
+	private static boolean batchAssemble = false;
+	/** The files to run in batch mode. */
+	private static List<String> batchFiles = null;
+	/** The CPU files used in batch mode. */
+	private static List<String> batchCPUs = null;
+	/** The file where the results of batch mode are written to (<tt>null</tt> for the standard output). */
+	private static String batchOutput = null;
+	/** The maximum number of cycles of each run in batch mode. */
+	private static Integer batchMaxCycles = null;
+	/** The time limit (in milliseconds) of each run in batch mode. */
+	private static Long batchTimeout = null;
+	/** The number of threads used in batch mode. */
+	private static Integer batchThreads = null;
 	/** Class logger. */
 	private static final Logger LOG = Logger.getLogger(DrMIPS.class.getName());
 
@@ -159,6 +190,43 @@ public class DrMIPS {
 		System.exit(0);
 	}
 
+	@SuppressWarnings("UseSpecificCatch")
+	private static void runBatchAndExit() {
+		BatchRunner runner = new BatchRunner();
+		runner.setModelCache(modelCache);
+		runner.setAssemblyCache(assemblyCache);
+		int failed;
+
+		try {
+			if(batchMaxCycles != null) runner.setMaxCycles(batchMaxCycles);
+			if(batchTimeout != null) runner.setTimeout(batchTimeout);
+			if(batchThreads != null) runner.setThreads(batchThreads);
+			if(batchCPUs.isEmpty())
+				batchCPUs.add(path + File.separator + DEFAULT_CPU);
+			for(String cpu: batchCPUs)
+				runner.addCPU(cpu);
+
+			List<File> programs = new ArrayList<>(batchFiles.size());
+			for(String f: batchFiles)
+				programs.add(new File(f));
+
+			Writer out = new BufferedWriter(new OutputStreamWriter(batchOutput != null ? new FileOutputStream(batchOutput) : System.out, "UTF8"));
+			try {
+				failed = batchAssemble ? runner.assemble(programs, out) : runner.run(programs, out);
+			}
+			finally {
+				out.flush();
+				if(batchOutput != null) out.close();
+			}
+		} catch(Exception ex) {
+			System.err.println("Error in batch mode: " + ex.getMessage());
+			LOG.log(Level.SEVERE, "error in batch mode", ex);
+			System.exit(2);
+			return;
+		}
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
 	private static void enableOpenGl() {
 		// Hardware acceleration using OpenGL
 		System.setProperty("sun.java2d.opengl", "True");
@@ -181,6 +249,18 @@ public class DrMIPS {
 			parser.accepts("opengl", "enable OpenGL hardware acceleration");
 			parser.accepts("no-opengl", "disable OpenGL hardware acceleration");
 			parser.accepts("reset", "reset all settings to their defaults");
+			parser.accepts("batch", "run the given code files without the GUI and print the results");
+			parser.accepts("assemble", "in batch mode, only assemble the given code files to program files (." + ProgramImage.FILE_EXTENSION + ") for the first CPU");
+			OptionSpec<String> cpuOpt = parser.accepts("cpu", "CPU file to use in batch mode (can be repeated)")
+			                                  .withRequiredArg().ofType(String.class).describedAs("file");
+			OptionSpec<String> outputOpt = parser.accepts("output", "file to write the results of batch mode to")
+			                                     .withRequiredArg().ofType(String.class).describedAs("file");
+			OptionSpec<Integer> maxCyclesOpt = parser.accepts("max-cycles", "maximum number of cycles of each run in batch mode")
+			                                         .withRequiredArg().ofType(Integer.class).describedAs("cycles");
+			OptionSpec<Long> timeoutOpt = parser.accepts("timeout", "time limit of each run in batch mode")
+			                                    .withRequiredArg().ofType(Long.class).describedAs("milliseconds");
+			OptionSpec<Integer> threadsOpt = parser.accepts("threads", "number of threads used in batch mode")
+			                                       .withRequiredArg().ofType(Integer.class).describedAs("threads");
 
 			OptionSet options = parser.parse(args);
 			List<String> otherArgs = options.valuesOf(fileArg);
@@ -199,7 +279,21 @@ public class DrMIPS {
 				useOpenGl = true;
 				prefs.putBoolean(OPENGL_PREF, useOpenGl);
 			}
-			if(!otherArgs.isEmpty()) {
+			if(options.has("batch")) {
+				batch = true;
+				batchAssemble = options.has("assemble");
+				batchFiles = otherArgs;
+				batchCPUs = new ArrayList<>(options.valuesOf(cpuOpt));
+				batchOutput = options.valueOf(outputOpt);
+				batchMaxCycles = options.valueOf(maxCyclesOpt);
+				batchTimeout = options.valueOf(timeoutOpt);
+				batchThreads = options.valueOf(threadsOpt);
+				if(batchFiles.isEmpty()) {
+					System.err.println("No code files supplied for batch mode!");
+					System.exit(1);
+				}
+			}
+			else if(!otherArgs.isEmpty()) {
 				if(otherArgs.size() == 1)
 					filename = otherArgs.get(0);
 				else {
@@ -232,6 +326,10 @@ public class DrMIPS {
 			LOG.log(Level.WARNING, "error finding the path of the program", ex);
 		}
 
+		// Run in batch mode, if requested
+		if(batch)
+			runBatchAndExit();
+
 		// Start the GUI
 		SwingUtilities.invokeLater(new StartGUIRunnable());
 	}
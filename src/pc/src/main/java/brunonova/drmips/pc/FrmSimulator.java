@@ -18,11 +18,18 @@
 
 package brunonova.drmips.pc;
 
+import brunonova.drmips.simulator.Animation;
 import brunonova.drmips.simulator.AppInfo;
+import brunonova.drmips.simulator.Breakpoints;
 import brunonova.drmips.simulator.CPU;
+import brunonova.drmips.simulator.CPUSnapshot;
+import brunonova.drmips.simulator.ProgramImage;
+import brunonova.drmips.simulator.Watchpoints;
 import brunonova.drmips.simulator.exceptions.*;
 import java.awt.BorderLayout;
 import java.awt.Desktop;
+import java.awt.Dimension;
+import java.awt.GridLayout;
 import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -37,6 +44,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
@@ -45,12 +54,17 @@ import javax.swing.ImageIcon;
 import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JInternalFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
 import javax.swing.event.DocumentEvent;
@@ -75,6 +89,14 @@ public class FrmSimulator extends javax.swing.JFrame {
 	private JFileChooser codeFileChooser = null;
 	/** The file filter of the open/save file chooser. */
 	private FileNameExtensionFilter codeFileFilter = null;
+	/** The file chooser to open/save an assembled program file. */
+	private JFileChooser programFileChooser = null;
+	/** The worker running the simulation in the background, or <tt>null</tt> if it isn't running. */
+	private SimulationWorker simulationWorker = null;
+	/** The timer of the animated run, or <tt>null</tt> if it isn't running. */
+	private Timer animationTimer = null;
+	/** The program currently loaded in the CPU (<tt>null</tt> if none). */
+	private ProgramImage program = null;
 	/** The file currently open (if <tt>null</tt> no file is open). */
 	private File openFile = null;
 	/** The window icon (in different sizes). */
@@ -271,6 +293,7 @@ public class FrmSimulator extends javax.swing.JFrame {
         jPanel4 = new javax.swing.JPanel();
         lblDataMemoryFormat = new javax.swing.JLabel();
         cmbDataMemoryFormat = new javax.swing.JComboBox();
+        cmdDataMemoryGoTo = new javax.swing.JButton();
         pnlRight = new javax.swing.JTabbedPane();
         pnlRegisters = new javax.swing.JPanel();
         jPanel1 = new javax.swing.JPanel();
@@ -288,6 +311,8 @@ public class FrmSimulator extends javax.swing.JFrame {
         mnuSave = new javax.swing.JMenuItem();
         mnuSaveAs = new javax.swing.JMenuItem();
         jSeparator2 = new javax.swing.JPopupMenu.Separator();
+        mnuOpenProgram = new javax.swing.JMenuItem();
+        mnuSaveProgram = new javax.swing.JMenuItem();
         mnuPrint = new javax.swing.JMenuItem();
         jSeparator9 = new javax.swing.JPopupMenu.Separator();
         mnuExit = new javax.swing.JMenuItem();
@@ -337,7 +362,11 @@ public class FrmSimulator extends javax.swing.JFrame {
         mnuBackStep = new javax.swing.JMenuItem();
         mnuStep = new javax.swing.JMenuItem();
         mnuRun = new javax.swing.JMenuItem();
+        mnuAnimate = new javax.swing.JMenuItem();
+        mnuPause = new javax.swing.JMenuItem();
+        mnuStop = new javax.swing.JMenuItem();
         mnuBreak = new javax.swing.JMenuItem();
+        mnuWatch = new javax.swing.JMenuItem();
         jSeparator10 = new javax.swing.JPopupMenu.Separator();
         mnuResetDataBeforeAssembling = new javax.swing.JCheckBoxMenuItem();
         mnuCPU = new javax.swing.JMenu();
@@ -779,6 +808,14 @@ public class FrmSimulator extends javax.swing.JFrame {
         });
         jPanel4.add(cmbDataMemoryFormat);
 
+        cmdDataMemoryGoTo.setText("go_to");
+        cmdDataMemoryGoTo.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                cmdDataMemoryGoToActionPerformed(evt);
+            }
+        });
+        jPanel4.add(cmdDataMemoryGoTo);
+
         pnlDataMemory.add(jPanel4, java.awt.BorderLayout.SOUTH);
 
         pnlLeft.addTab("data_memory", pnlDataMemory);
@@ -879,6 +916,25 @@ public class FrmSimulator extends javax.swing.JFrame {
         lbl.add(mnuSaveAs);
         lbl.add(jSeparator2);
 
+        mnuOpenProgram.setIcon(new javax.swing.ImageIcon(getClass().getResource("/res/icons/x16/open.png"))); // NOI18N
+        mnuOpenProgram.setText("open_program");
+        mnuOpenProgram.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuOpenProgramActionPerformed(evt);
+            }
+        });
+        lbl.add(mnuOpenProgram);
+
+        mnuSaveProgram.setIcon(new javax.swing.ImageIcon(getClass().getResource("/res/icons/x16/save_as.png"))); // NOI18N
+        mnuSaveProgram.setText("save_program");
+        mnuSaveProgram.setEnabled(false);
+        mnuSaveProgram.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuSaveProgramActionPerformed(evt);
+            }
+        });
+        lbl.add(mnuSaveProgram);
+
         mnuPrint.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_P, java.awt.event.InputEvent.CTRL_MASK));
         mnuPrint.setIcon(new javax.swing.ImageIcon(getClass().getResource("/res/icons/x16/print.png"))); // NOI18N
         mnuPrint.setText("print");
@@ -1238,7 +1294,37 @@ public class FrmSimulator extends javax.swing.JFrame {
         });
         mnuExecute.add(mnuRun);
 
-        mnuBreak.setText("add breakpoint");
+        mnuAnimate.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_F5, java.awt.event.InputEvent.CTRL_MASK));
+        mnuAnimate.setText("animate");
+        mnuAnimate.setEnabled(false);
+        mnuAnimate.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuAnimateActionPerformed(evt);
+            }
+        });
+        mnuExecute.add(mnuAnimate);
+
+        mnuPause.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_F8, 0));
+        mnuPause.setText("pause");
+        mnuPause.setEnabled(false);
+        mnuPause.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuPauseActionPerformed(evt);
+            }
+        });
+        mnuExecute.add(mnuPause);
+
+        mnuStop.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_F5, java.awt.event.InputEvent.SHIFT_MASK));
+        mnuStop.setText("stop");
+        mnuStop.setEnabled(false);
+        mnuStop.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuStopActionPerformed(evt);
+            }
+        });
+        mnuExecute.add(mnuStop);
+
+        mnuBreak.setText("breakpoints");
         mnuBreak.setEnabled(false);
         mnuBreak.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
@@ -1246,6 +1332,15 @@ public class FrmSimulator extends javax.swing.JFrame {
             }
         });
         mnuExecute.add(mnuBreak);
+
+        mnuWatch.setText("watchpoints");
+        mnuWatch.setEnabled(false);
+        mnuWatch.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuWatchActionPerformed(evt);
+            }
+        });
+        mnuExecute.add(mnuWatch);
         mnuExecute.add(jSeparator10);
 
         mnuResetDataBeforeAssembling.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_R, java.awt.event.InputEvent.CTRL_MASK));
@@ -1384,6 +1479,14 @@ public class FrmSimulator extends javax.swing.JFrame {
 		saveFile();
     }//GEN-LAST:event_mnuSaveActionPerformed
 
+    private void mnuOpenProgramActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuOpenProgramActionPerformed
+		openProgram();
+    }//GEN-LAST:event_mnuOpenProgramActionPerformed
+
+    private void mnuSaveProgramActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuSaveProgramActionPerformed
+		saveProgram();
+    }//GEN-LAST:event_mnuSaveProgramActionPerformed
+
     private void cmdBackStepActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cmdBackStepActionPerformed
 		backStep();
     }//GEN-LAST:event_cmdBackStepActionPerformed
@@ -1412,6 +1515,10 @@ public class FrmSimulator extends javax.swing.JFrame {
 		tblDataMemory.refreshValues(cmbDataMemoryFormat.getSelectedIndex());
     }//GEN-LAST:event_cmbDataMemoryFormatActionPerformed
 
+    private void cmdDataMemoryGoToActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cmdDataMemoryGoToActionPerformed
+		dataMemoryGoTo();
+    }//GEN-LAST:event_cmdDataMemoryGoToActionPerformed
+
     private void mnuEditMousePressed(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_mnuEditMousePressed
 		mnuUndo.setEnabled(txtCode.canUndo());
 		mnuRedo.setEnabled(txtCode.canRedo());
@@ -1556,7 +1663,10 @@ public class FrmSimulator extends javax.swing.JFrame {
     }//GEN-LAST:event_mnuOverlayedDataActionPerformed
 
     private void cmdRestartActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cmdRestartActionPerformed
-		restart();
+		if(isSimulationRunning())
+			stopSimulation();
+		else
+			restart();
     }//GEN-LAST:event_cmdRestartActionPerformed
 
     private void mnuRestartActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuRestartActionPerformed
@@ -1564,17 +1674,36 @@ public class FrmSimulator extends javax.swing.JFrame {
     }//GEN-LAST:event_mnuRestartActionPerformed
 
     private void cmdRunActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cmdRunActionPerformed
-		run();
+		if(isSimulationRunning())
+			pauseSimulation();
+		else
+			run();
     }//GEN-LAST:event_cmdRunActionPerformed
 
     private void mnuRunActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuRunActionPerformed
 		run();
     }//GEN-LAST:event_mnuRunActionPerformed
 
+    private void mnuPauseActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuPauseActionPerformed
+		pauseSimulation();
+    }//GEN-LAST:event_mnuPauseActionPerformed
+
+    private void mnuStopActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuStopActionPerformed
+		stopSimulation();
+    }//GEN-LAST:event_mnuStopActionPerformed
+
+    private void mnuAnimateActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuAnimateActionPerformed
+		animate();
+    }//GEN-LAST:event_mnuAnimateActionPerformed
+
     private void mnuBreakActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuBreakActionPerformed
-        addBreakpoint();
+        editBreakpoints();
     }//GEN-LAST:event_mnuBreakActionPerformed
 
+    private void mnuWatchActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuWatchActionPerformed
+		editWatchpoints();
+    }//GEN-LAST:event_mnuWatchActionPerformed
+
     private void mnuDocsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuDocsActionPerformed
 		openDocDir();
     }//GEN-LAST:event_mnuDocsActionPerformed
@@ -1895,7 +2024,7 @@ public class FrmSimulator extends javax.swing.JFrame {
 			txtCode.setText(code);
 			txtCode.discardAllEdits();
 			txtCode.setDirty(false);
-			txtCode.clearErrorIcons();
+			txtCode.checkCode();
 			setOpenedFile(file);
 			if(!mnuInternalWindows.isSelected()) tabCode.select();
 			txtCode.requestFocus();
@@ -1986,6 +2115,8 @@ public class FrmSimulator extends javax.swing.JFrame {
 		Lang.tButton(mnuOpenLastFileAtStartup, "open_last_file_at_startup");
 		Lang.tButton(mnuSave, "save");
 		Lang.tButton(mnuSaveAs, "save_as");
+		Lang.tButton(mnuOpenProgram, "open_program");
+		Lang.tButton(mnuSaveProgram, "save_program");
 		Lang.tButton(mnuPrint, "print");
 		Lang.tButton(mnuExit, "exit");
 		Lang.tButton(mnuEdit, "edit");
@@ -2018,7 +2149,11 @@ public class FrmSimulator extends javax.swing.JFrame {
 		Lang.tButton(mnuBackStep, "back_step");
 		Lang.tButton(mnuStep, "step");
 		Lang.tButton(mnuRun, "run");
-		Lang.tButton(mnuBreak, "add breakpoint");
+		Lang.tButton(mnuAnimate, "animate");
+		Lang.tButton(mnuPause, "pause");
+		Lang.tButton(mnuStop, "stop");
+		Lang.tButton(mnuBreak, "breakpoints");
+		Lang.tButton(mnuWatch, "watchpoints");
 		Lang.tButton(mnuZoomIn, "zoom_in");
 		Lang.tButton(mnuZoomOut, "zoom_out");
 		Lang.tButton(mnuZoomNormal, "normal");
@@ -2064,6 +2199,8 @@ public class FrmSimulator extends javax.swing.JFrame {
 		cpuFileChooser.setFileFilter(new FileNameExtensionFilter(Lang.t("cpu_files"), CPU.FILENAME_EXTENSION));
 		codeFileChooser = new JFileChooser();
 		codeFileChooser.setFileFilter(codeFileFilter = new FileNameExtensionFilter(Lang.t("assembly_files"), "asm", "s"));
+		programFileChooser = new JFileChooser();
+		programFileChooser.setFileFilter(new FileNameExtensionFilter(Lang.t("program_files"), ProgramImage.FILE_EXTENSION));
 		dlgFindReplace.translate();
 		dlgSupportedInstructions.translate();
 		dlgStatistics.translate();
@@ -2073,10 +2210,10 @@ public class FrmSimulator extends javax.swing.JFrame {
 		cmdSave.setToolTipText(Lang.t("save"));
 		cmdSaveAs.setToolTipText(Lang.t("save_as"));
 		cmdAssemble.setToolTipText(Lang.t("assemble"));
-		cmdRestart.setToolTipText(Lang.t("restart"));
+		cmdRestart.setToolTipText(Lang.t(isSimulationRunning() ? "stop" : "restart"));
 		cmdBackStep.setToolTipText(Lang.t("back_step"));
 		cmdStep.setToolTipText(Lang.t("step"));
-		cmdRun.setToolTipText(Lang.t("run"));
+		cmdRun.setToolTipText(Lang.t(isSimulationRunning() ? "pause" : "run"));
 		cmdStatistics.setToolTipText(Lang.t("statistics"));
 		cmdSupportedInstructions.setToolTipText(Lang.t("supported_instructions"));
 		cmdHelp.setToolTipText(Lang.t("documentation"));
@@ -2092,6 +2229,7 @@ public class FrmSimulator extends javax.swing.JFrame {
 		lblDatapathPerformance.setText(Lang.t("performance") + ":");
 		lblAssembledCodeFormat.setText(Lang.t("format") + ":");
 		lblDataMemoryFormat.setText(Lang.t("format") + ":");
+		Lang.tButton(cmdDataMemoryGoTo, "go_to");
 		lblFile.setText(Lang.t("file") + ":");
 
 		initFormatComboBox(cmbRegFormat, DrMIPS.REGISTER_FORMAT_PREF, DrMIPS.DEFAULT_REGISTER_FORMAT);
@@ -2176,6 +2314,8 @@ public class FrmSimulator extends javax.swing.JFrame {
 		}
 
 		if(exit) {
+			pauseSimulation();
+
 			// Save some preferences
 			DrMIPS.prefs.putInt(DrMIPS.REGISTER_FORMAT_PREF, cmbRegFormat.getSelectedIndex());
 			DrMIPS.prefs.putInt(DrMIPS.DATAPATH_DATA_FORMAT_PREF, cmbDatapathDataFormat.getSelectedIndex());
@@ -2214,15 +2354,19 @@ public class FrmSimulator extends javax.swing.JFrame {
 			mnuRestart.setEnabled(false);
 			mnuStep.setEnabled(false);
 			mnuRun.setEnabled(false);
+			mnuAnimate.setEnabled(false);
 			mnuBreak.setEnabled(false);
+			mnuWatch.setEnabled(false);
 			cmdBackStep.setEnabled(false);
 			cmdRestart.setEnabled(false);
 			cmdStep.setEnabled(false);
 			cmdRun.setEnabled(false);
+			mnuSaveProgram.setEnabled(false);
 		}
 		else {
 			updateStepEnabled();
 			updateStepBackEnabled();
+			mnuSaveProgram.setEnabled(program != null);
 		}
 	}
 
@@ -2233,7 +2377,9 @@ public class FrmSimulator extends javax.swing.JFrame {
 		boolean enable = !cpu.isProgramFinished();
 		mnuStep.setEnabled(enable);
 		mnuRun.setEnabled(enable);
+		mnuAnimate.setEnabled(enable);
 		mnuBreak.setEnabled(enable);
+		mnuWatch.setEnabled(enable);
 		cmdStep.setEnabled(enable);
 		cmdRun.setEnabled(enable);
 	}
@@ -2255,7 +2401,8 @@ public class FrmSimulator extends javax.swing.JFrame {
 	 */
 	private void loadCPU(String path) throws IOException, JSONException, InvalidCPUException, ArrayIndexOutOfBoundsException, InvalidInstructionSetException, NumberFormatException {
 		setSimulationControlsEnabled(false);
-		cpu = CPU.createFromJSONFile(path); // load CPU from file
+		program = null;
+		cpu = DrMIPS.modelCache.load(path); // load CPU from file (or cache)
 		cpu.setPerformanceInstructionDependent(cmbDatapathPerformance.getSelectedIndex() == Util.INSTRUCTION_PERFORMANCE_TYPE_INDEX);
 		DrMIPS.prefs.put(DrMIPS.LAST_CPU_PREF, path); // save CPU path in preferences
 		tblRegisters.setCPU(cpu, datapath, tblExec, cmbRegFormat.getSelectedIndex()); // display the CPU's register table
@@ -2344,46 +2491,351 @@ public class FrmSimulator extends javax.swing.JFrame {
 	}
 
 	/**
-	 * Executes all the instructions at once.
+	 * Executes all the instructions in a background thread, showing the
+	 * progress in the registers and data memory tables.
 	 */
 	private void run() {
-		try {
-			cpu.executeAll();
-		}
-		catch(InfiniteLoopException e) {
-			JOptionPane.showMessageDialog(this, Lang.t("possible_infinite_loop", CPU.EXECUTE_ALL_LIMIT_CYCLES), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
-		}
+		if(isSimulationRunning()) return;
+		simulationWorker = new SimulationWorker(cpu, new SimulationWorker.Listener() {
+			/** The error that aborted the run, if any. */
+			private Throwable error = null;
+
+			@Override
+			public void progress(CPUSnapshot snapshot) {
+				tblRegisters.showValues(snapshot);
+				tblDataMemory.showValues(snapshot);
+				datapath.showValues(snapshot);
+			}
+
+			@Override
+			public void failed(Throwable cause) {
+				LOG.log(Level.SEVERE, "error running the simulation", cause);
+				error = cause;
+			}
+
+			@Override
+			public void finished(CPU.RunStatus status, boolean stopped) {
+				simulationWorker = null;
+				setSimulationRunning(false);
+				if(stopped)
+					cpu.resetToFirstCycle();
+				refreshValues();
+				if(error != null)
+					JOptionPane.showMessageDialog(FrmSimulator.this, Lang.t("error_running_simulation", error), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+				else if(!stopped && status == CPU.RunStatus.CYCLE_LIMIT)
+					JOptionPane.showMessageDialog(FrmSimulator.this, Lang.t("possible_infinite_loop", CPU.EXECUTE_ALL_LIMIT_CYCLES), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+				else if(!stopped && status == CPU.RunStatus.WATCHPOINT)
+					showTriggeredWatchpoint(); // after refreshing, so the values that triggered it are shown
+			}
+		});
+		setSimulationRunning(true);
+		simulationWorker.execute();
+	}
+
+	/**
+	 * Asks for the clock rate and executes the program at that rate,
+	 * refreshing the GUI after the cycles of each frame.
+	 */
+	private void animate() {
+		if(isSimulationRunning()) return;
+		String[] rates = {"1", "2", "5", "10", "20", "50", "100", "1000", Lang.t("max_rate")};
+		String rate = (String)JOptionPane.showInputDialog(this, Lang.t("clock_rate") + ":", AppInfo.NAME, JOptionPane.QUESTION_MESSAGE, null, rates, DrMIPS.prefs.get(DrMIPS.ANIMATION_RATE_PREF, DrMIPS.DEFAULT_ANIMATION_RATE));
+		if(rate == null) return;
+		DrMIPS.prefs.put(DrMIPS.ANIMATION_RATE_PREF, rate);
+
+		final Animation animation = new Animation(cpu, rate.equals(rates[rates.length - 1]) ? 0 : Double.parseDouble(rate));
+		animationTimer = new Timer(animation.getFrameInterval(), new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if(animationTimer == null) return; // a late event after the animation stopped
+				if(animation.tick() > 0)
+					refreshValues();
+				if(animation.isStopped()) {
+					stopAnimation(false);
+					if(animation.getStatus() == CPU.RunStatus.WATCHPOINT)
+						showTriggeredWatchpoint();
+				}
+			}
+		});
+		animationTimer.setCoalesce(true); // skip frames if the GUI can't keep up
+		setSimulationRunning(true);
+		tblRegisters.setEnabled(true); // the animation runs in this thread, so the tables can show the CPU
+		tblDataMemory.setEnabled(true);
+		datapath.setEnabled(true);
+		animationTimer.start();
+	}
+
+	/**
+	 * Stops the animated run.
+	 * @param stopped Whether to revert the execution to the first cycle.
+	 */
+	private void stopAnimation(boolean stopped) {
+		animationTimer.stop();
+		animationTimer = null;
+		setSimulationRunning(false);
+		if(stopped) cpu.resetToFirstCycle();
 		refreshValues();
 	}
 
 	/**
-	 * Add a breakpoint.
+	 * Pauses the run or the animated run, if running.
 	 */
-	private void addBreakpoint() {
+	private void pauseSimulation() {
+		if(simulationWorker != null)
+			simulationWorker.pause();
+		else if(animationTimer != null)
+			stopAnimation(false);
+	}
 
-		String inputValue = JOptionPane.showInputDialog(this, "Set breakpoint address (empty for disable)", AppInfo.NAME, JOptionPane.QUESTION_MESSAGE);
-		if (inputValue == "") {
-			cpu.setBreakpointAddr(-1);
+	/**
+	 * Stops the run or the animated run, if running, and reverts the execution to the first cycle.
+	 */
+	private void stopSimulation() {
+		if(simulationWorker != null)
+			simulationWorker.stop();
+		else if(animationTimer != null)
+			stopAnimation(true);
+	}
+
+	/**
+	 * Returns whether the simulation is running in the background or animated.
+	 * @return <tt>True</tt> if the simulation is running.
+	 */
+	private boolean isSimulationRunning() {
+		return simulationWorker != null || animationTimer != null;
+	}
+
+	/**
+	 * Enables or disables the controls while the simulation runs in the background.
+	 * <p>Only the run/pause and restart/stop controls remain enabled, and
+	 * nothing that changes or reads the CPU can be used.</p>
+	 * @param running Whether the simulation is running.
+	 */
+	private void setSimulationRunning(boolean running) {
+		setSimulationControlsEnabled(!running);
+		mnuPause.setEnabled(running);
+		mnuStop.setEnabled(running);
+		cmdRun.setEnabled(true);
+		cmdRestart.setEnabled(running || cpu.hasPreviousCycle());
+		cmdRun.setToolTipText(Lang.t(running ? "pause" : "run"));
+		cmdRestart.setToolTipText(Lang.t(running ? "stop" : "restart"));
+		mnuAssemble.setEnabled(!running);
+		cmdAssemble.setEnabled(!running);
+		mnuOpenProgram.setEnabled(!running);
+		mnuLoadCPU.setEnabled(!running);
+		mnuPerformanceMode.setEnabled(!running);
+		mnuRemoveLatencies.setEnabled(!running && mnuPerformanceMode.isSelected());
+		mnuRestoreLatencies.setEnabled(!running && mnuPerformanceMode.isSelected());
+		cmbDatapathDataFormat.setEnabled(!running);
+		cmbDatapathPerformance.setEnabled(!running);
+		tblRegisters.setEnabled(!running);
+		tblDataMemory.setEnabled(!running);
+		datapath.setEnabled(!running);
+		if(!running) updateStepEnabled();
+	}
+
+	/**
+	 * Asks for an address or data label and scrolls the data memory table to it.
+	 */
+	private void dataMemoryGoTo() {
+		if(!cpu.hasDataMemory()) return;
+		List<String> labels = new ArrayList<>();
+		if(program != null) {
+			labels.addAll(program.getDataLabels().keySet());
+			Collections.sort(labels);
+		}
+		JComboBox<String> cmbTarget = new JComboBox<>(labels.toArray(new String[labels.size()]));
+		cmbTarget.setEditable(true);
+		cmbTarget.setSelectedItem("");
+
+		JPanel panel = new JPanel(new BorderLayout(5, 5));
+		panel.add(new JLabel(Lang.t("go_to_address") + ":"), BorderLayout.NORTH);
+		panel.add(cmbTarget, BorderLayout.CENTER);
+		if(JOptionPane.showConfirmDialog(this, panel, AppInfo.NAME, JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE) != JOptionPane.OK_OPTION)
 			return;
+
+		Object target = cmbTarget.getSelectedItem();
+		if(target == null || target.toString().trim().isEmpty()) return;
+		if(!tblDataMemory.goTo(target.toString(), program))
+			JOptionPane.showMessageDialog(this, Lang.t("invalid_address_or_label", target.toString().trim()), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Shows the dialog to add and remove breakpoints.
+	 */
+	private void editBreakpoints() {
+		Breakpoints breakpoints = cpu.getBreakpoints();
+		JList<Breakpoints.Breakpoint> lstBreakpoints = new JList<>();
+		JTextField txtAddress = new JTextField(10);
+		JTextField txtCondition = new JTextField(10);
+		JTextField txtHitCount = new JTextField("1", 10);
+		txtCondition.setToolTipText(Lang.t("condition_tip"));
+
+		JPanel fields = new JPanel(new GridLayout(3, 2, 5, 5));
+		fields.add(new JLabel(Lang.t("address") + ":"));
+		fields.add(txtAddress);
+		fields.add(new JLabel(Lang.t("condition") + ":"));
+		fields.add(txtCondition);
+		fields.add(new JLabel(Lang.t("hit_count") + ":"));
+		fields.add(txtHitCount);
+		JPanel panel = new JPanel(new BorderLayout(5, 5));
+		JScrollPane scroll = new JScrollPane(lstBreakpoints);
+		scroll.setPreferredSize(new Dimension(250, 150));
+		panel.add(scroll, BorderLayout.CENTER);
+		panel.add(fields, BorderLayout.SOUTH);
+
+		String[] options = {Lang.t("add_breakpoint"), Lang.t("remove_breakpoint"), Lang.t("clear_breakpoints"), Lang.t("close")};
+		while(true) {
+			lstBreakpoints.setListData(breakpoints.getAll().toArray(new Breakpoints.Breakpoint[0]));
+			int option = JOptionPane.showOptionDialog(this, panel, AppInfo.NAME, JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+			switch(option) {
+				case 0: // add
+					addBreakpoint(txtAddress.getText().trim(), txtCondition.getText().trim(), txtHitCount.getText().trim());
+					break;
+				case 1: // remove the selected breakpoints
+					for(Breakpoints.Breakpoint b: lstBreakpoints.getSelectedValuesList())
+						breakpoints.remove(b.getAddress());
+					break;
+				case 2: // clear
+					breakpoints.clear();
+					break;
+				default: // close
+					return;
+			}
 		}
+	}
 
-		boolean err = false;
+	/**
+	 * Adds a breakpoint, showing an error message if it is invalid.
+	 * @param address The address of the instruction.
+	 * @param condition The condition (empty to always stop).
+	 * @param hitCount The number of times the breakpoint must be reached before stopping.
+	 */
+	private void addBreakpoint(String address, String condition, String hitCount) {
+		int addr, hits;
+		try {
+			addr = Integer.decode(address);
+			hits = hitCount.isEmpty() ? 1 : Integer.parseInt(hitCount);
+		}
+		catch(NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this, Lang.t("invalid_value"), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		if(addr < 0 || addr % 4 != 0) {
+			JOptionPane.showMessageDialog(this, Lang.t("invalid_breakpoint_address"), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+			return;
+		}
 
 		try {
-			int addr = Integer.parseInt(inputValue);
-			if ((addr < 0) || ((addr % 4) != 0)) {
-				err = true;
+			Breakpoints.Condition cond = condition.isEmpty() ? null : Breakpoints.Condition.parse(cpu, condition);
+			cpu.getBreakpoints().add(addr, cond, Math.max(hits, 1));
+		}
+		catch(IllegalArgumentException ex) {
+			JOptionPane.showMessageDialog(this, Lang.t("invalid_condition", condition), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * Shows the dialog to add and remove watchpoints on the registers and on the data memory.
+	 */
+	private void editWatchpoints() {
+		JList<String> lstWatchpoints = new JList<>();
+		JTextField txtTarget = new JTextField(10);
+		JComboBox<String> cmbType = new JComboBox<>(new String[] {Lang.t("watch_write"), Lang.t("watch_read"), Lang.t("watch_value")});
+		final JTextField txtValue = new JTextField(10);
+		txtTarget.setToolTipText(Lang.t("watchpoint_target_tip"));
+		txtValue.setEnabled(false);
+		cmbType.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				txtValue.setEnabled(((JComboBox<?>)e.getSource()).getSelectedIndex() == Watchpoints.Type.VALUE.ordinal());
 			}
-			else {
-				cpu.setBreakpointAddr(addr);
+		});
+
+		JPanel fields = new JPanel(new GridLayout(3, 2, 5, 5));
+		fields.add(new JLabel(Lang.t("watchpoint_target") + ":"));
+		fields.add(txtTarget);
+		fields.add(new JLabel(Lang.t("watchpoint_type") + ":"));
+		fields.add(cmbType);
+		fields.add(new JLabel(Lang.t("value") + ":"));
+		fields.add(txtValue);
+		JPanel panel = new JPanel(new BorderLayout(5, 5));
+		JScrollPane scroll = new JScrollPane(lstWatchpoints);
+		scroll.setPreferredSize(new Dimension(250, 150));
+		panel.add(scroll, BorderLayout.CENTER);
+		panel.add(fields, BorderLayout.SOUTH);
+
+		String[] options = {Lang.t("add_breakpoint"), Lang.t("remove_breakpoint"), Lang.t("clear_breakpoints"), Lang.t("close")};
+		while(true) {
+			List<Watchpoints.Watchpoint> watchpoints = cpu.getAllWatchpoints();
+			String[] items = new String[watchpoints.size()];
+			for(int i = 0; i < items.length; i++)
+				items[i] = watchpointToString(watchpoints.get(i));
+			lstWatchpoints.setListData(items);
+			int option = JOptionPane.showOptionDialog(this, panel, AppInfo.NAME, JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+			switch(option) {
+				case 0: // add
+					addWatchpoint(txtTarget.getText().trim(), Watchpoints.Type.values()[cmbType.getSelectedIndex()], txtValue.getText().trim());
+					break;
+				case 1: // remove the selected watchpoints
+					for(int i: lstWatchpoints.getSelectedIndices())
+						cpu.removeWatchpoint(watchpoints.get(i));
+					break;
+				case 2: // clear
+					cpu.clearWatchpoints();
+					break;
+				default: // close
+					return;
 			}
 		}
-		catch(NumberFormatException ex) {
-			err = true;
+	}
+
+	/**
+	 * Adds a watchpoint, showing an error message if it is invalid.
+	 * @param target The register or the address of the data memory position between brackets.
+	 * @param type The type of watchpoint.
+	 * @param value The value of a <tt>VALUE</tt> watchpoint.
+	 */
+	private void addWatchpoint(String target, Watchpoints.Type type, String value) {
+		int val = 0;
+		if(type == Watchpoints.Type.VALUE) {
+			try {
+				val = Integer.decode(value);
+			}
+			catch(NumberFormatException ex) {
+				JOptionPane.showMessageDialog(this, Lang.t("invalid_value"), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+				return;
+			}
 		}
 
-		if (err)
-			JOptionPane.showMessageDialog(this, "Breakpoint address must positive and a multiple of 4", AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+		try {
+			cpu.addWatchpoint(target, type, val);
+		}
+		catch(IllegalArgumentException ex) {
+			JOptionPane.showMessageDialog(this, Lang.t("invalid_watchpoint", target), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * Returns the translated description of the given watchpoint.
+	 * @param watchpoint The watchpoint.
+	 * @return The description of the watchpoint.
+	 */
+	private String watchpointToString(Watchpoints.Watchpoint watchpoint) {
+		switch(watchpoint.getType()) {
+			case WRITE: return Lang.t("watchpoint_written", watchpoint.getTarget());
+			case READ: return Lang.t("watchpoint_read", watchpoint.getTarget());
+			default: return Lang.t("watchpoint_value", watchpoint.getTarget(), watchpoint.getValue());
+		}
+	}
+
+	/**
+	 * Tells the user which watchpoint stopped the execution.
+	 */
+	private void showTriggeredWatchpoint() {
+		Watchpoints.Watchpoint watchpoint = cpu.getTriggeredWatchpoint();
+		if(watchpoint != null)
+			JOptionPane.showMessageDialog(this, Lang.t("watchpoint_triggered", watchpointToString(watchpoint)), AppInfo.NAME, JOptionPane.INFORMATION_MESSAGE);
 	}
 
 	/**
@@ -2393,49 +2845,76 @@ public class FrmSimulator extends javax.swing.JFrame {
 		txtCode.clearErrorIcons();
 		if(mnuResetDataBeforeAssembling.isSelected()) cpu.resetData();
 		try {
-			cpu.assembleCode(txtCode.getText());
-			setSimulationControlsEnabled(true);
-			tblAssembledCode.refresh(cmbAssembledCodeFormat.getSelectedIndex());
-			refreshValues();
-			if(!mnuInternalWindows.isSelected())
-				tabAssembledCode.select();
+			loadProgram(DrMIPS.assemblyCache.assemble(cpu, txtCode.getText()));
 		}
 		catch(SyntaxErrorException ex) {
-			String message = getTranslatedSyntaxErrorMessage(ex);
+			String message = Util.getTranslatedSyntaxErrorMessage(ex);
 
 			if(!ex.hasOtherErrors())
 				txtCode.addErrorIcon(ex.getLine(), message);
-			else {
-				for(SyntaxErrorException e: ex.getOtherErrors())
-					txtCode.addErrorIcon(e.getLine(), getTranslatedSyntaxErrorMessage(e));
-			}
+			else
+				txtCode.addErrorIcons(ex.getOtherErrors());
 
 			JOptionPane.showMessageDialog(this, message, AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
 		}
 	}
 
 	/**
-	 * Returns the translated message for the given syntax error exception.
-	 * @param ex The exception.
-	 * @return Translated error message.
+	 * Loads the given assembled program into the CPU and updates the simulation controls.
+	 * @param image The assembled program.
+	 */
+	private void loadProgram(ProgramImage image) {
+		cpu.load(image);
+		program = image;
+		setSimulationControlsEnabled(true);
+		tblAssembledCode.refresh(cmbAssembledCodeFormat.getSelectedIndex());
+		refreshValues();
+		if(!mnuInternalWindows.isSelected())
+			tabAssembledCode.select();
+	}
+
+	/**
+	 * Shows the file chooser to open an assembled program file and loads it into the CPU.
+	 */
+	private void openProgram() {
+		programFileChooser.setDialogTitle(Lang.t("open_program"));
+		if(programFileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+			File file = programFileChooser.getSelectedFile();
+			try {
+				ProgramImage image = ProgramImage.load(file, cpu);
+				txtCode.clearErrorIcons();
+				if(mnuResetDataBeforeAssembling.isSelected()) cpu.resetData();
+				loadProgram(image);
+			}
+			catch(IOException ex) {
+				JOptionPane.showMessageDialog(this, Lang.t("error_opening_file", file.getName()) + "\n" + ex.getMessage(), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+				LOG.log(Level.WARNING, "error opening program file \"" + file.getName() + "\"", ex);
+			}
+		}
+	}
+
+	/**
+	 * Shows the file chooser to save the currently loaded program to a file.
 	 */
-	private String getTranslatedSyntaxErrorMessage(SyntaxErrorException ex) {
-		String message = Lang.t("line", ex.getLine()) + ": ";
-		switch(ex.getType()) {
-			case DUPLICATED_LABEL: message += Lang.t("duplicated_label", ex.getExtra()); break;
-			case INVALID_DATA_ARG: message += Lang.t("invalid_arg_data", ex.getExtra()); break;
-			case INVALID_INT_ARG: message += Lang.t("invalid_arg_int", ex.getExtra()); break;
-			case INVALID_LABEL: message += Lang.t("invalid_label", ex.getExtra()); break;
-			case INVALID_REG_ARG: message += Lang.t("invalid_arg_reg", ex.getExtra()); break;
-			case UNKNOWN_DATA_DIRECTIVE: message += Lang.t("unknown_data_directive", ex.getExtra()); break;
-			case UNKNOWN_INSTRUCTION: message += Lang.t("unknown_instruction", ex.getExtra()); break;
-			case UNKNOWN_LABEL: message += Lang.t("unknown_label", ex.getExtra()); break;
-			case WRONG_NUMBER_OF_ARGUMENTS: message += Lang.t("wrong_no_args", ex.getExtra(), ex.getExtra2()); break;
-			case INVALID_POSITIVE_INT_ARG: message += Lang.t("invalid_arg_positive_int", ex.getExtra()); break;
-			case DATA_SEGMENT_WITHOUT_DATA_MEMORY: message += Lang.t("data_segment_without_data_memory"); break;
-			default: message = ex.getMessage();
+	private void saveProgram() {
+		if(program == null) return;
+		if(openFile != null)
+			programFileChooser.setSelectedFile(ProgramImage.getProgramFileFor(openFile));
+		programFileChooser.setDialogTitle(Lang.t("save_program"));
+		if(programFileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+			File file = programFileChooser.getSelectedFile();
+			if(file.getName().lastIndexOf(".") == -1)
+				file = new File(file.getPath() + "." + ProgramImage.FILE_EXTENSION); // append extension if missing
+			if(!file.exists() || JOptionPane.showConfirmDialog(this, Lang.t("confirm_replace", file.getName()), AppInfo.NAME, JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.OK_OPTION) {
+				try {
+					program.save(file);
+				}
+				catch(IOException ex) {
+					JOptionPane.showMessageDialog(this, Lang.t("error_saving_file", file.getName()) + "\n" + ex.getMessage(), AppInfo.NAME, JOptionPane.ERROR_MESSAGE);
+					LOG.log(Level.WARNING, "error saving program file \"" + file.getName() + "\"", ex);
+				}
+			}
 		}
-		return message;
 	}
 
 	/**
@@ -2572,6 +3051,7 @@ public class FrmSimulator extends javax.swing.JFrame {
 		if(dlgStatistics != null) SwingUtilities.updateComponentTreeUI(dlgStatistics);
 		if(cpuFileChooser != null) cpuFileChooser.updateUI();
 		if(codeFileChooser != null) codeFileChooser.updateUI();
+		if(programFileChooser != null) programFileChooser.updateUI();
 		datapath.setCPU(cpu);
 		datapath.setControlPathVisible(mnuControlPath.isSelected());
 		datapath.setShowArrows(mnuArrowsInWires.isSelected());
@@ -2857,6 +3337,7 @@ public class FrmSimulator extends javax.swing.JFrame {
     private javax.swing.JComboBox cmbDatapathPerformance;
     private javax.swing.JComboBox cmbRegFormat;
     private javax.swing.JButton cmdAssemble;
+    private javax.swing.JButton cmdDataMemoryGoTo;
     private javax.swing.JButton cmdBackStep;
     private javax.swing.JButton cmdHelp;
     private javax.swing.JButton cmdNew;
@@ -2945,6 +3426,7 @@ public class FrmSimulator extends javax.swing.JFrame {
     private javax.swing.JMenuItem mnuOpen;
     private javax.swing.JCheckBoxMenuItem mnuOpenGL;
     private javax.swing.JCheckBoxMenuItem mnuOpenLastFileAtStartup;
+    private javax.swing.JMenuItem mnuOpenProgram;
     private javax.swing.JMenu mnuOpenRecent;
     private javax.swing.JMenu mnuOverlayed;
     private javax.swing.JCheckBoxMenuItem mnuOverlayedData;
@@ -2962,8 +3444,13 @@ public class FrmSimulator extends javax.swing.JFrame {
     private javax.swing.JMenuItem mnuRestoreLatencies;
     private javax.swing.JMenuItem mnuRun;
     private javax.swing.JMenuItem mnuBreak;
+    private javax.swing.JMenuItem mnuWatch;
+    private javax.swing.JMenuItem mnuPause;
+    private javax.swing.JMenuItem mnuAnimate;
+    private javax.swing.JMenuItem mnuStop;
     private javax.swing.JMenuItem mnuSave;
     private javax.swing.JMenuItem mnuSaveAs;
+    private javax.swing.JMenuItem mnuSaveProgram;
     private javax.swing.JMenuItem mnuSelectAll;
     private javax.swing.JMenuItem mnuSelectAllP;
     private javax.swing.JMenuItem mnuStatistics;
@@ -3093,7 +3580,6 @@ public class FrmSimulator extends javax.swing.JFrame {
 		}
 	}
 
-
 	/**
 	 * Contains the informations of a tab.
 	 */
@@ -20,6 +20,8 @@ package brunonova.drmips.pc;
 
 import brunonova.drmips.simulator.AppInfo;
 import brunonova.drmips.simulator.CPU;
+import brunonova.drmips.simulator.CPUSnapshot;
+import brunonova.drmips.simulator.ChangeSet;
 import brunonova.drmips.simulator.Data;
 import brunonova.drmips.simulator.components.PC;
 import java.awt.Color;
@@ -104,26 +106,55 @@ public class RegistersTable extends JTable implements MouseListener {
 		// Add special "registers" (PC,...)
 		pcIndex = numRegs;
 		model.addRow(new Object[] {"PC", ""});
-		refreshValues(format);
+		refreshValues(format, true);
 	}
 
 	/**
 	 * Refreshes the values in the table.
+	 * <p>Only the registers that changed since the last refresh are updated,
+	 * unless the format changed.</p>
 	 * @param format The data format (<tt>Util.BINARYL_FORMAT_INDEX/Util.DECIMAL_FORMAT_INDEX/Util.HEXADECIMAL_FORMAT_INDEX</tt>).
 	 */
 	public void refreshValues(int format) {
-		if(model == null || cpu == null) return;
+		refreshValues(format, format != dataFormat);
+	}
+
+	/**
+	 * Refreshes the values in the table.
+	 * <p>Does nothing while the table is disabled (the CPU is running in
+	 * another thread), as the new format is applied when the run ends.</p>
+	 * @param format The data format (<tt>Util.BINARYL_FORMAT_INDEX/Util.DECIMAL_FORMAT_INDEX/Util.HEXADECIMAL_FORMAT_INDEX</tt>).
+	 * @param all Whether to update all the registers, or only the changed ones.
+	 */
+	private void refreshValues(int format, boolean all) {
+		if(model == null || cpu == null || !isEnabled()) return;
 		this.dataFormat = format;
 
-		String data;
-		for(int i = 0; i < numRegs; i++) // registers
+		ChangeSet changes = cpu.getRegBank().getChanges();
+		if(all) changes.markAll();
+		for(int i = changes.nextChanged(0); i >= 0 && i < numRegs; i = changes.nextChanged(i + 1)) // registers
 			model.setValueAt(Util.formatDataAccordingToFormat(cpu.getRegBank().getRegister(i), format), i, VALUE_COLUMN_INDEX);
+		changes.clear();
 
 		// Special "registers"
 		model.setValueAt(Util.formatDataAccordingToFormat(cpu.getPC().getAddress(), format), pcIndex, VALUE_COLUMN_INDEX);
 		repaint();
 	}
 
+	/**
+	 * Shows the values of the registers in the given snapshot, taken while
+	 * the CPU is running in another thread.
+	 * @param snapshot The snapshot of the CPU.
+	 */
+	public void showValues(CPUSnapshot snapshot) {
+		if(model == null || cpu == null) return;
+
+		for(int i = 0; i < numRegs && i < snapshot.getNumberOfRegisters(); i++)
+			model.setValueAt(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, snapshot.getRegister(i)), dataFormat), i, VALUE_COLUMN_INDEX);
+		model.setValueAt(Util.formatDataAccordingToFormat(new Data(Data.DATA_SIZE, snapshot.getPC()), dataFormat), pcIndex, VALUE_COLUMN_INDEX);
+		repaint();
+	}
+
 	/**
 	 * Returns the name of the register in the indicated row.
 	 * @param row Row of the register in the table.
@@ -209,7 +240,7 @@ public class RegistersTable extends JTable implements MouseListener {
 
 	@Override
 	public void mousePressed(MouseEvent e) {
-		if(e.getClickCount() == 2) {
+		if(e.getClickCount() == 2 && isEnabled()) {
 			int row = rowAtPoint(e.getPoint());
 			if(isRegisterEditable(row)) {
 				String res = (String)JOptionPane.showInputDialog(this.getParent(), Lang.t("edit_value", getRegisterName(row)) + ":", AppInfo.NAME, JOptionPane.QUESTION_MESSAGE, null, null, getRegisterData(row).getValue());
@@ -247,6 +278,12 @@ public class RegistersTable extends JTable implements MouseListener {
 
 			setHorizontalAlignment(column == 1 ? SwingConstants.RIGHT : SwingConstants.LEFT); // align 2nd column to the right
 
+			if(!table.isEnabled()) { // the CPU is running in another thread
+				setBackground(background);
+				setToolTipText(null);
+				return c;
+			}
+
 			// Highlight registers being accessed
 			int reg1 = cpu.getRegBank().getReadReg1().getValue();
 			int reg2 = cpu.getRegBank().getReadReg2().getValue();
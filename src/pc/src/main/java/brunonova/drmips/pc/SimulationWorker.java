@@ -0,0 +1,147 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.pc;
+
+import brunonova.drmips.simulator.CPU;
+import brunonova.drmips.simulator.CPUSnapshot;
+import brunonova.drmips.simulator.RunOptions;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+
+/**
+ * Runs the simulation in a background thread, so that the GUI stays responsive.
+ *
+ * <p>While the worker is running it owns the CPU, which must not be accessed by
+ * the GUI until <tt>Listener.finished()</tt> is called. The GUI receives
+ * snapshots of the CPU at most <tt>REFRESH_RATE</tt> times per second, and the run can be paused or stopped
+ * at any time.</p>
+ *
+ * @author Bruno Nova
+ */
+public class SimulationWorker extends SwingWorker<CPU.RunStatus, CPUSnapshot> {
+	/** The maximum number of times per second the GUI is refreshed during a run. */
+	public static final int REFRESH_RATE = 30;
+	/** The number of cycles executed between checks of the pause/stop requests. */
+	private static final int CHECK_INTERVAL = 64;
+
+	/** The CPU. */
+	private final CPU cpu;
+	/** The listener notified in the Event Dispatch Thread. */
+	private final Listener listener;
+	/** The token used to pause or stop the run. */
+	private final RunOptions.CancellationToken token = new RunOptions.CancellationToken();
+	/** Whether the run was stopped (and not paused). */
+	private volatile boolean stopped = false;
+
+	/**
+	 * Creates the worker.
+	 * <p>Start it with <tt>execute()</tt>.</p>
+	 * @param cpu The CPU with the loaded program.
+	 * @param listener The listener notified (in the Event Dispatch Thread) of the progress and end of the run.
+	 */
+	public SimulationWorker(CPU cpu, Listener listener) {
+		this.cpu = cpu;
+		this.listener = listener;
+	}
+
+	/**
+	 * Pauses the run, leaving the CPU in the current cycle.
+	 */
+	public void pause() {
+		token.cancel();
+	}
+
+	/**
+	 * Stops the run.
+	 * <p>The listener is told that the run was stopped, so that it can revert
+	 * the execution to the first cycle.</p>
+	 */
+	public void stop() {
+		stopped = true;
+		token.cancel();
+	}
+
+	@Override
+	protected CPU.RunStatus doInBackground() {
+		RunOptions options = new RunOptions();
+		options.setMaxCycles(CPU.EXECUTE_ALL_LIMIT_CYCLES + 1);
+		options.setCheckInterval(CHECK_INTERVAL);
+		options.setCancellationToken(token);
+		options.setProgressListener(new RunOptions.ProgressListener() {
+			private long lastPublish = System.nanoTime();
+
+			@Override
+			public void progress(CPU cpu, int cycles) {
+				long now = System.nanoTime();
+				if(now - lastPublish >= 1000000000L / REFRESH_RATE) {
+					publish(cpu.snapshot());
+					lastPublish = now;
+				}
+			}
+		});
+		return cpu.run(options);
+	}
+
+	@Override
+	protected void process(List<CPUSnapshot> chunks) {
+		if(!isDone() && !token.isCancelled())
+			listener.progress(chunks.get(chunks.size() - 1)); // only the most recent values matter
+	}
+
+	@Override
+	protected void done() {
+		CPU.RunStatus status;
+		try {
+			status = get();
+		}
+		catch(InterruptedException ex) {
+			status = CPU.RunStatus.CANCELLED;
+		}
+		catch(ExecutionException ex) {
+			listener.failed(ex.getCause());
+			status = CPU.RunStatus.CANCELLED;
+		}
+		listener.finished(status, stopped);
+	}
+
+	/**
+	 * Listener of the progress and end of a run, notified in the Event Dispatch Thread.
+	 */
+	public interface Listener {
+		/**
+		 * Called periodically during the run.
+		 * @param snapshot The state of the CPU.
+		 */
+		public void progress(CPUSnapshot snapshot);
+
+		/**
+		 * Called if the run is aborted by an error, just before <tt>finished()</tt>.
+		 * @param cause The error thrown by the simulation.
+		 */
+		public void failed(Throwable cause);
+
+		/**
+		 * Called when the run ends.
+		 * @param status The reason why the run ended.
+		 * @param stopped Whether the run was stopped with <tt>stop()</tt>.
+		 */
+		public void finished(CPU.RunStatus status, boolean stopped);
+	}
+}
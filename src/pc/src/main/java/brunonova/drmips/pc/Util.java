@@ -19,6 +19,8 @@
 package brunonova.drmips.pc;
 
 import brunonova.drmips.simulator.Data;
+import brunonova.drmips.simulator.DataFormatCache;
+import brunonova.drmips.simulator.exceptions.SyntaxErrorException;
 import com.jtattoo.plaf.hifi.HiFiLookAndFeel;
 import com.jtattoo.plaf.mint.MintLookAndFeel;
 import java.awt.Color;
@@ -137,12 +139,36 @@ public class Util {
 	 */
 	public static String formatDataAccordingToFormat(Data data, int format) {
 		switch(format) {
-			case BINARY_FORMAT_INDEX: return data.toBinary();
-			case HEXADECIMAL_FORMAT_INDEX: return data.toHexadecimal();
-			default: return "" + data.getValue();
+			case BINARY_FORMAT_INDEX: return DataFormatCache.format(data, DataFormatCache.BINARY);
+			case HEXADECIMAL_FORMAT_INDEX: return DataFormatCache.format(data, DataFormatCache.HEXADECIMAL);
+			default: return DataFormatCache.format(data, DataFormatCache.DECIMAL);
 		}
 	}
 	
+	/**
+	 * Returns the translated message for the given syntax error exception.
+	 * @param ex The exception.
+	 * @return Translated error message.
+	 */
+	public static String getTranslatedSyntaxErrorMessage(SyntaxErrorException ex) {
+		String message = Lang.t("line", ex.getLine()) + ": ";
+		switch(ex.getType()) {
+			case DUPLICATED_LABEL: message += Lang.t("duplicated_label", ex.getExtra()); break;
+			case INVALID_DATA_ARG: message += Lang.t("invalid_arg_data", ex.getExtra()); break;
+			case INVALID_INT_ARG: message += Lang.t("invalid_arg_int", ex.getExtra()); break;
+			case INVALID_LABEL: message += Lang.t("invalid_label", ex.getExtra()); break;
+			case INVALID_REG_ARG: message += Lang.t("invalid_arg_reg", ex.getExtra()); break;
+			case UNKNOWN_DATA_DIRECTIVE: message += Lang.t("unknown_data_directive", ex.getExtra()); break;
+			case UNKNOWN_INSTRUCTION: message += Lang.t("unknown_instruction", ex.getExtra()); break;
+			case UNKNOWN_LABEL: message += Lang.t("unknown_label", ex.getExtra()); break;
+			case WRONG_NUMBER_OF_ARGUMENTS: message += Lang.t("wrong_no_args", ex.getExtra(), ex.getExtra2()); break;
+			case INVALID_POSITIVE_INT_ARG: message += Lang.t("invalid_arg_positive_int", ex.getExtra()); break;
+			case DATA_SEGMENT_WITHOUT_DATA_MEMORY: message += Lang.t("data_segment_without_data_memory"); break;
+			default: message = ex.getMessage();
+		}
+		return message;
+	}
+	
 	/**
 	 * Sets the program's light look and feel.
 	 */
@@ -0,0 +1,136 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+/**
+ * Schedules the cycles of an animated run, in which the program is executed at
+ * a given clock rate and the GUI is refreshed as it goes.
+ *
+ * <p>The GUI calls <tt>tick()</tt> from a timer, every
+ * <tt>getFrameInterval()</tt> milliseconds, and refreshes itself if it returns
+ * a positive number of executed cycles. The number of cycles executed in each
+ * tick depends on the time elapsed since the start, and not on the number of
+ * ticks, so the simulation keeps the chosen rate even if the GUI takes longer
+ * than a frame to refresh (several cycles are then shown at once). The
+ * animation stops at the end of the program and at breakpoints and
+ * watchpoints.</p>
+ *
+ * @author Bruno Nova
+ */
+public class Animation {
+	/** The minimum clock rate, in Hz. */
+	public static final double MIN_RATE = 1;
+	/** The shortest interval between ticks, in milliseconds (about 60 frames per second). */
+	public static final int MIN_FRAME_INTERVAL = 16;
+	/** The maximum number of cycles executed in a single tick. */
+	public static final int MAX_CYCLES_PER_TICK = 1000;
+
+	/** The CPU. */
+	private final CPU cpu;
+	/** The clock rate, in Hz, or 0 to execute one cycle per tick. */
+	private final double rate;
+	/** The <tt>System.nanoTime()</tt> from which the due cycles are counted. */
+	private long start;
+	/** The number of cycles executed since <tt>start</tt>. */
+	private long executed = 0;
+	/** The reason why the animation stopped, or <tt>null</tt> if it is still running. */
+	private CPU.RunStatus status = null;
+
+	/**
+	 * Creates the animation.
+	 * @param cpu The CPU with the loaded program.
+	 * @param rate The clock rate, in Hz, or 0 to execute one cycle per tick (as fast as the GUI refreshes).
+	 * @throws IllegalArgumentException If the rate is positive and less than <tt>MIN_RATE</tt>, or negative.
+	 */
+	public Animation(CPU cpu, double rate) {
+		if(rate != 0 && rate < MIN_RATE)
+			throw new IllegalArgumentException("The clock rate must be at least " + MIN_RATE + " Hz!");
+		this.cpu = cpu;
+		this.rate = rate;
+		start = System.nanoTime() - (rate > 0 ? (long)(1000000000.0 / rate) : 0); // the first cycle is due right away
+	}
+
+	/**
+	 * Returns the clock rate.
+	 * @return The clock rate, in Hz, or 0 if one cycle is executed per tick.
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * Returns the interval at which <tt>tick()</tt> should be called.
+	 * @return The interval between ticks, in milliseconds.
+	 */
+	public int getFrameInterval() {
+		if(rate == 0) return MIN_FRAME_INTERVAL;
+		return Math.max(MIN_FRAME_INTERVAL, (int)Math.round(1000.0 / rate));
+	}
+
+	/**
+	 * Executes the cycles that are due.
+	 * @return The number of cycles executed (0 if none was due), or -1 if the animation has stopped.
+	 */
+	public int tick() {
+		if(status != null) return -1;
+		if(cpu.isProgramFinished()) {
+			status = CPU.RunStatus.FINISHED;
+			return -1;
+		}
+
+		long due;
+		if(rate == 0)
+			due = 1;
+		else {
+			due = (long)((System.nanoTime() - start) * rate / 1000000000.0) - executed;
+			if(due <= 0) return 0;
+			if(due > MAX_CYCLES_PER_TICK) { // too far behind, don't try to catch up
+				due = MAX_CYCLES_PER_TICK;
+				start = System.nanoTime();
+				executed = -due;
+			}
+		}
+
+		int before = cpu.getNumberOfExecutedCycles();
+		RunOptions options = new RunOptions();
+		options.setMaxCycles((int)due);
+		CPU.RunStatus result = cpu.run(options);
+		int cycles = cpu.getNumberOfExecutedCycles() - before;
+		executed += cycles;
+		if(result != CPU.RunStatus.CYCLE_LIMIT)
+			status = result;
+		return cycles;
+	}
+
+	/**
+	 * Returns whether the animation has stopped (at the end of the program or at a breakpoint or watchpoint).
+	 * @return <tt>True</tt> if the animation has stopped.
+	 */
+	public boolean isStopped() {
+		return status != null;
+	}
+
+	/**
+	 * Returns the reason why the animation stopped.
+	 * @return The reason why the animation stopped, or <tt>null</tt> if it is still running.
+	 */
+	public CPU.RunStatus getStatus() {
+		return status;
+	}
+}
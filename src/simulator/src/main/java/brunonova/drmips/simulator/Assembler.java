@@ -19,13 +19,26 @@
 package brunonova.drmips.simulator;
 
 import brunonova.drmips.simulator.exceptions.SyntaxErrorException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The class that assembles code into MIPS assembled instructions and loads data values from the <tt>.data</tt> section.
@@ -37,15 +50,28 @@ public class Assembler {
 	public static final char COMMENT_CHAR = '#';
 	/** The regular expression to validate labels. */
 	public static final String LABEL_REGEX = "^[a-zA-z][a-zA-Z0-9_]*$";
+	/** The default minimum number of instructions for them to be encoded in parallel. */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 20000;
+	/** The number of threads used to encode the instructions in parallel (including the calling thread). */
+	private static final int ENCODER_THREADS = Runtime.getRuntime().availableProcessors();
 	/** The possible segment types. */
 	private enum Segment {TEXT, DATA}
 	
+	/** The threads that encode the instructions in parallel, shared by all assemblers (created when needed). */
+	private static ExecutorService encoderPool = null;
+	
 	/** The CPU this assembler is assembling to. */
 	private final CPU cpu;
 	/** The text segment labels in the code and their lines. */
 	private Map<String, Integer> textLabels;
 	/** The data segment labels in the code and their addresses. */
 	private Map<String, Integer> dataLabels;
+	/** The pseudo-instructions expanded in the last assembly, by code. */
+	private Map<String, Expansion> expansionCache = new HashMap<>();
+	/** The instructions encoded in the last assembly, by code. */
+	private Map<String, Encoding> encodingCache = new HashMap<>();
+	/** The minimum number of instructions for them to be encoded in parallel. */
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
 	
 	/**
 	 * Creates the assembler.
@@ -55,67 +81,187 @@ public class Assembler {
 		this.cpu = cpu;
 	}
 	
+	/**
+	 * Returns the minimum number of instructions for them to be encoded in parallel.
+	 * @return The minimum number of instructions.
+	 */
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+	
+	/**
+	 * Sets the minimum number of instructions for them to be encoded in parallel.
+	 * <p>After the labels are found, the instructions of large programs are
+	 * encoded by several threads, in blocks of consecutive instructions. The
+	 * result and the errors found are the same as when encoded by a single
+	 * thread.</p>
+	 * @param parallelThreshold The minimum number of instructions (<tt>Integer.MAX_VALUE</tt> to never encode in parallel).
+	 * @throws IllegalArgumentException If the threshold isn't positive.
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		if(parallelThreshold <= 0) throw new IllegalArgumentException("The threshold must be positive!");
+		this.parallelThreshold = parallelThreshold;
+	}
+	
 	/**
 	 * Assembles the given code and updates the CPU's instruction and data memory-
 	 * @param code The code to assemble.
 	 * @throws SyntaxErrorException If the code has a syntax error.
 	 */
 	protected void assembleCode(String code) throws SyntaxErrorException {
-		String[] codeLines = code.split("\n");
+		cpu.load(assembleImage(code));
+	}
+	
+	/**
+	 * Assembles the given code into a program image, without changing the CPU.
+	 * <p>The image can then be loaded with <tt>CPU.load()</tt>.</p>
+	 * @param code The code to assemble.
+	 * @return The assembled program.
+	 * @throws SyntaxErrorException If the code has a syntax error (the other errors are in <tt>getOtherErrors()</tt>).
+	 */
+	public ProgramImage assembleImage(String code) throws SyntaxErrorException {
+		try {
+			return assembleImage(new AssemblerLexer.StatementReader(code));
+		}
+		catch(IOException ex) { // not thrown when reading from a string
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	/**
+	 * Assembles the code read from the given stream into a program image, without changing the CPU.
+	 * <p>The code is read and processed one line at a time, so it is never
+	 * kept in memory as a whole. Useful for very large programs.</p>
+	 * @param reader The stream with the code (not closed).
+	 * @return The assembled program.
+	 * @throws IOException If an I/O error occurs reading the stream.
+	 * @throws SyntaxErrorException If the code has a syntax error (the other errors are in <tt>getOtherErrors()</tt>).
+	 */
+	public ProgramImage assembleImage(Reader reader) throws IOException, SyntaxErrorException {
+		return assembleImage(new AssemblerLexer.StatementReader(reader));
+	}
+	
+	/**
+	 * Assembles the code in the given file into a program image, without changing the CPU.
+	 * <p>The file is read one line at a time (see <tt>assembleImage(Reader)</tt>).</p>
+	 * @param file The file with the code (in UTF-8).
+	 * @return The assembled program.
+	 * @throws IOException If the file doesn't exist or an I/O error occurs.
+	 * @throws SyntaxErrorException If the code has a syntax error (the other errors are in <tt>getOtherErrors()</tt>).
+	 */
+	public ProgramImage assembleImage(File file) throws IOException, SyntaxErrorException {
+		try(Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8"))) {
+			return assembleImage(reader);
+		}
+	}
+	
+	/**
+	 * Assembles the statements of the given reader into a program image.
+	 * @param reader The reader of the statements.
+	 * @return The assembled program.
+	 * @throws IOException If an I/O error occurs reading the code.
+	 * @throws SyntaxErrorException If the code has a syntax error (the other errors are in <tt>getOtherErrors()</tt>).
+	 */
+	private ProgramImage assembleImage(AssemblerLexer.StatementReader reader) throws IOException, SyntaxErrorException {
+		List<SyntaxErrorException> errors = new LinkedList<>();
+		ProgramImage image = assemble(reader, errors);
+		
+		if(!errors.isEmpty()) {
+			SyntaxErrorException first = errors.get(0);
+			first.setOtherErrors(errors);
+			throw first;
+		}
+		return image;
+	}
+	
+	/**
+	 * Checks the given code for syntax errors, without changing the CPU.
+	 * <p>The code is assembled like in <tt>assembleImage()</tt>. As the
+	 * results of the lines that didn't change since the last call are reused,
+	 * this is fast enough to be called while the code is being edited.</p>
+	 * @param code The code to check.
+	 * @return The syntax errors found, in the order of the code (empty if there are none).
+	 */
+	public List<SyntaxErrorException> checkCode(String code) {
+		List<SyntaxErrorException> errors = new LinkedList<>();
+		try {
+			assemble(new AssemblerLexer.StatementReader(code), errors);
+		}
+		catch(IOException ex) { // not thrown when reading from a string
+			throw new IllegalStateException(ex);
+		}
+		return errors;
+	}
+	
+	/**
+	 * Assembles the given code.
+	 * <p>The pseudo-instructions expanded and the instructions encoded in the
+	 * previous call are reused if their code (and the labels they reference)
+	 * didn't change, so only the edited lines are processed again.</p>
+	 * @param reader The reader of the statements of the code.
+	 * @param errors The list where the syntax errors found are added.
+	 * @return The assembled program (incomplete if there are errors).
+	 * @throws IOException If an I/O error occurs reading the code.
+	 */
+	private ProgramImage assemble(AssemblerLexer.StatementReader reader, List<SyntaxErrorException> errors) throws IOException {
 		List<CodeLine> lines = new ArrayList<>();
 		List<AssembledInstruction> instructions = new ArrayList<>();
-		int index, lineNumber, currentDataAddress = 0;
-		String codeLine, label, mnemonic, type;
-		String[] split, args, values;
-		List<String> interpretedLines;
-		textLabels = new TreeMap<>();
-		dataLabels = new TreeMap<>();
+		int[] dataAddresses = new int[16], dataValues = new int[16];
+		int index, lineNumber, dataWords = 0, currentDataAddress = 0;
+		String label, mnemonic, type;
+		AssemblerLexer.Token[] values;
+		List<AssemblerLexer.Statement> interpretedLines;
+		AssemblerLexer.Statement statement, interpreted;
+		textLabels = new HashMap<>();
+		dataLabels = new HashMap<>();
 		Segment currentSegment = Segment.TEXT;
-		List<SyntaxErrorException> errors = new LinkedList<>();
+		Map<String, Expansion> expansions = new HashMap<>();
+		Map<String, Encoding> encodings = new HashMap<>();
 		
 		// Parse each line
-		for(int i = 0; i < codeLines.length; i++) {
+		while((statement = reader.next()) != null) {
 			try {
 				index = lines.size();
-				lineNumber = i + 1;
-				codeLine = codeLines[i].split("" + COMMENT_CHAR, 2)[0].trim(); // remove comment, if any
+				lineNumber = statement.line;
 
-				if(codeLine.equals(".text")) // change to text segment
+				if(statement.text.equals(".text")) // change to text segment
 					currentSegment = Segment.TEXT;
-				else if(codeLine.equals(".data")) { // change to data segment
+				else if(statement.text.equals(".data")) { // change to data segment
 					if(!cpu.hasDataMemory())
 						throw new SyntaxErrorException(SyntaxErrorException.Type.DATA_SEGMENT_WITHOUT_DATA_MEMORY, lineNumber);
 					currentSegment = Segment.DATA;
 				}
 				else if(currentSegment == Segment.DATA) { // line in data segment (load data)
-					if(codeLine.contains(":")) { // check if the line has a label
-						split = codeLine.split(":", 2);
-						label = split[0].trim();
-						codeLine = split[1].trim();
-						if(!label.matches(LABEL_REGEX))
+					if(statement.label != null) { // check if the line has a label
+						label = statement.label.text;
+						if(!AssemblerLexer.isValidLabel(label))
 							throw new SyntaxErrorException(SyntaxErrorException.Type.INVALID_LABEL, lineNumber, label);
 						if(textLabels.containsKey(label) || dataLabels.containsKey(label))
 							throw new SyntaxErrorException(SyntaxErrorException.Type.DUPLICATED_LABEL, lineNumber, label);
 						dataLabels.put(label, currentDataAddress);
 					}
 
-					if(!codeLine.isEmpty()) { // load values, if any
-						split = codeLine.split("\\s+", 2); // split data type (directive) and values (\\s+ matches whitespace characters)
-						type = split[0].trim().toLowerCase();
-						values = (split.length == 2) ? split[1].trim().split(",") : new String[0]; // split values, if any
+					if(statement.mnemonic != null) { // load values, if any
+						type = statement.mnemonic.text.toLowerCase();
+						values = statement.args;
 						switch (type) {
 							case ".word":
-								for(String value: values) {
+								for(AssemblerLexer.Token value: values) {
 									currentDataAddress = alignAddressToWord(currentDataAddress);
-									cpu.getDataMemory().setData(currentDataAddress, parseIntArg(value.trim(), lineNumber));
+									if(dataWords == dataAddresses.length) {
+										dataAddresses = Arrays.copyOf(dataAddresses, dataWords * 2);
+										dataValues = Arrays.copyOf(dataValues, dataWords * 2);
+									}
+									dataValues[dataWords] = parseIntArg(value.text, lineNumber, null);
+									dataAddresses[dataWords++] = currentDataAddress;
 									currentDataAddress += 4;
 								}	break;
 							case ".space":
 								if(values.length != 1)
 									throw new SyntaxErrorException(SyntaxErrorException.Type.WRONG_NUMBER_OF_ARGUMENTS, lineNumber, "" + 1, "" + values.length);
 								else {
-									int arg = parseIntArg(values[0].trim(), lineNumber);
-									if(arg < 0) throw new SyntaxErrorException(SyntaxErrorException.Type.INVALID_POSITIVE_INT_ARG, lineNumber, values[0].trim());
+									int arg = parseIntArg(values[0].text, lineNumber, null);
+									if(arg < 0) throw new SyntaxErrorException(SyntaxErrorException.Type.INVALID_POSITIVE_INT_ARG, lineNumber, values[0].text);
 									currentDataAddress += arg;
 								}	break;
 							default:
@@ -124,32 +270,30 @@ public class Assembler {
 					}
 				}
 				else { // line in text segment (replace pseudo-instructions and find labels' line numbers)
-					if(codeLine.contains(":")) { // check if the line has a label
-						split = codeLine.split(":", 2);
-						label = split[0].trim();
-						codeLine = split[1].trim();
-						if(!label.matches(LABEL_REGEX))
+					if(statement.label != null) { // check if the line has a label
+						label = statement.label.text;
+						if(!AssemblerLexer.isValidLabel(label))
 							throw new SyntaxErrorException(SyntaxErrorException.Type.INVALID_LABEL, lineNumber, label);
 						if(textLabels.containsKey(label) || dataLabels.containsKey(label))
 							throw new SyntaxErrorException(SyntaxErrorException.Type.DUPLICATED_LABEL, lineNumber, label);
 						textLabels.put(label, index);
 					}
 
-					if(!codeLine.isEmpty()) {
-						split = codeLine.split("\\s+", 2); // split mnemonic and args
-						mnemonic = split[0].trim();
-						args = (split.length == 2) ? split[1].trim().split(",") : new String[0]; // split args, if any
+					if(statement.mnemonic != null) {
+						mnemonic = statement.mnemonic.text;
 
-						if(cpu.getInstructionSet().hasPseudoInstruction(mnemonic)) { // pseudo-instruction
-							interpretedLines = interpretPseudoInstruction(mnemonic, args, lineNumber);
-							if(!interpretedLines.isEmpty()) {
-								interpretedLines.set(0, interpretedLines.get(0) + "  " + COMMENT_CHAR + " " + codeLine);
-								for(String line: interpretedLines)
-									lines.add(new CodeLine(line, lineNumber));
+						PseudoInstruction pseudo = cpu.getInstructionSet().getPseudoInstruction(mnemonic);
+						if(pseudo != null) { // pseudo-instruction
+							interpretedLines = expandPseudoInstruction(statement, pseudo, expansions);
+							for(int i = 0; i < interpretedLines.size(); i++) {
+								interpreted = interpretedLines.get(i);
+								lines.add(new CodeLine(interpreted, lineNumber, i == 0
+									? interpreted.text + "  " + COMMENT_CHAR + " " + statement.code
+									: interpreted.text));
 							}
 						}
 						else
-							lines.add(new CodeLine(codeLine, lineNumber));
+							lines.add(new CodeLine(statement, lineNumber, statement.code));
 					}
 				}
 			}
@@ -159,28 +303,203 @@ public class Assembler {
 		}
 		
 		// Assemble the instructions
-		for(int i = 0; i < lines.size(); i++) {
+		AssembledInstruction[] encoded = new AssembledInstruction[lines.size()];
+		if(lines.size() >= parallelThreshold && ENCODER_THREADS > 1)
+			encodeInParallel(lines, encoded, encodings, errors);
+		else
+			encodeInstructions(lines, 0, lines.size(), encoded, encodings, errors);
+		for(AssembledInstruction instruction: encoded) {
+			if(instruction != null)
+				instructions.add(instruction);
+		}
+		
+		// Add the labels to the instructions (in alphabetical order)
+		Map<String, Integer> sortedTextLabels = new TreeMap<>(textLabels);
+		for(Map.Entry<String, Integer> e: sortedTextLabels.entrySet()) {
+			if(e.getValue() >= 0 && e.getValue() < instructions.size())
+				instructions.get(e.getValue()).addLabel(e.getKey());
+		}
+		
+		// Keep only the results used by this code for the next call
+		expansionCache = expansions;
+		encodingCache = encodings;
+		return new ProgramImage(instructions, Arrays.copyOf(dataAddresses, dataWords), Arrays.copyOf(dataValues, dataWords), sortedTextLabels, new TreeMap<>(dataLabels));
+	}
+	
+	/**
+	 * Returns the instructions that result from the pseudo-instruction in the given statement.
+	 * <p>The expansion from the previous assembly is reused if the same
+	 * pseudo-instruction was used.</p>
+	 * @param statement The statement with the pseudo-instruction.
+	 * @param pseudo The pseudo-instruction.
+	 * @param expansions The expansions made in the current assembly, where the result is added.
+	 * @return The resulting instructions (empty lines removed).
+	 * @throws SyntaxErrorException If the pseudo-instruction has the wrong number of arguments.
+	 */
+	private List<AssemblerLexer.Statement> expandPseudoInstruction(AssemblerLexer.Statement statement, PseudoInstruction pseudo, Map<String, Expansion> expansions) throws SyntaxErrorException {
+		String key = statement.code;
+		Expansion expansion = expansions.get(key);
+		if(expansion == null && (expansion = expansionCache.get(key)) == null) {
+			expansion = new Expansion();
 			try {
-				instructions.add(assembleInstruction(lines.get(i).line, i, lines.get(i).number));
+				expansion.statements.addAll(pseudo.expand(statement.args, statement.line));
+			}
+			catch(SyntaxErrorException ex) {
+				expansion.error = ex;
+			}
+		}
+		expansions.put(key, expansion);
+		
+		if(expansion.error != null)
+			throw copyError(expansion.error, statement.line);
+		return expansion.statements;
+	}
+	
+	/**
+	 * Encodes the instructions in the given range.
+	 * @param lines The lines with the instructions.
+	 * @param from The index of the first instruction.
+	 * @param to The index after the last instruction.
+	 * @param encoded The array where the assembled instructions are put (at their indexes).
+	 * @param encodings The results of the current assembly, where the results are added.
+	 * @param errors The list where the syntax errors found are added.
+	 */
+	private void encodeInstructions(List<CodeLine> lines, int from, int to, AssembledInstruction[] encoded, Map<String, Encoding> encodings, List<SyntaxErrorException> errors) {
+		for(int i = from; i < to; i++) {
+			try {
+				encoded[i] = encodeInstruction(lines.get(i), i, encodings);
 			}
 			catch(SyntaxErrorException ex) {
 				errors.add(ex);
 			}
 		}
+	}
+	
+	/**
+	 * Encodes the instructions in parallel, in blocks of consecutive instructions.
+	 * <p>Each instruction only depends on the labels, which were already
+	 * found, so the blocks are independent. The calling thread encodes the
+	 * last block. The results and the errors of the blocks are then merged
+	 * in order.</p>
+	 * @param lines The lines with the instructions.
+	 * @param encoded The array where the assembled instructions are put (at their indexes).
+	 * @param encodings The results of the current assembly, where the results are added.
+	 * @param errors The list where the syntax errors found are added.
+	 */
+	private void encodeInParallel(final List<CodeLine> lines, final AssembledInstruction[] encoded, Map<String, Encoding> encodings, List<SyntaxErrorException> errors) {
+		int blocks = ENCODER_THREADS, size = lines.size();
+		List<Map<String, Encoding>> blockEncodings = new ArrayList<>(blocks);
+		List<List<SyntaxErrorException>> blockErrors = new ArrayList<>(blocks);
+		List<Future<?>> futures = new ArrayList<>(blocks - 1);
+		ExecutorService pool = getEncoderPool();
 		
-		// Add the labels to the instructions
-		for(Map.Entry<String, Integer> e: textLabels.entrySet()) {
-			if(e.getValue() >= 0 && e.getValue() < instructions.size())
-				instructions.get(e.getValue()).addLabel(e.getKey());
+		for(int b = 0; b < blocks; b++) {
+			final int from = (int)((long)size * b / blocks), to = (int)((long)size * (b + 1) / blocks);
+			final Map<String, Encoding> e = new HashMap<>();
+			final List<SyntaxErrorException> err = new ArrayList<>();
+			blockEncodings.add(e);
+			blockErrors.add(err);
+			if(b < blocks - 1) {
+				futures.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						encodeInstructions(lines, from, to, encoded, e, err);
+					}
+				}));
+			}
+			else
+				encodeInstructions(lines, from, to, encoded, e, err);
 		}
 		
-		if(!errors.isEmpty()) {
-			SyntaxErrorException first = errors.get(0);
-			first.setOtherErrors(errors);
-			throw first;
+		// Wait for the other blocks
+		boolean interrupted = false;
+		for(Future<?> future: futures) {
+			while(true) {
+				try {
+					future.get();
+					break;
+				}
+				catch(InterruptedException ex) { // the blocks must be finished anyway
+					interrupted = true;
+				}
+				catch(ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+					if(cause instanceof Error) throw (Error)cause;
+					throw new IllegalStateException(cause);
+				}
+			}
 		}
+		if(interrupted) Thread.currentThread().interrupt();
 		
-		cpu.loadProgram(instructions);
+		// Merge the results in order
+		for(int b = 0; b < blocks; b++) {
+			encodings.putAll(blockEncodings.get(b));
+			errors.addAll(blockErrors.get(b));
+		}
+	}
+	
+	/**
+	 * Returns the threads that encode the instructions in parallel, creating them if needed.
+	 * @return The thread pool.
+	 */
+	private static synchronized ExecutorService getEncoderPool() {
+		if(encoderPool == null) {
+			encoderPool = Executors.newFixedThreadPool(ENCODER_THREADS - 1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Assembler encoder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return encoderPool;
+	}
+	
+	/**
+	 * Assembles an instruction into an assembled instruction, reusing the
+	 * result from the previous assembly if possible.
+	 * <p>A previous result is reused if the instruction has the same code
+	 * and the labels referenced by it still have the same values (and the
+	 * instruction has the same index, if it references a label by offset).</p>
+	 * @param line The line with the instruction.
+	 * @param index The index of the instruction.
+	 * @param encodings The results of the current assembly, where the result is added.
+	 * @return The assembled instruction.
+	 * @throws SyntaxErrorException If the code has a syntax error.
+	 */
+	private AssembledInstruction encodeInstruction(CodeLine line, int index, Map<String, Encoding> encodings) throws SyntaxErrorException {
+		String key = line.statement.text;
+		Encoding encoding = encodings.get(key);
+		if(encoding == null || !encoding.isValid(index))
+			encoding = encodingCache.get(key);
+		if(encoding == null || !encoding.isValid(index)) {
+			encoding = new Encoding(index);
+			try {
+				AssembledInstruction instruction = assembleInstruction(line, index, encoding);
+				encoding.instruction = instruction.getInstruction();
+				encoding.value = instruction.getData().getValue();
+			}
+			catch(SyntaxErrorException ex) {
+				encoding.error = ex;
+			}
+		}
+		encodings.put(key, encoding);
+		
+		if(encoding.error != null)
+			throw copyError(encoding.error, line.number);
+		return new AssembledInstruction(encoding.instruction, new Data(Data.DATA_SIZE, encoding.value), line.line, line.number);
+	}
+	
+	/**
+	 * Returns a copy of the given syntax error on another line.
+	 * @param error The syntax error.
+	 * @param lineNumber The number of the line of the copy.
+	 * @return The copy of the error.
+	 */
+	private SyntaxErrorException copyError(SyntaxErrorException error, int lineNumber) {
+		return new SyntaxErrorException(error.getType(), lineNumber, error.getExtra(), error.getExtra2());
 	}
 	
 	/**
@@ -190,18 +509,21 @@ public class Assembler {
 	 * @return The resulting lines of code, or an empty list if something is wrong.
 	 */
 	public List<String> interpretPseudoInstruction(String line) {
-		String[] split;
+		AssemblerLexer.Statement statement = AssemblerLexer.tokenizeLine(line, 1);
+		if(statement == null || statement.mnemonic == null)
+			return new LinkedList<>();
 		
-		line = line.split("" + COMMENT_CHAR, 2)[0].trim(); // remove comment, if any
-		if(line.contains(":")) line = line.split(":")[1].trim(); // remove label, if any
-		split = line.split("\\s+", 2); // split mnemonic and args
-		String mnemonic = split[0].trim();
-		String[] args = (split.length == 2) ? split[1].trim().split(",") : new String[0]; // split args, if any
+		PseudoInstruction pseudo = cpu.getInstructionSet().getPseudoInstruction(statement.mnemonic.text);
+		if(pseudo == null)
+			return new LinkedList<>();
 		
+		List<String> lines = new LinkedList<>();
 		try {
-			return interpretPseudoInstruction(mnemonic, args, 1);
+			for(AssemblerLexer.Statement s: pseudo.expand(statement.args, 1))
+				lines.add(s.text);
+			return lines;
 		}
-		catch(Exception e) {
+		catch(SyntaxErrorException e) {
 			return new LinkedList<>();
 		}
 	}
@@ -213,15 +535,12 @@ public class Assembler {
 	 */
 	public Set<String> getCodeLabels(String code) {
 		Set<String> labels = new TreeSet<>();
-		String[] lines = code.split("\n");
 		String label;
-		int i;
 		
-		for(String line: lines) {
-			i = line.indexOf(':');
-			if(i != -1 && line.lastIndexOf(COMMENT_CHAR, i - 1) == -1) {
-				label = line.substring(0, i).trim();
-				if(label.matches(LABEL_REGEX) && !cpu.getInstructionSet().hasInstructionOrPseudoInstruction(label))
+		for(AssemblerLexer.Statement statement: AssemblerLexer.tokenize(code)) {
+			if(statement.label != null) {
+				label = statement.label.text;
+				if(AssemblerLexer.isValidLabel(label) && !cpu.getInstructionSet().hasInstructionOrPseudoInstruction(label))
 					labels.add(label);
 			}
 		}
@@ -229,58 +548,23 @@ public class Assembler {
 		return labels;
 	}
 	
-	/**
-	 * Interprets a pseudo-instruction into instructions.
-	 * @param mnemonic The mnemonic of the pseudo-instruction.
-	 * @param args The arguments of the pseudo-instruction.
-	 * @param lineNumber The number of the line of code.
-	 * @return The replacing instructions.
-	 */
-	private List<String> interpretPseudoInstruction(String mnemonic, String[] args, int lineNumber) throws SyntaxErrorException {
-		List<String> instructions = new ArrayList<>();
-		PseudoInstruction pseudo = cpu.getInstructionSet().getPseudoInstruction(mnemonic);
-		String[] split;
-		String m;
-		
-		if(pseudo.getNumberOfArguments() != args.length) 
-			throw new SyntaxErrorException(SyntaxErrorException.Type.WRONG_NUMBER_OF_ARGUMENTS, lineNumber, "" + pseudo.getNumberOfArguments(), "" + args.length);
-		
-		for(String instruction: pseudo.getInstructions()) { // assemble pseudo-instruction instructions
-			for(int i = 0; i < args.length; i++)
-				instruction = instruction.replace(InstructionSet.ARGUMENT_CHAR + "" + (i + 1), args[i].trim()).trim();
-			
-			// Check if the interpreted instruction is another pseudo-instruction
-			split = instruction.split("\\s+", 2); // split mnemonic and args
-			m = split[0].trim();
-			if(cpu.getInstructionSet().hasPseudoInstruction(m)) {
-				String pargs[] = (split.length == 2) ? split[1].trim().split(",") : new String[0]; // split args, if any
-				instructions.addAll(interpretPseudoInstruction(m, pargs, lineNumber));
-			}
-			else
-				instructions.add(instruction);
-		}
-		
-		return instructions;
-	}
-	
 	/**
 	 * Assembles an instruction into an assembled instruction.
 	 * @param line The line with the instruction.
 	 * @param index The index of the instruction.
-	 * @param lineNumber The number of the line of code.
+	 * @param dependencies The encoding where the referenced labels are recorded, or <tt>null</tt>.
 	 * @return The assembled instruction.
 	 * @throws SyntaxErrorException If the code has a syntax error.
 	 */
-	private AssembledInstruction assembleInstruction(String line, int index, int lineNumber) throws SyntaxErrorException {
-		String inst = line.split("" + COMMENT_CHAR, 2)[0].trim(); // remove comment, if any
-		String[] split = inst.split("\\s+", 2); // split mnemonic and args
-		String mnemonic = split[0].trim();
-		String[] args = (split.length == 2) ? split[1].trim().split(",") : new String[0]; // split args, if any
+	private AssembledInstruction assembleInstruction(CodeLine line, int index, Encoding dependencies) throws SyntaxErrorException {
+		int lineNumber = line.number;
+		String mnemonic = line.statement.mnemonic.text;
+		AssemblerLexer.Token[] args = line.statement.args;
 		
-		if(!cpu.getInstructionSet().hasInstruction(mnemonic))
+		Instruction instruction = cpu.getInstructionSet().getInstruction(mnemonic);
+		if(instruction == null)
 			throw new SyntaxErrorException(SyntaxErrorException.Type.UNKNOWN_INSTRUCTION, lineNumber, mnemonic);
 		
-		Instruction instruction = cpu.getInstructionSet().getInstruction(mnemonic);
 		Data data = new Data();
 		Instruction.FieldValue f;
 		int value = 0;
@@ -295,23 +579,23 @@ public class Assembler {
 			else if(f instanceof Instruction.FieldFromArgument) {
 				Instruction.FieldFromArgument fa = (Instruction.FieldFromArgument)f;
 				switch(fa.getArgumentType()) {
-					case INT: case LABEL: value = parseIntArg(args[fa.getArgIndex()].trim(), lineNumber); break;
-					case REG: value = parseRegArg(args[fa.getArgIndex()].trim(), lineNumber); break;
-					case TARGET: value = parseTargetArg(args[fa.getArgIndex()].trim(), lineNumber); break;
-					case OFFSET: value = parseOffsetArg(args[fa.getArgIndex()].trim(), lineNumber, index); break;
+					case INT: case LABEL: value = parseIntArg(args[fa.getArgIndex()].text, lineNumber, dependencies); break;
+					case REG: value = parseRegArg(args[fa.getArgIndex()].text, lineNumber); break;
+					case TARGET: value = parseTargetArg(args[fa.getArgIndex()].text, lineNumber, dependencies); break;
+					case OFFSET: value = parseOffsetArg(args[fa.getArgIndex()].text, lineNumber, index, dependencies); break;
 				}
 			}
 			else if(f instanceof Instruction.FieldDataFromArgument) {
 				Instruction.FieldDataFromArgument fd = (Instruction.FieldDataFromArgument)f;
 				switch(fd.getType()) {
-					case BASE: value = parseBaseDataArg(args[fd.getArgIndex()].trim(), lineNumber); break;
-					case OFFSET: value = parseOffsetDataArg(args[fd.getArgIndex()].trim(), lineNumber); break;
+					case BASE: value = parseBaseDataArg(args[fd.getArgIndex()].text, lineNumber, dependencies); break;
+					case OFFSET: value = parseOffsetDataArg(args[fd.getArgIndex()].text, lineNumber); break;
 				}
 			}
 			data.setValue(data.getValue() | field.getValueInField(value));
 		}
 		
-		return new AssembledInstruction(instruction, data, line, lineNumber);
+		return new AssembledInstruction(instruction, data, line.line, lineNumber);
 	}
 	
 	/**
@@ -327,24 +611,51 @@ public class Assembler {
 	 * Parses an integer from an instruction argument.
 	 * @param arg The instruction argument.
 	 * @param lineNumber The number of the line of code.
+	 * @param dependencies The encoding where the referenced labels are recorded, or <tt>null</tt>.
 	 * @return The parsed integer.
 	 * @throws SyntaxErrorException If the argument is invalid.
 	 */
-	private int parseIntArg(String arg, int lineNumber) throws SyntaxErrorException {
-		try { // integer?
-			return Long.decode(arg).intValue();
-		}
-		catch(NumberFormatException e) { // a label? (for la)
+	private int parseIntArg(String arg, int lineNumber, Encoding dependencies) throws SyntaxErrorException {
+		Long number = AssemblerLexer.parseNumber(arg);
+		if(number != null) // integer?
+			return number.intValue();
+		else { // a label? (for la)
 			Integer label;
-			if((label = textLabels.get(arg)) != null)
+			if((label = getTextLabel(arg, dependencies)) != null)
 				return label * (Data.DATA_SIZE / 8);
-			else if((label = dataLabels.get(arg)) != null)
+			else if((label = getDataLabel(arg, dependencies)) != null)
 				return label;
 			else
 				throw new SyntaxErrorException(SyntaxErrorException.Type.INVALID_INT_ARG, lineNumber, arg);
 		}
 	}
 	
+	/**
+	 * Returns the index of the instruction with the given text segment label.
+	 * <p>The label is recorded as a dependency of the instruction being encoded, if any.</p>
+	 * @param label The label.
+	 * @param dependencies The encoding where the label is recorded, or <tt>null</tt>.
+	 * @return The index of the instruction, or <tt>null</tt> if the label doesn't exist.
+	 */
+	private Integer getTextLabel(String label, Encoding dependencies) {
+		Integer value = textLabels.get(label);
+		if(dependencies != null) dependencies.addDependency(true, label, value);
+		return value;
+	}
+	
+	/**
+	 * Returns the address of the given data segment label.
+	 * <p>The label is recorded as a dependency of the instruction being encoded, if any.</p>
+	 * @param label The label.
+	 * @param dependencies The encoding where the label is recorded, or <tt>null</tt>.
+	 * @return The address, or <tt>null</tt> if the label doesn't exist.
+	 */
+	private Integer getDataLabel(String label, Encoding dependencies) {
+		Integer value = dataLabels.get(label);
+		if(dependencies != null) dependencies.addDependency(false, label, value);
+		return value;
+	}
+	
 	/**
 	 * Parses a register identifier from an instruction argument.
 	 * @param arg The instruction argument.
@@ -364,16 +675,17 @@ public class Assembler {
 	 * Parses a target address from an instruction argument.
 	 * @param arg The instruction argument.
 	 * @param lineNumber The number of the line of code.
+	 * @param dependencies The encoding where the referenced labels are recorded, or <tt>null</tt>.
 	 * @return The parsed target address.
 	 * @throws SyntaxErrorException If the argument is invalid.
 	 */
-	private int parseTargetArg(String arg, int lineNumber) throws SyntaxErrorException {
-		try { // direct address?
-			return Long.decode(arg).intValue();
-		}
-		catch(NumberFormatException e) { // label
+	private int parseTargetArg(String arg, int lineNumber, Encoding dependencies) throws SyntaxErrorException {
+		Long number = AssemblerLexer.parseNumber(arg);
+		if(number != null) // direct address?
+			return number.intValue();
+		else { // label
 			Integer target;
-			if((target = textLabels.get(arg)) != null)
+			if((target = getTextLabel(arg, dependencies)) != null)
 				return target;
 			else
 				throw new SyntaxErrorException(SyntaxErrorException.Type.UNKNOWN_LABEL, lineNumber, arg);
@@ -385,16 +697,18 @@ public class Assembler {
 	 * @param arg The instruction argument.
 	 * @param lineNumber The number of the line of code.
 	 * @param index The index of the instruction.
+	 * @param dependencies The encoding where the referenced labels are recorded, or <tt>null</tt>.
 	 * @return The parsed address offset.
 	 * @throws SyntaxErrorException If the argument is invalid.
 	 */
-	private int parseOffsetArg(String arg, int lineNumber, int index) throws SyntaxErrorException {
-		try { // direct offset?
-			return Long.decode(arg).intValue();
-		}
-		catch(NumberFormatException e) { // label
+	private int parseOffsetArg(String arg, int lineNumber, int index, Encoding dependencies) throws SyntaxErrorException {
+		Long number = AssemblerLexer.parseNumber(arg);
+		if(number != null) // direct offset?
+			return number.intValue();
+		else { // label
 			Integer target;
-			if((target = textLabels.get(arg)) != null) {
+			if((target = getTextLabel(arg, dependencies)) != null) {
+				if(dependencies != null) dependencies.indexDependent = true;
 				return target - index - 1;
 			}
 			else
@@ -406,19 +720,20 @@ public class Assembler {
 	 * Parses the data base address from an instruction argument.
 	 * @param arg The instruction argument.
 	 * @param lineNumber The number of the line of code.
+	 * @param dependencies The encoding where the referenced labels are recorded, or <tt>null</tt>.
 	 * @return The parsed base address.
 	 * @throws SyntaxErrorException If the argument is invalid.
 	 */
-	private int parseBaseDataArg(String arg, int lineNumber) throws SyntaxErrorException {
+	private int parseBaseDataArg(String arg, int lineNumber, Encoding dependencies) throws SyntaxErrorException {
 		int i = arg.indexOf("(");
 		if(i >= 0) arg = arg.substring(0, i); // remove "($offset)" part, if it exists
 
-		try { // direct address?
-			return Long.decode(arg).intValue();
-		}
-		catch(NumberFormatException e) { // label
+		Long number = AssemblerLexer.parseNumber(arg);
+		if(number != null) // direct address?
+			return number.intValue();
+		else { // label
 			Integer target;
-			if((target = dataLabels.get(arg)) != null)
+			if((target = getDataLabel(arg, dependencies)) != null)
 				return target;
 			else
 				throw new SyntaxErrorException(SyntaxErrorException.Type.UNKNOWN_LABEL, lineNumber, arg);
@@ -453,19 +768,93 @@ public class Assembler {
 	 * Saves a line of code (pseudo-instructions already interpreted) and it's original line number.
 	 */
 	private class CodeLine {
-		/** The line of code. */
+		/** The line of code, as shown in the assembled code. */
 		public String line;
 		/** The original number of the line. */
 		public int number;
+		/** The tokens of the instruction. */
+		public AssemblerLexer.Statement statement;
 
 		/**
 		 * Constructor
-		 * @param line The line of code.
-		 * @param lineNumber The original number of the line.
+		 * @param statement The tokens of the instruction.
+		 * @param number The original number of the line.
+		 * @param line The line of code, as shown in the assembled code.
 		 */
-		public CodeLine(String line, int lineNumber) {
+		public CodeLine(AssemblerLexer.Statement statement, int number, String line) {
 			this.line = line;
-			this.number = lineNumber;
+			this.number = number;
+			this.statement = statement;
+		}
+	}
+	
+	/**
+	 * The instructions that result from a pseudo-instruction, or the error in it.
+	 */
+	private static class Expansion {
+		/** The resulting instructions. */
+		public final List<AssemblerLexer.Statement> statements = new ArrayList<>(2);
+		/** The syntax error in the pseudo-instruction, or <tt>null</tt>. */
+		public SyntaxErrorException error = null;
+	}
+	
+	/**
+	 * The result of encoding an instruction, and the labels it depends on.
+	 */
+	private class Encoding {
+		/** The index the instruction had when it was encoded. */
+		public final int index;
+		/** Whether the result depends on the index (references a label by offset). */
+		public boolean indexDependent = false;
+		/** The referenced labels (<tt>true</tt> for text segment labels). */
+		private final List<Boolean> labelSegments = new ArrayList<>(1);
+		/** The names of the referenced labels. */
+		private final List<String> labelNames = new ArrayList<>(1);
+		/** The values of the referenced labels (<tt>null</tt> if they didn't exist). */
+		private final List<Integer> labelValues = new ArrayList<>(1);
+		/** The encoded instruction, if valid. */
+		public Instruction instruction = null;
+		/** The machine code of the instruction, if valid. */
+		public int value = 0;
+		/** The syntax error in the instruction, or <tt>null</tt>. */
+		public SyntaxErrorException error = null;
+
+		/**
+		 * Constructor.
+		 * @param index The index the instruction has.
+		 */
+		public Encoding(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * Records a label referenced by the instruction.
+		 * @param text Whether it is a text segment label.
+		 * @param label The name of the label.
+		 * @param value The value of the label, or <tt>null</tt> if it doesn't exist.
+		 */
+		public void addDependency(boolean text, String label, Integer value) {
+			labelSegments.add(text);
+			labelNames.add(label);
+			labelValues.add(value);
+		}
+
+		/**
+		 * Returns whether this result is still valid for an instruction with
+		 * the same code at the given index, with the current labels.
+		 * @param index The index of the instruction.
+		 * @return <tt>true</tt> if the result is still valid.
+		 */
+		public boolean isValid(int index) {
+			if(indexDependent && index != this.index)
+				return false;
+			for(int i = 0; i < labelNames.size(); i++) {
+				Integer current = (labelSegments.get(i) ? textLabels : dataLabels).get(labelNames.get(i));
+				Integer previous = labelValues.get(i);
+				if(current == null ? previous != null : !current.equals(previous))
+					return false;
+			}
+			return true;
 		}
 	}
 }
@@ -0,0 +1,453 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits MIPS assembly code into statements and tokens, in a single scan.
+ *
+ * <p>Each non-empty line of code becomes a <tt>Statement</tt>, with the
+ * optional label, the mnemonic (or directive) and the comma-separated
+ * arguments (or values). Comments are removed. Each token keeps the line
+ * and column where it starts.</p>
+ *
+ * <p>The rules are the same as the ones used by the assembler before:
+ * a comment starts at the first <tt>#</tt>, a label ends at the first
+ * <tt>:</tt>, the mnemonic ends at the first whitespace and the arguments
+ * are separated by commas.</p>
+ *
+ * @author Bruno Nova
+ */
+final class AssemblerLexer {
+	/** Empty array of tokens, used for statements without arguments. */
+	private static final Token[] NO_ARGS = new Token[0];
+
+	/**
+	 * Private constructor, as this class only has static members.
+	 */
+	private AssemblerLexer() {}
+
+	/**
+	 * Splits the given code into statements.
+	 * <p>Lines that are empty or only have a comment are skipped.</p>
+	 * @param code The code.
+	 * @return The statements, in the order of the code.
+	 */
+	public static List<Statement> tokenize(String code) {
+		List<Statement> statements = new ArrayList<>();
+		Statement statement;
+		int start = 0, end, lineNumber = 1, length = code.length();
+
+		while(start < length) {
+			end = code.indexOf('\n', start);
+			if(end < 0) end = length;
+			if((statement = tokenizeLine(code, start, end, lineNumber)) != null)
+				statements.add(statement);
+			start = end + 1;
+			lineNumber++;
+		}
+		return statements;
+	}
+
+	/**
+	 * Splits a single line of code into a statement.
+	 * @param line The line of code.
+	 * @param lineNumber The number of the line.
+	 * @return The statement, or <tt>null</tt> if the line is empty or only has a comment.
+	 */
+	public static Statement tokenizeLine(String line, int lineNumber) {
+		return tokenizeLine(line, 0, line.length(), lineNumber);
+	}
+
+	/**
+	 * Splits an instruction (without label) into a statement.
+	 * <p>Used for the instructions that result from pseudo-instructions.</p>
+	 * @param instruction The instruction.
+	 * @param lineNumber The number of the line of the instruction.
+	 * @return The statement, or <tt>null</tt> if the instruction is empty.
+	 */
+	public static Statement tokenizeInstruction(String instruction, int lineNumber) {
+		int end = instruction.indexOf(Assembler.COMMENT_CHAR);
+		if(end < 0) end = instruction.length();
+		int start = skipSpace(instruction, 0, end);
+		end = trimEnd(instruction, start, end);
+		if(start == end) return null;
+
+		Statement statement = new Statement(lineNumber, instruction.substring(start, end));
+		tokenizeInstruction(statement, instruction, start, end, 0);
+		return statement;
+	}
+
+	/**
+	 * Returns whether the given label is valid.
+	 * <p>Same as matching <tt>Assembler.LABEL_REGEX</tt>, but faster.</p>
+	 * @param label The label.
+	 * @return <tt>true</tt> if the label is valid.
+	 */
+	public static boolean isValidLabel(String label) {
+		int length = label.length();
+		if(length == 0) return false;
+		char c = label.charAt(0);
+		if(c < 'A' || c > 'z') return false; // same range as [a-zA-z] in the regex
+		for(int i = 1; i < length; i++) {
+			c = label.charAt(i);
+			if(!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parses an integer literal, with the same rules as <tt>Long.decode()</tt>.
+	 * <p>Unlike <tt>Long.decode()</tt>, no exception is thrown (and caught)
+	 * if the text isn't a number, which is common for labels.</p>
+	 * @param text The text to parse.
+	 * @return The number, or <tt>null</tt> if the text isn't a valid number.
+	 */
+	public static Long parseNumber(String text) {
+		int length = text.length(), i = 0, radix = 10;
+		boolean negative = false;
+		if(length == 0) return null;
+
+		// Sign
+		char c = text.charAt(0);
+		if(c == '-' || c == '+') {
+			negative = c == '-';
+			i++;
+		}
+
+		// Radix specifier
+		if(text.startsWith("0x", i) || text.startsWith("0X", i)) {
+			radix = 16;
+			i += 2;
+		}
+		else if(text.startsWith("#", i)) {
+			radix = 16;
+			i++;
+		}
+		else if(text.startsWith("0", i) && length > i + 1) {
+			radix = 8;
+			i++;
+		}
+		if(i >= length) return null;
+
+		// Digits
+		for(int j = i; j < length; j++) {
+			if(Character.digit(text.charAt(j), radix) < 0)
+				return null;
+		}
+		try {
+			String digits = text.substring(i);
+			return Long.parseLong(negative ? "-" + digits : digits, radix);
+		}
+		catch(NumberFormatException ex) { // too large
+			return null;
+		}
+	}
+
+	/**
+	 * Splits a line of code into a statement.
+	 * @param code The code.
+	 * @param start The index of the start of the line in the code.
+	 * @param end The index of the end of the line in the code (exclusive).
+	 * @param lineNumber The number of the line.
+	 * @return The statement, or <tt>null</tt> if the line is empty or only has a comment.
+	 */
+	private static Statement tokenizeLine(String code, int start, int end, int lineNumber) {
+		int s, e, colon;
+
+		// Remove the comment, if any
+		for(int i = start; i < end; i++) {
+			if(code.charAt(i) == Assembler.COMMENT_CHAR) {
+				end = i;
+				break;
+			}
+		}
+
+		s = skipSpace(code, start, end);
+		e = trimEnd(code, s, end);
+		if(s == e) return null;
+		Statement statement = new Statement(lineNumber, code.substring(s, e));
+
+		// Label
+		colon = -1;
+		for(int i = s; i < e; i++) {
+			if(code.charAt(i) == ':') {
+				colon = i;
+				break;
+			}
+		}
+		if(colon >= 0) {
+			int le = trimEnd(code, s, colon);
+			statement.label = new Token(code.substring(s, le), lineNumber, s - start + 1);
+			s = skipSpace(code, colon + 1, e);
+		}
+
+		if(s < e) {
+			statement.code = code.substring(s, e);
+			tokenizeInstruction(statement, code, s, e, start);
+		}
+		else
+			statement.code = "";
+		return statement;
+	}
+
+	/**
+	 * Splits the mnemonic and the arguments of an instruction (already trimmed).
+	 * @param statement The statement to set the mnemonic and arguments of.
+	 * @param code The code.
+	 * @param start The index of the start of the instruction in the code.
+	 * @param end The index of the end of the instruction in the code (exclusive).
+	 * @param lineStart The index of the start of the line in the code.
+	 */
+	private static void tokenizeInstruction(Statement statement, String code, int start, int end, int lineStart) {
+		int lineNumber = statement.line;
+		int i = start;
+		while(i < end && !isWhitespace(code.charAt(i)))
+			i++;
+		statement.mnemonic = new Token(code.substring(start, i), lineNumber, start - lineStart + 1);
+
+		i = skipSpace(code, i, end);
+		if(i >= end) {
+			statement.args = NO_ARGS;
+			return;
+		}
+
+		// Split the arguments by commas (trailing empty arguments are ignored)
+		List<Token> args = new ArrayList<>(4);
+		int argStart = i, lastNonEmpty = 0;
+		for(int j = i; j <= end; j++) {
+			if(j == end || code.charAt(j) == ',') {
+				int s = skipSpace(code, argStart, j);
+				int e = trimEnd(code, s, j);
+				args.add(new Token(code.substring(s, e), lineNumber, s - lineStart + 1));
+				if(j > argStart) lastNonEmpty = args.size();
+				argStart = j + 1;
+			}
+		}
+		statement.args = args.subList(0, lastNonEmpty).toArray(new Token[lastNonEmpty]);
+	}
+
+	/**
+	 * Returns whether the character is whitespace (as <tt>\s</tt> in regular expressions).
+	 * @param c The character.
+	 * @return <tt>true</tt> if the character is whitespace.
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Returns the index of the first character that isn't space (as in <tt>String.trim()</tt>).
+	 * @param code The code.
+	 * @param start The index to start at.
+	 * @param end The index to stop at.
+	 * @return The index of the first non-space character, or <tt>end</tt>.
+	 */
+	private static int skipSpace(String code, int start, int end) {
+		while(start < end && code.charAt(start) <= ' ')
+			start++;
+		return start;
+	}
+
+	/**
+	 * Returns the index after the last character that isn't space (as in <tt>String.trim()</tt>).
+	 * @param code The code.
+	 * @param start The index to stop at.
+	 * @param end The index to start at (exclusive).
+	 * @return The index after the last non-space character, or <tt>start</tt>.
+	 */
+	private static int trimEnd(String code, int start, int end) {
+		while(end > start && code.charAt(end - 1) <= ' ')
+			end--;
+		return end;
+	}
+
+	/**
+	 * Reads the statements of some code one at a time, from a string or a stream.
+	 * <p>When reading from a stream, only the current line is kept in memory,
+	 * so the code doesn't need to be read to a string first. Lines are
+	 * separated by <tt>\n</tt> only, like in <tt>tokenize()</tt>.</p>
+	 */
+	public static final class StatementReader {
+		/** The size of the buffer used to read the stream. */
+		private static final int BUFFER_SIZE = 8192;
+		
+		/** The code, if reading from a string. */
+		private final String code;
+		/** The stream, if reading from a stream. */
+		private final Reader reader;
+		/** The characters read from the stream and not processed yet. */
+		private final char[] buffer;
+		/** The index of the next character to process in the buffer. */
+		private int position = 0;
+		/** The number of characters in the buffer (or the length of the code). */
+		private int limit = 0;
+		/** The current line read from the stream. */
+		private final StringBuilder line;
+		/** The number of the next line. */
+		private int lineNumber = 1;
+		
+		/**
+		 * Creates a reader of the statements in the given code.
+		 * @param code The code.
+		 */
+		public StatementReader(String code) {
+			this.code = code;
+			this.reader = null;
+			this.buffer = null;
+			this.line = null;
+			this.limit = code.length();
+		}
+		
+		/**
+		 * Creates a reader of the statements in the given stream.
+		 * @param reader The stream with the code (not closed).
+		 */
+		public StatementReader(Reader reader) {
+			this.code = null;
+			this.reader = reader;
+			this.buffer = new char[BUFFER_SIZE];
+			this.line = new StringBuilder(80);
+		}
+		
+		/**
+		 * Returns the next statement.
+		 * <p>Lines that are empty or only have a comment are skipped.</p>
+		 * @return The next statement, or <tt>null</tt> at the end of the code.
+		 * @throws IOException If an I/O error occurs reading the stream.
+		 */
+		public Statement next() throws IOException {
+			Statement statement;
+			if(code != null) {
+				while(position < limit) {
+					int end = code.indexOf('\n', position);
+					if(end < 0) end = limit;
+					statement = tokenizeLine(code, position, end, lineNumber++);
+					position = end + 1;
+					if(statement != null) return statement;
+				}
+			}
+			else {
+				while(readLine()) {
+					statement = tokenizeLine(line.toString(), lineNumber++);
+					if(statement != null) return statement;
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Reads the next line from the stream to <tt>line</tt>.
+		 * @return <tt>false</tt> if the end of the stream was reached before the line.
+		 * @throws IOException If an I/O error occurs.
+		 */
+		private boolean readLine() throws IOException {
+			line.setLength(0);
+			boolean read = false;
+			while(true) {
+				if(position >= limit) {
+					limit = reader.read(buffer, 0, buffer.length);
+					position = 0;
+					if(limit <= 0) {
+						limit = 0;
+						return read;
+					}
+				}
+				read = true;
+				int start = position;
+				while(position < limit && buffer[position] != '\n')
+					position++;
+				line.append(buffer, start, position - start);
+				if(position < limit) { // end of line
+					position++;
+					return true;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A token of the code, with its position.
+	 */
+	public static final class Token {
+		/** The text of the token (trimmed). */
+		public final String text;
+		/** The line of the token (starting at 1). */
+		public final int line;
+		/** The column where the token starts (starting at 1). */
+		public final int column;
+
+		/**
+		 * Creates the token.
+		 * @param text The text of the token.
+		 * @param line The line of the token.
+		 * @param column The column where the token starts.
+		 */
+		public Token(String text, int line, int column) {
+			this.text = text;
+			this.line = line;
+			this.column = column;
+		}
+	}
+
+	/**
+	 * A non-empty line of code, split into tokens.
+	 */
+	public static final class Statement {
+		/** The number of the line. */
+		public final int line;
+		/** The whole statement, without the comment (trimmed). */
+		public final String text;
+		/** The statement without the label (trimmed), or an empty string. */
+		public String code;
+		/** The label, or <tt>null</tt> if there is no label. */
+		public Token label = null;
+		/** The mnemonic or directive, or <tt>null</tt> if there is only a label. */
+		public Token mnemonic = null;
+		/** The arguments or values. */
+		public Token[] args = NO_ARGS;
+
+		/**
+		 * Creates the statement.
+		 * @param line The number of the line.
+		 * @param text The whole statement, without the comment (trimmed).
+		 */
+		public Statement(int line, String text) {
+			this.line = line;
+			this.text = text;
+			this.code = text;
+		}
+
+		/**
+		 * Returns the texts of the arguments.
+		 * @return The texts of the arguments.
+		 */
+		public String[] getArgs() {
+			String[] a = new String[args.length];
+			for(int i = 0; i < args.length; i++)
+				a[i] = args[i].text;
+			return a;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.exceptions.SyntaxErrorException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of assembled programs, keyed by the contents of the code and of the CPU's assembly "dialect".
+ *
+ * <p>The result of assembling some code only depends on the code, on the
+ * instruction set, on the names and number of the registers and on whether
+ * the CPU has a data memory. The key of each program is the SHA-1 hash of all
+ * of those, so the same image is reused when switching to another CPU with
+ * the same instruction set and registers, or when assembling unchanged code
+ * again. The instructions of an image are resolved in the instruction set of
+ * the CPU it is returned for (see <tt>ProgramImage</tt>).</p>
+ *
+ * <p>Only the most recently used images are kept in memory. If a cache
+ * directory is given, the images are also saved there as program files,
+ * named after their key, and later lookups (even after the program is
+ * restarted) load those files instead of assembling the code. Only the
+ * most recently used program files are kept in the directory (the others
+ * are deleted when a new file is saved). Code with syntax errors is never
+ * cached.</p>
+ *
+ * @author Bruno Nova
+ */
+public class AssemblyCache {
+	/** The default maximum number of images kept in memory. */
+	public static final int DEFAULT_CAPACITY = 16;
+	/** The default maximum number of program files kept in the cache directory. */
+	public static final int DEFAULT_MAX_FILES = 256;
+	/** The length of the keys (hexadecimal SHA-1 hashes). */
+	private static final int KEY_LENGTH = 40;
+
+	/** The directory where the program files are saved, or <tt>null</tt> to only cache in memory. */
+	private final File directory;
+	/** The maximum number of program files kept in the cache directory. */
+	private final int maxFiles;
+	/** The images in memory, indexed by their key, from the least to the most recently used. */
+	private final Map<String, CachedImage> entries;
+
+	/**
+	 * Creates a cache that only keeps the images in memory, with the default capacity.
+	 */
+	public AssemblyCache() {
+		this(DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * Creates a cache that also saves the images in the given directory, keeping at most
+	 * <tt>DEFAULT_MAX_FILES</tt> program files there.
+	 * @param capacity The maximum number of images kept in memory.
+	 * @param directory The directory where the program files are saved (created if needed),
+	 *                  or <tt>null</tt> to only cache in memory.
+	 * @throws IllegalArgumentException If the capacity isn't positive.
+	 */
+	public AssemblyCache(int capacity, File directory) {
+		this(capacity, directory, DEFAULT_MAX_FILES);
+	}
+
+	/**
+	 * Creates a cache that also saves the images in the given directory.
+	 * @param capacity The maximum number of images kept in memory.
+	 * @param directory The directory where the program files are saved (created if needed),
+	 *                  or <tt>null</tt> to only cache in memory.
+	 * @param maxFiles The maximum number of program files kept in the directory.
+	 * @throws IllegalArgumentException If the capacity or the maximum number of files isn't positive.
+	 */
+	public AssemblyCache(final int capacity, File directory, int maxFiles) {
+		if(capacity <= 0) throw new IllegalArgumentException("The capacity must be positive!");
+		if(maxFiles <= 0) throw new IllegalArgumentException("The maximum number of files must be positive!");
+		this.directory = directory;
+		this.maxFiles = maxFiles;
+		entries = new LinkedHashMap<String, CachedImage>(capacity + 1, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedImage> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the directory where the program files are saved.
+	 * @return The cache directory, or <tt>null</tt> if the cache is only in memory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Assembles the given code for the given CPU, using the cache if possible.
+	 * <p>The CPU isn't changed. Load the returned image with <tt>CPU.load()</tt>.</p>
+	 * @param cpu The CPU the code is assembled for.
+	 * @param code The code to assemble.
+	 * @return The assembled program.
+	 * @throws SyntaxErrorException If the code has syntax errors (see <tt>Assembler.assembleImage()</tt>).
+	 */
+	public ProgramImage assemble(CPU cpu, String code) throws SyntaxErrorException {
+		String key = getKey(cpu, code);
+		InstructionSet set = cpu.getInstructionSet();
+
+		synchronized(this) {
+			CachedImage entry = entries.get(key);
+			if(entry != null) {
+				if(entry.set == set)
+					return entry.image;
+				return entry.image.relink(set);
+			}
+		}
+
+		// Load the program file or assemble the code (outside the lock, as it may be slow)
+		ProgramImage image = null;
+		File file = directory != null ? new File(directory, key + "." + ProgramImage.FILE_EXTENSION) : null;
+		if(file != null && file.isFile()) {
+			try {
+				image = ProgramImage.load(file, cpu);
+				file.setLastModified(System.currentTimeMillis()); // recently used, prune it last
+			} catch(IOException ex) { // corrupted or outdated, ignore it
+				image = null;
+			}
+		}
+		if(image == null) {
+			image = cpu.getAssembler().assembleImage(code);
+			if(file != null)
+				writeProgramFile(file, key, image);
+		}
+
+		synchronized(this) {
+			entries.put(key, new CachedImage(image, set));
+		}
+		return image;
+	}
+
+	/**
+	 * Removes all the images kept in memory.
+	 * <p>The program files aren't deleted.</p>
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of images kept in memory.
+	 * @return The number of images in memory.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the key of the given code for the given CPU.
+	 * @param cpu The CPU.
+	 * @param code The code.
+	 * @return The key (hexadecimal SHA-1 hash).
+	 */
+	public static String getKey(CPU cpu, String code) {
+		Charset utf8 = Charset.forName("UTF-8");
+		MessageDigest digest = ModelCache.newDigest();
+		digest.update(cpu.getInstructionSet().getContentHash().getBytes(utf8));
+		digest.update((byte)0);
+		digest.update((byte)(cpu.hasDataMemory() ? 1 : 0));
+		digest.update(Integer.toString(cpu.getRegBank().getNumberOfRegisters()).getBytes(utf8));
+		List<String> names = cpu.getRegisterNames();
+		if(names != null) {
+			for(String name: names) {
+				digest.update((byte)0);
+				digest.update(name.getBytes(utf8));
+			}
+		}
+		digest.update((byte)0);
+		digest.update(code.getBytes(utf8));
+		return ModelCache.toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the maximum number of program files kept in the cache directory.
+	 * @return The maximum number of program files.
+	 */
+	public int getMaxFiles() {
+		return maxFiles;
+	}
+
+	/**
+	 * Writes a program file, ignoring any error.
+	 * <p>The least recently used program files are then deleted, if there are
+	 * more than <tt>maxFiles</tt>.</p>
+	 * <p>The file is written to a new temporary file first, so that a partial
+	 * file is never read, even if other threads write the same file. If the
+	 * file can't be replaced (because another thread saved it first, for
+	 * example), the existing file is kept.</p>
+	 * @param file The program file.
+	 * @param key The key of the image.
+	 * @param image The image to save.
+	 */
+	private void writeProgramFile(File file, String key, ProgramImage image) {
+		if(!directory.isDirectory() && !directory.mkdirs())
+			return;
+
+		File temp = null;
+		try {
+			temp = File.createTempFile(key, ".tmp", directory);
+			image.save(temp);
+		}
+		catch(IOException ex) {
+			if(temp != null) temp.delete();
+			return;
+		}
+		if(!temp.renameTo(file))
+			temp.delete();
+		pruneDirectory();
+	}
+
+	/**
+	 * Deletes the least recently used program files in the cache directory,
+	 * leaving at most <tt>maxFiles</tt>, and ignoring any error.
+	 * <p>Only the files named after a key are considered, as the directory
+	 * may be shared with other caches.</p>
+	 */
+	private void pruneDirectory() {
+		final String suffix = "." + ProgramImage.FILE_EXTENSION;
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				String name = file.getName();
+				return name.endsWith(suffix) && name.length() == KEY_LENGTH + suffix.length() && file.isFile();
+			}
+		});
+		if(files == null || files.length <= maxFiles)
+			return;
+
+		final long[] times = new long[files.length]; // read once, as they may change while sorting
+		Integer[] order = new Integer[files.length];
+		for(int i = 0; i < files.length; i++) {
+			times[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(times[b], times[a]); // most recent first
+			}
+		});
+		for(int i = maxFiles; i < order.length; i++)
+			files[order[i]].delete();
+	}
+
+	/**
+	 * An image kept in memory.
+	 */
+	private static class CachedImage {
+		/** The assembled program. */
+		private final ProgramImage image;
+		/** The instruction set the instructions of the image are resolved in. */
+		private final InstructionSet set;
+
+		/**
+		 * Creates the entry.
+		 * @param image The assembled program.
+		 * @param set The instruction set the instructions of the image are resolved in.
+		 */
+		public CachedImage(ProgramImage image, InstructionSet set) {
+			this.image = image;
+			this.set = set;
+		}
+	}
+}
@@ -0,0 +1,525 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.exceptions.*;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Runs several programs on one or more CPUs, in parallel and without a GUI.
+ *
+ * <p>Each CPU file (and its instruction set) is parsed only once, when added
+ * with <tt>addCPU()</tt>. Each program is then assembled and executed in its
+ * own copy of the loaded CPU (see <tt>CPU.copy()</tt>), in a pool of threads.
+ * Only the parsed definitions and the instruction set (which are read-only)
+ * are shared between the threads.</p>
+ *
+ * <p>The programs can be code files or program files already assembled
+ * (see <tt>ProgramImage</tt>), which are loaded without being assembled.</p>
+ *
+ * <p>The result of each run is written to a single output, one JSON object
+ * per line, in the order the runs finish.</p>
+ *
+ * @author Bruno Nova
+ */
+public class BatchRunner {
+	/** The default wall-clock time limit of each run, in milliseconds. */
+	public static final long DEFAULT_TIMEOUT = 10000;
+	/** The number of cycles executed between checks of the time limit. */
+	private static final int TIMEOUT_CHECK_CYCLES = 256;
+
+	/** The possible outcomes of a run (<tt>ASSEMBLED</tt> only in <tt>assemble()</tt>, where the programs aren't executed). */
+	public enum Status {
+		FINISHED, ASSEMBLED, SYNTAX_ERROR, CYCLE_LIMIT, TIMEOUT, CANCELLED, ERROR;
+
+		/**
+		 * Returns the identifier of the status written in the JSON results.
+		 * @return The name of the status in lower case (like <tt>syntax_error</tt>).
+		 */
+		public String getId() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/** The loaded CPUs, which are copied for each run. */
+	private final List<CPU> prototypes = new ArrayList<>();
+	/** The cache used to load the CPU files, or <tt>null</tt> to not use a cache. */
+	private ModelCache modelCache = null;
+	/** The cache used to assemble the programs, or <tt>null</tt> to not use a cache. */
+	private AssemblyCache assemblyCache = null;
+	/** The maximum number of cycles executed by each run. */
+	private int maxCycles = CPU.EXECUTE_ALL_LIMIT_CYCLES;
+	/** The wall-clock time limit of each run, in milliseconds. */
+	private long timeout = DEFAULT_TIMEOUT;
+	/** The number of threads used to run the programs. */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Parses the given CPU file and adds it to the CPUs the programs will run on.
+	 * @param path Path to the CPU file.
+	 * @throws IOException If the file doesn't exist or an I/O error occurs.
+	 * @throws JSONException If the JSON file is malformed.
+	 * @throws InvalidCPUException If the CPU is invalid or incomplete
+	 * @throws InvalidInstructionSetException If the instruction set is invalid.
+	 */
+	public void addCPU(String path) throws IOException, JSONException, InvalidCPUException, InvalidInstructionSetException {
+		prototypes.add(modelCache != null ? modelCache.load(path) : CPU.createFromJSONFile(path));
+	}
+
+	/**
+	 * Returns the cache used to load the CPU files.
+	 * @return The cache, or <tt>null</tt> if no cache is used.
+	 */
+	public ModelCache getModelCache() {
+		return modelCache;
+	}
+
+	/**
+	 * Sets the cache used to load the CPU files in <tt>addCPU()</tt>.
+	 * @param modelCache The cache, or <tt>null</tt> to not use a cache.
+	 */
+	public void setModelCache(ModelCache modelCache) {
+		this.modelCache = modelCache;
+	}
+
+	/**
+	 * Returns the cache used to assemble the programs.
+	 * @return The cache, or <tt>null</tt> if no cache is used.
+	 */
+	public AssemblyCache getAssemblyCache() {
+		return assemblyCache;
+	}
+
+	/**
+	 * Sets the cache used to assemble the programs.
+	 * <p>The same program run on several CPUs with the same instruction set
+	 * and registers is then assembled only once.</p>
+	 * @param assemblyCache The cache, or <tt>null</tt> to not use a cache.
+	 */
+	public void setAssemblyCache(AssemblyCache assemblyCache) {
+		this.assemblyCache = assemblyCache;
+	}
+
+	/**
+	 * Returns the maximum number of cycles executed by each run.
+	 * @return Maximum number of cycles.
+	 */
+	public int getMaxCycles() {
+		return maxCycles;
+	}
+
+	/**
+	 * Sets the maximum number of cycles executed by each run.
+	 * @param maxCycles Maximum number of cycles (must be positive).
+	 */
+	public void setMaxCycles(int maxCycles) {
+		if(maxCycles <= 0) throw new IllegalArgumentException("The maximum number of cycles must be positive!");
+		this.maxCycles = maxCycles;
+	}
+
+	/**
+	 * Returns the wall-clock time limit of each run.
+	 * @return Time limit, in milliseconds.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the wall-clock time limit of each run.
+	 * @param timeout Time limit, in milliseconds (must be positive).
+	 */
+	public void setTimeout(long timeout) {
+		if(timeout <= 0) throw new IllegalArgumentException("The timeout must be positive!");
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns the number of threads used to run the programs.
+	 * @return Number of threads.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of threads used to run the programs.
+	 * @param threads Number of threads (must be positive).
+	 */
+	public void setThreads(int threads) {
+		if(threads <= 0) throw new IllegalArgumentException("The number of threads must be positive!");
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs each of the given programs on each of the added CPUs.
+	 * <p>The results are written to <tt>output</tt> as soon as each run finishes.</p>
+	 * @param programs The files with the code of the programs (or program files).
+	 * @param output Where the results are written to.
+	 * @return The number of runs that didn't finish successfully.
+	 * @throws IOException If an error occurs writing the results.
+	 * @throws InterruptedException If the current thread is interrupted while waiting for the runs.
+	 */
+	public int run(List<File> programs, Writer output) throws IOException, InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<Result> service = new ExecutorCompletionService<>(pool);
+		int tasks = 0, failed = 0;
+
+		try {
+			for(File program: programs) {
+				for(CPU prototype: prototypes) {
+					service.submit(new RunTask(program, prototype));
+					tasks++;
+				}
+			}
+
+			for(int i = 0; i < tasks; i++) {
+				Result result;
+				try {
+					result = service.take().get();
+				} catch(ExecutionException ex) { // shouldn't happen, RunTask catches everything
+					throw new IOException("Unexpected error in a run", ex.getCause());
+				}
+				if(result.getStatus() != Status.FINISHED) failed++;
+				output.write(result.toJSON().toString());
+				output.write("\n");
+				output.flush();
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		return failed;
+	}
+
+	/**
+	 * Assembles and executes the code in the given file in the given CPU.
+	 * <p>Without an assembly cache, the file is assembled while it is read.</p>
+	 * @param cpu The CPU (should be used only by the current thread).
+	 * @param program The file with the code to assemble.
+	 * @param result The result to fill.
+	 * @throws IOException If an error occurs reading the file.
+	 */
+	private void execute(CPU cpu, File program, Result result) throws IOException {
+		ProgramImage image;
+		try {
+			image = assemblyCache != null ? assemblyCache.assemble(cpu, readFile(program)) : cpu.getAssembler().assembleImage(program);
+		}
+		catch(SyntaxErrorException ex) {
+			result.status = Status.SYNTAX_ERROR;
+			result.message = ex.getMessage();
+			return;
+		}
+		execute(cpu, image, result);
+	}
+
+	/**
+	 * Loads and executes the given assembled program in the given CPU.
+	 * @param cpu The CPU (should be used only by the current thread).
+	 * @param image The assembled program.
+	 * @param result The result to fill.
+	 */
+	private void execute(CPU cpu, ProgramImage image, Result result) {
+		cpu.load(image);
+		RunOptions options = new RunOptions();
+		options.setMaxCycles(maxCycles);
+		options.setTimeout(timeout);
+		options.setCheckInterval(TIMEOUT_CHECK_CYCLES);
+		options.setStopAtBreakpoints(false);
+		options.setCancellationToken(new RunOptions.CancellationToken() {
+			@Override
+			public boolean isCancelled() {
+				return super.isCancelled() || Thread.currentThread().isInterrupted();
+			}
+		});
+
+		switch(cpu.run(options)) {
+			case CYCLE_LIMIT: result.status = Status.CYCLE_LIMIT; break;
+			case TIMEOUT: result.status = Status.TIMEOUT; break;
+			case CANCELLED: result.status = Status.CANCELLED; break;
+			default: result.status = Status.FINISHED;
+		}
+
+		result.fill(cpu);
+	}
+
+	/**
+	 * Assembles each of the given code files on the first added CPU and saves
+	 * them as program files, in the same directory (see
+	 * <tt>ProgramImage.getProgramFileFor()</tt>).
+	 * <p>One JSON object per program is written to <tt>output</tt>, with the
+	 * program, the saved file (if successful), the status and the error message.</p>
+	 * @param programs The files with the code of the programs.
+	 * @param output Where the results are written to.
+	 * @return The number of programs that couldn't be assembled or saved.
+	 * @throws IOException If an error occurs writing the results.
+	 */
+	public int assemble(List<File> programs, Writer output) throws IOException {
+		if(prototypes.isEmpty()) throw new IllegalStateException("No CPU was added!");
+		CPU cpu = prototypes.get(0);
+		int failed = 0;
+
+		for(File program: programs) {
+			JSONObject json = new JSONObject();
+			Status status = Status.ASSEMBLED;
+			try {
+				json.put("program", program.getPath());
+				try {
+					File file = ProgramImage.getProgramFileFor(program);
+					cpu.getAssembler().assembleImage(program).save(file);
+					json.put("file", file.getPath());
+				}
+				catch(SyntaxErrorException ex) {
+					status = Status.SYNTAX_ERROR;
+					json.put("message", ex.getMessage());
+				}
+				catch(IOException ex) {
+					status = Status.ERROR;
+					json.put("message", ex.toString());
+				}
+				json.put("status", status.getId());
+			}
+			catch(JSONException ex) { // shouldn't happen
+				throw new IOException("Error writing the result", ex);
+			}
+			if(status != Status.ASSEMBLED) failed++;
+			output.write(json.toString());
+			output.write("\n");
+			output.flush();
+		}
+
+		return failed;
+	}
+
+	/**
+	 * Reads the whole contents of the given UTF-8 text file.
+	 * @param file The file to read.
+	 * @return The contents of the file.
+	 * @throws IOException If the file doesn't exist or an I/O error occurs.
+	 */
+	private static String readFile(File file) throws IOException {
+		StringBuilder contents = new StringBuilder((int)file.length());
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8"))) {
+			String line;
+			while((line = reader.readLine()) != null)
+				contents.append(line).append('\n');
+		}
+		return contents.toString();
+	}
+
+	/**
+	 * Task that runs a program in a new CPU.
+	 */
+	private class RunTask implements Callable<Result> {
+		/** The file with the code of the program. */
+		private final File program;
+		/** The loaded CPU that is copied to run the program on. */
+		private final CPU prototype;
+
+		/**
+		 * Creates the task.
+		 * @param program The file with the code of the program.
+		 * @param prototype The loaded CPU that is copied to run the program on.
+		 */
+		public RunTask(File program, CPU prototype) {
+			this.program = program;
+			this.prototype = prototype;
+		}
+
+		@Override
+		@SuppressWarnings("UseSpecificCatch")
+		public Result call() {
+			Result result = new Result(program.getPath(), prototype.getFile().getName());
+			long start = System.nanoTime();
+			try {
+				CPU cpu = prototype.copy();
+				if(ProgramImage.isProgramFile(program))
+					execute(cpu, ProgramImage.load(program, cpu), result);
+				else
+					execute(cpu, program, result);
+			}
+			catch(Exception ex) {
+				result.status = Status.ERROR;
+				result.message = ex.toString();
+			}
+			result.time = (System.nanoTime() - start) / 1000000L;
+			return result;
+		}
+	}
+
+	/**
+	 * The result of running a program on a CPU.
+	 */
+	public static class Result {
+		/** The path to the program file. */
+		private final String program;
+		/** The name of the CPU file. */
+		private final String cpu;
+		/** The outcome of the run. */
+		private Status status = Status.ERROR;
+		/** Error message, or <tt>null</tt>. */
+		private String message = null;
+		/** The number of executed cycles. */
+		private int cycles = 0;
+		/** The number of executed instructions. */
+		private int instructions = 0;
+		/** The final values of the registers. */
+		private int[] registers = new int[0];
+		/** The final values of the data memory. */
+		private int[] data = new int[0];
+		/** The time the run took, in milliseconds. */
+		private long time = 0;
+
+		/**
+		 * Creates an empty result.
+		 * @param program The path to the program file.
+		 * @param cpu The name of the CPU file.
+		 */
+		private Result(String program, String cpu) {
+			this.program = program;
+			this.cpu = cpu;
+		}
+
+		/**
+		 * Fills the statistics and final state from the given CPU.
+		 * @param c The CPU after the run.
+		 */
+		private void fill(CPU c) {
+			cycles = c.getNumberOfExecutedCycles();
+			instructions = c.getNumberOfExecutedInstructions();
+			registers = new int[c.getRegBank().getNumberOfRegisters()];
+			for(int i = 0; i < registers.length; i++)
+				registers[i] = c.getRegBank().getRegister(i).getValue();
+			if(c.hasDataMemory()) {
+				data = new int[c.getDataMemory().getMemorySize()];
+				for(int i = 0; i < data.length; i++)
+					data[i] = c.getDataMemory().getDataInIndex(i);
+			}
+		}
+
+		/**
+		 * Returns the path to the program file.
+		 * @return Path to the program file.
+		 */
+		public String getProgram() {
+			return program;
+		}
+
+		/**
+		 * Returns the name of the CPU file.
+		 * @return Name of the CPU file.
+		 */
+		public String getCPU() {
+			return cpu;
+		}
+
+		/**
+		 * Returns the outcome of the run.
+		 * @return Outcome of the run.
+		 */
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Returns the error message.
+		 * @return Error message, or <tt>null</tt>.
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		/**
+		 * Returns the number of executed cycles.
+		 * @return Number of executed cycles.
+		 */
+		public int getNumberOfExecutedCycles() {
+			return cycles;
+		}
+
+		/**
+		 * Returns the number of executed instructions.
+		 * @return Number of executed instructions.
+		 */
+		public int getNumberOfExecutedInstructions() {
+			return instructions;
+		}
+
+		/**
+		 * Returns the final values of the registers.
+		 * @return Values of the registers.
+		 */
+		public int[] getRegisters() {
+			return registers;
+		}
+
+		/**
+		 * Returns the final values of the data memory.
+		 * @return Values of the data memory (empty if the CPU has no data memory).
+		 */
+		public int[] getData() {
+			return data;
+		}
+
+		/**
+		 * Returns the time the run took.
+		 * @return Time, in milliseconds.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Returns the result as a JSON object.
+		 * @return JSON representation of the result.
+		 * @throws JSONException Never.
+		 */
+		public JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("program", program);
+			json.put("cpu", cpu);
+			json.put("status", status.getId());
+			if(message != null) json.put("message", message);
+			json.put("cycles", cycles);
+			json.put("instructions", instructions);
+			json.put("time", time);
+			json.put("registers", new JSONArray(registers));
+			json.put("data", new JSONArray(data));
+			return json;
+		}
+	}
+}
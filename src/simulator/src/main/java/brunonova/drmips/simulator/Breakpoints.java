@@ -0,0 +1,418 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The breakpoints of a CPU, checked by <tt>CPU.executeAll()</tt> after each cycle.
+ *
+ * <p>Each breakpoint is placed on the address of an instruction, and
+ * execution stops when the PC reaches that address. The addresses with
+ * breakpoints are kept in a bit set indexed by the instruction index
+ * (address / 4), so checking them takes the same time no matter how many
+ * breakpoints are set.</p>
+ *
+ * <p>A breakpoint can also have a condition on the value of a register or
+ * of a data memory position (like <tt>$t0 == 5</tt> or <tt>[0x10] &gt; 3</tt>),
+ * which is only evaluated when the PC reaches the breakpoint, and a hit
+ * count: execution only stops once the breakpoint was reached (with the
+ * condition true) that number of times. The hits are reset when a program is
+ * loaded or the execution is restarted.</p>
+ *
+ * @author Bruno Nova
+ */
+public class Breakpoints {
+	/** The indexes of the instructions with breakpoints (address / 4). */
+	private final BitSet indexes = new BitSet();
+	/** The breakpoints, indexed by the index of the instruction. */
+	private final Map<Integer, Breakpoint> breakpoints = new HashMap<>();
+
+	/**
+	 * Creates an empty set of breakpoints.
+	 */
+	public Breakpoints() { }
+
+	/**
+	 * Creates a copy of the given breakpoints (with zeroed hits).
+	 * @param other The breakpoints to copy.
+	 */
+	public Breakpoints(Breakpoints other) {
+		for(Breakpoint b: other.breakpoints.values())
+			add(b.getAddress(), b.getCondition(), b.getHitCount());
+	}
+
+	/**
+	 * Adds an unconditional breakpoint, replacing any other in the same address.
+	 * @param address The address of the instruction.
+	 * @return The new breakpoint.
+	 * @throws IllegalArgumentException If the address is negative or not a multiple of 4.
+	 */
+	public Breakpoint add(int address) {
+		return add(address, null, 1);
+	}
+
+	/**
+	 * Adds a breakpoint, replacing any other in the same address.
+	 * @param address The address of the instruction.
+	 * @param condition The condition, or <tt>null</tt> to always stop.
+	 * @param hitCount The number of times the breakpoint must be reached before stopping (at least 1).
+	 * @return The new breakpoint.
+	 * @throws IllegalArgumentException If the address is negative or not a multiple of 4, or the hit count isn't positive.
+	 */
+	public Breakpoint add(int address, Condition condition, int hitCount) {
+		if(address < 0 || address % (Data.DATA_SIZE / 8) != 0)
+			throw new IllegalArgumentException("The address must be positive and a multiple of 4!");
+		if(hitCount <= 0)
+			throw new IllegalArgumentException("The hit count must be positive!");
+
+		int index = address / (Data.DATA_SIZE / 8);
+		Breakpoint breakpoint = new Breakpoint(address, condition, hitCount);
+		breakpoints.put(index, breakpoint);
+		indexes.set(index);
+		return breakpoint;
+	}
+
+	/**
+	 * Removes the breakpoint in the given address, if any.
+	 * @param address The address of the instruction.
+	 * @return Whether a breakpoint was removed.
+	 */
+	public boolean remove(int address) {
+		if(!has(address)) return false;
+		int index = address / (Data.DATA_SIZE / 8);
+		breakpoints.remove(index);
+		indexes.clear(index);
+		return true;
+	}
+
+	/**
+	 * Adds an unconditional breakpoint in the given address, or removes it if there is one.
+	 * @param address The address of the instruction.
+	 * @return Whether the address now has a breakpoint.
+	 * @throws IllegalArgumentException If the address is negative or not a multiple of 4.
+	 */
+	public boolean toggle(int address) {
+		if(remove(address)) return false;
+		add(address);
+		return true;
+	}
+
+	/**
+	 * Returns whether there is a breakpoint in the given address.
+	 * @param address The address of the instruction.
+	 * @return <tt>True</tt> if there is a breakpoint.
+	 */
+	public boolean has(int address) {
+		return address >= 0 && address % (Data.DATA_SIZE / 8) == 0
+			&& indexes.get(address / (Data.DATA_SIZE / 8));
+	}
+
+	/**
+	 * Returns the breakpoint in the given address.
+	 * @param address The address of the instruction.
+	 * @return The breakpoint, or <tt>null</tt> if there isn't one.
+	 */
+	public Breakpoint get(int address) {
+		return has(address) ? breakpoints.get(address / (Data.DATA_SIZE / 8)) : null;
+	}
+
+	/**
+	 * Returns all the breakpoints, sorted by address.
+	 * @return List with the breakpoints.
+	 */
+	public List<Breakpoint> getAll() {
+		List<Breakpoint> list = new ArrayList<>(breakpoints.size());
+		for(int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1))
+			list.add(breakpoints.get(i));
+		return list;
+	}
+
+	/**
+	 * Returns the number of breakpoints.
+	 * @return Number of breakpoints.
+	 */
+	public int size() {
+		return breakpoints.size();
+	}
+
+	/**
+	 * Returns whether there are no breakpoints.
+	 * @return <tt>True</tt> if there are no breakpoints.
+	 */
+	public boolean isEmpty() {
+		return breakpoints.isEmpty();
+	}
+
+	/**
+	 * Removes all the breakpoints.
+	 */
+	public void clear() {
+		breakpoints.clear();
+		indexes.clear();
+	}
+
+	/**
+	 * Resets the hits of all the breakpoints.
+	 */
+	public void resetHits() {
+		for(Breakpoint b: breakpoints.values())
+			b.hits = 0;
+	}
+
+	/**
+	 * Checks whether the execution of the given CPU should stop, and counts the hit.
+	 * @param cpu The CPU.
+	 * @return <tt>True</tt> if the execution should stop.
+	 */
+	boolean check(CPU cpu) {
+		int address = cpu.getPC().getAddress().getValue();
+		if(address < 0 || address % (Data.DATA_SIZE / 8) != 0 || !indexes.get(address / (Data.DATA_SIZE / 8)))
+			return false;
+
+		Breakpoint breakpoint = breakpoints.get(address / (Data.DATA_SIZE / 8));
+		if(breakpoint.condition != null && !breakpoint.condition.test(cpu))
+			return false;
+		return ++breakpoint.hits >= breakpoint.hitCount;
+	}
+
+	/**
+	 * A breakpoint in the address of an instruction.
+	 */
+	public static class Breakpoint {
+		/** The address of the instruction. */
+		private final int address;
+		/** The condition, or <tt>null</tt> to always stop. */
+		private final Condition condition;
+		/** The number of times the breakpoint must be reached before stopping. */
+		private final int hitCount;
+		/** The number of times the breakpoint was reached (with the condition true). */
+		private int hits = 0;
+
+		/**
+		 * Creates the breakpoint.
+		 * @param address The address of the instruction.
+		 * @param condition The condition, or <tt>null</tt> to always stop.
+		 * @param hitCount The number of times the breakpoint must be reached before stopping.
+		 */
+		private Breakpoint(int address, Condition condition, int hitCount) {
+			this.address = address;
+			this.condition = condition;
+			this.hitCount = hitCount;
+		}
+
+		/**
+		 * Returns the address of the instruction.
+		 * @return The address of the breakpoint.
+		 */
+		public int getAddress() {
+			return address;
+		}
+
+		/**
+		 * Returns the condition of the breakpoint.
+		 * @return The condition, or <tt>null</tt> if it always stops.
+		 */
+		public Condition getCondition() {
+			return condition;
+		}
+
+		/**
+		 * Returns the number of times the breakpoint must be reached before stopping.
+		 * @return The hit count.
+		 */
+		public int getHitCount() {
+			return hitCount;
+		}
+
+		/**
+		 * Returns the number of times the breakpoint was reached (with the condition true).
+		 * @return The number of hits.
+		 */
+		public int getHits() {
+			return hits;
+		}
+
+		@Override
+		public String toString() {
+			String str = Integer.toString(address);
+			if(condition != null) str += " if " + condition;
+			if(hitCount > 1) str += " (" + hits + "/" + hitCount + ")";
+			return str;
+		}
+	}
+
+	/**
+	 * A condition on the value of a register or of a data memory position.
+	 *
+	 * <p>The register or memory position is resolved when the condition is
+	 * parsed, so testing it is just reading a value and comparing it with a
+	 * constant.</p>
+	 */
+	public static class Condition {
+		/** The pattern of a condition: the register or <tt>[address]</tt>, the operator and the value. */
+		private static final Pattern PATTERN = Pattern.compile("^\\s*(\\[[^\\]]*\\]|\\$?\\w+)\\s*(==|!=|<=|>=|<|>|=)\\s*([-+]?\\w+)\\s*$");
+
+		/** Comparison: equal. */
+		private static final int EQ = 0;
+		/** Comparison: not equal. */
+		private static final int NE = 1;
+		/** Comparison: less than. */
+		private static final int LT = 2;
+		/** Comparison: less than or equal. */
+		private static final int LE = 3;
+		/** Comparison: greater than. */
+		private static final int GT = 4;
+		/** Comparison: greater than or equal. */
+		private static final int GE = 5;
+		/** The symbols of the comparisons, by their constant. */
+		private static final String[] OPERATORS = {"==", "!=", "<", "<=", ">", ">="};
+
+		/** Whether the condition is on a data memory position (or on a register). */
+		private final boolean memory;
+		/** The index of the register or of the memory position. */
+		private final int index;
+		/** The comparison (one of the constants above). */
+		private final int comparison;
+		/** The value to compare with. */
+		private final int value;
+		/** The register or memory position as entered by the user. */
+		private final String target;
+
+		/**
+		 * Creates the condition.
+		 * @param memory Whether the condition is on a data memory position.
+		 * @param index The index of the register or of the memory position.
+		 * @param comparison The comparison.
+		 * @param value The value to compare with.
+		 * @param target The register or memory position as entered by the user.
+		 */
+		private Condition(boolean memory, int index, int comparison, int value, String target) {
+			this.memory = memory;
+			this.index = index;
+			this.comparison = comparison;
+			this.value = value;
+			this.target = target;
+		}
+
+		/**
+		 * Parses a condition for the given CPU.
+		 * <p>The condition has the format <tt>&lt;register&gt; &lt;operator&gt; &lt;value&gt;</tt>
+		 * or <tt>[&lt;address&gt;] &lt;operator&gt; &lt;value&gt;</tt>, where the register is
+		 * written like in the code (<tt>$t0</tt>, <tt>$8</tt>), the address is of a
+		 * data memory position, the operator is one of <tt>== != &lt; &lt;= &gt; &gt;=</tt>
+		 * and the values can be decimal or hexadecimal (<tt>0x</tt> prefix).</p>
+		 * @param cpu The CPU.
+		 * @param text The condition.
+		 * @return The parsed condition.
+		 * @throws IllegalArgumentException If the condition is invalid.
+		 */
+		public static Condition parse(CPU cpu, String text) throws IllegalArgumentException {
+			Matcher matcher = PATTERN.matcher(text);
+			if(!matcher.matches())
+				throw new IllegalArgumentException("Invalid condition: " + text);
+			String target = matcher.group(1);
+			String operator = matcher.group(2);
+			int value = parseValue(matcher.group(3));
+
+			boolean memory = target.startsWith("[");
+			int index = cpu.getTargetIndex(target);
+
+			int comparison = operator.equals("=") ? EQ : -1;
+			for(int i = 0; i < OPERATORS.length && comparison < 0; i++) {
+				if(OPERATORS[i].equals(operator))
+					comparison = i;
+			}
+			return new Condition(memory, index, comparison, value, target);
+		}
+
+		/**
+		 * Parses a decimal or hexadecimal value.
+		 * <p>Positive values up to <tt>0xFFFFFFFF</tt> are accepted (as unsigned),
+		 * and negative values down to <tt>-0x80000000</tt>.</p>
+		 * @param value The value.
+		 * @return The parsed value.
+		 * @throws NumberFormatException If the value is invalid or out of range.
+		 */
+		static int parseValue(String value) throws NumberFormatException {
+			String v = value.toLowerCase();
+			boolean negative = v.startsWith("-");
+			if(negative || v.startsWith("+")) v = v.substring(1);
+			long l = v.startsWith("0x") ? Long.parseLong(v.substring(2), 16) : Long.parseLong(v);
+			if(l < 0 || v.contains("+")) // Long.parseLong() accepts a second sign
+				throw new NumberFormatException("Invalid value: " + value);
+			if(l > (negative ? 0x80000000L : 0xFFFFFFFFL))
+				throw new NumberFormatException("Value out of range: " + value);
+			return (int)(negative ? -l : l);
+		}
+
+		/**
+		 * Returns whether the condition is on a data memory position (or on a register).
+		 * @return <tt>True</tt> if on a data memory position.
+		 */
+		public boolean isOnMemory() {
+			return memory;
+		}
+
+		/**
+		 * Returns the index of the register or of the data memory position.
+		 * @return The index of the register or memory position.
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * Returns the value the register or memory position is compared with.
+		 * @return The value.
+		 */
+		public int getValue() {
+			return value;
+		}
+
+		/**
+		 * Tests the condition in the given CPU.
+		 * @param cpu The CPU.
+		 * @return <tt>True</tt> if the condition is true.
+		 */
+		public boolean test(CPU cpu) {
+			int current = memory ? cpu.getDataMemory().getDataInIndex(index)
+			                     : cpu.getRegBank().getRegister(index).getValue();
+			switch(comparison) {
+				case EQ: return current == value;
+				case NE: return current != value;
+				case LT: return current < value;
+				case LE: return current <= value;
+				case GT: return current > value;
+				default: return current >= value;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return target + " " + OPERATORS[comparison] + " " + value;
+		}
+	}
+}
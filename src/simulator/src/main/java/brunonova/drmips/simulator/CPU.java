@@ -27,11 +27,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.lang.reflect.InvocationTargetException;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -63,9 +62,12 @@ public class CPU {
 	public static final String LATENCY_UNIT = "ps";
 	/** The exponent (e), that multiplied by 10 and the latency gives the real latency in seconds (ps * 10 ^ e). */
 	public static final int LATENCY_EXPONENT = -12;
-	/** The number of clock cycles executed in <tt>executeAll()</tt> after which it throws an exception. */
+	/** The number of clock cycles executed in <tt>executeAll()</tt> after which it throws an exception (and the default limit of <tt>run()</tt>). */
 	public static final int EXECUTE_ALL_LIMIT_CYCLES = 80000;
 
+	/** The reasons why a run (see <tt>run()</tt>) stopped. */
+	public enum RunStatus {FINISHED, BREAKPOINT, WATCHPOINT, CYCLE_LIMIT, TIMEOUT, CANCELLED}
+
 	/** The file of the CPU. */
 	private File file = null;
 	/** The components that the CPU contains. */
@@ -74,6 +76,8 @@ public class CPU {
 	private List<Component> synchronousComponents;
 	/** The names of the registers (without the prefix). */
 	private List<String> registerNames = null;
+	/** The indexes of the registers by their usual names (like <tt>$t0</tt> and <tt>$8</tt>), shared with the copies. */
+	private Map<String, Integer> registerIndexes = null;
 	/** The loaded instruction set. */
 	private InstructionSet instructionSet = null;
 	/** The assembler for this CPU. */
@@ -125,8 +129,14 @@ public class CPU {
 	private int predictWrong = 0;
 	/** Whether the latencies and critical path should depend on the current instruction. */
 	private boolean performanceInstructionDependent = false;
-	/** Breakpoint addr . */
-	private int breakpointAddr = -1;
+	/** The breakpoints checked by <tt>executeAll()</tt>. */
+	private Breakpoints breakpoints = new Breakpoints();
+	/** The parsed definition of the CPU, shared with its copies. */
+	private Prototype prototype = null;
+	/** All the outputs of the components, in the order their values are copied to the snapshots (created on the first snapshot). */
+	private Output[] snapshotOutputs = null;
+	/** The positions of the outputs in <tt>snapshotOutputs</tt>. */
+	private Map<Output, Integer> snapshotOutputIndexes = null;
 
 	/**
 	 * Constructor that should by called by other constructors.
@@ -159,46 +169,234 @@ public class CPU {
 	 * @throws NumberFormatException If an opcode is not a number.
 	 */
 	public static CPU createFromJSONFile(String path) throws IOException, JSONException, InvalidCPUException, ArrayIndexOutOfBoundsException, InvalidInstructionSetException, NumberFormatException {
-		CPU cpu = new CPU(new File(path));
-		BufferedReader reader = null;
-		String file = "", line, parentPath = ".";
+		File file = new File(path);
+		String parentPath = file.getAbsoluteFile().getParentFile().getAbsolutePath();
 
-		// Read file to String
-		try {
-			File f = new File(path);
-			parentPath = f.getParentFile().getAbsolutePath();
-			reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF8"));
-			while((line = reader.readLine()) != null)
-				file += line + "\n";
-			reader.close();
-		}
-		catch(IOException e) {
-			throw e;
+		// Parse the JSON file while it is read
+		try(JSONStreamReader reader = new JSONStreamReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8")))) {
+			return createFromJSON(file, reader, parentPath);
 		}
-		finally {
-			if(reader != null) reader.close();
+	}
+
+	/**
+	 * Creates a CPU from a JSON stream, in a single pass.
+	 * <p>Each component is created as soon as it is read, so the whole JSON
+	 * tree is never built. Errors in a component or wire include its line.</p>
+	 * @param file The file of the CPU.
+	 * @param reader The stream with the contents of the CPU file.
+	 * @param parentPath Path to the cpu file's parent directory.
+	 * @return CPU created from the stream.
+	 * @throws IOException If the instruction set file doesn't exist or an I/O error occurs.
+	 * @throws JSONException If the JSON file is malformed.
+	 * @throws InvalidCPUException If the CPU is invalid or incomplete
+	 * @throws ArrayIndexOutOfBoundsException If an array index is invalid somewhere (like an invalid register).
+	 * @throws InvalidInstructionSetException If the instruction set is invalid.
+	 * @throws NumberFormatException If an opcode is not a number.
+	 */
+	private static CPU createFromJSON(File file, JSONStreamReader reader, String parentPath) throws IOException, JSONException, InvalidCPUException, ArrayIndexOutOfBoundsException, InvalidInstructionSetException, NumberFormatException {
+		CPU cpu = new CPU(file);
+		cpu.prototype = new Prototype();
+		JSONObject json;
+		JSONArray regNames = null;
+		String instructions = null, id;
+		boolean hasComponents = false, hasWires = false;
+		int line;
+
+		reader.beginObject();
+		while(reader.hasNext()) {
+			switch(reader.nextName()) {
+				case "components":
+					hasComponents = true;
+					reader.beginObject();
+					while(reader.hasNext()) {
+						id = reader.nextName();
+						line = reader.getLine();
+						json = reader.nextObject();
+						try {
+							parseJSONComponent(cpu, id, json, parentPath);
+						} catch(InvalidCPUException ex) {
+							throw new InvalidCPUException(ex.getMessage() + " (line " + line + ")", ex);
+						} catch(JSONException ex) {
+							JSONException e = new JSONException(ex.getMessage() + " (line " + line + ")");
+							e.initCause(ex);
+							throw e;
+						}
+					}
+					reader.endObject();
+					break;
+				case "wires":
+					hasWires = true;
+					reader.beginArray();
+					while(reader.hasNext()) {
+						line = reader.getLine();
+						cpu.prototype.wires.add(parseJSONWire(reader.nextObject(), line));
+					}
+					reader.endArray();
+					break;
+				case "reg_names":
+					regNames = reader.nextArray();
+					break;
+				case "instructions":
+					instructions = reader.nextString();
+					break;
+				default: // ignore anything else (like comments)
+					reader.skipValue();
+			}
 		}
+		reader.endObject();
 
-		// Parse the JSON file
-		JSONObject json = new JSONObject(file);
+		if(!hasComponents) throw new JSONException("JSONObject[\"components\"] not found.");
+		if(!hasWires) throw new JSONException("JSONObject[\"wires\"] not found.");
+		if(instructions == null) throw new JSONException("JSONObject[\"instructions\"] not found.");
+		finishLoading(cpu, regNames, null, parentPath + File.separator + instructions);
+		return cpu;
+	}
+
+	/**
+	 * Creates a CPU from an already parsed JSON object.
+	 * @param file The file of the CPU.
+	 * @param json The parsed contents of the CPU file.
+	 * @param parentPath Path to the cpu file's parent directory.
+	 * @param instructionSet The already loaded instruction set of the CPU, or
+	 *                       <tt>null</tt> to load it from the file referenced in the JSON object.
+	 * @return CPU created from the JSON object.
+	 * @throws IOException If the instruction set file doesn't exist or an I/O error occurs.
+	 * @throws JSONException If the JSON object is malformed.
+	 * @throws InvalidCPUException If the CPU is invalid or incomplete
+	 * @throws ArrayIndexOutOfBoundsException If an array index is invalid somewhere (like an invalid register).
+	 * @throws InvalidInstructionSetException If the instruction set is invalid.
+	 * @throws NumberFormatException If an opcode is not a number.
+	 */
+	static CPU createFromJSON(File file, JSONObject json, String parentPath, InstructionSet instructionSet) throws IOException, JSONException, InvalidCPUException, ArrayIndexOutOfBoundsException, InvalidInstructionSetException, NumberFormatException {
+		CPU cpu = new CPU(file);
+		cpu.prototype = new Prototype();
 		parseJSONComponents(cpu, json.getJSONObject("components"), parentPath);
-		cpu.checkRequiredComponents();
-		if(cpu.hasForwardingUnit()) cpu.forwardingUnit.setRegbank(cpu.getRegBank());
-		if(cpu.hasHazardDetectionUnit()) cpu.hazardDetectionUnit.setRegbank(cpu.getRegBank());
-		if(json.has("reg_names")) parseJSONRegNames(cpu, json.getJSONArray("reg_names"));
-		cpu.instructionSet = new InstructionSet(parentPath + File.separator + json.getString("instructions"));
-		cpu.controlUnit.setControl(cpu.getInstructionSet().getControl(), cpu.getInstructionSet().getOpCodeSize());
-		if(cpu.hasALUControl()) cpu.aluControl.setControlALU(cpu.getInstructionSet().getControlALU());
-		if(cpu.hasALU()) cpu.alu.setControlALU(cpu.getInstructionSet().getControlALU());
 		parseJSONWires(cpu, json.getJSONArray("wires"));
-		cpu.determineControlPath();
+		finishLoading(cpu, json.optJSONArray("reg_names"), instructionSet,
+			instructionSet == null ? parentPath + File.separator + json.getString("instructions") : null);
+		return cpu;
+	}
 
-		for(Component c: cpu.getComponents()) // "execute" all components (initialize all outputs/inputs)
-			c.execute();
+	/**
+	 * Finishes the creation of a CPU whose components were already created.
+	 * @param cpu The CPU.
+	 * @param regNames The names of the registers, or <tt>null</tt> if not specified.
+	 * @param instructionSet The already loaded instruction set of the CPU, or
+	 *                       <tt>null</tt> to load it from <tt>instructionSetPath</tt>.
+	 * @param instructionSetPath The path to the instruction set file.
+	 * @throws IOException If the instruction set file doesn't exist or an I/O error occurs.
+	 * @throws JSONException If the JSON file is malformed.
+	 * @throws InvalidCPUException If the CPU is invalid or incomplete
+	 * @throws ArrayIndexOutOfBoundsException If an array index is invalid somewhere (like an invalid register).
+	 * @throws InvalidInstructionSetException If the instruction set is invalid.
+	 * @throws NumberFormatException If an opcode is not a number.
+	 */
+	private static void finishLoading(CPU cpu, JSONArray regNames, InstructionSet instructionSet, String instructionSetPath) throws IOException, JSONException, InvalidCPUException, ArrayIndexOutOfBoundsException, InvalidInstructionSetException, NumberFormatException {
+		cpu.checkRequiredComponents();
+		cpu.setUnitsRegBank();
+		if(regNames != null) parseJSONRegNames(cpu, regNames);
+		cpu.prototype.registerNames = cpu.registerNames;
+		cpu.indexRegisters();
+		cpu.prototype.registerIndexes = cpu.registerIndexes;
+		if(instructionSet == null)
+			instructionSet = new InstructionSet(instructionSetPath);
+		cpu.setInstructionSet(instructionSet);
+		cpu.prototype.instructionSet = cpu.instructionSet;
+		for(WireDefinition def: cpu.prototype.wires)
+			def.connect(cpu);
+		cpu.finishCreation();
+	}
+
+	/**
+	 * Creates a new CPU equal to this one, without reading or parsing any file.
+	 * <p>The components are re-created from the definitions parsed when this
+	 * CPU was loaded and are connected in the same way. The latencies of the
+	 * components, the performance mode and the breakpoint are copied from this
+	 * CPU, but the program, registers, memory and statistics start from zero,
+	 * as in a freshly loaded CPU. The instruction set and its control tables
+	 * are read-only and are shared with the copy.</p>
+	 * <p>This CPU is only read, so several copies can be created at the same
+	 * time from different threads, as long as this CPU isn't being modified.</p>
+	 * @return The new CPU.
+	 * @throws JSONException If a component fails to be created (shouldn't happen).
+	 * @throws InvalidCPUException If a component fails to be created (shouldn't happen).
+	 */
+	public CPU copy() throws JSONException, InvalidCPUException {
+		CPU cpu = new CPU(file);
+		cpu.prototype = prototype;
+		for(ComponentDefinition def: prototype.components)
+			cpu.addComponent(def.newInstance());
+		cpu.checkRequiredComponents();
+		cpu.setUnitsRegBank();
+		cpu.registerNames = prototype.registerNames;
+		cpu.registerIndexes = prototype.registerIndexes;
+		cpu.setInstructionSet(prototype.instructionSet);
+		for(WireDefinition def: prototype.wires)
+			def.connect(cpu);
+
+		for(Component c: components.values()) // keep the latencies changed by the user
+			cpu.getComponent(c.getId()).setLatency(c.getLatency());
+		cpu.performanceInstructionDependent = performanceInstructionDependent;
+		cpu.breakpoints = new Breakpoints(breakpoints);
+		cpu.getRegBank().getWatchpoints().copyFrom(getRegBank().getWatchpoints());
+		if(hasDataMemory())
+			cpu.getDataMemory().getWatchpoints().copyFrom(getDataMemory().getWatchpoints());
+		cpu.finishCreation();
+		return cpu;
+	}
 
-		cpu.calculatePerformance();
+	/**
+	 * Creates the table of the indexes of the registers by their usual names.
+	 * <p>The table has the names in lower case with the prefix, both the
+	 * numeric (like <tt>$8</tt>) and the named ones (like <tt>$t0</tt>), so
+	 * that the register arguments in the code are found with a single lookup.</p>
+	 */
+	private void indexRegisters() {
+		int count = getRegBank().getNumberOfRegisters();
+		Map<String, Integer> indexes = new HashMap<>(count * 4);
+		for(int i = 0; i < count; i++)
+			indexes.put(REGISTER_PREFIX + "" + i, i);
+		if(registerNames != null) {
+			for(int i = 0; i < registerNames.size(); i++) {
+				String name = REGISTER_PREFIX + registerNames.get(i);
+				if(!indexes.containsKey(name))
+					indexes.put(name, i);
+			}
+		}
+		registerIndexes = Collections.unmodifiableMap(indexes);
+	}
 
-		return cpu;
+	/**
+	 * Gives the forwarding and hazard detection units (if any) access to the register bank.
+	 * @throws InvalidCPUException If the register bank is incompatible with the units.
+	 */
+	private void setUnitsRegBank() throws InvalidCPUException {
+		if(hasForwardingUnit()) forwardingUnit.setRegbank(getRegBank());
+		if(hasHazardDetectionUnit()) hazardDetectionUnit.setRegbank(getRegBank());
+	}
+
+	/**
+	 * Sets the instruction set of the CPU and the control tables of the units that use them.
+	 * @param instructionSet The loaded instruction set.
+	 * @throws InvalidCPUException If the instruction set is incompatible with the units.
+	 */
+	private void setInstructionSet(InstructionSet instructionSet) throws InvalidCPUException {
+		this.instructionSet = instructionSet;
+		controlUnit.setControl(instructionSet.getControl(), instructionSet.getOpCodeSize());
+		if(hasALUControl()) aluControl.setControlALU(instructionSet.getControlALU());
+		if(hasALU()) alu.setControlALU(instructionSet.getControlALU());
+	}
+
+	/**
+	 * Finishes the creation of the CPU, after all components are connected.
+	 */
+	private void finishCreation() {
+		determineControlPath();
+
+		for(Component c: getComponents()) // "execute" all components (initialize all outputs/inputs)
+			c.execute();
+
+		calculatePerformance();
 	}
 
 	private void checkRequiredComponents() throws InvalidCPUException {
@@ -464,6 +662,7 @@ public class CPU {
 		stalls = 0;
 		branches = 0;
 		predictWrong = 0;
+		breakpoints.resetHits();
 	}
 
 	/**
@@ -595,6 +794,34 @@ public class CPU {
 		getAssembler().assembleCode(code);
 	}
 
+	/**
+	 * Assembles the code in the given file and updates the CPU's instruction and data memory.
+	 * <p>The file is read one line at a time, without reading it to a string first.</p>
+	 * @param file The file with the code (in UTF-8).
+	 * @throws IOException If the file doesn't exist or an I/O error occurs.
+	 * @throws SyntaxErrorException If the code has a syntax error.
+	 */
+	public void assembleCode(File file) throws IOException, SyntaxErrorException {
+		load(getAssembler().assembleImage(file));
+	}
+
+	/**
+	 * Loads the given program into the CPU's instruction and data memory.
+	 * <p>The values of the data segment are all written to the data memory
+	 * before being propagated (once) to the rest of the circuit.</p>
+	 * <p>The image should have been assembled for a CPU with the same
+	 * instruction set and registers.</p>
+	 * @param image The assembled program.
+	 */
+	public void load(ProgramImage image) {
+		if(hasDataMemory() && image.getNumberOfDataWords() > 0) {
+			for(int i = 0; i < image.getNumberOfDataWords(); i++)
+				dataMemory.setData(image.getDataAddress(i), image.getDataValue(i), false);
+			dataMemory.execute();
+		}
+		loadProgram(image.getInstructions());
+	}
+
 	/**
 	 * Loads the given assembled instructions into the instruction memory and
 	 * starts the simulation.
@@ -629,30 +856,205 @@ public class CPU {
 	}
 
 	/**
-	 * Executes the currently loaded program until the end.
-	 * Or until we hit the breakpoint
+	 * Executes the currently loaded program until the end, until a breakpoint
+	 * is hit or until a watchpoint is triggered.
+	 * <p>When a watchpoint is triggered, the execution stops at the end of that cycle.</p>
 	 * @throws InfiniteLoopException If the <tt>EXECUTE_ALL_LIMIT_CYCLES</tt> limit has been reached (possible infinite loop).
 	 */
 	public void executeAll() throws InfiniteLoopException {
-		int cycles = 0;
+		RunOptions options = new RunOptions();
+		options.setMaxCycles(EXECUTE_ALL_LIMIT_CYCLES + 1);
+		if(run(options) == RunStatus.CYCLE_LIMIT)
+			throw new InfiniteLoopException();
+	}
+
+	/**
+	 * Executes the currently loaded program until the end or until one of the
+	 * limits of the given options is reached.
+	 * <p>When a watchpoint is triggered, the execution stops at the end of that
+	 * cycle. The time limits and the cancellation token are checked every
+	 * <tt>options.getCheckInterval()</tt> cycles.</p>
+	 * @param options The limits and callbacks of the run.
+	 * @return The reason why the run stopped.
+	 */
+	public RunStatus run(RunOptions options) {
+		int maxCycles = options.getMaxCycles();
+		int checkInterval = options.getCheckInterval();
+		RunOptions.CancellationToken token = options.getCancellationToken();
+		RunOptions.ProgressListener listener = options.getProgressListener();
+		long deadline = options.getDeadline();
+		long end = options.getTimeout() > 0 ? System.nanoTime() + options.getTimeout() * 1000000L : 0;
+		boolean periodicChecks = token != null || listener != null || deadline > 0 || end != 0;
+		boolean checkBreakpoints = options.isStopAtBreakpoints() && !breakpoints.isEmpty();
+		boolean checkWatchpoints = options.isStopAtBreakpoints() && hasWatchpoints();
+		if(checkWatchpoints) resetTriggeredWatchpoints();
+
+		int cycles = 0, nextCheck = 0;
 		while(!isProgramFinished()) {
-			if(cycles++ > EXECUTE_ALL_LIMIT_CYCLES) // prevent possible infinite cycles
-				throw new InfiniteLoopException();
+			if(cycles >= maxCycles)
+				return RunStatus.CYCLE_LIMIT;
+			if(periodicChecks && cycles == nextCheck) {
+				nextCheck += checkInterval;
+				if(token != null && token.isCancelled())
+					return RunStatus.CANCELLED;
+				if((end != 0 && System.nanoTime() - end >= 0) || (deadline > 0 && System.currentTimeMillis() >= deadline))
+					return RunStatus.TIMEOUT;
+				if(listener != null && cycles > 0)
+					listener.progress(this, cycles);
+			}
+
 			executeCycle();
+			cycles++;
+			if(checkBreakpoints && breakpoints.check(this))
+				return RunStatus.BREAKPOINT;
+			if(checkWatchpoints && isWatchpointTriggered())
+				return RunStatus.WATCHPOINT;
+		}
+		return RunStatus.FINISHED;
+	}
 
-			// check if we have hit the breakpoint
-			if (getPC().getAddress().getValue() == breakpointAddr)
-			{
-				break;
-			}
+	/**
+	 * Returns whether there are watchpoints on the registers or on the data memory.
+	 * @return <tt>True</tt> if there are watchpoints.
+	 */
+	public boolean hasWatchpoints() {
+		return !regbank.getWatchpoints().isEmpty()
+			|| (hasDataMemory() && !dataMemory.getWatchpoints().isEmpty());
+	}
+
+	/**
+	 * Returns whether a watchpoint on the registers or on the data memory was
+	 * triggered since the last call to <tt>resetTriggeredWatchpoints()</tt>.
+	 * @return <tt>True</tt> if a watchpoint was triggered.
+	 */
+	public boolean isWatchpointTriggered() {
+		return regbank.getWatchpoints().isTriggered()
+			|| (hasDataMemory() && dataMemory.getWatchpoints().isTriggered());
+	}
+
+	/**
+	 * Forgets the triggered watchpoints on the registers and on the data memory.
+	 */
+	public void resetTriggeredWatchpoints() {
+		regbank.getWatchpoints().resetTriggered();
+		if(hasDataMemory()) dataMemory.getWatchpoints().resetTriggered();
+	}
+
+	/**
+	 * Returns an immutable copy of the current state of the CPU.
+	 * <p>Call this method in the thread that executes the simulation, between
+	 * cycles (like in a <tt>RunOptions.ProgressListener</tt>). The snapshot can
+	 * then be read by other threads while the simulation continues.</p>
+	 * @return The snapshot of the CPU.
+	 */
+	public CPUSnapshot snapshot() {
+		if(snapshotOutputs == null) {
+			List<Output> outputs = new ArrayList<>();
+			for(Component c: getComponents())
+				outputs.addAll(c.getOutputs());
+			Map<Output, Integer> indexes = new HashMap<>(outputs.size() * 2);
+			for(int i = 0; i < outputs.size(); i++)
+				indexes.put(outputs.get(i), i);
+			snapshotOutputIndexes = Collections.unmodifiableMap(indexes);
+			snapshotOutputs = outputs.toArray(new Output[outputs.size()]);
 		}
+		return new CPUSnapshot(this, snapshotOutputs, snapshotOutputIndexes);
 	}
 
 	/**
-	 * Sets the breakpoint address.
+	 * Adds a watchpoint on a register or on a data memory position, replacing any other in the same place.
+	 * @param target The register, written like in the code (<tt>$t0</tt>, <tt>$8</tt>), or the
+	 *               address of a data memory position between brackets (<tt>[0x10]</tt>).
+	 * @param type The type of watchpoint (<tt>READ</tt> is only supported on the data memory).
+	 * @param value The value of a <tt>VALUE</tt> watchpoint (ignored for the other types).
+	 * @return The new watchpoint.
+	 * @throws IllegalArgumentException If the target is invalid or the type isn't supported there.
+	 */
+	public Watchpoints.Watchpoint addWatchpoint(String target, Watchpoints.Type type, int value) throws IllegalArgumentException {
+		target = target.trim();
+		boolean memory = target.startsWith("[");
+		int index = getTargetIndex(target);
+		(memory ? dataMemory.getWatchpoints() : regbank.getWatchpoints()).add(index, type, value);
+		return createWatchpoint(memory, index);
+	}
+
+	/**
+	 * Removes the given watchpoint, if it still exists.
+	 * @param watchpoint The watchpoint (returned by <tt>addWatchpoint()</tt> or <tt>getAllWatchpoints()</tt>).
+	 * @return Whether a watchpoint was removed.
+	 */
+	public boolean removeWatchpoint(Watchpoints.Watchpoint watchpoint) {
+		if(watchpoint.isOnMemory())
+			return hasDataMemory() && dataMemory.getWatchpoints().remove(watchpoint.getIndex());
+		else
+			return regbank.getWatchpoints().remove(watchpoint.getIndex());
+	}
+
+	/**
+	 * Removes all the watchpoints on the registers and on the data memory.
+	 */
+	public void clearWatchpoints() {
+		regbank.getWatchpoints().clear();
+		if(hasDataMemory()) dataMemory.getWatchpoints().clear();
+	}
+
+	/**
+	 * Returns all the watchpoints, on the registers first and then on the data memory.
+	 * @return List with the watchpoints.
+	 */
+	public List<Watchpoints.Watchpoint> getAllWatchpoints() {
+		List<Watchpoints.Watchpoint> list = new ArrayList<>();
+		for(int index: regbank.getWatchpoints().getIndexes())
+			list.add(createWatchpoint(false, index));
+		if(hasDataMemory()) {
+			for(int index: dataMemory.getWatchpoints().getIndexes())
+				list.add(createWatchpoint(true, index));
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the watchpoint that was triggered since the last call to <tt>resetTriggeredWatchpoints()</tt>.
+	 * <p>Use it to tell the user why a run stopped with <tt>RunStatus.WATCHPOINT</tt>.</p>
+	 * @return The triggered watchpoint, or <tt>null</tt> if none was triggered.
+	 */
+	public Watchpoints.Watchpoint getTriggeredWatchpoint() {
+		if(regbank.getWatchpoints().isTriggered())
+			return createWatchpoint(false, regbank.getWatchpoints().getTriggered());
+		if(hasDataMemory() && dataMemory.getWatchpoints().isTriggered())
+			return createWatchpoint(true, dataMemory.getWatchpoints().getTriggered());
+		return null;
+	}
+
+	/**
+	 * Returns the description of the watchpoint in the given register or data memory position.
+	 * @param memory Whether the watchpoint is on the data memory (or on a register).
+	 * @param index The index of the register or of the memory position.
+	 * @return The watchpoint.
+	 */
+	private Watchpoints.Watchpoint createWatchpoint(boolean memory, int index) {
+		Watchpoints watchpoints = memory ? dataMemory.getWatchpoints() : regbank.getWatchpoints();
+		String target = memory ? ("[" + index * (Data.DATA_SIZE / 8) + "]") : getRegisterName(index);
+		return new Watchpoints.Watchpoint(memory, index, watchpoints.getType(index), watchpoints.getValue(index), target);
+	}
+
+	/**
+	 * Returns the breakpoints checked by <tt>executeAll()</tt>.
+	 * <p>Add and remove breakpoints in the returned object.</p>
+	 * @return The breakpoints of the CPU.
+	 */
+	public Breakpoints getBreakpoints() {
+		return breakpoints;
+	}
+
+	/**
+	 * Replaces the breakpoints with a single unconditional breakpoint.
+	 * @param addr The address of the breakpoint, or a negative value to remove all breakpoints.
+	 * @throws IllegalArgumentException If the address is not a multiple of 4.
 	 */
 	public void setBreakpointAddr(int addr) {
-		breakpointAddr = addr;
+		breakpoints.clear();
+		if(addr >= 0) breakpoints.add(addr);
 	}
 
 	/**
@@ -1122,6 +1524,11 @@ public class CPU {
 	 * @return The index of the register, or -1 if it doesn't exist.
 	 */
 	public int getRegisterIndex(String name) {
+		if(registerIndexes != null) { // usual names, without creating new strings
+			Integer index = registerIndexes.get(name);
+			if(index != null) return index;
+		}
+
 		name = name.trim().toLowerCase();
 		if(name.length() < 2 || name.charAt(0) != REGISTER_PREFIX)
 			return -1;
@@ -1143,6 +1550,31 @@ public class CPU {
 		}
 	}
 
+	/**
+	 * Returns the index of a register or of a data memory position.
+	 * @param target The register, written like in the code (<tt>$t0</tt>, <tt>$8</tt>, or without the
+	 *               <tt>$</tt>), or the address of a data memory position between brackets (<tt>[0x10]</tt>).
+	 * @return The index of the register or of the memory position.
+	 * @throws IllegalArgumentException If the register or the address is invalid.
+	 */
+	int getTargetIndex(String target) throws IllegalArgumentException {
+		int index;
+		if(target.startsWith("[")) {
+			if(!target.endsWith("]"))
+				throw new IllegalArgumentException("Invalid data memory address: " + target);
+			int address = Breakpoints.Condition.parseValue(target.substring(1, target.length() - 1).trim());
+			index = hasDataMemory() && address % (Data.DATA_SIZE / 8) == 0 ? dataMemory.getIndexOfAddress(address) : -1;
+			if(index < 0)
+				throw new IllegalArgumentException("Invalid data memory address: " + address);
+		}
+		else {
+			index = getRegisterIndex(target.startsWith("$") ? target : ("$" + target));
+			if(index < 0)
+				throw new IllegalArgumentException("Invalid register: " + target);
+		}
+		return index;
+	}
+
 	/**
 	 * Returns the name of the register with the specified index/address.
 	 * @param index The index of the register.
@@ -1156,6 +1588,14 @@ public class CPU {
 			return REGISTER_PREFIX + "" + index;
 	}
 
+	/**
+	 * Returns the names of the registers, without prefix.
+	 * @return The names of the registers (unmodifiable), or <tt>null</tt> if they weren't specified.
+	 */
+	List<String> getRegisterNames() {
+		return registerNames;
+	}
+
 	/**
 	 * Returns whether a register with the given name exists.
 	 * @param name Name of the register (with prefix).
@@ -1182,103 +1622,69 @@ public class CPU {
 	 * @throws InvalidCPUException If the CPU is invalid or incomplete.
 	 */
 	private static void parseJSONComponents(CPU cpu, JSONObject components, String parentPath) throws JSONException, InvalidCPUException {
-		JSONObject json;
-		String type, id;
-		Class cl;
-		Component comp;
-
-		// ClassLoader to load the built-in components
-		ClassLoader loader = CPU.class.getClassLoader();
-
-		// ClassLoader to load custom components
-		File parentDir = new File(parentPath + File.separator);
-		ClassLoader customLoader;
-		try {
-			URL[] urls = new URL[] {parentDir.toURI().toURL()};
-			customLoader = new URLClassLoader(urls);
-		} catch(Exception ex) {
-			customLoader = null;
-		}
+		String id;
 
 		// Parse the components
 		Iterator<String> i = components.keys();
 		while(i.hasNext()) {
 			id = i.next();
-			json = components.getJSONObject(id);
-			type = json.getString("type");
-
-			// Load the class with the name specified by "type"
-			try {
-				// Search in the built-in classes first
-				cl = loader.loadClass("brunonova.drmips.simulator.components." + type);
-			} catch(ClassNotFoundException ex) {
-				// Search in the custom components second
-				if(customLoader != null) {
-					try {
-						cl = customLoader.loadClass(type);
-					} catch(ClassNotFoundException ex2) {
-						ex2.initCause(ex);
-						throw new InvalidCPUException("Unknown component type " + type + "!", ex2);
-					}
-				} else {
-					throw new InvalidCPUException("Unknown component type " + type + "!", ex);
-				}
-			}
-
-			// Create the component with the (String, JSONObject) contructor
-			// and add it to the CPU
-			try {
-				comp = (Component)cl.asSubclass(Component.class)
-				                    .getConstructor(String.class, JSONObject.class)
-				                    .newInstance(id, json);
-				cpu.addComponent(comp);
-			} catch(ClassCastException ex) {
-				throw new InvalidCPUException("The " + type + " class is not a subclass of Component!", ex);
-			} catch(NoSuchMethodException ex) {
-				throw new InvalidCPUException("The " + type + " class is missing the (String, JSONObject) constructor!", ex);
-			} catch(InvocationTargetException ex) {
-				Throwable target = ex.getCause();
-				if(target instanceof InvalidCPUException) {
-					throw (InvalidCPUException)target;
-				} else if(target instanceof JSONException) {
-					throw (JSONException)target;
-				} else {
-					throw new InvalidCPUException("Failed to create the component " + id + "!", ex);
-				}
-			} catch(InstantiationException | IllegalAccessException | IllegalArgumentException ex) {
-				throw new InvalidCPUException("Failed to create the component " + id + "!", ex);
-			}
+			parseJSONComponent(cpu, id, components.getJSONObject(id), parentPath);
 		}
 	}
 
 	/**
-	 * Parses wires from the given JSON array and connects the components.
+	 * Creates a component from the given JSON object and adds it to the CPU.
+	 * @param cpu The CPU to add the component to.
+	 * @param id The identifier of the component.
+	 * @param json JSONObject that describes the component.
+	 * @param parentPath Path to the cpu file's parent directory (where custom components are searched).
+	 * @throws JSONException If the JSON file is malformed.
+	 * @throws InvalidCPUException If the CPU is invalid or incomplete.
+	 */
+	private static void parseJSONComponent(CPU cpu, String id, JSONObject json, String parentPath) throws JSONException, InvalidCPUException {
+		ComponentDefinition def = new ComponentDefinition(id, json,
+			ComponentRegistry.getFactory(json.getString("type"), parentPath));
+		cpu.addComponent(def.newInstance());
+		cpu.prototype.components.add(def);
+	}
+
+	/**
+	 * Parses wires from the given JSON array.
+	 * <p>The wires are only connected later, in <tt>finishCreation()</tt>.</p>
 	 * @param cpu The CPU to add wires to.
 	 * @param wires JSONArray that contains the wires array.
 	 * @throws JSONException If the JSON file is malformed.
-	 * @throws InvalidCPUException If the output or the input are already connected or have different sizes or doesn't exist.
 	 */
-	private static void parseJSONWires(CPU cpu, JSONArray wires) throws JSONException, InvalidCPUException {
-		JSONObject wire, point, start, end;
+	private static void parseJSONWires(CPU cpu, JSONArray wires) throws JSONException {
+		for(int i = 0; i < wires.length(); i++)
+			cpu.prototype.wires.add(parseJSONWire(wires.getJSONObject(i), 0));
+	}
+
+	/**
+	 * Parses a wire from the given JSON object.
+	 * @param wire JSONObject that describes the wire.
+	 * @param line The line of the wire in the file, or 0 if unknown.
+	 * @return The definition of the wire.
+	 * @throws JSONException If the JSON file is malformed.
+	 */
+	private static WireDefinition parseJSONWire(JSONObject wire, int line) throws JSONException {
+		JSONObject point, start, end;
 		JSONArray points;
-		Output out;
-
-		for(int i = 0; i < wires.length(); i++) {
-			wire = wires.getJSONObject(i);
-			out = cpu.connectComponents(wire.getString("from"), wire.getString("out"),
-				wire.getString("to"), wire.getString("in"));
-			points = wire.optJSONArray("points");
-			if(points != null) {
-				for(int x = 0; x < points.length(); x++) {
-					point = points.getJSONObject(x);
-					out.addIntermediatePoint(new Point(point.getInt("x"), point.getInt("y")));
-				}
+		WireDefinition def = new WireDefinition(wire.getString("from"), wire.getString("out"),
+			wire.getString("to"), wire.getString("in"), line);
+
+		points = wire.optJSONArray("points");
+		if(points != null) {
+			for(int x = 0; x < points.length(); x++) {
+				point = points.getJSONObject(x);
+				def.points.add(new Point(point.getInt("x"), point.getInt("y")));
 			}
-			if((start = wire.optJSONObject("start")) != null)
-				out.setPosition(new Point(start.getInt("x"), start.getInt("y")));
-			if((end = wire.optJSONObject("end")) != null)
-				out.getConnectedInput().setPosition(new Point(end.getInt("x"), end.getInt("y")));
 		}
+		if((start = wire.optJSONObject("start")) != null)
+			def.start = new Point(start.getInt("x"), start.getInt("y"));
+		if((end = wire.optJSONObject("end")) != null)
+			def.end = new Point(end.getInt("x"), end.getInt("y"));
+		return def;
 	}
 
 	/**
@@ -1306,5 +1712,118 @@ public class CPU {
 
 			cpu.registerNames.add(id);
 		}
+		cpu.registerNames = Collections.unmodifiableList(cpu.registerNames);
+	}
+
+	/**
+	 * The parsed definition of a CPU, from which copies of the CPU are created.
+	 * <p>It is never modified after the CPU is loaded.</p>
+	 */
+	private static class Prototype {
+		/** The definitions of the components, in the order they are created. */
+		private final List<ComponentDefinition> components = new ArrayList<>();
+		/** The definitions of the wires, in the order they are connected. */
+		private final List<WireDefinition> wires = new ArrayList<>();
+		/** The names of the registers (without the prefix). */
+		private List<String> registerNames = null;
+		/** The indexes of the registers by their usual names. */
+		private Map<String, Integer> registerIndexes = null;
+		/** The loaded instruction set. */
+		private InstructionSet instructionSet = null;
+	}
+
+	/**
+	 * The definition of a component: its identifier, JSON object and factory.
+	 */
+	private static class ComponentDefinition {
+		/** The identifier of the component. */
+		private final String id;
+		/** The JSON object that describes the component. */
+		private final JSONObject json;
+		/** The factory of the component's type. */
+		private final ComponentFactory factory;
+
+		/**
+		 * Creates the definition.
+		 * @param id The identifier of the component.
+		 * @param json The JSON object that describes the component.
+		 * @param factory The factory of the component's type.
+		 */
+		public ComponentDefinition(String id, JSONObject json, ComponentFactory factory) {
+			this.id = id;
+			this.json = json;
+			this.factory = factory;
+		}
+
+		/**
+		 * Creates a new component from this definition.
+		 * @return The new component.
+		 * @throws JSONException If the JSON object is malformed.
+		 * @throws InvalidCPUException If the component is invalid or fails to be created.
+		 */
+		public Component newInstance() throws JSONException, InvalidCPUException {
+			return factory.create(id, json);
+		}
+	}
+
+	/**
+	 * The definition of a wire, that connects an output to an input.
+	 */
+	private static class WireDefinition {
+		/** The identifier of the output component. */
+		private final String from;
+		/** The identifier of the output of the output component. */
+		private final String out;
+		/** The identifier of the input component. */
+		private final String to;
+		/** The identifier of the input of the input component. */
+		private final String in;
+		/** The line of the wire in the file, or 0 if unknown. */
+		private final int line;
+		/** The intermediate points of the wire. */
+		private final List<Point> points = new ArrayList<>();
+		/** The position of the start of the wire, or <tt>null</tt> to use the output's default. */
+		private Point start = null;
+		/** The position of the end of the wire, or <tt>null</tt> to use the input's default. */
+		private Point end = null;
+
+		/**
+		 * Creates the definition.
+		 * @param from The identifier of the output component.
+		 * @param out The identifier of the output of the output component.
+		 * @param to The identifier of the input component.
+		 * @param in The identifier of the input of the input component.
+		 * @param line The line of the wire in the file, or 0 if unknown.
+		 */
+		public WireDefinition(String from, String out, String to, String in, int line) {
+			this.from = from;
+			this.out = out;
+			this.to = to;
+			this.in = in;
+			this.line = line;
+		}
+
+		/**
+		 * Connects the components of the given CPU as described by this definition.
+		 * @param cpu The CPU whose components are connected.
+		 * @throws InvalidCPUException If the output or the input are already connected or have different sizes or don't exist.
+		 */
+		public void connect(CPU cpu) throws InvalidCPUException {
+			Output o;
+			try {
+				o = cpu.connectComponents(from, out, to, in);
+			} catch(InvalidCPUException ex) {
+				if(line > 0)
+					throw new InvalidCPUException(ex.getMessage() + " (line " + line + ")", ex);
+				else
+					throw ex;
+			}
+			for(Point p: points) // the points are copied, so that each CPU has its own
+				o.addIntermediatePoint(new Point(p));
+			if(start != null)
+				o.setPosition(new Point(start));
+			if(end != null)
+				o.getConnectedInput().setPosition(new Point(end));
+		}
 	}
 }
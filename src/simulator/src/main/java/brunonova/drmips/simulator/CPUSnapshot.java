@@ -0,0 +1,250 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.Map;
+
+/**
+ * An immutable copy of the state of a CPU at the end of a clock cycle (see
+ * <tt>CPU.snapshot()</tt>).
+ *
+ * <p>The snapshot is taken by the thread that executes the simulation, between
+ * cycles, and can then be read by any number of other threads (tables,
+ * datapath, exporters) without locking, while the simulation goes on. It holds
+ * the values of the registers, of the data memory and of the outputs of all
+ * components (the wires), the instructions in each stage and the
+ * statistics.</p>
+ *
+ * @author Bruno Nova
+ */
+public final class CPUSnapshot {
+	/** Index of the instruction fetch stage (or of the only "stage" of a unicycle CPU). */
+	public static final int STAGE_IF = 0;
+	/** Index of the instruction decode stage. */
+	public static final int STAGE_ID = 1;
+	/** Index of the execute stage. */
+	public static final int STAGE_EX = 2;
+	/** Index of the memory access stage. */
+	public static final int STAGE_MEM = 3;
+	/** Index of the write back stage. */
+	public static final int STAGE_WB = 4;
+	/** The number of stages of a pipelined CPU. */
+	public static final int NUMBER_OF_STAGES = 5;
+
+	/** The number of executed cycles. */
+	private final int cycles;
+	/** The number of executed instructions. */
+	private final int instructions;
+	/** The number of forwards. */
+	private final int forwards;
+	/** The number of stalls. */
+	private final int stalls;
+	/** The number of branches. */
+	private final int branches;
+	/** The number of branches predicted wrong. */
+	private final int predictWrong;
+	/** The address in the PC. */
+	private final int pc;
+	/** The indexes of the instructions in each stage (-1 for none). */
+	private final int[] instructionIndexes;
+	/** The values of the registers. */
+	private final int[] registers;
+	/** The values of the data memory (empty if the CPU doesn't have one). */
+	private final int[] memory;
+	/** The values of the outputs of all components. */
+	private final int[] outputValues;
+	/** The positions of the outputs in <tt>outputValues</tt> (shared with the CPU, never modified). */
+	private final Map<Output, Integer> outputIndexes;
+
+	/**
+	 * Copies the state of the given CPU.
+	 * @param cpu The CPU.
+	 * @param outputs All the outputs of the components of the CPU.
+	 * @param outputIndexes The positions of the outputs in <tt>outputs</tt>.
+	 */
+	CPUSnapshot(CPU cpu, Output[] outputs, Map<Output, Integer> outputIndexes) {
+		cycles = cpu.getNumberOfExecutedCycles();
+		instructions = cpu.getNumberOfExecutedInstructions();
+		forwards = cpu.getNumberOfForwards();
+		stalls = cpu.getNumberOfStalls();
+		branches = cpu.getNumberOfBranches();
+		predictWrong = cpu.getNumberOfBranchesPredictedWrong();
+		pc = cpu.getPC().getAddress().getValue();
+
+		if(cpu.isPipeline()) {
+			instructionIndexes = new int[NUMBER_OF_STAGES];
+			instructionIndexes[STAGE_IF] = cpu.getPC().getCurrentInstructionIndex();
+			instructionIndexes[STAGE_ID] = cpu.getIfIdReg().getCurrentInstructionIndex();
+			instructionIndexes[STAGE_EX] = cpu.getIdExReg().getCurrentInstructionIndex();
+			instructionIndexes[STAGE_MEM] = cpu.getExMemReg().getCurrentInstructionIndex();
+			instructionIndexes[STAGE_WB] = cpu.getMemWbReg().getCurrentInstructionIndex();
+		}
+		else
+			instructionIndexes = new int[] {cpu.getPC().getCurrentInstructionIndex()};
+
+		registers = new int[cpu.getRegBank().getNumberOfRegisters()];
+		for(int i = 0; i < registers.length; i++)
+			registers[i] = cpu.getRegBank().getRegister(i).getValue();
+
+		if(cpu.hasDataMemory()) {
+			memory = new int[cpu.getDataMemory().getMemorySize()];
+			for(int i = 0; i < memory.length; i++)
+				memory[i] = cpu.getDataMemory().getDataInIndex(i);
+		}
+		else
+			memory = new int[0];
+
+		outputValues = new int[outputs.length];
+		for(int i = 0; i < outputs.length; i++)
+			outputValues[i] = outputs[i].getValue();
+		this.outputIndexes = outputIndexes;
+	}
+
+	/**
+	 * Returns the number of executed clock cycles.
+	 * @return Number of executed cycles.
+	 */
+	public int getNumberOfExecutedCycles() {
+		return cycles;
+	}
+
+	/**
+	 * Returns the number of executed instructions.
+	 * @return Number of executed instructions.
+	 */
+	public int getNumberOfExecutedInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * Returns the number of forwards.
+	 * @return Number of forwards.
+	 */
+	public int getNumberOfForwards() {
+		return forwards;
+	}
+
+	/**
+	 * Returns the number of stalls.
+	 * @return Number of stalls.
+	 */
+	public int getNumberOfStalls() {
+		return stalls;
+	}
+
+	/**
+	 * Returns the number of branches.
+	 * @return Number of branches.
+	 */
+	public int getNumberOfBranches() {
+		return branches;
+	}
+
+	/**
+	 * Returns the number of branches predicted wrong.
+	 * @return Number of branches predicted wrong.
+	 */
+	public int getNumberOfBranchesPredictedWrong() {
+		return predictWrong;
+	}
+
+	/**
+	 * Returns the address in the PC.
+	 * @return The address of the next instruction.
+	 */
+	public int getPC() {
+		return pc;
+	}
+
+	/**
+	 * Returns whether the snapshot was taken from a pipelined CPU.
+	 * @return <tt>True</tt> if there are <tt>NUMBER_OF_STAGES</tt> stages.
+	 */
+	public boolean isPipeline() {
+		return instructionIndexes.length == NUMBER_OF_STAGES;
+	}
+
+	/**
+	 * Returns the index of the instruction in the given stage.
+	 * @param stage The stage (<tt>STAGE_IF</tt>, <tt>STAGE_ID</tt>, ...; only <tt>STAGE_IF</tt> in a unicycle CPU).
+	 * @return The index of the instruction in the instruction memory, or -1 if there is none.
+	 */
+	public int getInstructionIndex(int stage) {
+		return stage >= 0 && stage < instructionIndexes.length ? instructionIndexes[stage] : -1;
+	}
+
+	/**
+	 * Returns whether the program had finished executing.
+	 * @return <tt>True</tt> if there were no instructions in the stages.
+	 */
+	public boolean isProgramFinished() {
+		for(int index: instructionIndexes) {
+			if(index != -1) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of registers.
+	 * @return Number of registers.
+	 */
+	public int getNumberOfRegisters() {
+		return registers.length;
+	}
+
+	/**
+	 * Returns the value of the given register.
+	 * @param index The index of the register.
+	 * @return The value of the register.
+	 * @throws IndexOutOfBoundsException If the index is invalid.
+	 */
+	public int getRegister(int index) throws IndexOutOfBoundsException {
+		return registers[index];
+	}
+
+	/**
+	 * Returns the size of the data memory.
+	 * @return The number of memory positions (0 if the CPU doesn't have a data memory).
+	 */
+	public int getMemorySize() {
+		return memory.length;
+	}
+
+	/**
+	 * Returns the value in the given position of the data memory.
+	 * @param index The index of the position.
+	 * @return The value in the memory position.
+	 * @throws IndexOutOfBoundsException If the index is invalid.
+	 */
+	public int getDataInIndex(int index) throws IndexOutOfBoundsException {
+		return memory[index];
+	}
+
+	/**
+	 * Returns the value of an output of a component (the value in the wire).
+	 * @param output The output, of a component of the CPU the snapshot was taken from.
+	 * @return The value of the output.
+	 * @throws IllegalArgumentException If the output doesn't belong to the CPU.
+	 */
+	public int getValue(Output output) throws IllegalArgumentException {
+		Integer index = outputIndexes.get(output);
+		if(index == null) throw new IllegalArgumentException("The output doesn't belong to this CPU!");
+		return outputValues[index];
+	}
+}
@@ -0,0 +1,122 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.BitSet;
+
+/**
+ * The positions of a storage component (the registers of the register bank or
+ * the words of the data memory) whose values changed since the last call to
+ * <tt>clear()</tt>.
+ *
+ * <p>The components mark the positions they write (in a cycle, when a cycle is
+ * reverted or when edited by the user), and the GUI refreshes only the rows of
+ * the changed positions and then clears the set. A position may be marked even
+ * if its value ended up the same, but never the other way around.</p>
+ *
+ * @author Bruno Nova
+ */
+public class ChangeSet {
+	/** The changed positions. */
+	private final BitSet changed;
+	/** The number of positions of the component. */
+	private final int size;
+
+	/**
+	 * Creates the change set of a component, with all positions marked as changed.
+	 * @param size The number of positions of the component.
+	 */
+	public ChangeSet(int size) {
+		this.size = size;
+		changed = new BitSet(size);
+		markAll();
+	}
+
+	/**
+	 * Marks the given position as changed.
+	 * @param index The index of the position (ignored if out of bounds).
+	 */
+	public void mark(int index) {
+		if(index >= 0 && index < size)
+			changed.set(index);
+	}
+
+	/**
+	 * Marks all positions as changed.
+	 */
+	public void markAll() {
+		changed.set(0, size);
+	}
+
+	/**
+	 * Marks the positions whose values differ between the two arrays.
+	 * @param oldValues The previous values.
+	 * @param newValues The new values.
+	 */
+	public void markDifferences(int[] oldValues, int[] newValues) {
+		int n = Math.min(size, Math.min(oldValues.length, newValues.length));
+		for(int i = 0; i < n; i++) {
+			if(oldValues[i] != newValues[i])
+				changed.set(i);
+		}
+	}
+
+	/**
+	 * Returns whether the given position changed.
+	 * @param index The index of the position.
+	 * @return <tt>True</tt> if the position is marked as changed.
+	 */
+	public boolean isChanged(int index) {
+		return index >= 0 && changed.get(index);
+	}
+
+	/**
+	 * Returns the first changed position at or after the given one.
+	 * <p>Iterate the changed positions with
+	 * <tt>for(int i = set.nextChanged(0); i >= 0; i = set.nextChanged(i + 1))</tt>.</p>
+	 * @param from The index of the position to start at.
+	 * @return The index of the changed position, or -1 if there is none.
+	 */
+	public int nextChanged(int from) {
+		return changed.nextSetBit(from);
+	}
+
+	/**
+	 * Returns the number of changed positions.
+	 * @return Number of changed positions.
+	 */
+	public int count() {
+		return changed.cardinality();
+	}
+
+	/**
+	 * Returns whether no position changed.
+	 * @return <tt>True</tt> if no position is marked as changed.
+	 */
+	public boolean isEmpty() {
+		return changed.isEmpty();
+	}
+
+	/**
+	 * Forgets the changed positions.
+	 */
+	public void clear() {
+		changed.clear();
+	}
+}
@@ -0,0 +1,54 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.exceptions.InvalidCPUException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Creates components of a given type.
+ *
+ * <p>The built-in components have their own factories, registered in
+ * <tt>ComponentRegistry</tt>. Custom components can provide a factory too,
+ * which is found with <tt>java.util.ServiceLoader</tt> if listed in a
+ * <tt>META-INF/services/brunonova.drmips.simulator.ComponentFactory</tt>
+ * file, either in the classpath or in the directory of the CPU file. Custom
+ * components without a factory are still created through their
+ * <tt>(String, JSONObject)</tt> constructor.</p>
+ *
+ * @author Bruno Nova
+ */
+public interface ComponentFactory {
+	/**
+	 * Returns the type of the components created, as written in the CPU files.
+	 * @return The type of the components.
+	 */
+	public String getType();
+
+	/**
+	 * Creates a new component.
+	 * @param id The component's identifier.
+	 * @param json The JSON object representing the component that should be parsed.
+	 * @return The new component.
+	 * @throws InvalidCPUException If the component has invalid parameters.
+	 * @throws JSONException If the JSON object is invalid or incomplete.
+	 */
+	public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException;
+}
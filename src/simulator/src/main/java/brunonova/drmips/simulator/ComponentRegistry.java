@@ -0,0 +1,428 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.components.*;
+import brunonova.drmips.simulator.exceptions.InvalidCPUException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Registry of the factories that create the components of the CPUs.
+ *
+ * <p>The built-in components are registered with direct factories, and the
+ * factories of the classpath are found with <tt>ServiceLoader</tt>, when this
+ * class is loaded. The custom components in the directory of a CPU file are
+ * looked up in a class loader created once per directory: factories
+ * declared there are found with <tt>ServiceLoader</tt>, and other classes
+ * are created through their <tt>(String, JSONObject)</tt> constructor. All
+ * lookups are then resolved by hash maps, so loading the same CPU again
+ * doesn't repeat any of this work.</p>
+ *
+ * <p>As the class loaders are cached, a custom component that is changed
+ * while the program is running is only reloaded after
+ * <tt>clearCustomComponents()</tt> is called.</p>
+ *
+ * @author Bruno Nova
+ */
+public final class ComponentRegistry {
+	/** The factories of the built-in components and of the classpath, indexed by type. */
+	private static final Map<String, ComponentFactory> factories = new HashMap<>();
+	/** The custom components of each directory, indexed by the directory's path. */
+	private static final Map<String, Directory> directories = new HashMap<>();
+
+	static {
+		// Built-in components
+		register(new BuiltInFactory("ALU") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new ALU(id, json);
+			}
+		});
+		register(new BuiltInFactory("ALUControl") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new ALUControl(id, json);
+			}
+		});
+		register(new BuiltInFactory("Add") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Add(id, json);
+			}
+		});
+		register(new BuiltInFactory("And") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new And(id, json);
+			}
+		});
+		register(new BuiltInFactory("Concatenator") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Concatenator(id, json);
+			}
+		});
+		register(new BuiltInFactory("Constant") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Constant(id, json);
+			}
+		});
+		register(new BuiltInFactory("ControlUnit") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new ControlUnit(id, json);
+			}
+		});
+		register(new BuiltInFactory("DataMemory") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new DataMemory(id, json);
+			}
+		});
+		register(new BuiltInFactory("Demultiplexer") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Demultiplexer(id, json);
+			}
+		});
+		register(new BuiltInFactory("Distributor") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Distributor(id, json);
+			}
+		});
+		register(new BuiltInFactory("ExtendedALU") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new ExtendedALU(id, json);
+			}
+		});
+		register(new BuiltInFactory("Fork") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Fork(id, json);
+			}
+		});
+		register(new BuiltInFactory("ForwardingUnit") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new ForwardingUnit(id, json);
+			}
+		});
+		register(new BuiltInFactory("HazardDetectionUnit") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new HazardDetectionUnit(id, json);
+			}
+		});
+		register(new BuiltInFactory("InstructionMemory") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new InstructionMemory(id, json);
+			}
+		});
+		register(new BuiltInFactory("Multiplexer") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Multiplexer(id, json);
+			}
+		});
+		register(new BuiltInFactory("Not") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Not(id, json);
+			}
+		});
+		register(new BuiltInFactory("Or") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Or(id, json);
+			}
+		});
+		register(new BuiltInFactory("PC") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new PC(id, json);
+			}
+		});
+		register(new BuiltInFactory("PipelineRegister") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new PipelineRegister(id, json);
+			}
+		});
+		register(new BuiltInFactory("RegBank") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new RegBank(id, json);
+			}
+		});
+		register(new BuiltInFactory("SatCountBank") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new SatCountBank(id, json);
+			}
+		});
+		register(new BuiltInFactory("ShiftLeft") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new ShiftLeft(id, json);
+			}
+		});
+		register(new BuiltInFactory("ShiftReg") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new ShiftReg(id, json);
+			}
+		});
+		register(new BuiltInFactory("SignExtend") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new SignExtend(id, json);
+			}
+		});
+		register(new BuiltInFactory("Xor") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new Xor(id, json);
+			}
+		});
+		register(new BuiltInFactory("ZeroExtend") {
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				return new ZeroExtend(id, json);
+			}
+		});
+
+		// Factories in the classpath
+		try {
+			for(ComponentFactory factory: ServiceLoader.load(ComponentFactory.class, ComponentRegistry.class.getClassLoader()))
+				register(factory);
+		} catch(ServiceConfigurationError ex) {
+			// ignore invalid factories in the classpath
+		}
+	}
+
+	/**
+	 * Private constructor, as this class only has static members.
+	 */
+	private ComponentRegistry() {}
+
+	/**
+	 * Registers the factory of a type of component, available to all CPUs.
+	 * <p>A factory for an existing type replaces the existing one.</p>
+	 * @param factory The factory.
+	 */
+	public static synchronized void register(ComponentFactory factory) {
+		factories.put(factory.getType(), factory);
+	}
+
+	/**
+	 * Returns the factory of the given type of component.
+	 * <p>The built-in and registered types are searched first, and the custom
+	 * components in the given directory second.</p>
+	 * @param type The type of the component, as written in the CPU files.
+	 * @param parentPath Path to the cpu file's parent directory.
+	 * @return The factory.
+	 * @throws InvalidCPUException If the type is unknown or its class isn't a valid component.
+	 */
+	public static synchronized ComponentFactory getFactory(String type, String parentPath) throws InvalidCPUException {
+		ComponentFactory factory = factories.get(type);
+		if(factory == null)
+			factory = getDirectory(parentPath).getFactory(type);
+		return factory;
+	}
+
+	/**
+	 * Forgets the custom components of all directories.
+	 * <p>Custom components will be loaded again (with new class loaders) the
+	 * next time a CPU that uses them is loaded.</p>
+	 */
+	public static synchronized void clearCustomComponents() {
+		directories.clear();
+	}
+
+	/**
+	 * Returns the custom components of the given directory, creating them the first time.
+	 * @param parentPath Path to the cpu file's parent directory.
+	 * @return The custom components of the directory.
+	 * @throws InvalidCPUException If a factory in the directory is invalid.
+	 */
+	private static Directory getDirectory(String parentPath) throws InvalidCPUException {
+		File dir = new File(parentPath + File.separator);
+		String key;
+		try {
+			key = dir.getCanonicalPath();
+		} catch(IOException ex) {
+			key = dir.getAbsolutePath();
+		}
+
+		Directory directory = directories.get(key);
+		if(directory == null) {
+			directory = new Directory(dir);
+			directories.put(key, directory);
+		}
+		return directory;
+	}
+
+	/**
+	 * Base class of the factories of the built-in components.
+	 */
+	private static abstract class BuiltInFactory implements ComponentFactory {
+		/** The type of the components created. */
+		private final String type;
+
+		/**
+		 * Creates the factory.
+		 * @param type The type of the components created.
+		 */
+		public BuiltInFactory(String type) {
+			this.type = type;
+		}
+
+		@Override
+		public String getType() {
+			return type;
+		}
+	}
+
+	/**
+	 * Factory that creates custom components through their <tt>(String, JSONObject)</tt> constructor.
+	 */
+	private static class ConstructorFactory implements ComponentFactory {
+		/** The type of the components created. */
+		private final String type;
+		/** The (String, JSONObject) constructor of the component's class. */
+		private final Constructor<? extends Component> constructor;
+
+		/**
+		 * Creates the factory.
+		 * @param type The type of the components created.
+		 * @param constructor The (String, JSONObject) constructor of the component's class.
+		 */
+		public ConstructorFactory(String type, Constructor<? extends Component> constructor) {
+			this.type = type;
+			this.constructor = constructor;
+		}
+
+		@Override
+		public String getType() {
+			return type;
+		}
+
+		@Override
+		public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+			try {
+				return constructor.newInstance(id, json);
+			} catch(InvocationTargetException ex) {
+				Throwable target = ex.getCause();
+				if(target instanceof InvalidCPUException) {
+					throw (InvalidCPUException)target;
+				} else if(target instanceof JSONException) {
+					throw (JSONException)target;
+				} else {
+					throw new InvalidCPUException("Failed to create the component " + id + "!", ex);
+				}
+			} catch(InstantiationException | IllegalAccessException | IllegalArgumentException ex) {
+				throw new InvalidCPUException("Failed to create the component " + id + "!", ex);
+			}
+		}
+	}
+
+	/**
+	 * The custom components of a directory.
+	 */
+	private static class Directory {
+		/** The class loader of the directory, or <tt>null</tt> if it couldn't be created. */
+		private final ClassLoader loader;
+		/** The factories of the custom components found so far, indexed by type. */
+		private final Map<String, ComponentFactory> factories = new HashMap<>();
+
+		/**
+		 * Creates the class loader of the directory and finds its factories.
+		 * @param dir The directory.
+		 * @throws InvalidCPUException If a factory in the directory is invalid.
+		 */
+		public Directory(File dir) throws InvalidCPUException {
+			ClassLoader l;
+			try {
+				URL[] urls = new URL[] {dir.toURI().toURL()};
+				l = new URLClassLoader(urls);
+			} catch(Exception ex) {
+				l = null;
+			}
+			loader = l;
+
+			if(loader != null) {
+				try {
+					for(ComponentFactory factory: ServiceLoader.load(ComponentFactory.class, loader))
+						factories.put(factory.getType(), factory);
+				} catch(ServiceConfigurationError ex) {
+					throw new InvalidCPUException("Invalid component factory in " + dir.getPath() + "!", ex);
+				}
+			}
+		}
+
+		/**
+		 * Returns the factory of the given type of custom component.
+		 * @param type The type of the component (the name of its class).
+		 * @return The factory.
+		 * @throws InvalidCPUException If the type is unknown or its class isn't a valid component.
+		 */
+		public ComponentFactory getFactory(String type) throws InvalidCPUException {
+			ComponentFactory factory = factories.get(type);
+			if(factory != null)
+				return factory;
+			if(loader == null)
+				throw new InvalidCPUException("Unknown component type " + type + "!");
+
+			// Load the class with the name specified by "type"
+			Class<?> cl;
+			try {
+				cl = loader.loadClass(type);
+			} catch(ClassNotFoundException ex) {
+				throw new InvalidCPUException("Unknown component type " + type + "!", ex);
+			}
+
+			// Find the (String, JSONObject) contructor
+			try {
+				factory = new ConstructorFactory(type, cl.asSubclass(Component.class)
+				                                         .getConstructor(String.class, JSONObject.class));
+			} catch(ClassCastException ex) {
+				throw new InvalidCPUException("The " + type + " class is not a subclass of Component!", ex);
+			} catch(NoSuchMethodException ex) {
+				throw new InvalidCPUException("The " + type + " class is missing the (String, JSONObject) constructor!", ex);
+			}
+			factories.put(type, factory);
+			return factory;
+		}
+	}
+}
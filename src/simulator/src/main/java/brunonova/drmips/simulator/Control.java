@@ -19,20 +19,23 @@
 package brunonova.drmips.simulator;
 
 import brunonova.drmips.simulator.exceptions.InvalidInstructionSetException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
 /**
  * Class with the information of the values of the outputs for each opcode for the control unit.
+ * <p>After <tt>finishCreation()</tt> is called the control can no longer be
+ * modified, so it can be safely shared between CPUs running in different threads.</p>
  * 
  * @author Bruno Nova
  */
 public class Control {
 	/** Mapping from each opcode to their respective output values (another map). */
-	private final Map<Integer, Map<String, Integer>> map;
+	private Map<Integer, Map<String, Integer>> map;
 	/** The sizes of each output. */
-	private final Map<String, Integer> out;
+	private Map<String, Integer> out;
 	
 	/**
 	 * Creates a new control object.
@@ -113,7 +116,9 @@ public class Control {
 	
 	/**
 	 * Finishes the creation of the control.
-	 * <p>The sizes of the ouputs are calculated here.</p>
+	 * <p>The sizes of the ouputs are calculated here and the control becomes
+	 * read-only (adding opcodes or outputs afterwards throws an
+	 * <tt>UnsupportedOperationException</tt>).</p>
 	 */
 	public void finishCreation() {
 		int size, s;
@@ -136,5 +141,11 @@ public class Control {
 			
 			out.put(id, size); // update output size
 		}
+
+		// Make the control read-only
+		for(int opcode: map.keySet())
+			map.put(opcode, Collections.unmodifiableMap(map.get(opcode)));
+		map = Collections.unmodifiableMap(map);
+		out = Collections.unmodifiableMap(out);
 	}
 }
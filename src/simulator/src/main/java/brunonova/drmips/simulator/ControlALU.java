@@ -20,6 +20,7 @@ package brunonova.drmips.simulator;
 
 import brunonova.drmips.simulator.components.ALU;
 import brunonova.drmips.simulator.components.ExtendedALU;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -28,6 +29,8 @@ import java.util.logging.Logger;
 
 /**
  * Class with the information of how the ALU Control and ALU should work for the instruction set.
+ * <p>After <tt>finishCreation()</tt> is called the object can no longer be
+ * modified, so it can be safely shared between CPUs running in different threads.</p>
  * 
  * @author Bruno Nova
  */
@@ -37,11 +40,11 @@ public class ControlALU {
 		DIV, MFHI, MFLO}
 	
 	/** The size of the <tt>ALUOp</tt> control signal. */
-	private int aluOpSize;
+	private final int aluOpSize;
 	/** The size of the <tt>func</tt> field. */
-	private int funcSize;
+	private final int funcSize;
 	/** The size of the ALU control output. */
-	private int controlSize;
+	private final int controlSize;
 	/** Mapping of Inputs (ALUOp and func) options to output values. */
 	private Map<Inputs, Map<String, Integer>> control;
 	/** The sizes of each output. */
@@ -133,6 +136,19 @@ public class ControlALU {
 		}
 	}
 	
+	/**
+	 * Finishes the creation of the ALU control.
+	 * <p>The object becomes read-only (adding controls or operations afterwards
+	 * throws an <tt>UnsupportedOperationException</tt>).</p>
+	 */
+	public void finishCreation() {
+		for(Map.Entry<Inputs, Map<String, Integer>> e: control.entrySet())
+			e.setValue(Collections.unmodifiableMap(e.getValue()));
+		control = Collections.unmodifiableMap(control);
+		out = Collections.unmodifiableMap(out);
+		operations = Collections.unmodifiableMap(operations);
+	}
+	
 	/**
 	 * Returns the value of the ALU Control output signal for the specified ALUOp and func.
 	 * @param aluOp The value of the ALUOp signal.
@@ -106,12 +106,7 @@ public final class Data implements Cloneable {
 	 * @return The number of bits required to represent the <tt>value</tt>.
 	 */
 	public static int requiredNumberOfBits(int value) {
-		int n = 0;
-		while(value != 0) {
-			value = value >>> 1;
-			n++;
-		}
-		return n;
+		return DATA_SIZE - Integer.numberOfLeadingZeros(value);
 	}
 	
 	/**
@@ -193,25 +188,7 @@ public final class Data implements Cloneable {
 	 * @return Value in binary, including leading zeros.
 	 */
 	public String toBinary() {
-		String str = Integer.toBinaryString(value);
-		String res = "";
-		int len = str.length();
-		int c = 0;
-		for(int i = len - 1; i >= 0; i--) {
-			if(++c > 4) {
-				c = 1;
-				res = " " + res;
-			}
-			res = str.charAt(i) + res;
-		}
-		for(int i = len; i < size; i++) {
-			if(++c > 4) {
-				c = 1;
-				res = " " + res;
-			}
-			res = "0" + res;
-		}
-		return res;
+		return toBinary(value, size);
 	}
 	
 	/**
@@ -219,10 +196,7 @@ public final class Data implements Cloneable {
 	 * @return Value in octal, including leading zeros.
 	 */
 	public String toOctal() {
-		String str = Integer.toOctalString(value);
-		for(int i = str.length() * 3; i < size; i += 3)
-			str = "0" + str;
-		return str;
+		return toOctal(value, size);
 	}
 	
 	/**
@@ -230,10 +204,64 @@ public final class Data implements Cloneable {
 	 * @return Value in hexadecimal, including leading zeros.
 	 */
 	public String toHexadecimal() {
-		String str = Integer.toHexString(value);
-		for(int i = str.length() * 4; i < size; i += 4)
-			str = "0" + str;
-		return str;
+		return toHexadecimal(value, size);
+	}
+	
+	/**
+	 * Returns the binary representation of the given value.
+	 * <p>The bits are separated in groups of 4 by spaces.</p>
+	 * @param value The value.
+	 * @param size The size of the value (number of bits).
+	 * @return Value in binary, including leading zeros.
+	 */
+	public static String toBinary(int value, int size) {
+		int digits = Math.max(Math.max(requiredNumberOfBits(value), 1), size);
+		char[] buf = new char[digits + (digits - 1) / 4];
+		int pos = buf.length;
+		for(int i = 0; i < digits; i++) {
+			if(i > 0 && i % 4 == 0)
+				buf[--pos] = ' ';
+			buf[--pos] = (char)('0' + ((value >>> i) & 1));
+		}
+		return new String(buf);
+	}
+	
+	/**
+	 * Returns the octal representation of the given value.
+	 * @param value The value.
+	 * @param size The size of the value (number of bits).
+	 * @return Value in octal, including leading zeros.
+	 */
+	public static String toOctal(int value, int size) {
+		return toPowerOf2Radix(value, size, 3);
+	}
+	
+	/**
+	 * Returns the hexadecimal representation of the given value.
+	 * @param value The value.
+	 * @param size The size of the value (number of bits).
+	 * @return Value in hexadecimal (lower case), including leading zeros.
+	 */
+	public static String toHexadecimal(int value, int size) {
+		return toPowerOf2Radix(value, size, 4);
+	}
+	
+	/**
+	 * Returns the representation of the given value in a base that is a power of 2.
+	 * @param value The value.
+	 * @param size The size of the value (number of bits).
+	 * @param shift The number of bits per digit (3 for octal, 4 for hexadecimal).
+	 * @return Value in the given base, including leading zeros.
+	 */
+	private static String toPowerOf2Radix(int value, int size, int shift) {
+		int bits = Math.max(Math.max(requiredNumberOfBits(value), 1), size);
+		char[] buf = new char[(bits + shift - 1) / shift];
+		int digitMask = (1 << shift) - 1;
+		for(int i = buf.length - 1; i >= 0; i--) {
+			buf[i] = Character.forDigit(value & digitMask, 1 << shift);
+			value >>>= shift;
+		}
+		return new String(buf);
 	}
 	
 	@Override
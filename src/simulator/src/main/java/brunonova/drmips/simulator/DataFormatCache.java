@@ -0,0 +1,117 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small cache of the textual representations of values, shared by the
+ * tables and tips of the GUIs.
+ *
+ * <p>Most of the values shown in the registers and memory tables, in the tips
+ * of the datapath and in the execution table are the same from one refresh to
+ * the next, so their representations are kept in a least recently used cache
+ * instead of being formatted again every time. The cache is thread safe.</p>
+ *
+ * @author Bruno Nova
+ */
+public class DataFormatCache {
+	/** The binary format. */
+	public static final int BINARY = 0;
+	/** The decimal format. */
+	public static final int DECIMAL = 1;
+	/** The hexadecimal format. */
+	public static final int HEXADECIMAL = 2;
+	/** The octal format. */
+	public static final int OCTAL = 3;
+	/** The maximum number of representations kept in the cache. */
+	public static final int CAPACITY = 4096;
+
+	/** The cached representations, by key (see <tt>key()</tt>), in access order. */
+	private static final Map<Long, String> cache = new LinkedHashMap<Long, String>(CAPACITY * 4 / 3 + 1, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+
+	/** Not instantiable. */
+	private DataFormatCache() {}
+
+	/**
+	 * Returns the representation of the given data in the given format.
+	 * @param data The data.
+	 * @param format The format (<tt>BINARY</tt>, <tt>DECIMAL</tt>, <tt>HEXADECIMAL</tt> or <tt>OCTAL</tt>).
+	 * @return The formatted value.
+	 */
+	public static String format(Data data, int format) {
+		return format(data.getValue(), data.getSize(), format);
+	}
+
+	/**
+	 * Returns the representation of the given value in the given format.
+	 * <p>The decimal format ignores the size; an unknown format is treated as decimal.</p>
+	 * @param value The value.
+	 * @param size The size of the value (number of bits).
+	 * @param format The format (<tt>BINARY</tt>, <tt>DECIMAL</tt>, <tt>HEXADECIMAL</tt> or <tt>OCTAL</tt>).
+	 * @return The formatted value.
+	 */
+	public static String format(int value, int size, int format) {
+		if(format < BINARY || format > OCTAL) format = DECIMAL;
+		if(format == DECIMAL) size = 0; // same representation for all sizes
+		Long key = key(value, size, format);
+		String str;
+		synchronized(cache) {
+			str = cache.get(key);
+		}
+		if(str == null) {
+			switch(format) {
+				case BINARY: str = Data.toBinary(value, size); break;
+				case HEXADECIMAL: str = Data.toHexadecimal(value, size); break;
+				case OCTAL: str = Data.toOctal(value, size); break;
+				default: str = Integer.toString(value);
+			}
+			synchronized(cache) {
+				cache.put(key, str);
+			}
+		}
+		return str;
+	}
+
+	/**
+	 * Empties the cache.
+	 */
+	public static void clear() {
+		synchronized(cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Returns the key of a representation in the cache.
+	 * @param value The value (the 32 upper bits of the key).
+	 * @param size The size of the value (8 bits).
+	 * @param format The format (8 bits).
+	 * @return The key.
+	 */
+	private static long key(int value, int size, int format) {
+		return ((long)value << 32) | ((size & 0xff) << 8) | (format & 0xff);
+	}
+}
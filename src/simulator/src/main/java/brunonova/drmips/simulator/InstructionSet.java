@@ -23,7 +23,12 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +39,8 @@ import org.json.JSONObject;
 
 /**
  * Class that represents the instruction set of the loaded CPU.
+ * <p>The instruction set is read-only once loaded, so the same instance
+ * can be shared between several CPUs, even if they run in different threads.</p>
  * 
  * @author Bruno Nova
  */
@@ -42,15 +49,23 @@ public class InstructionSet {
 	public static final char ARGUMENT_CHAR = '#';
 	
 	/** The instruction types. */
-	private final List<InstructionType> types;
+	private List<InstructionType> types;
 	/** The available instructions. */
-	private final Map<String, Instruction> instructions;
+	private Map<String, Instruction> instructions;
 	/** The available pseudo-instructions. */
-	private final Map<String, PseudoInstruction> pseudoInstructions;
+	private Map<String, PseudoInstruction> pseudoInstructions;
+	/** The instruction types by identifier, for fast lookups. */
+	private final Map<String, InstructionType> typeIndex = new HashMap<>();
+	/** The instructions by mnemonic (in lower case), for fast lookups. */
+	private final Map<String, Instruction> instructionIndex = new HashMap<>();
+	/** The pseudo-instructions by mnemonic (in lower case), for fast lookups. */
+	private final Map<String, PseudoInstruction> pseudoInstructionIndex = new HashMap<>();
 	/** How the control unit should work. */
 	private Control control = null;
 	/** How the ALU Control and ALU should work. */
 	private ControlALU controlALU = null;
+	/** The hash of the contents of the instruction set file (hexadecimal). */
+	private String contentHash = null;
 	
 	/**
 	 * Creates an instruction set from a JSON file.
@@ -62,11 +77,62 @@ public class InstructionSet {
 	 * @throws NumberFormatException If an opcode is not a number.
 	 */
 	public InstructionSet(String path) throws IOException, JSONException, InvalidInstructionSetException, ArrayIndexOutOfBoundsException, NumberFormatException {
+		this(path, ModelCache.newDigest());
+	}
+
+	/**
+	 * Creates an instruction set from a JSON file, hashing the file while it is read.
+	 * @param path The path of the file to load.
+	 * @param digest The digest used to hash the file.
+	 * @throws IOException If the file doesn't exist or an I/O error occurs.
+	 * @throws JSONException If the JSON file is malformed.
+	 * @throws InvalidInstructionSetException If the instruction set is invalid.
+	 * @throws ArrayIndexOutOfBoundsException If an array index is invalid somewhere.
+	 * @throws NumberFormatException If an opcode is not a number.
+	 */
+	private InstructionSet(String path, MessageDigest digest) throws IOException, JSONException, InvalidInstructionSetException, ArrayIndexOutOfBoundsException, NumberFormatException {
+		this(readFile(path, digest), digest.digest()); // the arguments are evaluated in order
+	}
+
+	/**
+	 * Creates an instruction set from the already parsed contents of a file.
+	 * <p>The content hash is calculated from the parsed contents, so it may
+	 * differ from the hash of the file.</p>
+	 * @param json The parsed contents of the instruction set file.
+	 * @throws JSONException If the JSON object is malformed.
+	 * @throws InvalidInstructionSetException If the instruction set is invalid.
+	 * @throws ArrayIndexOutOfBoundsException If an array index is invalid somewhere.
+	 * @throws NumberFormatException If an opcode is not a number.
+	 */
+	InstructionSet(JSONObject json) throws JSONException, InvalidInstructionSetException, ArrayIndexOutOfBoundsException, NumberFormatException {
+		this(json, ModelCache.hash(json.toString().getBytes(Charset.forName("UTF-8"))));
+	}
+
+	/**
+	 * Creates an instruction set from the already parsed contents of a file.
+	 * @param json The parsed contents of the instruction set file.
+	 * @param hash The hash of the contents of the instruction set file.
+	 * @throws JSONException If the JSON object is malformed.
+	 * @throws InvalidInstructionSetException If the instruction set is invalid.
+	 * @throws ArrayIndexOutOfBoundsException If an array index is invalid somewhere.
+	 * @throws NumberFormatException If an opcode is not a number.
+	 */
+	InstructionSet(JSONObject json, byte[] hash) throws JSONException, InvalidInstructionSetException, ArrayIndexOutOfBoundsException, NumberFormatException {
+		contentHash = ModelCache.toHex(hash);
 		types = new ArrayList<>();
 		instructions = new TreeMap<>();
 		pseudoInstructions = new TreeMap<>();
 		control = new Control();
-		parseFile(path);
+		parseTypes(json.getJSONObject("types"));
+		parseInstructions(json.getJSONObject("instructions"));
+		if(json.has("pseudo")) parsePseudo(json.getJSONObject("pseudo"));
+		parseControl(json.getJSONObject("control"));
+		parseControlALU(json.getJSONObject("alu"));
+
+		// The instruction set can't be changed after being loaded
+		types = Collections.unmodifiableList(types);
+		instructions = Collections.unmodifiableMap(instructions);
+		pseudoInstructions = Collections.unmodifiableMap(pseudoInstructions);
 	}
 
 	/**
@@ -74,6 +140,7 @@ public class InstructionSet {
 	 * <p>All the type's fields should be defined before adding it.</p>.
 	 * @param type Instruction type to add.
 	 * @throws InvalidInstructionSetException If an instruction type with the same identifier already exists or is invalid.
+	 * @throws UnsupportedOperationException If the instruction set has already been loaded.
 	 */
 	public void addType(InstructionType type) throws InvalidInstructionSetException {
 		if(hasType(type.getId())) 
@@ -81,6 +148,7 @@ public class InstructionSet {
 		if(!type.isValid()) 
 			throw new InvalidInstructionSetException("Invalid instruction type " + type.getId() + "!");
 		types.add(type);
+		typeIndex.put(type.getId(), type);
 		
 		// Check if the opcodes are all of the same size
 		if(types.size() > 1) {
@@ -98,11 +166,7 @@ public class InstructionSet {
 	 * @return The desired instruction type, or <tt>null</tt> if it doesn't exist.
 	 */
 	public InstructionType getType(String id) {
-		for(InstructionType t: types) {
-			if(t.getId().equals(id))
-				return t;
-		}
-		return null;
+		return typeIndex.get(id);
 	}
 	
 	/**
@@ -129,6 +193,7 @@ public class InstructionSet {
 	 * @param type The type of the new instruction.
 	 * @return The created instruction.
 	 * @throws InvalidInstructionSetException If the instruction is invalid.
+	 * @throws UnsupportedOperationException If the instruction set has already been loaded.
 	 */
 	public Instruction addNewInstruction(String mnemonic, String type) throws InvalidInstructionSetException {
 		mnemonic = mnemonic.toLowerCase();
@@ -136,6 +201,7 @@ public class InstructionSet {
 		if(hasInstructionOrPseudoInstruction(mnemonic)) throw new InvalidInstructionSetException("Duplicated mnemonic " + mnemonic + "!");
 		Instruction i = new Instruction(mnemonic, getType(type));
 		instructions.put(mnemonic, i);
+		instructionIndex.put(mnemonic, i);
 		return i;
 	}
 	
@@ -145,7 +211,8 @@ public class InstructionSet {
 	 * @return The desired instruction, or <tt>null</tt> if it doesn't exist.
 	 */
 	public Instruction getInstruction(String mnemonic) {
-		return instructions.get(mnemonic.toLowerCase());
+		Instruction instruction = instructionIndex.get(mnemonic); // the mnemonic is usually in lower case already
+		return instruction != null ? instruction : instructionIndex.get(mnemonic.toLowerCase());
 	}
 	
 	/**
@@ -154,7 +221,7 @@ public class InstructionSet {
 	 * @return <tt>True</tt> if the instruction exists.
 	 */
 	public boolean hasInstruction(String mnemonic) {
-		return instructions.containsKey(mnemonic.toLowerCase());
+		return getInstruction(mnemonic) != null;
 	}
 	
 	/**
@@ -163,7 +230,8 @@ public class InstructionSet {
 	 * @return The desired pseudo-instruction, or <tt>null</tt> if it doesn't exist.
 	 */
 	public PseudoInstruction getPseudoInstruction(String mnemonic) {
-		return pseudoInstructions.get(mnemonic.toLowerCase());
+		PseudoInstruction pseudo = pseudoInstructionIndex.get(mnemonic); // the mnemonic is usually in lower case already
+		return pseudo != null ? pseudo : pseudoInstructionIndex.get(mnemonic.toLowerCase());
 	}
 	
 	/**
@@ -172,7 +240,7 @@ public class InstructionSet {
 	 * @return <tt>True</tt> if the pseudo-instruction exists.
 	 */
 	public boolean hasPseudoInstruction(String mnemonic) {
-		return pseudoInstructions.containsKey(mnemonic.toLowerCase());
+		return getPseudoInstruction(mnemonic) != null;
 	}
 	
 	/**
@@ -219,37 +287,33 @@ public class InstructionSet {
 	}
 	
 	/**
-	 * Parses the specified JSON file, loading the instruction set from it.
+	 * Returns the hash of the contents of the instruction set file.
+	 * <p>Instruction sets loaded from files with the same contents have the
+	 * same hash, so it can be used to identify an instruction set in caches
+	 * (like <tt>AssemblyCache</tt>).</p>
+	 * @return The hash of the contents of the file, in hexadecimal.
+	 */
+	public String getContentHash() {
+		return contentHash;
+	}
+	
+	/**
+	 * Reads and parses the specified JSON file.
 	 * @param path The path of the file to load.
+	 * @param digest The digest to update with the whole contents of the file.
+	 * @return The parsed contents of the file.
 	 * @throws IOException If the file doesn't exist or an I/O error occurs.
 	 * @throws JSONException If the JSON file is malformed.
-	 * @throws InvalidInstructionSetException If the instruction set is invalid.
-	 * @throws ArrayIndexOutOfBoundsException If an array index is invalid somewhere.
 	 */
-	private void parseFile(String path) throws IOException, JSONException, InvalidInstructionSetException, ArrayIndexOutOfBoundsException {
-		BufferedReader reader = null;
-		String file = "", line;
-
-		// Read file to String
-		try {
-			reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF8"));
-			while((line = reader.readLine()) != null) 
-				file += line + "\n";
-			reader.close();
-		}
-		catch(IOException e) {
-			throw e;
+	private static JSONObject readFile(String path, MessageDigest digest) throws IOException, JSONException {
+		// Parse and hash the file while it is read
+		DigestInputStream in = new DigestInputStream(new FileInputStream(path), digest);
+		try(JSONStreamReader reader = new JSONStreamReader(new BufferedReader(new InputStreamReader(in, "UTF8")))) {
+			JSONObject json = reader.nextObject();
+			byte[] buffer = new byte[512];
+			while(in.read(buffer) != -1); // hash the rest of the file too
+			return json;
 		}
-		finally {
-			if(reader != null) reader.close();
-		}
-		
-		JSONObject json = new JSONObject(file);
-		parseTypes(json.getJSONObject("types"));
-		parseInstructions(json.getJSONObject("instructions"));
-		if(json.has("pseudo")) parsePseudo(json.getJSONObject("pseudo"));
-		parseControl(json.getJSONObject("control"));
-		parseControlALU(json.getJSONObject("alu"));
 	}
 	
 	/**
@@ -364,7 +428,13 @@ public class InstructionSet {
 				throw new InvalidInstructionSetException("Pseudo-instruction " + p.getMnemonic() + " has no instructions!");
 			
 			pseudoInstructions.put(p.getMnemonic(), p);
+			if(p.getMnemonic().equals(p.getMnemonic().toLowerCase())) // only found in lower case
+				pseudoInstructionIndex.put(p.getMnemonic(), p);
 		}
+		
+		// Compile the pseudo-instructions, now that all of them are known
+		for(PseudoInstruction p: pseudoInstructions.values())
+			p.compile(this);
 	}
 	
 	/**
@@ -445,5 +515,7 @@ public class InstructionSet {
 					controlALU.addALUOpControl(aluOp, id, out.getInt(id));
 			}
 		}
+		
+		controlALU.finishCreation();
 	}
 }
@@ -0,0 +1,422 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads a JSON document from a stream, one token or value at a time.
+ *
+ * <p>This allows the CPU and instruction set files to be loaded in a single
+ * pass, without reading the whole file to a string and without building the
+ * whole JSON tree. Only the values read with <tt>nextObject()</tt> or
+ * <tt>nextArray()</tt> are built as <tt>JSONObject</tt>s and
+ * <tt>JSONArray</tt>s.</p>
+ *
+ * <p>Syntax errors are reported with the line and column where they occur.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>
+ * reader.beginObject();
+ * while(reader.hasNext()) {
+ *     String name = reader.nextName();
+ *     Object value = reader.nextValue();
+ * }
+ * reader.endObject();
+ * </pre>
+ *
+ * @author Bruno Nova
+ */
+final class JSONStreamReader implements Closeable {
+	/** Value of <tt>peeked</tt> when no character is peeked. */
+	private static final int NONE = -2;
+
+	/** The stream being read. */
+	private final Reader reader;
+	/** The next character, already read from the stream but not consumed. */
+	private int peeked = NONE;
+	/** The current line (starting at 1). */
+	private int line = 1;
+	/** The current column (starting at 1). */
+	private int column = 0;
+	/** Whether the next element of each open object/array is the first one. */
+	private boolean[] first = new boolean[16];
+	/** The number of open objects/arrays. */
+	private int depth = 0;
+
+	/**
+	 * Creates the reader.
+	 * <p>The stream should be buffered.</p>
+	 * @param reader The stream to read from.
+	 */
+	public JSONStreamReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Returns the line of the last character read.
+	 * @return Current line (starting at 1).
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * Returns the column of the last character read.
+	 * @return Current column (starting at 1).
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * Consumes the start of an object (<tt>{</tt>).
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next token is not the start of an object.
+	 */
+	public void beginObject() throws IOException, JSONException {
+		expect('{');
+		push();
+	}
+
+	/**
+	 * Consumes the end of an object (<tt>}</tt>).
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next token is not the end of an object.
+	 */
+	public void endObject() throws IOException, JSONException {
+		expect('}');
+		depth--;
+	}
+
+	/**
+	 * Consumes the start of an array (<tt>[</tt>).
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next token is not the start of an array.
+	 */
+	public void beginArray() throws IOException, JSONException {
+		expect('[');
+		push();
+	}
+
+	/**
+	 * Consumes the end of an array (<tt>]</tt>).
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next token is not the end of an array.
+	 */
+	public void endArray() throws IOException, JSONException {
+		expect(']');
+		depth--;
+	}
+
+	/**
+	 * Returns whether the current object or array has another element.
+	 * <p>If it has, the element must then be read (with <tt>nextName()</tt>
+	 * and a value for objects, or just a value for arrays) before calling
+	 * this method again.</p>
+	 * @return <tt>true</tt> if there is another element.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the JSON is malformed.
+	 */
+	public boolean hasNext() throws IOException, JSONException {
+		int c = peekClean();
+		if(c == '}' || c == ']')
+			return false;
+		if(first[depth - 1])
+			first[depth - 1] = false;
+		else {
+			expect(',');
+			c = peekClean();
+			if(c == '}' || c == ']') // trailing comma, accepted like org.json does
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Consumes and returns the name of the next member of an object, and the following <tt>:</tt>.
+	 * @return The name of the member.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next token is not a name.
+	 */
+	public String nextName() throws IOException, JSONException {
+		String name = nextString();
+		expect(':');
+		return name;
+	}
+
+	/**
+	 * Consumes and returns the next value, which must be a string.
+	 * @return The string.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next value is not a string.
+	 */
+	public String nextString() throws IOException, JSONException {
+		int c = peekClean();
+		if(c != '"' && c != '\'')
+			throw syntaxError("A string was expected");
+		return readString();
+	}
+
+	/**
+	 * Consumes and returns the next value, which must be an object.
+	 * @return The object.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next value is not an object.
+	 */
+	public JSONObject nextObject() throws IOException, JSONException {
+		JSONObject obj = new JSONObject();
+		String name;
+		beginObject();
+		while(hasNext()) {
+			name = nextName();
+			obj.put(name, nextValue());
+		}
+		endObject();
+		return obj;
+	}
+
+	/**
+	 * Consumes and returns the next value, which must be an array.
+	 * @return The array.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next value is not an array.
+	 */
+	public JSONArray nextArray() throws IOException, JSONException {
+		JSONArray array = new JSONArray();
+		beginArray();
+		while(hasNext())
+			array.put(nextValue());
+		endArray();
+		return array;
+	}
+
+	/**
+	 * Consumes and returns the next value.
+	 * @return The value: a <tt>JSONObject</tt>, <tt>JSONArray</tt>, <tt>String</tt>,
+	 *         <tt>Boolean</tt>, <tt>Integer</tt>, <tt>Long</tt>, <tt>Double</tt> or <tt>JSONObject.NULL</tt>.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the JSON is malformed.
+	 */
+	public Object nextValue() throws IOException, JSONException {
+		switch(peekClean()) {
+			case '{':  return nextObject();
+			case '[':  return nextArray();
+			case '"':
+			case '\'': return readString();
+			default:   return readLiteral();
+		}
+	}
+
+	/**
+	 * Consumes the next value without building it.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the JSON is malformed.
+	 */
+	public void skipValue() throws IOException, JSONException {
+		switch(peekClean()) {
+			case '{':
+				beginObject();
+				while(hasNext()) {
+					nextName();
+					skipValue();
+				}
+				endObject();
+				break;
+			case '[':
+				beginArray();
+				while(hasNext())
+					skipValue();
+				endArray();
+				break;
+			default:
+				nextValue();
+		}
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Returns an exception for a syntax error at the current position.
+	 * @param message The error message.
+	 * @return The exception, to be thrown.
+	 */
+	public JSONException syntaxError(String message) {
+		return new JSONException(message + " at line " + line + ", column " + column);
+	}
+
+	/**
+	 * Opens a new object/array.
+	 */
+	private void push() {
+		if(depth == first.length) {
+			boolean[] f = new boolean[first.length * 2];
+			System.arraycopy(first, 0, f, 0, first.length);
+			first = f;
+		}
+		first[depth++] = true;
+	}
+
+	/**
+	 * Returns the next character without consuming it.
+	 * @return The next character, or -1 at the end of the stream.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private int peek() throws IOException {
+		if(peeked == NONE)
+			peeked = reader.read();
+		return peeked;
+	}
+
+	/**
+	 * Consumes and returns the next character.
+	 * @return The next character, or -1 at the end of the stream.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private int read() throws IOException {
+		int c = peek();
+		peeked = NONE;
+		if(c == '\n') {
+			line++;
+			column = 0;
+		}
+		else if(c != -1)
+			column++;
+		return c;
+	}
+
+	/**
+	 * Skips the whitespace and returns the next character without consuming it.
+	 * @return The next character, or -1 at the end of the stream.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private int peekClean() throws IOException {
+		int c;
+		while((c = peek()) == ' ' || c == '\t' || c == '\n' || c == '\r')
+			read();
+		return c;
+	}
+
+	/**
+	 * Skips the whitespace and consumes the given character.
+	 * @param expected The expected character.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the next character is a different one.
+	 */
+	private void expect(char expected) throws IOException, JSONException {
+		if(peekClean() != expected) {
+			read();
+			throw syntaxError("Expected '" + expected + "'");
+		}
+		read();
+	}
+
+	/**
+	 * Consumes and returns a quoted string (the next character must be the quote).
+	 * @return The string, without the quotes and with the escapes processed.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the string is malformed.
+	 */
+	private String readString() throws IOException, JSONException {
+		int quote = read(), c;
+		StringBuilder s = new StringBuilder();
+		while((c = read()) != quote) {
+			switch(c) {
+				case -1:
+				case '\n':
+				case '\r':
+					throw syntaxError("Unterminated string");
+				case '\\':
+					switch(c = read()) {
+						case 'b': s.append('\b'); break;
+						case 't': s.append('\t'); break;
+						case 'n': s.append('\n'); break;
+						case 'f': s.append('\f'); break;
+						case 'r': s.append('\r'); break;
+						case 'u':
+							int code = 0;
+							for(int i = 0; i < 4; i++) {
+								int digit = Character.digit(read(), 16);
+								if(digit < 0) throw syntaxError("Illegal escape");
+								code = code * 16 + digit;
+							}
+							s.append((char)code);
+							break;
+						case '"':
+						case '\'':
+						case '\\':
+						case '/':
+							s.append((char)c);
+							break;
+						default:
+							throw syntaxError("Illegal escape");
+					}
+					break;
+				default:
+					s.append((char)c);
+			}
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Consumes and returns a literal value (number, <tt>true</tt>, <tt>false</tt> or <tt>null</tt>).
+	 * @return The value.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the value is invalid.
+	 */
+	private Object readLiteral() throws IOException, JSONException {
+		StringBuilder s = new StringBuilder();
+		int c;
+		while((c = peek()) != -1 && c != ',' && c != ':' && c != '}' && c != ']'
+			&& c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '{' && c != '[')
+			s.append((char)read());
+		String literal = s.toString();
+
+		switch(literal) {
+			case "":      throw syntaxError(c == -1 ? "Unexpected end of file" : "Unexpected '" + (char)read() + "'");
+			case "true":  return Boolean.TRUE;
+			case "false": return Boolean.FALSE;
+			case "null":  return JSONObject.NULL;
+		}
+		try {
+			if(literal.indexOf('.') >= 0 || literal.indexOf('e') >= 0 || literal.indexOf('E') >= 0)
+				return Double.valueOf(literal);
+			long value = Long.parseLong(literal);
+			if(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+				return (int)value;
+			else
+				return value;
+		} catch(NumberFormatException ex) {
+			throw syntaxError("Invalid value " + literal);
+		}
+	}
+}
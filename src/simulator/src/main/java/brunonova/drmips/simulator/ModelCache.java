@@ -0,0 +1,470 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.exceptions.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Cache of loaded CPUs, keyed by the contents of the CPU and instruction set files.
+ *
+ * <p>The first time a CPU file is loaded it is parsed normally, and the parsed
+ * CPU is kept in memory. Loading a file with the same contents again (and
+ * whose instruction set file is also unchanged) returns a copy of that CPU
+ * (see <tt>CPU.copy()</tt>), without parsing anything. Only the most recently
+ * used CPUs are kept in memory, so editing and reloading a file many times
+ * doesn't keep all of its versions.</p>
+ *
+ * <p>If a cache directory is given, the parsed contents of both files are
+ * also saved there in a compact binary format, in a file named after the
+ * SHA-1 hash of the CPU file. Later loads, even after the program is
+ * restarted, read that file instead of parsing the JSON text. The cache
+ * file is ignored and rewritten if the instruction set file has changed or
+ * if it is corrupted.</p>
+ *
+ * @author Bruno Nova
+ */
+public class ModelCache {
+	/** The default maximum number of CPUs kept in memory. */
+	public static final int DEFAULT_CAPACITY = 8;
+	/** The file extension of the cache files. */
+	public static final String FILENAME_EXTENSION = "model";
+	/** The "magic number" at the start of the cache files. */
+	private static final int MAGIC = 0x44524D50; // "DRMP"
+	/** The version of the format of the cache files. */
+	private static final int VERSION = 1;
+	/** The algorithm used to hash the files. */
+	private static final String HASH_ALGORITHM = "SHA-1";
+
+	// Tags of the values in the cache files
+	private static final byte TAG_NULL = 0;
+	private static final byte TAG_OBJECT = 1;
+	private static final byte TAG_ARRAY = 2;
+	private static final byte TAG_STRING = 3;
+	private static final byte TAG_BOOLEAN = 4;
+	private static final byte TAG_INT = 5;
+	private static final byte TAG_LONG = 6;
+	private static final byte TAG_DOUBLE = 7;
+	private static final byte TAG_NUMBER = 8;
+
+	/** The directory where the cache files are saved, or <tt>null</tt> to only cache in memory. */
+	private final File directory;
+	/** The CPUs in memory, indexed by the parent directory and hash of their files, from the least to the most recently used. */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * Creates a cache that only keeps the loaded CPUs in memory, with the default capacity.
+	 */
+	public ModelCache() {
+		this(null);
+	}
+
+	/**
+	 * Creates a cache that also saves the parsed files in the given directory, with the default capacity.
+	 * @param directory The directory where the cache files are saved (created if needed),
+	 *                  or <tt>null</tt> to only cache in memory.
+	 */
+	public ModelCache(File directory) {
+		this(DEFAULT_CAPACITY, directory);
+	}
+
+	/**
+	 * Creates a cache that also saves the parsed files in the given directory.
+	 * @param capacity The maximum number of CPUs kept in memory.
+	 * @param directory The directory where the cache files are saved (created if needed),
+	 *                  or <tt>null</tt> to only cache in memory.
+	 * @throws IllegalArgumentException If the capacity isn't positive.
+	 */
+	public ModelCache(final int capacity, File directory) {
+		if(capacity <= 0) throw new IllegalArgumentException("The capacity must be positive!");
+		this.directory = directory;
+		entries = new LinkedHashMap<String, Entry>(capacity + 1, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ModelCache.Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the directory where the cache files are saved.
+	 * @return The cache directory, or <tt>null</tt> if the cache is only in memory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Loads a CPU from a file, using the cache if possible.
+	 * <p><b>Don't forget to call <tt>setPerformanceInstructionDependent()</tt> on the CPU!</b></p>.
+	 * @param path Path to the CPU file.
+	 * @return CPU created from the file.
+	 * @throws IOException If a file doesn't exist or an I/O error occurs.
+	 * @throws JSONException If a JSON file is malformed.
+	 * @throws InvalidCPUException If the CPU is invalid or incomplete
+	 * @throws ArrayIndexOutOfBoundsException If an array index is invalid somewhere (like an invalid register).
+	 * @throws InvalidInstructionSetException If the instruction set is invalid.
+	 * @throws NumberFormatException If an opcode is not a number.
+	 */
+	public synchronized CPU load(String path) throws IOException, JSONException, InvalidCPUException, ArrayIndexOutOfBoundsException, InvalidInstructionSetException, NumberFormatException {
+		File file = new File(path);
+		String parentPath = file.getAbsoluteFile().getParentFile().getAbsolutePath();
+		byte[] cpuBytes = readFile(file);
+		String cpuHash = toHex(hash(cpuBytes));
+		String key = parentPath + File.pathSeparator + cpuHash;
+
+		// Already loaded?
+		Entry entry = entries.get(key);
+		if(entry != null && entry.isValid(parentPath)) {
+			CPU cpu = entry.prototype.copy();
+			cpu.setFile(file);
+			return cpu;
+		}
+
+		// Parse the cache file, or the JSON files if not cached
+		JSONObject cpuJSON = null, setJSON = null;
+		String setName = null;
+		byte[] setHash = null;
+		File cacheFile = directory != null ? new File(directory, cpuHash + "." + FILENAME_EXTENSION) : null;
+		if(cacheFile != null && cacheFile.isFile()) {
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+				if(in.readInt() == MAGIC && in.readInt() == VERSION) {
+					setName = in.readUTF();
+					setHash = new byte[in.readUnsignedByte()];
+					in.readFully(setHash);
+					if(Arrays.equals(setHash, hash(readFile(new File(parentPath, setName))))) {
+						cpuJSON = (JSONObject)readValue(in);
+						setJSON = (JSONObject)readValue(in);
+					}
+				}
+			}
+			catch(IOException | JSONException | ClassCastException ex) { // corrupted or outdated, ignore it
+				cpuJSON = setJSON = null;
+			}
+		}
+		if(cpuJSON == null || setJSON == null) {
+			cpuJSON = parseJSON(cpuBytes);
+			setName = cpuJSON.getString("instructions");
+			byte[] setBytes = readFile(new File(parentPath, setName));
+			setHash = hash(setBytes);
+			setJSON = parseJSON(setBytes);
+			if(cacheFile != null)
+				writeCacheFile(cacheFile, setName, setHash, cpuJSON, setJSON);
+		}
+
+		// Create the CPU and keep it for later loads
+		CPU prototype = CPU.createFromJSON(file, cpuJSON, parentPath, new InstructionSet(setJSON, setHash));
+		entries.put(key, new Entry(prototype, setName, setHash));
+		return prototype.copy();
+	}
+
+	/**
+	 * Removes all the CPUs kept in memory.
+	 * <p>The cache files aren't deleted.</p>
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of CPUs kept in memory.
+	 * @return The number of CPUs in memory.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Writes a cache file, ignoring any error.
+	 * @param cacheFile The cache file to write.
+	 * @param setName The path to the instruction set file, relative to the CPU file.
+	 * @param setHash The hash of the instruction set file.
+	 * @param cpuJSON The parsed contents of the CPU file.
+	 * @param setJSON The parsed contents of the instruction set file.
+	 */
+	private void writeCacheFile(File cacheFile, String setName, byte[] setHash, JSONObject cpuJSON, JSONObject setJSON) {
+		if(!directory.isDirectory() && !directory.mkdirs())
+			return;
+
+		// Write to a temporary file first, so that a partial file is never read
+		File temp = new File(directory, cacheFile.getName() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(setName);
+			out.writeByte(setHash.length);
+			out.write(setHash);
+			writeValue(out, cpuJSON);
+			writeValue(out, setJSON);
+		}
+		catch(IOException | JSONException ex) {
+			temp.delete();
+			return;
+		}
+		if(!temp.renameTo(cacheFile)) {
+			cacheFile.delete();
+			if(!temp.renameTo(cacheFile))
+				temp.delete();
+		}
+	}
+
+	/**
+	 * Writes a JSON value (and its children) in binary form.
+	 * @param out The stream to write to.
+	 * @param value The value to write.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the value is malformed.
+	 */
+	private static void writeValue(DataOutputStream out, Object value) throws IOException, JSONException {
+		if(value instanceof JSONObject) {
+			JSONObject obj = (JSONObject)value;
+			out.writeByte(TAG_OBJECT);
+			out.writeInt(obj.length());
+			Iterator<String> keys = obj.keys();
+			while(keys.hasNext()) {
+				String key = keys.next();
+				writeString(out, key);
+				writeValue(out, obj.get(key));
+			}
+		}
+		else if(value instanceof JSONArray) {
+			JSONArray array = (JSONArray)value;
+			out.writeByte(TAG_ARRAY);
+			out.writeInt(array.length());
+			for(int i = 0; i < array.length(); i++)
+				writeValue(out, array.get(i));
+		}
+		else if(value instanceof String) {
+			out.writeByte(TAG_STRING);
+			writeString(out, (String)value);
+		}
+		else if(value instanceof Boolean) {
+			out.writeByte(TAG_BOOLEAN);
+			out.writeBoolean((Boolean)value);
+		}
+		else if(value instanceof Integer) {
+			out.writeByte(TAG_INT);
+			out.writeInt((Integer)value);
+		}
+		else if(value instanceof Long) {
+			out.writeByte(TAG_LONG);
+			out.writeLong((Long)value);
+		}
+		else if(value instanceof Double) {
+			out.writeByte(TAG_DOUBLE);
+			out.writeDouble((Double)value);
+		}
+		else if(value instanceof Number) { // BigInteger, BigDecimal...
+			out.writeByte(TAG_NUMBER);
+			writeString(out, value.toString());
+		}
+		else
+			out.writeByte(TAG_NULL);
+	}
+
+	/**
+	 * Reads a JSON value (and its children) written by <tt>writeValue()</tt>.
+	 * @param in The stream to read from.
+	 * @return The value read.
+	 * @throws IOException If an I/O error occurs or the data is invalid.
+	 * @throws JSONException If the data is invalid.
+	 */
+	private static Object readValue(DataInputStream in) throws IOException, JSONException {
+		int length;
+		switch(in.readByte()) {
+			case TAG_NULL:
+				return JSONObject.NULL;
+			case TAG_OBJECT:
+				JSONObject obj = new JSONObject();
+				length = in.readInt();
+				for(int i = 0; i < length; i++) {
+					String key = readString(in);
+					obj.put(key, readValue(in));
+				}
+				return obj;
+			case TAG_ARRAY:
+				JSONArray array = new JSONArray();
+				length = in.readInt();
+				for(int i = 0; i < length; i++)
+					array.put(readValue(in));
+				return array;
+			case TAG_STRING:
+				return readString(in);
+			case TAG_BOOLEAN:
+				return in.readBoolean();
+			case TAG_INT:
+				return in.readInt();
+			case TAG_LONG:
+				return in.readLong();
+			case TAG_DOUBLE:
+				return in.readDouble();
+			case TAG_NUMBER:
+				return new BigDecimal(readString(in));
+			default:
+				throw new IOException("Invalid cache file!");
+		}
+	}
+
+	/**
+	 * Writes a string of any length in UTF-8.
+	 * @param out The stream to write to.
+	 * @param s The string to write.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by <tt>writeString()</tt>.
+	 * @param in The stream to read from.
+	 * @return The string read.
+	 * @throws IOException If an I/O error occurs or the data is invalid.
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0) throw new IOException("Invalid cache file!");
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Parses the given JSON file contents.
+	 * @param bytes The contents of the file, in UTF-8.
+	 * @return The parsed JSON object.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws JSONException If the JSON is malformed.
+	 */
+	private static JSONObject parseJSON(byte[] bytes) throws IOException, JSONException {
+		try(JSONStreamReader reader = new JSONStreamReader(new InputStreamReader(new ByteArrayInputStream(bytes), "UTF-8"))) {
+			return reader.nextObject();
+		}
+	}
+
+	/**
+	 * Reads the whole contents of the given file.
+	 * @param file The file to read.
+	 * @return The contents of the file.
+	 * @throws IOException If the file doesn't exist or an I/O error occurs.
+	 */
+	private static byte[] readFile(File file) throws IOException {
+		try(InputStream in = new FileInputStream(file)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int)file.length());
+			byte[] buffer = new byte[8192];
+			int n;
+			while((n = in.read(buffer)) != -1)
+				out.write(buffer, 0, n);
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Returns the hash of the given data.
+	 * @param data The data.
+	 * @return The hash of the data.
+	 */
+	static byte[] hash(byte[] data) {
+		return newDigest().digest(data);
+	}
+
+	/**
+	 * Returns a new digest of the algorithm used to hash the files.
+	 * @return The new digest.
+	 */
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch(NoSuchAlgorithmException ex) { // every Java platform has SHA-1
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Converts the given bytes to an hexadecimal string.
+	 * @param bytes The bytes.
+	 * @return The hexadecimal string.
+	 */
+	static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for(byte b: bytes)
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+
+	/**
+	 * A CPU kept in memory.
+	 */
+	private static class Entry {
+		/** The loaded CPU, which is copied and never returned. */
+		private final CPU prototype;
+		/** The path to the instruction set file, relative to the CPU file. */
+		private final String setName;
+		/** The hash of the instruction set file when the CPU was loaded. */
+		private final byte[] setHash;
+
+		/**
+		 * Creates the entry.
+		 * @param prototype The loaded CPU.
+		 * @param setName The path to the instruction set file, relative to the CPU file.
+		 * @param setHash The hash of the instruction set file.
+		 */
+		public Entry(CPU prototype, String setName, byte[] setHash) {
+			this.prototype = prototype;
+			this.setName = setName;
+			this.setHash = setHash;
+		}
+
+		/**
+		 * Returns whether the instruction set file is still the same.
+		 * @param parentPath Path to the CPU file's parent directory.
+		 * @return <tt>true</tt> if the instruction set file wasn't changed.
+		 */
+		public boolean isValid(String parentPath) {
+			try {
+				return Arrays.equals(setHash, hash(readFile(new File(parentPath, setName))));
+			} catch(IOException ex) {
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,376 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An assembled program, ready to be loaded into a CPU.
+ *
+ * <p>The image contains the assembled instructions, the values to write in
+ * the data memory (from the <tt>.data</tt> section) and the labels of the
+ * code. It is created by <tt>Assembler.assembleImage()</tt> without changing
+ * the CPU, and can be loaded (more than once) with <tt>CPU.load()</tt> into
+ * any CPU with the same instruction set.</p>
+ *
+ * <p>Images are immutable, so the same image can be shared by several CPUs,
+ * even in different threads.</p>
+ *
+ * <p>An image can also be saved to a program file (with the
+ * <tt>FILE_EXTENSION</tt> extension), which can be loaded later without
+ * assembling the code again. The file has the machine code and the mnemonic
+ * of each instruction, the data segment, the labels and the lines of code.
+ * The mnemonics are resolved in the instruction set of the CPU the file is
+ * loaded into.</p>
+ *
+ * @author Bruno Nova
+ */
+public final class ProgramImage {
+	/** The extension of program files. */
+	public static final String FILE_EXTENSION = "drmo";
+	/** The identifier at the start of program files. */
+	private static final int MAGIC = 0x44524D4F; // "DRMO"
+	/** The version of the format of program files. */
+	private static final int VERSION = 1;
+	/** The maximum initial capacity of the lists read from a program file (they grow as needed). */
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	/** The assembled instructions. */
+	private final List<AssembledInstruction> instructions;
+	/** The addresses of the data memory positions to write, in order. */
+	private final int[] dataAddresses;
+	/** The values to write in the data memory positions. */
+	private final int[] dataValues;
+	/** The text segment labels and the indexes of their instructions. */
+	private final Map<String, Integer> textLabels;
+	/** The data segment labels and their addresses. */
+	private final Map<String, Integer> dataLabels;
+
+	/**
+	 * Creates the program image.
+	 * @param instructions The assembled instructions.
+	 * @param dataAddresses The addresses of the data memory positions to write, in order.
+	 * @param dataValues The values to write in the data memory positions.
+	 * @param textLabels The text segment labels and the indexes of their instructions.
+	 * @param dataLabels The data segment labels and their addresses.
+	 */
+	ProgramImage(List<AssembledInstruction> instructions, int[] dataAddresses, int[] dataValues, Map<String, Integer> textLabels, Map<String, Integer> dataLabels) {
+		this.instructions = Collections.unmodifiableList(instructions);
+		this.dataAddresses = dataAddresses;
+		this.dataValues = dataValues;
+		this.textLabels = Collections.unmodifiableMap(textLabels);
+		this.dataLabels = Collections.unmodifiableMap(dataLabels);
+	}
+
+	/**
+	 * Returns the assembled instructions.
+	 * @return The assembled instructions (unmodifiable).
+	 */
+	public List<AssembledInstruction> getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * Returns the number of assembled instructions.
+	 * @return The number of instructions.
+	 */
+	public int getNumberOfInstructions() {
+		return instructions.size();
+	}
+
+	/**
+	 * Returns the number of the line in the code of the given instruction.
+	 * @param index The index of the instruction.
+	 * @return The number of the line (starting at 1).
+	 * @throws IndexOutOfBoundsException If the index is invalid.
+	 */
+	public int getLineNumber(int index) {
+		return instructions.get(index).getLineNumber();
+	}
+
+	/**
+	 * Returns the number of data memory writes in the image.
+	 * @return The number of data words.
+	 */
+	public int getNumberOfDataWords() {
+		return dataAddresses.length;
+	}
+
+	/**
+	 * Returns the address of the given data memory write.
+	 * @param i The index of the write.
+	 * @return The address to write to.
+	 * @throws ArrayIndexOutOfBoundsException If the index is invalid.
+	 */
+	public int getDataAddress(int i) {
+		return dataAddresses[i];
+	}
+
+	/**
+	 * Returns the value of the given data memory write.
+	 * @param i The index of the write.
+	 * @return The value to write.
+	 * @throws ArrayIndexOutOfBoundsException If the index is invalid.
+	 */
+	public int getDataValue(int i) {
+		return dataValues[i];
+	}
+
+	/**
+	 * Returns the labels in the text segment.
+	 * @return The labels and the indexes of their instructions (unmodifiable).
+	 */
+	public Map<String, Integer> getTextLabels() {
+		return textLabels;
+	}
+
+	/**
+	 * Returns the labels in the data segment.
+	 * @return The labels and their addresses (unmodifiable).
+	 */
+	public Map<String, Integer> getDataLabels() {
+		return dataLabels;
+	}
+
+	/**
+	 * Returns the image with the instructions resolved in the given instruction set.
+	 * <p>Used to load an image assembled for another CPU with an identical
+	 * instruction set, so that the CPU's own <tt>Instruction</tt> objects are
+	 * used. The machine code and the rest of the image are shared.</p>
+	 * @param set The instruction set.
+	 * @return The new image.
+	 * @throws IllegalArgumentException If an instruction doesn't exist in the instruction set.
+	 */
+	ProgramImage relink(InstructionSet set) {
+		List<AssembledInstruction> relinked = new ArrayList<>(instructions.size());
+		for(AssembledInstruction i: instructions) {
+			Instruction instruction = set.getInstruction(i.getInstruction().getMnemonic());
+			if(instruction == null)
+				throw new IllegalArgumentException("The instruction " + i.getInstruction().getMnemonic() + " isn't in the instruction set!");
+			AssembledInstruction copy = new AssembledInstruction(instruction, i.getData(), i.getCodeLine(), i.getLineNumber());
+			for(String label: i.getLabels())
+				copy.addLabel(label);
+			relinked.add(copy);
+		}
+		return new ProgramImage(relinked, dataAddresses, dataValues, textLabels, dataLabels);
+	}
+
+	/**
+	 * Saves the image to the given program file.
+	 * @param file The file to save to.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void save(File file) throws IOException {
+		try(OutputStream out = new FileOutputStream(file)) {
+			save(out);
+		}
+	}
+
+	/**
+	 * Writes the image in the program file format to the given stream.
+	 * @param stream The stream to write to (not closed).
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void save(OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		// Text segment and lines of code
+		out.writeInt(instructions.size());
+		for(AssembledInstruction instruction: instructions) {
+			out.writeUTF(instruction.getInstruction().getMnemonic());
+			out.writeInt(instruction.getData().getValue());
+			out.writeInt(instruction.getLineNumber());
+			out.writeUTF(instruction.getCodeLine());
+		}
+
+		// Data segment
+		out.writeInt(dataAddresses.length);
+		for(int i = 0; i < dataAddresses.length; i++) {
+			out.writeInt(dataAddresses[i]);
+			out.writeInt(dataValues[i]);
+		}
+
+		// Labels
+		writeLabels(out, textLabels);
+		writeLabels(out, dataLabels);
+		out.flush();
+	}
+
+	/**
+	 * Loads a program image from the given program file.
+	 * @param file The file to load.
+	 * @param cpu The CPU the program will be loaded into (only its instruction set is used).
+	 * @return The loaded image.
+	 * @throws IOException If the file is invalid, has an instruction not supported by the CPU or an I/O error occurs.
+	 */
+	public static ProgramImage load(File file, CPU cpu) throws IOException {
+		try(InputStream in = new FileInputStream(file)) {
+			return load(in, cpu);
+		}
+	}
+
+	/**
+	 * Reads a program image in the program file format from the given stream.
+	 * @param stream The stream to read from (not closed).
+	 * @param cpu The CPU the program will be loaded into (only its instruction set is used).
+	 * @return The loaded image.
+	 * @throws IOException If the data is invalid, has an instruction not supported by the CPU or an I/O error occurs.
+	 */
+	public static ProgramImage load(InputStream stream, CPU cpu) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		if(in.readInt() != MAGIC)
+			throw new IOException("Invalid program file!");
+		if(in.readInt() != VERSION)
+			throw new IOException("Unsupported program file version!");
+
+		// Text segment and lines of code
+		int count = readCount(in);
+		List<AssembledInstruction> instructions = new ArrayList<>(Math.min(count, INITIAL_CAPACITY));
+		for(int i = 0; i < count; i++) {
+			String mnemonic = in.readUTF();
+			int value = in.readInt();
+			int line = in.readInt();
+			String codeLine = in.readUTF();
+			Instruction instruction = cpu.getInstructionSet().getInstruction(mnemonic);
+			if(instruction == null || !matchesConstantFields(instruction, value))
+				throw new IOException("The instruction " + mnemonic + " in line " + line + " isn't supported by the CPU!");
+			instructions.add(new AssembledInstruction(instruction, new Data(Data.DATA_SIZE, value), codeLine, line));
+		}
+
+		// Data segment
+		count = readCount(in);
+		int[] dataAddresses = new int[Math.min(count, INITIAL_CAPACITY)], dataValues = new int[dataAddresses.length];
+		for(int i = 0; i < count; i++) {
+			if(i == dataAddresses.length) { // grow as the words are read, as a corrupt count could be huge
+				dataAddresses = Arrays.copyOf(dataAddresses, Math.min(count, i * 2));
+				dataValues = Arrays.copyOf(dataValues, dataAddresses.length);
+			}
+			dataAddresses[i] = in.readInt();
+			dataValues[i] = in.readInt();
+		}
+
+		// Labels
+		Map<String, Integer> textLabels = readLabels(in), dataLabels = readLabels(in);
+		for(Map.Entry<String, Integer> e: textLabels.entrySet()) {
+			if(e.getValue() >= 0 && e.getValue() < instructions.size())
+				instructions.get(e.getValue()).addLabel(e.getKey());
+		}
+
+		return new ProgramImage(instructions, dataAddresses, dataValues, textLabels, dataLabels);
+	}
+
+	/**
+	 * Returns whether the given file is a program file (by its extension).
+	 * @param file The file.
+	 * @return <tt>true</tt> if it has the extension of program files.
+	 */
+	public static boolean isProgramFile(File file) {
+		return file.getName().toLowerCase().endsWith("." + FILE_EXTENSION);
+	}
+
+	/**
+	 * Returns the program file for the given code file (same name, different extension).
+	 * @param codeFile The code file.
+	 * @return The program file.
+	 */
+	public static File getProgramFileFor(File codeFile) {
+		String name = codeFile.getName();
+		int dot = name.lastIndexOf('.');
+		if(dot > 0) name = name.substring(0, dot);
+		return new File(codeFile.getParentFile(), name + "." + FILE_EXTENSION);
+	}
+
+	/**
+	 * Returns whether the given machine code has the constant fields of the given instruction.
+	 * <p>Used to detect programs assembled for a different instruction set.</p>
+	 * @param instruction The instruction.
+	 * @param value The machine code.
+	 * @return <tt>true</tt> if all constant fields match.
+	 */
+	private static boolean matchesConstantFields(Instruction instruction, int value) {
+		for(InstructionType.Field field: instruction.getType().getFields()) {
+			Instruction.FieldValue f = instruction.getField(field);
+			if(f instanceof Instruction.FieldConstant) {
+				int constant = field.getValueInField(((Instruction.FieldConstant)f).getValue());
+				if(field.getValueFromField(constant) != field.getValueFromField(value))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the given labels to the stream.
+	 * @param out The stream.
+	 * @param labels The labels and their values.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void writeLabels(DataOutputStream out, Map<String, Integer> labels) throws IOException {
+		out.writeInt(labels.size());
+		for(Map.Entry<String, Integer> e: labels.entrySet()) {
+			out.writeUTF(e.getKey());
+			out.writeInt(e.getValue());
+		}
+	}
+
+	/**
+	 * Reads labels from the stream.
+	 * @param in The stream.
+	 * @return The labels and their values.
+	 * @throws IOException If the data is invalid or an I/O error occurs.
+	 */
+	private static Map<String, Integer> readLabels(DataInputStream in) throws IOException {
+		Map<String, Integer> labels = new TreeMap<>();
+		int count = readCount(in);
+		for(int i = 0; i < count; i++) {
+			String label = in.readUTF();
+			labels.put(label, in.readInt());
+		}
+		return labels;
+	}
+
+	/**
+	 * Reads the number of elements of a section from the stream.
+	 * @param in The stream.
+	 * @return The number of elements.
+	 * @throws IOException If the number is negative or an I/O error occurs.
+	 */
+	private static int readCount(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if(count < 0) throw new IOException("Invalid program file!");
+		return count;
+	}
+}
@@ -19,17 +19,33 @@
 package brunonova.drmips.simulator;
 
 import brunonova.drmips.simulator.exceptions.InvalidInstructionSetException;
+import brunonova.drmips.simulator.exceptions.SyntaxErrorException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
  * Represents a pseudo-instruction.
  * 
+ * <p>When the instruction set is loaded, each pseudo-instruction is compiled
+ * into a flattened template: the list of real instructions it is converted
+ * to, with the pseudo-instructions used inside it already expanded, and the
+ * places where the arguments are inserted already found. Expanding a
+ * pseudo-instruction in the code is then a direct substitution of the
+ * arguments.</p>
+ * 
  * @author Bruno Nova
  */
 public class PseudoInstruction extends AbstractInstruction {
 	/** The real instructions this pseudo-instruction should be converted to. */
 	private final List<String> instructions;
+	/** The compiled instructions, with the nested pseudo-instructions expanded (<tt>null</tt> if not compiled). */
+	private List<Template> templates = null;
+	/** Whether the pseudo-instruction is being compiled (used to detect recursive definitions). */
+	private boolean compiling = false;
+	/** The nested pseudo-instructions whose number of arguments must be checked when expanding (in the order they are expanded). */
+	private List<Check> checks = null;
 	
 	/**
 	 * Creates a new pseudo-instruction.
@@ -57,6 +73,7 @@ public class PseudoInstruction extends AbstractInstruction {
 		
 		// Add instruction
 		instructions.add(instruction);
+		templates = null;
 	}
 	
 	/**
@@ -95,4 +112,282 @@ public class PseudoInstruction extends AbstractInstruction {
 		
 		return args <= getNumberOfArguments();
 	}
+	
+	/**
+	 * Compiles the pseudo-instruction into a flattened template.
+	 * <p>The pseudo-instructions used inside this one are compiled first.</p>
+	 * @param set The instruction set, used to find the nested pseudo-instructions.
+	 * @throws InvalidInstructionSetException If an instruction has no mnemonic or the definition is recursive.
+	 */
+	void compile(InstructionSet set) throws InvalidInstructionSetException {
+		if(templates != null) return;
+		if(compiling)
+			throw new InvalidInstructionSetException("Invalid pseudo-instruction " + getMnemonic() + "! Recursive definition.");
+		compiling = true;
+		
+		List<Template> list = new ArrayList<>();
+		List<Check> checkList = new ArrayList<>();
+		try {
+			for(String instruction: instructions) {
+				Template template = Template.parse(instruction, getMnemonic());
+				PseudoInstruction nested = set.getPseudoInstruction(template.mnemonic);
+				if(nested == null) {
+					list.add(template);
+					continue;
+				}
+				
+				// Nested pseudo-instruction: insert its template with our arguments
+				nested.compile(set);
+				int expected = nested.getNumberOfArguments();
+				if(expected != template.args.length || template.canLoseLastArgument())
+					checkList.add(new Check(template, expected)); // the number of arguments depends on the values
+				if(template.args.length < expected)
+					break; // the expansion always fails from here on
+				for(Check c: nested.checks)
+					checkList.add(new Check(c.template.substitute(template.args), c.expected));
+				for(Template t: nested.templates)
+					list.add(t.substitute(template.args));
+			}
+		}
+		finally {
+			compiling = false;
+		}
+		checks = Collections.unmodifiableList(checkList);
+		templates = Collections.unmodifiableList(list);
+	}
+	
+	/**
+	 * Expands the pseudo-instruction with the given arguments into real instructions.
+	 * <p>The pseudo-instruction must have been compiled (by the instruction set).</p>
+	 * @param args The arguments of the pseudo-instruction.
+	 * @param lineNumber The number of the line of code.
+	 * @return The resulting instructions.
+	 * @throws SyntaxErrorException If the pseudo-instruction (or a nested one) has the wrong number of arguments.
+	 */
+	List<AssemblerLexer.Statement> expand(AssemblerLexer.Token[] args, int lineNumber) throws SyntaxErrorException {
+		if(templates == null)
+			throw new IllegalStateException("The pseudo-instruction " + getMnemonic() + " wasn't compiled!");
+		if(getNumberOfArguments() != args.length)
+			throw new SyntaxErrorException(SyntaxErrorException.Type.WRONG_NUMBER_OF_ARGUMENTS, lineNumber, "" + getNumberOfArguments(), "" + args.length);
+		
+		String[] values = new String[args.length];
+		for(int i = 0; i < args.length; i++)
+			values[i] = args[i].text;
+		for(Check check: checks) { // the nested pseudo-instructions are split like in the code
+			int found = check.template.fill(values, lineNumber).args.length;
+			if(found != check.expected)
+				throw new SyntaxErrorException(SyntaxErrorException.Type.WRONG_NUMBER_OF_ARGUMENTS, lineNumber, "" + check.expected, "" + found);
+		}
+		List<AssemblerLexer.Statement> statements = new ArrayList<>(templates.size());
+		for(Template template: templates)
+			statements.add(template.fill(values, lineNumber));
+		return statements;
+	}
+	
+	/**
+	 * A text with the places where the arguments are inserted.
+	 * <p>The text is <tt>literals[0] + arg[slots[0]] + literals[1] + ... + literals[n]</tt>.</p>
+	 */
+	private static final class Fragment {
+		/** The literal parts of the text (one more than the slots). */
+		private final String[] literals;
+		/** The indexes (starting at 0) of the arguments inserted between the literal parts. */
+		private final int[] slots;
+		
+		/**
+		 * Creates the fragment.
+		 * @param literals The literal parts of the text.
+		 * @param slots The indexes of the arguments inserted between the literal parts.
+		 */
+		private Fragment(String[] literals, int[] slots) {
+			this.literals = literals;
+			this.slots = slots;
+		}
+		
+		/**
+		 * Splits a text with arguments (<tt>#1</tt>, <tt>#2</tt>, etc.) into a fragment.
+		 * @param text The text.
+		 * @return The fragment.
+		 */
+		public static Fragment parse(String text) {
+			List<String> literals = new ArrayList<>(2);
+			List<Integer> slots = new ArrayList<>(1);
+			int start = 0, i, j;
+			while((i = text.indexOf(InstructionSet.ARGUMENT_CHAR, start)) >= 0) {
+				j = i + 1;
+				while(j < text.length() && text.charAt(j) >= '0' && text.charAt(j) <= '9')
+					j++;
+				literals.add(text.substring(start, i));
+				slots.add(Integer.parseInt(text.substring(i + 1, j)) - 1); // validated by isNumberOfArgumentsValid()
+				start = j;
+			}
+			literals.add(text.substring(start));
+			
+			int[] s = new int[slots.size()];
+			for(i = 0; i < s.length; i++)
+				s[i] = slots.get(i);
+			return new Fragment(literals.toArray(new String[literals.size()]), s);
+		}
+		
+		/**
+		 * Returns the text with the given arguments inserted.
+		 * @param values The arguments.
+		 * @return The resulting text.
+		 */
+		public String fill(String[] values) {
+			if(slots.length == 0)
+				return literals[0];
+			if(slots.length == 1 && literals[0].isEmpty() && literals[1].isEmpty())
+				return values[slots[0]];
+			StringBuilder text = new StringBuilder(literals[0]);
+			for(int i = 0; i < slots.length; i++)
+				text.append(values[slots[i]]).append(literals[i + 1]);
+			return text.toString();
+		}
+		
+		/**
+		 * Returns whether the text is empty if the arguments inserted are empty.
+		 * @return <tt>True</tt> if all the literal parts are whitespace.
+		 */
+		public boolean isBlank() {
+			for(String literal: literals) {
+				if(!literal.trim().isEmpty())
+					return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Returns the fragment with the given fragments inserted in place of the arguments.
+		 * <p>Used to insert the template of a nested pseudo-instruction.</p>
+		 * @param values The fragments of the arguments.
+		 * @return The resulting fragment.
+		 */
+		public Fragment substitute(Fragment[] values) {
+			List<String> l = new ArrayList<>();
+			List<Integer> s = new ArrayList<>();
+			StringBuilder literal = new StringBuilder(literals[0]);
+			for(int i = 0; i < slots.length; i++) {
+				Fragment value = values[slots[i]];
+				literal.append(value.literals[0]);
+				for(int j = 0; j < value.slots.length; j++) {
+					l.add(literal.toString());
+					s.add(value.slots[j]);
+					literal = new StringBuilder(value.literals[j + 1]);
+				}
+				literal.append(literals[i + 1]);
+			}
+			l.add(literal.toString());
+			
+			int[] slotArray = new int[s.size()];
+			for(int i = 0; i < slotArray.length; i++)
+				slotArray[i] = s.get(i);
+			return new Fragment(l.toArray(new String[l.size()]), slotArray);
+		}
+	}
+	
+	/**
+	 * A compiled instruction of a pseudo-instruction.
+	 */
+	private static final class Template {
+		/** The mnemonic of the instruction. */
+		private final String mnemonic;
+		/** The whole instruction. */
+		private final Fragment text;
+		/** The arguments of the instruction. */
+		private final Fragment[] args;
+		
+		/**
+		 * Creates the template.
+		 * @param mnemonic The mnemonic of the instruction.
+		 * @param text The whole instruction.
+		 * @param args The arguments of the instruction.
+		 */
+		private Template(String mnemonic, Fragment text, Fragment[] args) {
+			this.mnemonic = mnemonic;
+			this.text = text;
+			this.args = args;
+		}
+		
+		/**
+		 * Splits an instruction (already trimmed) of a pseudo-instruction into a template.
+		 * <p>The instruction is split like <tt>AssemblerLexer</tt> splits instructions.</p>
+		 * @param instruction The instruction.
+		 * @param pseudo The mnemonic of the pseudo-instruction (for the error message).
+		 * @return The template.
+		 * @throws InvalidInstructionSetException If the mnemonic of the instruction references an argument.
+		 */
+		public static Template parse(String instruction, String pseudo) throws InvalidInstructionSetException {
+			String[] parts = instruction.split("\\s+", 2);
+			String mnemonic = parts[0];
+			if(mnemonic.indexOf(InstructionSet.ARGUMENT_CHAR) >= 0)
+				throw new InvalidInstructionSetException("Invalid pseudo-instruction " + pseudo + "!");
+			if(parts.length < 2)
+				return new Template(mnemonic, Fragment.parse(instruction), new Fragment[0]);
+			
+			// Split the arguments by commas (trailing empty arguments are ignored)
+			String[] split = parts[1].split(",", -1);
+			int length = split.length;
+			while(length > 0 && split[length - 1].isEmpty())
+				length--;
+			Fragment[] args = new Fragment[length];
+			for(int i = 0; i < length; i++)
+				args[i] = Fragment.parse(split[i].trim());
+			return new Template(mnemonic, Fragment.parse(instruction), args);
+		}
+		
+		/**
+		 * Returns whether the last argument can be removed when the arguments are inserted.
+		 * <p>That happens when it only has arguments and whitespace, and
+		 * they are all empty, like the trailing empty arguments in the code.</p>
+		 * @return <tt>True</tt> if the number of arguments can change.
+		 */
+		public boolean canLoseLastArgument() {
+			return args.length > 0 && args[args.length - 1].isBlank();
+		}
+		
+		/**
+		 * Returns the template with the given fragments inserted in place of the arguments.
+		 * @param values The fragments of the arguments.
+		 * @return The resulting template.
+		 */
+		public Template substitute(Fragment[] values) {
+			Fragment[] a = new Fragment[args.length];
+			for(int i = 0; i < args.length; i++)
+				a[i] = args[i].substitute(values);
+			return new Template(mnemonic, text.substitute(values), a);
+		}
+		
+		/**
+		 * Returns the instruction with the given arguments inserted.
+		 * <p>The instruction is split like the instructions in the code, so
+		 * empty arguments are handled the same way.</p>
+		 * @param values The arguments.
+		 * @param lineNumber The number of the line of code.
+		 * @return The instruction.
+		 */
+		public AssemblerLexer.Statement fill(String[] values, int lineNumber) {
+			return AssemblerLexer.tokenizeInstruction(text.fill(values), lineNumber);
+		}
+	}
+	
+	/**
+	 * A nested pseudo-instruction whose number of arguments is checked when expanding.
+	 */
+	private static final class Check {
+		/** The nested pseudo-instruction, as used in the instruction. */
+		private final Template template;
+		/** The expected number of arguments. */
+		private final int expected;
+		
+		/**
+		 * Creates the check.
+		 * @param template The nested pseudo-instruction, as used in the instruction.
+		 * @param expected The expected number of arguments.
+		 */
+		private Check(Template template, int expected) {
+			this.template = template;
+			this.expected = expected;
+		}
+	}
 }
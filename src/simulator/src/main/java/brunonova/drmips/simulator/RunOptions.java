@@ -0,0 +1,203 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+/**
+ * The limits and callbacks of a run of the simulation (see <tt>CPU.run()</tt>).
+ *
+ * <p>A run stops when the program ends, when the maximum number of cycles is
+ * executed, when the time limit or the deadline is reached, when the
+ * cancellation token is cancelled or when a breakpoint or watchpoint is hit.
+ * The time limits and the cancellation token are checked (and the progress
+ * listener is notified) every <tt>checkInterval</tt> cycles, to keep the
+ * overhead low.</p>
+ *
+ * @author Bruno Nova
+ */
+public class RunOptions {
+	/** The default number of cycles executed between checks of the limits. */
+	public static final int DEFAULT_CHECK_INTERVAL = 256;
+
+	/** The maximum number of cycles executed. */
+	private int maxCycles = CPU.EXECUTE_ALL_LIMIT_CYCLES;
+	/** The time limit, in milliseconds, or 0 for no limit. */
+	private long timeout = 0;
+	/** The deadline (in the <tt>System.currentTimeMillis()</tt> scale), or 0 for no deadline. */
+	private long deadline = 0;
+	/** The number of cycles executed between checks of the limits. */
+	private int checkInterval = DEFAULT_CHECK_INTERVAL;
+	/** The token used to cancel the run, or <tt>null</tt>. */
+	private CancellationToken cancellationToken = null;
+	/** The listener notified of the progress of the run, or <tt>null</tt>. */
+	private ProgressListener progressListener = null;
+	/** Whether the run stops at breakpoints and watchpoints. */
+	private boolean stopAtBreakpoints = true;
+
+	/**
+	 * Returns the maximum number of cycles executed.
+	 * @return Maximum number of cycles.
+	 */
+	public int getMaxCycles() {
+		return maxCycles;
+	}
+
+	/**
+	 * Sets the maximum number of cycles executed.
+	 * @param maxCycles Maximum number of cycles (must be positive).
+	 */
+	public void setMaxCycles(int maxCycles) {
+		if(maxCycles <= 0) throw new IllegalArgumentException("The maximum number of cycles must be positive!");
+		this.maxCycles = maxCycles;
+	}
+
+	/**
+	 * Returns the time limit of the run.
+	 * @return Time limit, in milliseconds, or 0 for no limit.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the time limit of the run, counted from its start.
+	 * @param timeout Time limit, in milliseconds, or 0 for no limit.
+	 */
+	public void setTimeout(long timeout) {
+		if(timeout < 0) throw new IllegalArgumentException("The timeout can't be negative!");
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns the deadline of the run.
+	 * @return The deadline (in the <tt>System.currentTimeMillis()</tt> scale), or 0 for no deadline.
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Sets the wall-clock time at which the run stops.
+	 * @param deadline The deadline (in the <tt>System.currentTimeMillis()</tt> scale), or 0 for no deadline.
+	 */
+	public void setDeadline(long deadline) {
+		if(deadline < 0) throw new IllegalArgumentException("The deadline can't be negative!");
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns the number of cycles executed between checks of the limits.
+	 * @return Check interval, in cycles.
+	 */
+	public int getCheckInterval() {
+		return checkInterval;
+	}
+
+	/**
+	 * Sets the number of cycles executed between checks of the time limits
+	 * and of the cancellation token, and between progress notifications.
+	 * @param checkInterval Check interval, in cycles (must be positive).
+	 */
+	public void setCheckInterval(int checkInterval) {
+		if(checkInterval <= 0) throw new IllegalArgumentException("The check interval must be positive!");
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * Returns the token used to cancel the run.
+	 * @return The cancellation token, or <tt>null</tt>.
+	 */
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+
+	/**
+	 * Sets the token used to cancel the run.
+	 * @param cancellationToken The cancellation token, or <tt>null</tt>.
+	 */
+	public void setCancellationToken(CancellationToken cancellationToken) {
+		this.cancellationToken = cancellationToken;
+	}
+
+	/**
+	 * Returns the listener notified of the progress of the run.
+	 * @return The progress listener, or <tt>null</tt>.
+	 */
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * Sets the listener notified of the progress of the run.
+	 * @param progressListener The progress listener, or <tt>null</tt>.
+	 */
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Returns whether the run stops at the breakpoints and watchpoints of the CPU.
+	 * @return <tt>True</tt> if it stops at breakpoints and watchpoints.
+	 */
+	public boolean isStopAtBreakpoints() {
+		return stopAtBreakpoints;
+	}
+
+	/**
+	 * Sets whether the run stops at the breakpoints and watchpoints of the CPU.
+	 * @param stopAtBreakpoints Whether to stop at breakpoints and watchpoints.
+	 */
+	public void setStopAtBreakpoints(boolean stopAtBreakpoints) {
+		this.stopAtBreakpoints = stopAtBreakpoints;
+	}
+
+	/**
+	 * Listener notified of the progress of a run.
+	 */
+	public interface ProgressListener {
+		/**
+		 * Called every <tt>checkInterval</tt> cycles, in the thread executing the run.
+		 * @param cpu The CPU.
+		 * @param cycles The number of cycles executed so far in this run.
+		 */
+		public void progress(CPU cpu, int cycles);
+	}
+
+	/**
+	 * Token used to cancel a run from another thread.
+	 */
+	public static class CancellationToken {
+		/** Whether the run was cancelled. */
+		private volatile boolean cancelled = false;
+
+		/**
+		 * Cancels the run(s) using this token.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * Returns whether the token was cancelled.
+		 * @return <tt>True</tt> if cancelled.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
@@ -0,0 +1,310 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The watchpoints on the positions of a storage component (the registers of
+ * the register bank or the words of the data memory).
+ *
+ * <p>The components check their watchpoints in <tt>executeSynchronous()</tt>,
+ * when the values are written, and <tt>CPU.executeAll()</tt> stops at the end
+ * of the cycle in which a watchpoint was triggered. The watchpoints are kept
+ * in arrays indexed by the position, and the components only look at them if
+ * there is at least one watchpoint.</p>
+ *
+ * @author Bruno Nova
+ */
+public class Watchpoints {
+	/** The types of watchpoints. */
+	public enum Type {
+		/** Triggered when the position is written. */
+		WRITE,
+		/** Triggered when the position is read. */
+		READ,
+		/** Triggered when the given value is written to the position. */
+		VALUE
+	}
+
+	/** The types of the watchpoints in each position (<tt>Type.ordinal() + 1</tt>, or 0 if none). */
+	private final byte[] types;
+	/** The values of the <tt>VALUE</tt> watchpoints in each position. */
+	private final int[] values;
+	/** Whether <tt>READ</tt> watchpoints are supported. */
+	private final boolean readSupported;
+	/** The number of watchpoints. */
+	private int count = 0;
+	/** The position of the last triggered watchpoint, or -1 if none was triggered. */
+	private int triggered = -1;
+
+	/**
+	 * Creates the watchpoints of a component.
+	 * @param size The number of positions of the component.
+	 * @param readSupported Whether <tt>READ</tt> watchpoints are supported.
+	 */
+	public Watchpoints(int size, boolean readSupported) {
+		types = new byte[size];
+		values = new int[size];
+		this.readSupported = readSupported;
+	}
+
+	/**
+	 * Adds a watchpoint, replacing any other in the same position.
+	 * @param index The index of the position.
+	 * @param type The type of watchpoint.
+	 * @param value The value of a <tt>VALUE</tt> watchpoint (ignored for the other types).
+	 * @throws IllegalArgumentException If the index is out of bounds or the type isn't supported.
+	 */
+	public void add(int index, Type type, int value) {
+		if(index < 0 || index >= types.length)
+			throw new IllegalArgumentException("Invalid position: " + index);
+		if(type == Type.READ && !readSupported)
+			throw new IllegalArgumentException("Read watchpoints aren't supported here!");
+		if(types[index] == 0) count++;
+		types[index] = (byte)(type.ordinal() + 1);
+		values[index] = value;
+	}
+
+	/**
+	 * Replaces the watchpoints with copies of the given ones.
+	 * @param other The watchpoints to copy (of a component with the same size).
+	 */
+	public void copyFrom(Watchpoints other) {
+		clear();
+		for(int i = 0; i < types.length && i < other.types.length; i++) {
+			types[i] = other.types[i];
+			values[i] = other.values[i];
+			if(types[i] != 0) count++;
+		}
+	}
+
+	/**
+	 * Removes the watchpoint in the given position, if any.
+	 * @param index The index of the position.
+	 * @return Whether a watchpoint was removed.
+	 */
+	public boolean remove(int index) {
+		if(!has(index)) return false;
+		types[index] = 0;
+		count--;
+		return true;
+	}
+
+	/**
+	 * Removes all the watchpoints.
+	 */
+	public void clear() {
+		for(int i = 0; i < types.length; i++)
+			types[i] = 0;
+		count = 0;
+		triggered = -1;
+	}
+
+	/**
+	 * Returns whether there is a watchpoint in the given position.
+	 * @param index The index of the position.
+	 * @return <tt>True</tt> if there is a watchpoint.
+	 */
+	public boolean has(int index) {
+		return index >= 0 && index < types.length && types[index] != 0;
+	}
+
+	/**
+	 * Returns the type of the watchpoint in the given position.
+	 * @param index The index of the position.
+	 * @return The type of watchpoint, or <tt>null</tt> if there isn't one.
+	 */
+	public Type getType(int index) {
+		return has(index) ? Type.values()[types[index] - 1] : null;
+	}
+
+	/**
+	 * Returns the value of the <tt>VALUE</tt> watchpoint in the given position.
+	 * @param index The index of the position.
+	 * @return The value of the watchpoint.
+	 */
+	public int getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Returns the indexes of the positions with watchpoints.
+	 * @return List with the indexes, in ascending order.
+	 */
+	public List<Integer> getIndexes() {
+		List<Integer> list = new ArrayList<>(count);
+		for(int i = 0; i < types.length; i++) {
+			if(types[i] != 0) list.add(i);
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the number of watchpoints.
+	 * @return Number of watchpoints.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns whether there are no watchpoints.
+	 * @return <tt>True</tt> if there are no watchpoints.
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Returns whether <tt>READ</tt> watchpoints are supported.
+	 * @return <tt>True</tt> if read watchpoints are supported.
+	 */
+	public boolean isReadSupported() {
+		return readSupported;
+	}
+
+	/**
+	 * Called by the component when a position is written.
+	 * @param index The index of the position.
+	 * @param value The written value.
+	 */
+	public void checkWrite(int index, int value) {
+		if(index >= 0 && index < types.length) {
+			int type = types[index] - 1;
+			if(type == Type.WRITE.ordinal() || (type == Type.VALUE.ordinal() && value == values[index]))
+				triggered = index;
+		}
+	}
+
+	/**
+	 * Called by the component when a position is read.
+	 * @param index The index of the position.
+	 */
+	public void checkRead(int index) {
+		if(index >= 0 && index < types.length && types[index] - 1 == Type.READ.ordinal())
+			triggered = index;
+	}
+
+	/**
+	 * Returns the position of the last triggered watchpoint.
+	 * @return The index of the position, or -1 if no watchpoint was triggered.
+	 */
+	public int getTriggered() {
+		return triggered;
+	}
+
+	/**
+	 * Returns whether a watchpoint was triggered.
+	 * @return <tt>True</tt> if a watchpoint was triggered.
+	 */
+	public boolean isTriggered() {
+		return triggered >= 0;
+	}
+
+	/**
+	 * Forgets the last triggered watchpoint.
+	 */
+	public void resetTriggered() {
+		triggered = -1;
+	}
+
+	/**
+	 * The description of a watchpoint on a register or on a data memory
+	 * position of a CPU (see <tt>CPU.getAllWatchpoints()</tt>).
+	 */
+	public static class Watchpoint {
+		/** Whether the watchpoint is on a data memory position (or on a register). */
+		private final boolean memory;
+		/** The index of the register or of the memory position. */
+		private final int index;
+		/** The type of watchpoint. */
+		private final Type type;
+		/** The value of a <tt>VALUE</tt> watchpoint. */
+		private final int value;
+		/** The register (like <tt>$t0</tt>) or the memory position (like <tt>[16]</tt>). */
+		private final String target;
+
+		/**
+		 * Creates the description of a watchpoint.
+		 * @param memory Whether the watchpoint is on a data memory position.
+		 * @param index The index of the register or of the memory position.
+		 * @param type The type of watchpoint.
+		 * @param value The value of a <tt>VALUE</tt> watchpoint.
+		 * @param target The register or the memory position, as shown to the user.
+		 */
+		Watchpoint(boolean memory, int index, Type type, int value, String target) {
+			this.memory = memory;
+			this.index = index;
+			this.type = type;
+			this.value = value;
+			this.target = target;
+		}
+
+		/**
+		 * Returns whether the watchpoint is on a data memory position (or on a register).
+		 * @return <tt>True</tt> if on a data memory position.
+		 */
+		public boolean isOnMemory() {
+			return memory;
+		}
+
+		/**
+		 * Returns the index of the register or of the data memory position.
+		 * @return The index of the register or memory position.
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * Returns the type of the watchpoint.
+		 * @return The type of watchpoint.
+		 */
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the value of a <tt>VALUE</tt> watchpoint.
+		 * @return The value (meaningless for the other types).
+		 */
+		public int getValue() {
+			return value;
+		}
+
+		/**
+		 * Returns the register or the data memory position.
+		 * @return The register (like <tt>$t0</tt>) or the address between brackets (like <tt>[16]</tt>).
+		 */
+		public String getTarget() {
+			return target;
+		}
+
+		@Override
+		public String toString() {
+			switch(type) {
+				case WRITE: return target + " written";
+				case READ: return target + " read";
+				default: return target + " == " + value;
+			}
+		}
+	}
+}
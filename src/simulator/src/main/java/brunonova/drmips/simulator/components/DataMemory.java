@@ -40,6 +40,8 @@ public class DataMemory extends Component implements Synchronous {
 	private final Output output;
 	private int[] memory;
 	private final Stack<int[]> states = new Stack<>(); // previous values
+	private final Watchpoints watchpoints;
+	private final ChangeSet changes;
 
 	/**
 	 * Component constructor.
@@ -56,6 +58,8 @@ public class DataMemory extends Component implements Synchronous {
 			throw new InvalidCPUException("Invalid data memory size! Must be between " + MINIMUM_SIZE + " and " + MAXIMUM_SIZE + " positions (each position has 32 bits).");
 
 		memory = new int[size];
+		watchpoints = new Watchpoints(size, true);
+		changes = new ChangeSet(size);
 		address = addInput(json.getString("address"), new Data(), IOPort.Direction.WEST, true, true);
 		writeData = addInput(json.getString("write_data"), new Data(), IOPort.Direction.WEST, false, true);
 		memRead = addInput(json.getString("mem_read"), new Data(1), IOPort.Direction.NORTH);
@@ -81,8 +85,17 @@ public class DataMemory extends Component implements Synchronous {
 
 	@Override
 	public void executeSynchronous() {
-		if(getMemWrite().getValue() == 1)
+		boolean write = getMemWrite().getValue() == 1;
+		if(write)
 			setData(getAddress().getValue(), getWriteData().getValue(), true);
+
+		if(!watchpoints.isEmpty()) {
+			int index = getIndexOfAddress(getAddress().getValue());
+			if(write)
+				watchpoints.checkWrite(index, getWriteData().getValue());
+			if(getMemRead().getValue() == 1)
+				watchpoints.checkRead(index);
+		}
 	}
 
 	@Override
@@ -92,7 +105,9 @@ public class DataMemory extends Component implements Synchronous {
 
 	@Override
 	public void popState() {
-		memory = states.pop();
+		int[] previous = states.pop();
+		changes.markDifferences(memory, previous);
+		memory = previous;
 	}
 
 	@Override
@@ -122,6 +137,7 @@ public class DataMemory extends Component implements Synchronous {
 	public final void reset() {
 		for(int i = 0; i < memory.length; i++)
 			memory[i] = 0;
+		changes.markAll();
 		execute();
 	}
 
@@ -182,6 +198,7 @@ public class DataMemory extends Component implements Synchronous {
 	public final void setDataInIndex(int index, int value, boolean propagate) {
 		if(index >= 0 && index < getMemorySize()) {
 			memory[index] = value;
+			changes.mark(index);
 			if(propagate) execute();
 		}
 	}
@@ -196,6 +213,22 @@ public class DataMemory extends Component implements Synchronous {
 		return (index >= 0 && index < getMemorySize()) ? index : -1;
 	}
 
+	/**
+	 * Returns the watchpoints on the memory positions (indexed by the index of the position).
+	 * @return The watchpoints of the memory.
+	 */
+	public final Watchpoints getWatchpoints() {
+		return watchpoints;
+	}
+
+	/**
+	 * Returns the memory positions whose values changed since the last <tt>getChanges().clear()</tt>.
+	 * @return The changed positions (indexed by the index of the position).
+	 */
+	public final ChangeSet getChanges() {
+		return changes;
+	}
+
 	/**
 	 * Returns the size of the memory.
 	 * @return The size of the memory (number of 32 bits positions).
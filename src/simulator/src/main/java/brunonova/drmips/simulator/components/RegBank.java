@@ -40,6 +40,8 @@ public class RegBank extends Component implements Synchronous {
 	private final Set<Integer> constantRegisters; // indexes of the constant registers
 	private final boolean forwarding; // use internal forwarding?
 	private final Stack<int[]> states = new Stack<>(); // previous values
+	private final Watchpoints watchpoints;
+	private final ChangeSet changes;
 
 	/**
 	 * Component constructor.
@@ -63,6 +65,8 @@ public class RegBank extends Component implements Synchronous {
 		registers = new Data[numRegisters];
 		for(int i = 0; i < numRegisters; i++)
 			registers[i] = new Data();
+		watchpoints = new Watchpoints(numRegisters, false); // the registers are always being read
+		changes = new ChangeSet(numRegisters);
 
 		// Add inputs/outputs
 		readReg1 = addInput(json.getString("read_reg1"), new Data(requiredBits), IOPort.Direction.WEST, true, true);
@@ -108,8 +112,12 @@ public class RegBank extends Component implements Synchronous {
 
 	@Override
 	public void executeSynchronous() {
-		if(getRegWrite().getValue() == 1 && !isRegisterConstant(getWriteReg().getValue()))
+		if(getRegWrite().getValue() == 1 && !isRegisterConstant(getWriteReg().getValue())) {
 			registers[getWriteReg().getValue()].setValue(getWriteData().getValue());
+			changes.mark(getWriteReg().getValue());
+			if(!watchpoints.isEmpty())
+				watchpoints.checkWrite(getWriteReg().getValue(), getWriteData().getValue());
+		}
 	}
 
 	@Override
@@ -125,7 +133,7 @@ public class RegBank extends Component implements Synchronous {
 		if(hasSavedStates()) {
 			int[] values = states.pop();
 			for(int i = 0; i < getNumberOfRegisters(); i++)
-				registers[i].setValue(values[i]);
+				restoreRegister(i, values[i]);
 		}
 	}
 
@@ -146,7 +154,19 @@ public class RegBank extends Component implements Synchronous {
 			while(hasSavedStates())
 				values = states.pop();
 			for(int i = 0; i < getNumberOfRegisters(); i++)
-				registers[i].setValue(values[i]);
+				restoreRegister(i, values[i]);
+		}
+	}
+
+	/**
+	 * Restores the value of a register from a saved state, marking it as changed if different.
+	 * @param index Index/address of the register.
+	 * @param value The saved value.
+	 */
+	private void restoreRegister(int index, int value) {
+		if(registers[index].getValue() != value) {
+			registers[index].setValue(value);
+			changes.mark(index);
 		}
 	}
 
@@ -169,9 +189,27 @@ public class RegBank extends Component implements Synchronous {
 	public final void reset() {
 		for (Data register: registers)
 			register.setValue(0);
+		changes.markAll();
 		execute();
 	}
 
+	/**
+	 * Returns the watchpoints on the registers (indexed by the index of the register).
+	 * <p>Only <tt>WRITE</tt> and <tt>VALUE</tt> watchpoints are supported.</p>
+	 * @return The watchpoints of the registers.
+	 */
+	public final Watchpoints getWatchpoints() {
+		return watchpoints;
+	}
+
+	/**
+	 * Returns the registers whose values changed since the last <tt>getChanges().clear()</tt>.
+	 * @return The changed registers (indexed by the index of the register).
+	 */
+	public final ChangeSet getChanges() {
+		return changes;
+	}
+
 	/**
 	 * Returns the number of registers.
 	 * @return The number of registers.
@@ -219,6 +257,7 @@ public class RegBank extends Component implements Synchronous {
 	public final void setRegister(int index, int newValue, boolean propagate) throws ArrayIndexOutOfBoundsException {
 		if(!isRegisterConstant(index)) { // don't update constant registers
 			registers[index].setValue(newValue);
+			changes.mark(index);
 			if(propagate) execute();
 		}
 	}
@@ -0,0 +1,84 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AnimationTest {
+	private CPU cpu;
+
+	@Before
+	public void loadCPU() throws Exception {
+		cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+	}
+
+	@Test
+	public void testCyclePerTick() throws Exception {
+		cpu.assembleCode("addi $t0, $zero, 1\naddi $t0, $t0, 1\naddi $t0, $t0, 1");
+		Animation animation = new Animation(cpu, 0);
+		assertEquals(Animation.MIN_FRAME_INTERVAL, animation.getFrameInterval());
+		for(int i = 1; i <= 2; i++) {
+			assertEquals(1, animation.tick());
+			assertEquals(i, cpu.getNumberOfExecutedCycles());
+			assertFalse(animation.isStopped());
+		}
+		assertEquals(1, animation.tick()); // stops after the last cycle
+		assertTrue(animation.isStopped());
+		assertEquals(CPU.RunStatus.FINISHED, animation.getStatus());
+		assertEquals(-1, animation.tick());
+	}
+
+	@Test
+	public void testRate() throws Exception {
+		cpu.assembleCode("loop: j loop");
+		Animation animation = new Animation(cpu, 1000);
+		assertEquals(1000, animation.getRate(), 0);
+		assertEquals(Animation.MIN_FRAME_INTERVAL, animation.getFrameInterval());
+		assertEquals(100, new Animation(cpu, 10).getFrameInterval());
+		assertEquals(1000, new Animation(cpu, Animation.MIN_RATE).getFrameInterval());
+
+		assertTrue(animation.tick() >= 1); // the first cycle is due right away
+		Thread.sleep(20);
+		int cycles = animation.tick();
+		assertTrue(cycles >= 10 && cycles <= Animation.MAX_CYCLES_PER_TICK);
+		assertNull(animation.getStatus());
+
+		animation = new Animation(cpu, 1e9); // too fast, doesn't try to catch up
+		Thread.sleep(5);
+		assertEquals(Animation.MAX_CYCLES_PER_TICK, animation.tick());
+	}
+
+	@Test
+	public void testBreakpoint() throws Exception {
+		cpu.assembleCode("addi $t0, $zero, 1\naddi $t0, $t0, 1\naddi $t0, $t0, 1");
+		cpu.getBreakpoints().add(8);
+		Animation animation = new Animation(cpu, 1e9);
+		Thread.sleep(5);
+		assertEquals(2, animation.tick());
+		assertEquals(CPU.RunStatus.BREAKPOINT, animation.getStatus());
+		assertEquals(-1, animation.tick());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRate() {
+		new Animation(cpu, Animation.MIN_RATE / 2);
+	}
+}
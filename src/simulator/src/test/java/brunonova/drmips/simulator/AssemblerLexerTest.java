@@ -0,0 +1,206 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.AssemblerLexer.Statement;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AssemblerLexerTest {
+	@Test
+	public void testTokenize() {
+		List<Statement> statements = AssemblerLexer.tokenize(
+			"# comment\n" +
+			"\n" +
+			"loop:  addi $t0, $t1, 5  # comment\n" +
+			"\t.word 1,2 , 3\n" +
+			"  end : \n" +
+			"syscall");
+		assertEquals(4, statements.size());
+
+		Statement s = statements.get(0);
+		assertEquals(3, s.line);
+		assertEquals("loop:  addi $t0, $t1, 5", s.text);
+		assertEquals("addi $t0, $t1, 5", s.code);
+		tToken(s.label, "loop", 3, 1);
+		tToken(s.mnemonic, "addi", 3, 8);
+		assertEquals(3, s.args.length);
+		tToken(s.args[0], "$t0", 3, 13);
+		tToken(s.args[1], "$t1", 3, 18);
+		tToken(s.args[2], "5", 3, 23);
+
+		s = statements.get(1);
+		assertNull(s.label);
+		tToken(s.mnemonic, ".word", 4, 2);
+		assertArrayEquals(new String[] {"1", "2", "3"}, s.getArgs());
+		tToken(s.args[1], "2", 4, 10);
+
+		s = statements.get(2);
+		tToken(s.label, "end", 5, 3);
+		assertNull(s.mnemonic);
+		assertEquals("", s.code);
+		assertEquals(0, s.args.length);
+
+		s = statements.get(3);
+		assertEquals(6, s.line);
+		tToken(s.mnemonic, "syscall", 6, 1);
+		assertEquals(0, s.args.length);
+
+		assertTrue(AssemblerLexer.tokenize("").isEmpty());
+		assertTrue(AssemblerLexer.tokenize("  # only a comment\n\n").isEmpty());
+	}
+
+	@Test
+	public void testArguments() {
+		tArgs("add $t0, $t1, $t2", "$t0", "$t1", "$t2");
+		tArgs("lw $t0, 4($t1)", "$t0", "4($t1)");
+		tArgs("add $t0 $t1", "$t0 $t1");
+		tArgs("add $t0,,$t1", "$t0", "", "$t1");
+		tArgs("add , $t0", "", "$t0");
+		// Trailing empty arguments are ignored, like in String.split()
+		tArgs("add $t0, $t1,", "$t0", "$t1");
+		tArgs("add $t0, $t1,,", "$t0", "$t1");
+		tArgs("add $t0, $t1, , ", "$t0", "$t1", "");
+		tArgs("add ,");
+
+		// Same as the previous regex splits, for random lines
+		Random random = new Random(31);
+		String chars = "ab$0, \t";
+		for(int i = 0; i < 20000; i++) {
+			StringBuilder line = new StringBuilder("add ");
+			int length = random.nextInt(10);
+			for(int j = 0; j < length; j++)
+				line.append(chars.charAt(random.nextInt(chars.length())));
+			String l = line.toString();
+			String[] split = l.trim().split("\\s+", 2);
+			String[] args = (split.length == 2) ? split[1].trim().split(",") : new String[0];
+			for(int j = 0; j < args.length; j++)
+				args[j] = args[j].trim();
+			tArgs(l, args);
+		}
+	}
+
+	@Test
+	public void testTokenizeInstruction() {
+		Statement s = AssemblerLexer.tokenizeInstruction("  sub $t0, $t1 # comment", 7);
+		assertEquals(7, s.line);
+		assertEquals("sub $t0, $t1", s.text);
+		assertNull(s.label);
+		tToken(s.mnemonic, "sub", 7, 3);
+		assertArrayEquals(new String[] {"$t0", "$t1"}, s.getArgs());
+
+		s = AssemblerLexer.tokenizeInstruction("a: b", 1); // no labels in instructions
+		assertNull(s.label);
+		assertEquals("a:", s.mnemonic.text);
+		assertArrayEquals(new String[] {"b"}, s.getArgs());
+
+		assertNull(AssemblerLexer.tokenizeInstruction("  ", 1));
+		assertNull(AssemblerLexer.tokenizeInstruction("# comment", 1));
+	}
+
+	@Test
+	public void testIsValidLabel() {
+		String[] labels = {"", "a", "Z", "loop", "loop_1", "L2", "_a", "1a", "a-b", "a b", "a.b",
+		                   "[", "^a", "`", "a_", "é", "aé", "$t0"};
+		for(String label: labels)
+			assertEquals(label, label.matches(Assembler.LABEL_REGEX), AssemblerLexer.isValidLabel(label));
+	}
+
+	@Test
+	public void testParseNumber() {
+		String[] numbers = {"", "0", "5", "-5", "+5", "010", "08", "-010", "0x1F", "0X1f", "-0x10", "#1F", "-#1f",
+		                    "0x", "#", "-", "+", "+-5", "-0x-5", "0x+5", " 5", "5 ", "1a", "abc", "$t0", "4($t1)",
+		                    "9223372036854775807", "9223372036854775808", "-9223372036854775808",
+		                    "0x7fffffffffffffff", "0x8000000000000000", "-0x8000000000000000", "00", "0x0"};
+		for(String number: numbers)
+			tNumber(number);
+
+		Random random = new Random(31);
+		String chars = "0123456789abcdefxX#+- 8g";
+		for(int i = 0; i < 20000; i++) {
+			StringBuilder number = new StringBuilder();
+			int length = random.nextInt(7);
+			for(int j = 0; j < length; j++)
+				number.append(chars.charAt(random.nextInt(chars.length())));
+			tNumber(number.toString());
+		}
+	}
+
+	@Test
+	public void testStatementReader() throws Exception {
+		StringBuilder code = new StringBuilder();
+		for(int i = 0; i < 3000; i++) // several times the reader's buffer
+			code.append("label").append(i).append(": addi $t0, $t1, ").append(i).append("  # comment\r\n\n");
+		code.append("end: .word 1, 2");
+		String[] codes = {"", "\n", "add $t0, $t1, $t2", "add $t0, $t1, $t2\n", "# comment\n\nsyscall\n\n", code.toString()};
+
+		for(String c: codes) {
+			List<Statement> expected = AssemblerLexer.tokenize(c);
+			tStatements(expected, new AssemblerLexer.StatementReader(c));
+			tStatements(expected, new AssemblerLexer.StatementReader(new StringReader(c)));
+		}
+	}
+
+	private void tStatements(List<Statement> expected, AssemblerLexer.StatementReader reader) throws Exception {
+		for(Statement e: expected) {
+			Statement a = reader.next();
+			assertNotNull(a);
+			assertEquals(e.line, a.line);
+			assertEquals(e.text, a.text);
+			assertEquals(e.code, a.code);
+			if(e.label == null)
+				assertNull(a.label);
+			else
+				tToken(a.label, e.label.text, e.label.line, e.label.column);
+			if(e.mnemonic == null)
+				assertNull(a.mnemonic);
+			else
+				tToken(a.mnemonic, e.mnemonic.text, e.mnemonic.line, e.mnemonic.column);
+			assertEquals(e.args.length, a.args.length);
+			for(int i = 0; i < e.args.length; i++)
+				tToken(a.args[i], e.args[i].text, e.args[i].line, e.args[i].column);
+		}
+		assertNull(reader.next());
+		assertNull(reader.next());
+	}
+
+	private void tToken(AssemblerLexer.Token token, String text, int line, int column) {
+		assertNotNull(token);
+		assertEquals(text, token.text);
+		assertEquals(line, token.line);
+		assertEquals(column, token.column);
+	}
+
+	private void tArgs(String line, String... args) {
+		assertArrayEquals(line, args, AssemblerLexer.tokenizeLine(line, 1).getArgs());
+	}
+
+	private void tNumber(String number) {
+		Long expected;
+		try {
+			expected = Long.decode(number);
+		} catch(NumberFormatException ex) {
+			expected = null;
+		}
+		assertEquals(number, expected, AssemblerLexer.parseNumber(number));
+	}
+}
@@ -0,0 +1,268 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.components.DataMemory;
+import brunonova.drmips.simulator.components.InstructionMemory;
+import brunonova.drmips.simulator.exceptions.SyntaxErrorException;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class AssemblerTest {
+	private static final String CODE =
+		".data\n" +
+		"value: .word 7, 8\n" +
+		"buffer: .space 8\n" +
+		"last: .word -1\n" +
+		".text\n" +
+		"main: la $t0, value\n" +
+		"lw $t1, 0($t0)\n" +
+		"li $t2, 3\n" +
+		"loop: subi $t2, $t2, 1\n" +
+		"bge $t2, $zero, next\n" +
+		"j end\n" +
+		"next: add $t1, $t1, $t1 # comment\n" +
+		"b loop\n" +
+		"end: sw $t1, 4($t0)\n" +
+		"la $t3, last\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CPU cpu;
+
+	@Before
+	public void setUp() throws Exception {
+		cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+	}
+
+	@Test
+	public void testIncremental() throws Exception {
+		// The same CPU re-assembles each version of the code, reusing the
+		// results of the previous one, and a new CPU assembles it from scratch
+		String errors = CODE.replace("add $t1, $t1, $t1", "add $t1, $t1").replace("j end", "j nowhere");
+		String[] versions = {
+			CODE,
+			CODE, // nothing changed
+			CODE.replace("lw $t1", "nop\nlw $t1"), // text labels moved
+			CODE.replace("lw $t1", "nop\nlw $t1").replace(".space 8", ".space 12"), // data labels moved
+			errors,
+			errors.replace("nowhere", "end"),
+			CODE,
+			CODE.replace("j end", "beq $t2, $zero, end\nbeq $t2, $zero, end"), // same code, different offsets
+			CODE.replace("end: sw", "sw").replace("j end", "j main"),
+			CODE.replace("li $t2, 3", "li $t2, 0x12345"), // different expansion
+			""
+		};
+		for(String code: versions)
+			tSame(code);
+	}
+
+	@Test
+	public void testCheckCode() throws Exception {
+		Assembler assembler = cpu.getAssembler();
+		assertTrue(assembler.checkCode(CODE).isEmpty());
+		assertEquals(0, cpu.getInstructionMemory().getNumberOfInstructions()); // program not loaded
+		assertEquals(0, cpu.getDataMemory().getDataInIndex(0)); // data not written
+
+		cpu.assembleCode(CODE);
+		int instructions = cpu.getInstructionMemory().getNumberOfInstructions();
+		String code = CODE.replace("add $t1, $t1, $t1", "add $t1, $t1").replace("j end", "j nowhere")
+		                  .replace("value: .word 7, 8", "value: .word 9, x");
+		List<SyntaxErrorException> errors = assembler.checkCode(code);
+		tErrors(tAssemble(CPU.createFromJSONFile("cpu/unicycle.cpu"), code), errors);
+		assertEquals(3, errors.size());
+		assertEquals(instructions, cpu.getInstructionMemory().getNumberOfInstructions());
+		assertEquals(7, cpu.getDataMemory().getDataInIndex(0));
+
+		assertTrue(assembler.checkCode(CODE).isEmpty());
+		tSame(CODE);
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		// Less instructions than the default threshold, so the new CPU encodes them sequentially
+		String code = tLargeCode(1500, false);
+		cpu.getAssembler().setParallelThreshold(100);
+		tSame(code);
+		tSame(code.replace("loop0:", "nop\nloop0:")); // re-assembled incrementally
+		tSame(tLargeCode(1500, true));
+		tSame(tLargeCode(5, false)); // below the threshold
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelThreshold() {
+		cpu.getAssembler().setParallelThreshold(0);
+	}
+
+	@Test
+	public void testReader() throws Exception {
+		StringBuilder comment = new StringBuilder("# ");
+		for(int i = 0; i < 10000; i++) // longer than the reader's buffer
+			comment.append((char)('a' + i % 26));
+		String[] codes = {
+			CODE,
+			CODE.replace("\n", "\r\n"),
+			CODE.replace("li $t2, 3\n", "li $t2, 3\n" + comment + "\n") + comment,
+			tLargeCode(200, false),
+			"",
+			"\n\n"
+		};
+		Assembler assembler = cpu.getAssembler();
+		for(String code: codes) {
+			File file = folder.newFile();
+			Files.write(file.toPath(), code.getBytes(Charset.forName("UTF-8")));
+			ProgramImage expected = assembler.assembleImage(code);
+			tSameImage(expected, assembler.assembleImage(new StringReader(code)));
+			tSameImage(expected, assembler.assembleImage(file));
+
+			CPU fromFile = CPU.createFromJSONFile("cpu/unicycle.cpu");
+			fromFile.assembleCode(file);
+			CPU fromString = CPU.createFromJSONFile("cpu/unicycle.cpu");
+			fromString.assembleCode(code);
+			tSameProgram(fromString, fromFile);
+		}
+	}
+
+	@Test
+	public void testReaderErrors() throws Exception {
+		String code = tLargeCode(200, true);
+		List<SyntaxErrorException> expected = tAssemble(CPU.createFromJSONFile("cpu/unicycle.cpu"), code);
+		assertFalse(expected.isEmpty());
+		try {
+			cpu.getAssembler().assembleImage(new StringReader(code));
+			fail();
+		}
+		catch(SyntaxErrorException ex) {
+			tErrors(expected, ex.getOtherErrors());
+		}
+	}
+
+	/**
+	 * Returns the code of a program with labels, data and pseudo-instructions.
+	 * @param blocks The number of blocks of 8 instructions.
+	 * @param errors Whether to add syntax errors to some blocks.
+	 * @return The code.
+	 */
+	private String tLargeCode(int blocks, boolean errors) {
+		StringBuilder code = new StringBuilder(".data\nvalues: .word 1, 2, 3\n.text\n");
+		for(int i = 0; i < blocks; i++) {
+			code.append("loop").append(i).append(": la $t0, values\n")
+			    .append("lw $t1, ").append(i % 3 * 4).append("($t0)\n")
+			    .append("addi $t1, $t1, ").append(i).append("\n")
+			    .append("bge $t1, $zero, next").append(i).append("\n")
+			    .append("j loop").append((i * 7) % blocks).append("\n")
+			    .append("next").append(i).append(": sw $t1, 0($t0)\n");
+			if(errors && i % 97 == 0)
+				code.append("add $t1, $t2\nbeq $t1, $t2, nowhere\n");
+			else
+				code.append("add $t1, $t1, $t2\nbeq $t1, $t2, loop").append(i).append('\n');
+		}
+		return code.toString();
+	}
+
+	/**
+	 * Assembles the given code in the test's CPU and in a new CPU and checks
+	 * that the results are the same.
+	 * @param code The code to assemble.
+	 */
+	private void tSame(String code) throws Exception {
+		CPU fresh = CPU.createFromJSONFile("cpu/unicycle.cpu");
+		List<SyntaxErrorException> expected = tAssemble(fresh, code);
+		List<SyntaxErrorException> actual = tAssemble(cpu, code);
+		tErrors(expected, actual);
+		if(expected.isEmpty())
+			tSameProgram(fresh, cpu);
+	}
+
+	/**
+	 * Assembles the given code in the given CPU.
+	 * @param cpu The CPU.
+	 * @param code The code to assemble.
+	 * @return The syntax errors found (empty if there are none).
+	 */
+	private List<SyntaxErrorException> tAssemble(CPU cpu, String code) {
+		try {
+			cpu.resetData(); // the previous data isn't cleared when assembling
+			cpu.assembleCode(code);
+			return Collections.emptyList();
+		}
+		catch(SyntaxErrorException ex) {
+			assertTrue(ex.hasOtherErrors());
+			return ex.getOtherErrors();
+		}
+	}
+
+	private void tErrors(List<SyntaxErrorException> expected, List<SyntaxErrorException> actual) {
+		assertEquals(tErrorStrings(expected), tErrorStrings(actual));
+	}
+
+	private List<String> tErrorStrings(List<SyntaxErrorException> errors) {
+		List<String> strings = new ArrayList<>(errors.size());
+		for(SyntaxErrorException error: errors)
+			strings.add(error.getType() + "@" + error.getLine() + ":" + error.getExtra() + ":" + error.getExtra2());
+		return strings;
+	}
+
+	private void tSameImage(ProgramImage expected, ProgramImage actual) {
+		assertEquals(expected.getNumberOfInstructions(), actual.getNumberOfInstructions());
+		for(int i = 0; i < expected.getNumberOfInstructions(); i++) {
+			AssembledInstruction ei = expected.getInstructions().get(i), ai = actual.getInstructions().get(i);
+			assertEquals(ei.getInstruction().getMnemonic(), ai.getInstruction().getMnemonic());
+			assertEquals(ei.getData().getValue(), ai.getData().getValue());
+			assertEquals(ei.getCodeLine(), ai.getCodeLine());
+			assertEquals(ei.getLineNumber(), ai.getLineNumber());
+			assertEquals(ei.getLabels(), ai.getLabels());
+		}
+		assertEquals(expected.getNumberOfDataWords(), actual.getNumberOfDataWords());
+		for(int i = 0; i < expected.getNumberOfDataWords(); i++) {
+			assertEquals(expected.getDataAddress(i), actual.getDataAddress(i));
+			assertEquals(expected.getDataValue(i), actual.getDataValue(i));
+		}
+		assertEquals(expected.getTextLabels(), actual.getTextLabels());
+		assertEquals(expected.getDataLabels(), actual.getDataLabels());
+	}
+
+	private void tSameProgram(CPU expected, CPU actual) {
+		InstructionMemory e = expected.getInstructionMemory(), a = actual.getInstructionMemory();
+		assertEquals(e.getNumberOfInstructions(), a.getNumberOfInstructions());
+		for(int i = 0; i < e.getNumberOfInstructions(); i++) {
+			AssembledInstruction ei = e.getInstruction(i), ai = a.getInstruction(i);
+			assertEquals(ei.getInstruction().getMnemonic(), ai.getInstruction().getMnemonic());
+			assertEquals(ei.getData().getValue(), ai.getData().getValue());
+			assertEquals(ei.getCodeLine(), ai.getCodeLine());
+			assertEquals(ei.getLineNumber(), ai.getLineNumber());
+			assertEquals(ei.getLabels(), ai.getLabels());
+		}
+
+		DataMemory ed = expected.getDataMemory(), ad = actual.getDataMemory();
+		for(int i = 0; i < ed.getMemorySize(); i++)
+			assertEquals(ed.getDataInIndex(i), ad.getDataInIndex(i));
+	}
+}
@@ -0,0 +1,165 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.exceptions.SyntaxErrorException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class AssemblyCacheTest {
+	private static final String CODE = "main: addi $t0, $zero, 5\nadd $t1, $t0, $t0\nj main\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CPU cpu;
+
+	@Before
+	public void loadCPU() throws Exception {
+		cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+	}
+
+	@Test
+	public void testMemory() throws Exception {
+		AssemblyCache cache = new AssemblyCache();
+		ProgramImage image = cache.assemble(cpu, CODE);
+		tEquals(cpu.getAssembler().assembleImage(CODE), image);
+		assertSame(image, cache.assemble(cpu, CODE));
+		assertNotSame(image, cache.assemble(cpu, CODE + "\n"));
+		assertEquals(2, cache.size());
+
+		try {
+			cache.assemble(cpu, "add $t0");
+			fail("SyntaxErrorException expected");
+		} catch(SyntaxErrorException ex) { }
+		assertEquals(2, cache.size()); // not cached
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNotSame(image, cache.assemble(cpu, CODE));
+	}
+
+	@Test
+	public void testRelink() throws Exception {
+		AssemblyCache cache = new AssemblyCache();
+		ProgramImage image = cache.assemble(cpu, CODE);
+		CPU other = CPU.createFromJSONFile("cpu/unicycle.cpu"); // same instruction set, but another instance
+		assertEquals(AssemblyCache.getKey(cpu, CODE), AssemblyCache.getKey(other, CODE));
+		ProgramImage relinked = cache.assemble(other, CODE);
+		tEquals(image, relinked);
+		for(int i = 0; i < relinked.getNumberOfInstructions(); i++) {
+			Instruction instruction = relinked.getInstructions().get(i).getInstruction();
+			assertSame(other.getInstructionSet().getInstruction(instruction.getMnemonic()), instruction);
+		}
+
+		CPU different = CPU.createFromJSONFile("cpu/unicycle-extended.cpu"); // another instruction set
+		assertFalse(AssemblyCache.getKey(cpu, CODE).equals(AssemblyCache.getKey(different, CODE)));
+	}
+
+	@Test
+	public void testLeastRecentlyUsed() throws Exception {
+		AssemblyCache cache = new AssemblyCache(2, null);
+		ProgramImage a = cache.assemble(cpu, CODE);
+		ProgramImage b = cache.assemble(cpu, "add $t0, $t0, $t0");
+		assertSame(a, cache.assemble(cpu, CODE));
+		cache.assemble(cpu, "sub $t0, $t0, $t0"); // evicts b
+		assertEquals(2, cache.size());
+		assertSame(a, cache.assemble(cpu, CODE));
+		assertNotSame(b, cache.assemble(cpu, "add $t0, $t0, $t0"));
+	}
+
+	@Test
+	public void testDirectory() throws Exception {
+		File dir = new File(folder.getRoot(), "cache");
+		ProgramImage image = new AssemblyCache(4, dir).assemble(cpu, CODE);
+		File file = new File(dir, AssemblyCache.getKey(cpu, CODE) + "." + ProgramImage.FILE_EXTENSION);
+		assertTrue(file.isFile());
+		assertEquals(1, dir.list().length); // no temporary files left
+
+		AssemblyCache cache = new AssemblyCache(4, dir); // like after a restart
+		assertEquals(dir, cache.getDirectory());
+		tEquals(image, cache.assemble(cpu, CODE));
+	}
+
+	@Test
+	public void testMaxFiles() throws Exception {
+		File dir = new File(folder.getRoot(), "cache");
+		AssemblyCache cache = new AssemblyCache(4, dir, 2);
+		assertEquals(2, cache.getMaxFiles());
+		cache.assemble(cpu, CODE);
+		File first = new File(dir, AssemblyCache.getKey(cpu, CODE) + "." + ProgramImage.FILE_EXTENSION);
+		first.setLastModified(System.currentTimeMillis() - 60000); // the least recently used
+		cache.assemble(cpu, "add $t0, $t0, $t0");
+		assertTrue(new File(dir, "other.txt").createNewFile()); // not a program file of the cache
+		cache.assemble(cpu, "sub $t0, $t0, $t0");
+		assertFalse(first.exists());
+		assertEquals(3, dir.list().length);
+	}
+
+	@Test
+	public void testConcurrentWrites() throws Exception {
+		final File dir = new File(folder.getRoot(), "cache");
+		final File file = new File(dir, AssemblyCache.getKey(cpu, CODE) + "." + ProgramImage.FILE_EXTENSION);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		for(int round = 0; round < 20; round++) {
+			file.delete();
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread[] threads = new Thread[16];
+			for(int i = 0; i < threads.length; i++) {
+				final CPU copy = cpu.copy();
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+							new AssemblyCache(4, dir).assemble(copy, CODE); // all write the same file
+						} catch(Throwable ex) {
+							errors.add(ex);
+						}
+					}
+				};
+				threads[i].start();
+			}
+			start.countDown();
+			for(Thread thread: threads)
+				thread.join();
+			assertEquals(Collections.emptyList(), errors);
+			assertTrue(file.isFile());
+			assertEquals(1, dir.list().length);
+		}
+	}
+
+	private void tEquals(ProgramImage expected, ProgramImage actual) {
+		assertEquals(expected.getNumberOfInstructions(), actual.getNumberOfInstructions());
+		for(int i = 0; i < expected.getNumberOfInstructions(); i++) {
+			assertEquals(expected.getInstructions().get(i).getData().getValue(), actual.getInstructions().get(i).getData().getValue());
+			assertEquals(expected.getInstructions().get(i).getLineNumber(), actual.getInstructions().get(i).getLineNumber());
+			assertEquals(expected.getInstructions().get(i).getLabels(), actual.getInstructions().get(i).getLabels());
+		}
+		assertEquals(expected.getTextLabels(), actual.getTextLabels());
+	}
+}
@@ -0,0 +1,178 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class BatchRunnerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BatchRunner runner;
+	private List<File> programs;
+
+	@Before
+	public void setUp() throws Exception {
+		runner = new BatchRunner();
+		programs = new ArrayList<>();
+	}
+
+	@Test
+	public void testStatuses() throws Exception {
+		runner.addCPU("cpu/unicycle.cpu");
+		runner.setMaxCycles(1000);
+		runner.setTimeout(60000);
+		tProgram("finished", "addi $t0, $zero, 7\nsw $t0, 4($zero)\n");
+		tProgram("error", "addi $t0, $zero\n");
+		tProgram("loop", "loop: j loop\n");
+		Map<String, JSONObject> results = tRun(2);
+		assertEquals(3, results.size());
+
+		JSONObject finished = results.get("finished");
+		assertEquals("unicycle.cpu", finished.getString("cpu"));
+		assertEquals("finished", finished.getString("status"));
+		assertFalse(finished.has("message"));
+		assertEquals(2, finished.getInt("cycles"));
+		assertEquals(2, finished.getInt("instructions"));
+		JSONArray registers = finished.getJSONArray("registers");
+		assertEquals(32, registers.length());
+		assertEquals(7, registers.getInt(8));
+		assertEquals(7, finished.getJSONArray("data").getInt(1));
+
+		JSONObject error = results.get("error");
+		assertEquals("syntax_error", error.getString("status"));
+		assertTrue(error.has("message"));
+
+		JSONObject loop = results.get("loop");
+		assertEquals("cycle_limit", loop.getString("status"));
+		assertEquals(1000, loop.getInt("cycles"));
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		runner.addCPU("cpu/unicycle.cpu");
+		runner.setTimeout(50);
+		tProgram("loop", "loop: j loop\n");
+		assertEquals("timeout", tRun(1).get("loop").getString("status"));
+	}
+
+	@Test
+	public void testSeveralCPUs() throws Exception {
+		runner.addCPU("cpu/unicycle.cpu");
+		runner.addCPU("cpu/pipeline.cpu");
+		runner.setThreads(3);
+		for(int i = 0; i < 4; i++)
+			tProgram("p" + i, "addi $t0, $zero, " + i + "\naddi $t1, $t0, 1\n");
+
+		StringWriter output = new StringWriter();
+		assertEquals(0, runner.run(programs, output));
+		String[] lines = output.toString().split("\n");
+		assertEquals(8, lines.length);
+		Map<String, Integer> runs = new HashMap<>();
+		for(String line: lines) {
+			JSONObject json = new JSONObject(line);
+			String program = new File(json.getString("program")).getName();
+			int i = Integer.parseInt(program.substring(1, 2));
+			assertEquals("finished", json.getString("status"));
+			assertEquals(i + 1, json.getJSONArray("registers").getInt(9));
+			String cpu = json.getString("cpu");
+			runs.put(cpu, runs.containsKey(cpu) ? runs.get(cpu) + 1 : 1);
+		}
+		assertEquals(4, (int)runs.get("unicycle.cpu"));
+		assertEquals(4, (int)runs.get("pipeline.cpu"));
+	}
+
+	@Test
+	public void testAssemble() throws Exception {
+		runner.addCPU("cpu/unicycle.cpu");
+		tProgram("finished", "addi $t0, $zero, 7\nsw $t0, 4($zero)\n");
+		tProgram("error", "addi $t0, $zero\n");
+		StringWriter output = new StringWriter();
+		assertEquals(1, runner.assemble(programs, output));
+		String[] lines = output.toString().split("\n");
+		assertEquals(2, lines.length);
+
+		JSONObject finished = new JSONObject(lines[0]);
+		assertEquals("assembled", finished.getString("status"));
+		File file = new File(finished.getString("file"));
+		assertEquals(ProgramImage.getProgramFileFor(programs.get(0)), file);
+		assertTrue(ProgramImage.isProgramFile(file));
+		JSONObject error = new JSONObject(lines[1]);
+		assertEquals("syntax_error", error.getString("status"));
+		assertFalse(error.has("file"));
+		assertTrue(error.has("message"));
+
+		// The saved program runs without being assembled
+		programs.clear();
+		programs.add(file);
+		Map<String, JSONObject> results = tRun(0);
+		assertEquals(7, results.get("finished").getJSONArray("data").getInt(1));
+	}
+
+	@Test
+	public void testMissingProgram() throws Exception {
+		runner.addCPU("cpu/unicycle.cpu");
+		programs.add(new File(folder.getRoot(), "missing.asm"));
+		StringWriter output = new StringWriter();
+		assertEquals(1, runner.run(programs, output));
+		assertEquals("error", new JSONObject(output.toString().trim()).getString("status"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxCycles() {
+		runner.setMaxCycles(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidThreads() {
+		runner.setThreads(0);
+	}
+
+	private void tProgram(String name, String code) throws Exception {
+		File file = folder.newFile(name + ".asm");
+		Files.write(file.toPath(), code.getBytes(Charset.forName("UTF-8")));
+		programs.add(file);
+	}
+
+	private Map<String, JSONObject> tRun(int expectedFailed) throws Exception {
+		StringWriter output = new StringWriter();
+		assertEquals(expectedFailed, runner.run(programs, output));
+		Map<String, JSONObject> results = new HashMap<>();
+		for(String line: output.toString().split("\n")) {
+			JSONObject json = new JSONObject(line);
+			String name = new File(json.getString("program")).getName();
+			results.put(name.substring(0, name.indexOf('.')), json);
+		}
+		return results;
+	}
+}
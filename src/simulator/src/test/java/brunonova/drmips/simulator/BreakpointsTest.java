@@ -0,0 +1,191 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BreakpointsTest {
+	private static final String LOOP = "addi $t0, $zero, 0\n" // 0
+		+ "loop: addi $t0, $t0, 1\n" // 4
+		+ "sw $t0, 0($zero)\n" // 8
+		+ "j loop\n"; // 12
+
+	private CPU cpu;
+
+	@Before
+	public void loadCPU() throws Exception {
+		cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+	}
+
+	@Test
+	public void testParse() {
+		Breakpoints.Condition c = Breakpoints.Condition.parse(cpu, "$t0 == 5");
+		assertFalse(c.isOnMemory());
+		assertEquals(8, c.getIndex());
+		assertEquals(5, c.getValue());
+		assertEquals("$t0 == 5", c.toString());
+
+		assertEquals("t1 != -3", Breakpoints.Condition.parse(cpu, "t1!=-3").toString());
+		assertEquals("$8 < 16", Breakpoints.Condition.parse(cpu, " $8 < 0x10 ").toString());
+		assertEquals("$t0 == 1", Breakpoints.Condition.parse(cpu, "$t0 = 1").toString());
+		assertEquals("$t0 <= 1", Breakpoints.Condition.parse(cpu, "$t0 <= 1").toString());
+		assertEquals("$t0 > 1", Breakpoints.Condition.parse(cpu, "$t0 > +1").toString());
+		assertEquals("$t0 >= 1", Breakpoints.Condition.parse(cpu, "$t0 >= 1").toString());
+
+		c = Breakpoints.Condition.parse(cpu, "[0x10] >= 0xFFFFFFFF");
+		assertTrue(c.isOnMemory());
+		assertEquals(cpu.getDataMemory().getIndexOfAddress(0x10), c.getIndex());
+		assertEquals(-1, c.getValue());
+		assertEquals(cpu.getDataMemory().getIndexOfAddress(8), Breakpoints.Condition.parse(cpu, "[ 8 ] == 0").getIndex());
+
+		tInvalid("$t0 5");
+		tInvalid("$t0 =! 5");
+		tInvalid("$t0 == ");
+		tInvalid("$t0 == x");
+		tInvalid("$nope == 1");
+		tInvalid("[0x3] == 1"); // not a multiple of 4
+		tInvalid("[-4] == 1");
+		tInvalid("[0x7FFFFFFC] == 1"); // outside the memory
+		tInvalid("[--4] == 1");
+		tInvalid("[0x-4] == 1");
+	}
+
+	@Test
+	public void testParseValue() {
+		assertEquals(0, Breakpoints.Condition.parseValue("0"));
+		assertEquals(-1, Breakpoints.Condition.parseValue("0xFFFFFFFF"));
+		assertEquals(-1, Breakpoints.Condition.parseValue("4294967295"));
+		assertEquals(-1, Breakpoints.Condition.parseValue("-1"));
+		assertEquals(Integer.MAX_VALUE, Breakpoints.Condition.parseValue("+2147483647"));
+		assertEquals(Integer.MIN_VALUE, Breakpoints.Condition.parseValue("-2147483648"));
+		assertEquals(Integer.MIN_VALUE, Breakpoints.Condition.parseValue("-0x80000000"));
+		assertEquals(Integer.MIN_VALUE, Breakpoints.Condition.parseValue("0x80000000"));
+
+		tInvalidValue("0x100000000");
+		tInvalidValue("4294967296");
+		tInvalidValue("-4294967295");
+		tInvalidValue("-0xFFFFFFFF");
+		tInvalidValue("-2147483649");
+		tInvalidValue("-0x80000001");
+		tInvalidValue("--1");
+		tInvalidValue("+-1");
+		tInvalidValue("0x+1");
+		tInvalidValue("0x");
+		tInvalidValue("12a");
+	}
+
+	@Test
+	public void testConditions() {
+		cpu.getRegBank().setRegister(8, 5);
+		assertTrue(Breakpoints.Condition.parse(cpu, "$t0 == 5").test(cpu));
+		assertFalse(Breakpoints.Condition.parse(cpu, "$t0 != 5").test(cpu));
+		assertTrue(Breakpoints.Condition.parse(cpu, "$t0 < 6").test(cpu));
+		assertFalse(Breakpoints.Condition.parse(cpu, "$t0 < 5").test(cpu));
+		assertTrue(Breakpoints.Condition.parse(cpu, "$t0 <= 5").test(cpu));
+		assertFalse(Breakpoints.Condition.parse(cpu, "$t0 > 5").test(cpu));
+		assertTrue(Breakpoints.Condition.parse(cpu, "$t0 >= 5").test(cpu));
+
+		cpu.getDataMemory().setDataInIndex(cpu.getDataMemory().getIndexOfAddress(4), -2);
+		assertTrue(Breakpoints.Condition.parse(cpu, "[4] == -2").test(cpu));
+		assertTrue(Breakpoints.Condition.parse(cpu, "[4] == 0xFFFFFFFE").test(cpu));
+		assertTrue(Breakpoints.Condition.parse(cpu, "[4] < 0").test(cpu)); // signed comparison
+		assertFalse(Breakpoints.Condition.parse(cpu, "[0] < 0").test(cpu));
+	}
+
+	@Test
+	public void testBreakpoints() {
+		Breakpoints breakpoints = cpu.getBreakpoints();
+		assertTrue(breakpoints.isEmpty());
+		assertTrue(breakpoints.toggle(8));
+		assertTrue(breakpoints.has(8));
+		assertFalse(breakpoints.has(4));
+		assertFalse(breakpoints.has(9));
+		assertFalse(breakpoints.toggle(8));
+		assertTrue(breakpoints.isEmpty());
+
+		breakpoints.add(12);
+		breakpoints.add(4, null, 3);
+		breakpoints.add(4); // replaces the previous one
+		assertEquals(2, breakpoints.size());
+		assertEquals(4, breakpoints.getAll().get(0).getAddress());
+		assertEquals(1, breakpoints.get(4).getHitCount());
+		assertTrue(breakpoints.remove(12));
+		assertFalse(breakpoints.remove(12));
+		assertNull(breakpoints.get(12));
+
+		tInvalidBreakpoint(-4, 1);
+		tInvalidBreakpoint(2, 1);
+		tInvalidBreakpoint(4, 0);
+	}
+
+	@Test
+	public void testCheck() throws Exception {
+		cpu.load(cpu.getAssembler().assembleImage(LOOP));
+		Breakpoints.Breakpoint breakpoint = cpu.getBreakpoints().add(8, Breakpoints.Condition.parse(cpu, "$t0 >= 3"), 2);
+		assertEquals(CPU.RunStatus.BREAKPOINT, run());
+		assertEquals(8, cpu.getPC().getAddress().getValue());
+		assertEquals(4, cpu.getRegBank().getRegister(8).getValue()); // reached with $t0 = 3 and 4
+		assertEquals(2, breakpoint.getHits());
+
+		assertEquals(CPU.RunStatus.BREAKPOINT, run()); // the hit count was already reached
+		assertEquals(5, cpu.getRegBank().getRegister(8).getValue());
+
+		cpu.load(cpu.getAssembler().assembleImage(LOOP)); // resets the hits
+		assertEquals(0, breakpoint.getHits());
+		cpu.getBreakpoints().clear();
+		cpu.getBreakpoints().add(4, Breakpoints.Condition.parse(cpu, "[0] == 2"), 1);
+		assertEquals(CPU.RunStatus.BREAKPOINT, run());
+		assertEquals(4, cpu.getPC().getAddress().getValue());
+		assertEquals(2, cpu.getRegBank().getRegister(8).getValue());
+
+		RunOptions options = new RunOptions();
+		options.setMaxCycles(100);
+		options.setStopAtBreakpoints(false);
+		assertEquals(CPU.RunStatus.CYCLE_LIMIT, cpu.run(options));
+	}
+
+	private CPU.RunStatus run() {
+		RunOptions options = new RunOptions();
+		options.setMaxCycles(1000);
+		return cpu.run(options);
+	}
+
+	private void tInvalid(String condition) {
+		try {
+			Breakpoints.Condition.parse(cpu, condition);
+			fail("IllegalArgumentException expected for " + condition);
+		} catch(IllegalArgumentException ex) { }
+	}
+
+	private void tInvalidValue(String value) {
+		try {
+			Breakpoints.Condition.parseValue(value);
+			fail("NumberFormatException expected for " + value);
+		} catch(NumberFormatException ex) { }
+	}
+
+	private void tInvalidBreakpoint(int address, int hitCount) {
+		try {
+			cpu.getBreakpoints().add(address, null, hitCount);
+			fail("IllegalArgumentException expected");
+		} catch(IllegalArgumentException ex) { }
+	}
+}
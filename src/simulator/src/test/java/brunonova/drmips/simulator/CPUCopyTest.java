@@ -0,0 +1,91 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CPUCopyTest {
+	private static final String CODE = "addi $t0, $zero, 3\nsw $t0, 4($zero)\nlw $t1, 4($zero)\nadd $t2, $t1, $t0\nsub $t3, $t2, $t1\naddi $t4, $zero, 1\n";
+
+	@Test
+	public void testUnicycle() throws Exception {
+		tCopy("cpu/unicycle.cpu");
+	}
+
+	@Test
+	public void testPipeline() throws Exception {
+		tCopy("cpu/pipeline.cpu");
+	}
+
+	@Test
+	public void testLatencies() throws Exception {
+		CPU cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+		Component alu = cpu.getALU();
+		alu.setLatency(alu.getLatency() + 100);
+		cpu.setPerformanceInstructionDependent(!cpu.isPerformanceInstructionDependent());
+		cpu.calculatePerformance();
+
+		CPU copy = cpu.copy();
+		assertNotSame(alu, copy.getALU());
+		assertEquals(alu.getLatency(), copy.getALU().getLatency());
+		assertEquals(alu.getOriginalLatency(), copy.getALU().getOriginalLatency());
+		assertEquals(cpu.isPerformanceInstructionDependent(), copy.isPerformanceInstructionDependent());
+		assertEquals(cpu.getClockPeriod(), copy.getClockPeriod());
+
+		copy.getALU().setLatency(0); // not shared
+		assertEquals(alu.getOriginalLatency() + 100, alu.getLatency());
+	}
+
+	private void tCopy(String path) throws Exception {
+		CPU cpu = CPU.createFromJSONFile(path);
+		cpu.assembleCode(CODE);
+		cpu.executeCycle();
+
+		// The copy starts like a freshly loaded CPU
+		CPU copy = cpu.copy();
+		assertSame(cpu.getInstructionSet(), copy.getInstructionSet());
+		assertEquals(cpu.getFile(), copy.getFile());
+		assertEquals(cpu.isPipeline(), copy.isPipeline());
+		assertEquals(cpu.getComponents().length, copy.getComponents().length);
+		for(Component c: cpu.getComponents()) {
+			assertTrue(copy.hasComponent(c.getId()));
+			assertNotSame(c, copy.getComponent(c.getId()));
+			assertEquals(c.getClass(), copy.getComponent(c.getId()).getClass());
+		}
+		assertEquals(0, copy.getNumberOfExecutedCycles());
+		assertEquals(0, copy.getInstructionMemory().getNumberOfInstructions());
+
+		// Both produce the same results, without affecting each other
+		CPU fresh = CPU.createFromJSONFile(path);
+		fresh.assembleCode(CODE);
+		fresh.executeAll();
+		copy.assembleCode(CODE);
+		copy.executeAll();
+		assertEquals(1, cpu.getNumberOfExecutedCycles());
+		assertEquals(fresh.getNumberOfExecutedCycles(), copy.getNumberOfExecutedCycles());
+		assertEquals(fresh.getNumberOfExecutedInstructions(), copy.getNumberOfExecutedInstructions());
+		for(int i = 0; i < fresh.getRegBank().getNumberOfRegisters(); i++)
+			assertEquals(fresh.getRegBank().getRegister(i).getValue(), copy.getRegBank().getRegister(i).getValue());
+		assertEquals(3, copy.getDataMemory().getData(4));
+		assertEquals(3, copy.getRegBank().getRegister(11).getValue());
+		assertEquals(1, copy.getRegBank().getRegister(12).getValue());
+		assertEquals(0, cpu.getRegBank().getRegister(12).getValue());
+	}
+}
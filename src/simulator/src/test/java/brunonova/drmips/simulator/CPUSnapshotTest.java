@@ -0,0 +1,115 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CPUSnapshotTest {
+	private static final String CODE = "addi $t0, $zero, 5\n"
+		+ "sw $t0, 8($zero)\n"
+		+ "lw $t1, 8($zero)\n"
+		+ "add $t2, $t1, $t0\n";
+
+	@Test
+	public void testUnicycle() throws Exception {
+		CPU cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+		cpu.assembleCode(CODE);
+		cpu.executeCycle();
+		cpu.executeCycle();
+		CPUSnapshot snapshot = cpu.snapshot();
+		List<Integer> values = outputValues(cpu);
+		tEquals(cpu, snapshot);
+		assertFalse(snapshot.isPipeline());
+		assertEquals(2, snapshot.getInstructionIndex(CPUSnapshot.STAGE_IF));
+		assertEquals(-1, snapshot.getInstructionIndex(CPUSnapshot.STAGE_ID));
+
+		// The snapshot doesn't change with the CPU
+		cpu.executeCycle();
+		cpu.executeCycle();
+		assertTrue(cpu.isProgramFinished());
+		assertEquals(2, snapshot.getNumberOfExecutedCycles());
+		assertEquals(0, snapshot.getRegister(9));
+		assertFalse(snapshot.isProgramFinished());
+		assertEquals(values, snapshotValues(cpu, snapshot));
+		tEquals(cpu, cpu.snapshot());
+		assertTrue(cpu.snapshot().isProgramFinished());
+
+		// Outputs of other CPUs aren't in the snapshot
+		CPU other = cpu.copy();
+		try {
+			snapshot.getValue(other.getComponents()[0].getOutputs().get(0));
+			fail("IllegalArgumentException expected");
+		} catch(IllegalArgumentException ex) { }
+	}
+
+	@Test
+	public void testPipeline() throws Exception {
+		CPU cpu = CPU.createFromJSONFile("cpu/pipeline.cpu");
+		cpu.assembleCode(CODE);
+		for(int i = 0; i < 3; i++)
+			cpu.executeCycle();
+		CPUSnapshot snapshot = cpu.snapshot();
+		tEquals(cpu, snapshot);
+		assertTrue(snapshot.isPipeline());
+		assertEquals(3, snapshot.getInstructionIndex(CPUSnapshot.STAGE_IF));
+		assertEquals(2, snapshot.getInstructionIndex(CPUSnapshot.STAGE_ID));
+		assertEquals(1, snapshot.getInstructionIndex(CPUSnapshot.STAGE_EX));
+		assertEquals(0, snapshot.getInstructionIndex(CPUSnapshot.STAGE_MEM));
+		assertEquals(-1, snapshot.getInstructionIndex(CPUSnapshot.STAGE_WB));
+	}
+
+	private void tEquals(CPU cpu, CPUSnapshot snapshot) {
+		assertEquals(cpu.getNumberOfExecutedCycles(), snapshot.getNumberOfExecutedCycles());
+		assertEquals(cpu.getNumberOfExecutedInstructions(), snapshot.getNumberOfExecutedInstructions());
+		assertEquals(cpu.getNumberOfForwards(), snapshot.getNumberOfForwards());
+		assertEquals(cpu.getNumberOfStalls(), snapshot.getNumberOfStalls());
+		assertEquals(cpu.getNumberOfBranches(), snapshot.getNumberOfBranches());
+		assertEquals(cpu.getNumberOfBranchesPredictedWrong(), snapshot.getNumberOfBranchesPredictedWrong());
+		assertEquals(cpu.getPC().getAddress().getValue(), snapshot.getPC());
+		assertEquals(cpu.isProgramFinished(), snapshot.isProgramFinished());
+		assertEquals(cpu.getRegBank().getNumberOfRegisters(), snapshot.getNumberOfRegisters());
+		for(int i = 0; i < snapshot.getNumberOfRegisters(); i++)
+			assertEquals(cpu.getRegBank().getRegister(i).getValue(), snapshot.getRegister(i));
+		assertEquals(cpu.getDataMemory().getMemorySize(), snapshot.getMemorySize());
+		for(int i = 0; i < snapshot.getMemorySize(); i++)
+			assertEquals(cpu.getDataMemory().getDataInIndex(i), snapshot.getDataInIndex(i));
+		assertEquals(outputValues(cpu), snapshotValues(cpu, snapshot));
+	}
+
+	private List<Integer> outputValues(CPU cpu) {
+		List<Integer> values = new ArrayList<>();
+		for(Component c: cpu.getComponents()) {
+			for(Output out: c.getOutputs())
+				values.add(out.getValue());
+		}
+		return values;
+	}
+
+	private List<Integer> snapshotValues(CPU cpu, CPUSnapshot snapshot) {
+		List<Integer> values = new ArrayList<>();
+		for(Component c: cpu.getComponents()) {
+			for(Output out: c.getOutputs())
+				values.add(snapshot.getValue(out));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ChangeSetTest {
+	@Test
+	public void testMarks() {
+		ChangeSet set = new ChangeSet(10);
+		assertEquals(10, set.count()); // all changed at first
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertEquals(-1, set.nextChanged(0));
+
+		set.mark(3);
+		set.mark(7);
+		set.mark(3);
+		set.mark(-1); // ignored
+		set.mark(10);
+		assertEquals(2, set.count());
+		assertTrue(set.isChanged(3));
+		assertFalse(set.isChanged(4));
+		assertFalse(set.isChanged(-1));
+		assertEquals(3, set.nextChanged(0));
+		assertEquals(7, set.nextChanged(4));
+		assertEquals(-1, set.nextChanged(8));
+
+		set.markAll();
+		assertEquals(10, set.count());
+		assertFalse(set.isChanged(10));
+	}
+
+	@Test
+	public void testMarkDifferences() {
+		ChangeSet set = new ChangeSet(4);
+		set.clear();
+		set.markDifferences(new int[] {1, 2, 3, 4}, new int[] {1, 5, 3, 6, 7});
+		assertEquals(2, set.count());
+		assertTrue(set.isChanged(1));
+		assertTrue(set.isChanged(3));
+		set.clear();
+		set.markDifferences(new int[] {1, 2}, new int[] {1, 2});
+		assertTrue(set.isEmpty());
+	}
+
+	@Test
+	public void testCPUChanges() throws Exception {
+		CPU cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+		cpu.assembleCode("addi $t0, $zero, 5\nsw $t0, 8($zero)\naddi $t0, $zero, 5");
+		ChangeSet registers = cpu.getRegBank().getChanges();
+		ChangeSet memory = cpu.getDataMemory().getChanges();
+		registers.clear();
+		memory.clear();
+
+		cpu.executeCycle();
+		assertTrue(registers.isChanged(8));
+		assertEquals(1, registers.count());
+		assertTrue(memory.isEmpty());
+		registers.clear();
+
+		cpu.executeCycle();
+		assertTrue(registers.isEmpty());
+		assertEquals(cpu.getDataMemory().getIndexOfAddress(8), memory.nextChanged(0));
+		assertEquals(1, memory.count());
+		memory.clear();
+
+		cpu.resetToFirstCycle(); // the values were restored
+		assertTrue(registers.isChanged(8));
+		assertTrue(memory.isChanged(cpu.getDataMemory().getIndexOfAddress(8)));
+	}
+}
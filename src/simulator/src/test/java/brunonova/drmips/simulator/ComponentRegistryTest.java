@@ -0,0 +1,120 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.components.Add;
+import brunonova.drmips.simulator.exceptions.InvalidCPUException;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ComponentRegistryTest {
+	private static final String ADD_JSON = "{\"x\": 0, \"y\": 0, \"in1\": \"In1\", \"in2\": \"In2\", \"out\": \"Out\"}";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		ComponentRegistry.clearCustomComponents();
+	}
+
+	@Test
+	public void testBuiltIn() throws Exception {
+		String dir = folder.getRoot().getPath();
+		ComponentFactory factory = ComponentRegistry.getFactory("Add", dir);
+		assertEquals("Add", factory.getType());
+		assertSame(factory, ComponentRegistry.getFactory("Add", dir));
+		Component c = factory.create("A", new JSONObject(ADD_JSON));
+		assertTrue(c instanceof Add);
+		assertEquals("A", c.getId());
+
+		for(String type: new String[] {"ALU", "And", "Concatenator", "ControlUnit", "DataMemory", "Fork",
+		                               "InstructionMemory", "PC", "PipelineRegister", "RegBank"})
+			assertEquals(type, ComponentRegistry.getFactory(type, dir).getType());
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+		final AtomicInteger created = new AtomicInteger();
+		ComponentRegistry.register(new ComponentFactory() {
+			@Override
+			public String getType() {
+				return "RegistryTestAdd";
+			}
+
+			@Override
+			public Component create(String id, JSONObject json) throws InvalidCPUException, JSONException {
+				created.incrementAndGet();
+				return new Add(id, json);
+			}
+		});
+
+		// A CPU that uses the registered type instead of Add
+		File cpuDir = folder.newFolder("cpu");
+		Charset utf8 = Charset.forName("UTF-8");
+		String json = new String(Files.readAllBytes(new File("cpu/unicycle.cpu").toPath()), utf8);
+		File cpuFile = new File(cpuDir, "unicycle.cpu");
+		Files.write(cpuFile.toPath(), json.replace("\"type\": \"Add\"", "\"type\": \"RegistryTestAdd\"").getBytes(utf8));
+		Files.copy(new File("cpu/default.set").toPath(), new File(cpuDir, "default.set").toPath());
+
+		CPU cpu = CPU.createFromJSONFile(cpuFile.getPath());
+		assertEquals(2, created.get());
+		cpu.assembleCode("addi $t0, $zero, 2\naddi $t1, $t0, 3\n");
+		cpu.executeAll();
+		assertEquals(5, cpu.getRegBank().getRegister(9).getValue());
+	}
+
+	@Test
+	public void testCustomClass() throws Exception {
+		// Classes not registered are looked up by name
+		String dir = folder.getRoot().getPath();
+		String type = Add.class.getName();
+		ComponentFactory factory = ComponentRegistry.getFactory(type, dir);
+		assertEquals(type, factory.getType());
+		assertSame(factory, ComponentRegistry.getFactory(type, dir));
+		assertTrue(factory.create("A", new JSONObject(ADD_JSON)) instanceof Add);
+
+		ComponentRegistry.clearCustomComponents();
+		assertNotSame(factory, ComponentRegistry.getFactory(type, dir));
+	}
+
+	@Test(expected = InvalidCPUException.class)
+	public void testUnknownType() throws Exception {
+		ComponentRegistry.getFactory("RegistryTestUnknown", folder.getRoot().getPath());
+	}
+
+	@Test(expected = InvalidCPUException.class)
+	public void testNotAComponent() throws Exception {
+		ComponentRegistry.getFactory(String.class.getName(), folder.getRoot().getPath());
+	}
+
+	@Test(expected = InvalidCPUException.class)
+	public void testMissingConstructor() throws Exception {
+		ComponentRegistry.getFactory(Component.class.getName(), folder.getRoot().getPath());
+	}
+}
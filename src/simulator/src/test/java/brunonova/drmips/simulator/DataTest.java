@@ -0,0 +1,126 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DataTest {
+	private static final int[] VALUES = {0, 1, 2, 7, 8, 15, 16, 255, 256, 0x7FFF, 0x8000, 0xFFFF,
+		Integer.MAX_VALUE, Integer.MIN_VALUE, -1, -2, -256, 0x12345678, 0xDEADBEEF};
+
+	@Test
+	public void testFormats() {
+		Random random = new Random(1);
+		for(int size = 1; size <= Data.DATA_SIZE; size++) {
+			for(int value: VALUES) {
+				tFormats(value, size);
+				tFormats(value & mask(size), size);
+			}
+			for(int i = 0; i < 200; i++) {
+				int value = random.nextInt();
+				tFormats(value, size);
+				tFormats(value & mask(size), size);
+			}
+		}
+	}
+
+	@Test
+	public void testRequiredNumberOfBits() {
+		for(int value: VALUES) {
+			int n = 0;
+			for(int v = value; v != 0; v >>>= 1)
+				n++;
+			assertEquals(n, Data.requiredNumberOfBits(value));
+		}
+	}
+
+	@Test
+	public void testFormatCache() {
+		DataFormatCache.clear();
+		for(int size: new int[] {1, 5, 16, 32}) {
+			for(int value: VALUES) {
+				for(int i = 0; i < 2; i++) { // formatted, then cached
+					assertEquals(Data.toBinary(value, size), DataFormatCache.format(value, size, DataFormatCache.BINARY));
+					assertEquals(Data.toOctal(value, size), DataFormatCache.format(value, size, DataFormatCache.OCTAL));
+					assertEquals(Data.toHexadecimal(value, size), DataFormatCache.format(value, size, DataFormatCache.HEXADECIMAL));
+					assertEquals(Integer.toString(value), DataFormatCache.format(value, size, DataFormatCache.DECIMAL));
+				}
+			}
+		}
+		assertEquals("-1", DataFormatCache.format(-1, 8, 42)); // unknown format is decimal
+		assertEquals("0000 0101", DataFormatCache.format(new Data(8, 5), DataFormatCache.BINARY));
+
+		for(int i = 0; i < DataFormatCache.CAPACITY * 2; i++) // evicts the least recently used
+			assertEquals(Data.toHexadecimal(i, 32), DataFormatCache.format(i, 32, DataFormatCache.HEXADECIMAL));
+		assertEquals("00000000", DataFormatCache.format(0, 32, DataFormatCache.HEXADECIMAL));
+		DataFormatCache.clear();
+	}
+
+	private void tFormats(int value, int size) {
+		Data data = new Data(size, value);
+		assertEquals(oldBinary(data.getValue(), size), data.toBinary());
+		assertEquals(oldOctal(data.getValue(), size), data.toOctal());
+		assertEquals(oldHexadecimal(data.getValue(), size), data.toHexadecimal());
+		assertEquals(oldBinary(value, size), Data.toBinary(value, size));
+		assertEquals(oldOctal(value, size), Data.toOctal(value, size));
+		assertEquals(oldHexadecimal(value, size), Data.toHexadecimal(value, size));
+	}
+
+	private static int mask(int size) {
+		return size == Data.DATA_SIZE ? -1 : (1 << size) - 1;
+	}
+
+	// The previous implementations, built from Integer.toXXXString()
+	private static String oldBinary(int value, int size) {
+		String str = Integer.toBinaryString(value);
+		String res = "";
+		int c = 0;
+		for(int i = str.length() - 1; i >= 0; i--) {
+			if(++c > 4) {
+				c = 1;
+				res = " " + res;
+			}
+			res = str.charAt(i) + res;
+		}
+		for(int i = str.length(); i < size; i++) {
+			if(++c > 4) {
+				c = 1;
+				res = " " + res;
+			}
+			res = "0" + res;
+		}
+		return res;
+	}
+
+	private static String oldOctal(int value, int size) {
+		String str = Integer.toOctalString(value);
+		for(int i = str.length() * 3; i < size; i += 3)
+			str = "0" + str;
+		return str;
+	}
+
+	private static String oldHexadecimal(int value, int size) {
+		String str = Integer.toHexString(value);
+		for(int i = str.length() * 4; i < size; i += 4)
+			str = "0" + str;
+		return str;
+	}
+}
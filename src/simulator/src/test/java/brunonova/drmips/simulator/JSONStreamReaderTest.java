@@ -0,0 +1,87 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class JSONStreamReaderTest {
+	@Test
+	public void testValues() throws IOException, JSONException {
+		JSONObject json = read("{\"a\": 1, \"b\": -5000000000, \"c\": 1.5, \"d\": [true, false, null],\n"
+			+ "\"e\": {\"f\": \"x\\\"\\u0041\\n\"}, \"g\": [], 'h': 'y',}");
+		assertEquals(1, json.get("a"));
+		assertEquals(-5000000000L, json.get("b"));
+		assertEquals(1.5, json.getDouble("c"), 0);
+		JSONArray d = json.getJSONArray("d");
+		assertEquals(3, d.length());
+		assertTrue(d.getBoolean(0));
+		assertFalse(d.getBoolean(1));
+		assertTrue(d.isNull(2));
+		assertEquals("x\"A\n", json.getJSONObject("e").getString("f"));
+		assertEquals(0, json.getJSONArray("g").length());
+		assertEquals("y", json.getString("h"));
+	}
+
+	@Test
+	public void testStreaming() throws IOException, JSONException {
+		JSONStreamReader reader = new JSONStreamReader(new StringReader(
+			"{\"skip\": {\"x\": [1, {\"y\": 2}]}, \"list\": [\"a\", \"b\"]}"));
+		reader.beginObject();
+		assertTrue(reader.hasNext());
+		assertEquals("skip", reader.nextName());
+		reader.skipValue();
+		assertTrue(reader.hasNext());
+		assertEquals("list", reader.nextName());
+		reader.beginArray();
+		assertTrue(reader.hasNext());
+		assertEquals("a", reader.nextString());
+		assertTrue(reader.hasNext());
+		assertEquals("b", reader.nextString());
+		assertFalse(reader.hasNext());
+		reader.endArray();
+		assertFalse(reader.hasNext());
+		reader.endObject();
+	}
+
+	@Test
+	public void testErrorPosition() throws IOException {
+		tError("{\n  \"a\": 1,\n  \"b\" 2\n}", "line 3, column 7");
+		tError("{\"a\": tru}", "line 1, column 9");
+		tError("{\"a\": \"x", "line 1, column 8");
+	}
+
+	private void tError(String json, String position) throws IOException {
+		try {
+			read(json);
+			fail("JSONException expected");
+		} catch(JSONException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().endsWith(position));
+		}
+	}
+
+	private JSONObject read(String json) throws IOException, JSONException {
+		return new JSONStreamReader(new StringReader(json)).nextObject();
+	}
+}
@@ -0,0 +1,126 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ModelCacheTest {
+	private static final String CODE = "addi $t0, $zero, 5\nsw $t0, 8($zero)\nlw $t1, 8($zero)\nsub $t2, $t1, $t0\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMemory() throws Exception {
+		ModelCache cache = new ModelCache();
+		CPU a = cache.load("cpu/unicycle.cpu");
+		CPU b = cache.load("cpu/unicycle.cpu");
+		assertNotSame(a, b);
+		assertSame(a.getInstructionSet(), b.getInstructionSet()); // not parsed again
+		assertEquals(new File("cpu/unicycle.cpu"), b.getFile());
+		tRun(a);
+		tRun(b);
+		assertNotSame(a.getInstructionSet(), cache.load("cpu/pipeline.cpu").getInstructionSet());
+
+		cache.clear();
+		assertNotSame(a.getInstructionSet(), cache.load("cpu/unicycle.cpu").getInstructionSet());
+	}
+
+	@Test
+	public void testCacheFile() throws Exception {
+		File dir = new File(folder.getRoot(), "cache");
+		tRun(new ModelCache(dir).load("cpu/unicycle.cpu"));
+		assertEquals(1, dir.list().length);
+		assertTrue(dir.list()[0].endsWith("." + ModelCache.FILENAME_EXTENSION));
+
+		ModelCache cache = new ModelCache(dir); // like after a restart, reads the cache file
+		assertEquals(dir, cache.getDirectory());
+		tRun(cache.load("cpu/unicycle.cpu"));
+
+		File cacheFile = dir.listFiles()[0]; // corrupted, ignored and rewritten
+		try(FileOutputStream out = new FileOutputStream(cacheFile)) {
+			out.write(new byte[] {0x44, 0x52, 0x4D, 0x50, 0, 0, 0, 1, 5});
+		}
+		tRun(new ModelCache(dir).load("cpu/unicycle.cpu"));
+		assertTrue(cacheFile.length() > 9);
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		File cpuDir = folder.newFolder("cpu");
+		File cpuFile = new File(cpuDir, "unicycle.cpu"), setFile = new File(cpuDir, "default.set");
+		Files.copy(new File("cpu/unicycle.cpu").toPath(), cpuFile.toPath());
+		Files.copy(new File("cpu/default.set").toPath(), setFile.toPath());
+		File dir = new File(folder.getRoot(), "cache");
+		ModelCache cache = new ModelCache(dir);
+		assertTrue(cache.load(cpuFile.getPath()).getInstructionSet().hasPseudoInstruction("neg"));
+
+		// Change the instruction set file, but not the CPU file
+		Charset utf8 = Charset.forName("UTF-8");
+		String set = new String(Files.readAllBytes(setFile.toPath()), utf8);
+		Files.write(setFile.toPath(), set.replace("\"neg\":", "\"negate\":").getBytes(utf8));
+		CPU cpu = cache.load(cpuFile.getPath());
+		assertFalse(cpu.getInstructionSet().hasPseudoInstruction("neg"));
+		assertTrue(cpu.getInstructionSet().hasPseudoInstruction("negate"));
+		assertTrue(new ModelCache(dir).load(cpuFile.getPath()).getInstructionSet().hasPseudoInstruction("negate"));
+	}
+
+	@Test
+	public void testCapacity() throws Exception {
+		ModelCache cache = new ModelCache(2, null);
+		CPU unicycle = cache.load("cpu/unicycle.cpu");
+		cache.load("cpu/pipeline.cpu");
+		assertSame(unicycle.getInstructionSet(), cache.load("cpu/unicycle.cpu").getInstructionSet());
+		assertEquals(2, cache.size());
+		cache.load("cpu/unicycle-extended.cpu"); // the pipeline is the least recently used
+		assertEquals(2, cache.size());
+		assertSame(unicycle.getInstructionSet(), cache.load("cpu/unicycle.cpu").getInstructionSet());
+		tRun(cache.load("cpu/pipeline.cpu"));
+		assertEquals(2, cache.size());
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new ModelCache(0, null);
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingFile() throws Exception {
+		new ModelCache().load("cpu/nonexistent.cpu");
+	}
+
+	private void tRun(CPU cpu) throws Exception {
+		cpu.assembleCode(CODE);
+		while(!cpu.isProgramFinished())
+			cpu.executeCycle();
+		assertEquals(5, cpu.getRegBank().getRegister(9).getValue());
+		assertEquals(0, cpu.getRegBank().getRegister(10).getValue());
+		assertEquals(5, cpu.getDataMemory().getData(8));
+	}
+}
@@ -0,0 +1,147 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProgramImageTest {
+	private static final String CODE = ".data\n"
+		+ "x: .word 5, -1\n"
+		+ "y: .space 8\n"
+		+ ".text\n"
+		+ "main: addi $t0, $zero, 3 # comment\n"
+		+ "lw $t1, 0($zero)\n"
+		+ "loop: add $t2, $t0, $t1\n"
+		+ "beq $t2, $zero, loop\n";
+
+	private static CPU cpu;
+
+	@BeforeClass
+	public static void loadCPU() throws Exception {
+		cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		ProgramImage image = cpu.getAssembler().assembleImage(CODE);
+		ProgramImage loaded = ProgramImage.load(new ByteArrayInputStream(save(image)), cpu);
+
+		assertEquals(image.getNumberOfInstructions(), loaded.getNumberOfInstructions());
+		for(int i = 0; i < image.getNumberOfInstructions(); i++) {
+			AssembledInstruction a = image.getInstructions().get(i), b = loaded.getInstructions().get(i);
+			assertSame(a.getInstruction(), b.getInstruction());
+			assertEquals(a.getData().getValue(), b.getData().getValue());
+			assertEquals(a.getLineNumber(), b.getLineNumber());
+			assertEquals(a.getCodeLine(), b.getCodeLine());
+			assertEquals(a.getLabels(), b.getLabels());
+			assertEquals(image.getLineNumber(i), loaded.getLineNumber(i));
+		}
+
+		assertEquals(image.getNumberOfDataWords(), loaded.getNumberOfDataWords());
+		for(int i = 0; i < image.getNumberOfDataWords(); i++) {
+			assertEquals(image.getDataAddress(i), loaded.getDataAddress(i));
+			assertEquals(image.getDataValue(i), loaded.getDataValue(i));
+		}
+		assertEquals(image.getTextLabels(), loaded.getTextLabels());
+		assertEquals(image.getDataLabels(), loaded.getDataLabels());
+		assertTrue(Arrays.equals(save(image), save(loaded)));
+	}
+
+	@Test
+	public void testCorruptFiles() throws Exception {
+		byte[] data = save(cpu.getAssembler().assembleImage(CODE));
+
+		byte[] badMagic = data.clone();
+		badMagic[0] ^= 0xFF;
+		tError(badMagic, "Invalid program file!");
+
+		byte[] badVersion = data.clone();
+		badVersion[7]++;
+		tError(badVersion, "Unsupported program file version!");
+
+		tError(Arrays.copyOf(data, data.length / 2), null); // truncated
+		tError(new byte[0], null);
+		tError(countsFile(-1), "Invalid program file!");
+		tError(countsFile(Integer.MAX_VALUE), null); // huge counts end in EOF, not in an OutOfMemoryError
+		tError(countsFile(0, Integer.MAX_VALUE), null);
+	}
+
+	@Test
+	public void testUnsupportedInstructions() throws Exception {
+		int add = cpu.getAssembler().assembleImage("add $t0, $t1, $t2").getInstructions().get(0).getData().getValue();
+		load(instructionFile("add", add)); // valid
+
+		tError(instructionFile("nonexistent", add), "The instruction nonexistent in line 1 isn't supported by the CPU!");
+		tError(instructionFile("add", add | 0xFC000000), "The instruction add in line 1 isn't supported by the CPU!"); // different opcode
+	}
+
+	private void tError(byte[] data, String message) {
+		try {
+			load(data);
+			fail("IOException expected");
+		} catch(IOException ex) {
+			if(message != null) assertEquals(message, ex.getMessage());
+		}
+	}
+
+	private ProgramImage load(byte[] data) throws IOException {
+		return ProgramImage.load(new ByteArrayInputStream(data), cpu);
+	}
+
+	private byte[] save(ProgramImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		image.save(out);
+		return out.toByteArray();
+	}
+
+	/** Creates a program file with only the given counts of instructions, data words and labels. */
+	private byte[] countsFile(int... counts) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(save(cpu.getAssembler().assembleImage("")), 0, 8); // magic and version
+		for(int count: counts)
+			out.writeInt(count);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/** Creates a program file with a single instruction, with the given mnemonic and machine code. */
+	private byte[] instructionFile(String mnemonic, int value) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(save(cpu.getAssembler().assembleImage("")), 0, 8); // magic and version
+		out.writeInt(1);
+		out.writeUTF(mnemonic);
+		out.writeInt(value);
+		out.writeInt(1);
+		out.writeUTF(mnemonic);
+		out.writeInt(0); // data segment
+		out.writeInt(0); // text labels
+		out.writeInt(0); // data labels
+		out.flush();
+		return bytes.toByteArray();
+	}
+}
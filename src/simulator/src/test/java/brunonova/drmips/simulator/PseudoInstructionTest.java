@@ -0,0 +1,95 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import brunonova.drmips.simulator.exceptions.SyntaxErrorException;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PseudoInstructionTest {
+	private static CPU cpu;
+
+	@BeforeClass
+	public static void loadCPU() throws Exception {
+		cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+	}
+
+	@Test
+	public void testExpand() throws Exception {
+		tExpand("li $t0, 5", "addi $t0, $0, 5");
+		tExpand("move $t0, $t1", "add $t0, $t1, $0");
+		tExpand("x: bge $t0, $t1, x", "x: slt $1, $t0, $t1\nbeq $1, $0, x");
+	}
+
+	@Test
+	public void testExpandNested() throws Exception {
+		tExpand("subi $t0, $t1, 5", "addi $1, $0, 5\nsub $t0, $t1, $1");
+		tExpand("x: ble $t0,$t1,x", "x: slt $1, $t1, $t0\nbeq $1, $0, x");
+	}
+
+	@Test
+	public void testWrongNumberOfArguments() throws Exception {
+		tError("li $t0", 2, 1);
+		tError("li $t0, 1, 2", 2, 3);
+		tError("subi $t0, $t1", 3, 2);
+		tError("ble $t0, $t1", 3, 2);
+	}
+
+	@Test
+	public void testEmptyArguments() throws Exception {
+		// An empty last argument of a nested pseudo-instruction is removed, like in the code
+		tError("subi $t0,$t1, ,", 2, 1);
+		tError("subi   ,  , ,", 2, 1);
+		tError("ble ,, $t0", 3, 2);
+		tError("li $t0,", 2, 1);
+		tError("li , 5", "addi , $0, 5");
+	}
+
+	private void tExpand(String pseudo, String expected) throws Exception {
+		ProgramImage a = cpu.getAssembler().assembleImage(pseudo);
+		ProgramImage b = cpu.getAssembler().assembleImage(expected);
+		assertEquals(b.getNumberOfInstructions(), a.getNumberOfInstructions());
+		for(int i = 0; i < a.getNumberOfInstructions(); i++) {
+			assertSame(b.getInstructions().get(i).getInstruction(), a.getInstructions().get(i).getInstruction());
+			assertEquals(b.getInstructions().get(i).getData().getValue(), a.getInstructions().get(i).getData().getValue());
+			assertEquals(1, a.getInstructions().get(i).getLineNumber());
+		}
+	}
+
+	private void tError(String code, int expected, int found) {
+		List<SyntaxErrorException> errors = cpu.getAssembler().checkCode(code);
+		assertEquals(1, errors.size());
+		assertEquals(SyntaxErrorException.Type.WRONG_NUMBER_OF_ARGUMENTS, errors.get(0).getType());
+		assertEquals(1, errors.get(0).getLine());
+		assertEquals("" + expected, errors.get(0).getExtra());
+		assertEquals("" + found, errors.get(0).getExtra2());
+	}
+
+	private void tError(String code, String expanded) {
+		List<SyntaxErrorException> errors = cpu.getAssembler().checkCode(code);
+		List<SyntaxErrorException> expectedErrors = cpu.getAssembler().checkCode(expanded);
+		assertEquals(expectedErrors.size(), errors.size());
+		for(int i = 0; i < errors.size(); i++) {
+			assertEquals(expectedErrors.get(i).getType(), errors.get(i).getType());
+			assertEquals(expectedErrors.get(i).getExtra(), errors.get(i).getExtra());
+		}
+	}
+}
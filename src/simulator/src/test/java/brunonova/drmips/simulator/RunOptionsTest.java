@@ -0,0 +1,123 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RunOptionsTest {
+	private static final String CODE = "addi $t0, $zero, 3\n" // 0
+		+ "loop: addi $t0, $t0, -1\n" // 4
+		+ "beq $t0, $zero, end\n" // 8
+		+ "j loop\n" // 12
+		+ "end: addi $t1, $zero, 1\n"; // 16
+	private static final String INFINITE_LOOP = "loop: j loop";
+
+	private CPU cpu;
+
+	@Before
+	public void loadCPU() throws Exception {
+		cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+	}
+
+	@Test
+	public void testFinished() throws Exception {
+		cpu.assembleCode(CODE);
+		assertEquals(CPU.RunStatus.FINISHED, cpu.run(new RunOptions()));
+		assertEquals(10, cpu.getNumberOfExecutedCycles());
+		assertEquals(1, cpu.getRegBank().getRegister(9).getValue());
+		assertEquals(CPU.RunStatus.FINISHED, cpu.run(new RunOptions())); // nothing to do
+	}
+
+	@Test
+	public void testMaxCycles() throws Exception {
+		cpu.assembleCode(CODE);
+		RunOptions options = new RunOptions();
+		options.setMaxCycles(5);
+		assertEquals(CPU.RunStatus.CYCLE_LIMIT, cpu.run(options));
+		assertEquals(5, cpu.getNumberOfExecutedCycles());
+		assertEquals(CPU.RunStatus.FINISHED, cpu.run(options)); // the rest of the program
+		assertEquals(10, cpu.getNumberOfExecutedCycles());
+	}
+
+	@Test
+	public void testCancellation() throws Exception {
+		cpu.assembleCode(INFINITE_LOOP);
+		RunOptions options = new RunOptions();
+		RunOptions.CancellationToken token = new RunOptions.CancellationToken();
+		options.setCancellationToken(token);
+		options.setMaxCycles(1000);
+		assertEquals(CPU.RunStatus.CYCLE_LIMIT, cpu.run(options));
+		token.cancel();
+		assertTrue(token.isCancelled());
+		assertEquals(CPU.RunStatus.CANCELLED, cpu.run(options));
+		assertEquals(1000, cpu.getNumberOfExecutedCycles()); // cancelled before any cycle
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		cpu.assembleCode(INFINITE_LOOP);
+		RunOptions options = new RunOptions();
+		options.setTimeout(50);
+		assertEquals(CPU.RunStatus.TIMEOUT, cpu.run(options));
+		assertTrue(cpu.getNumberOfExecutedCycles() > 0);
+
+		options = new RunOptions();
+		options.setDeadline(System.currentTimeMillis() - 1);
+		assertEquals(CPU.RunStatus.TIMEOUT, cpu.run(options));
+	}
+
+	@Test
+	public void testProgress() throws Exception {
+		cpu.assembleCode(INFINITE_LOOP);
+		final List<Integer> calls = new ArrayList<>();
+		RunOptions options = new RunOptions();
+		options.setMaxCycles(100);
+		options.setCheckInterval(30);
+		options.setProgressListener(new RunOptions.ProgressListener() {
+			@Override
+			public void progress(CPU c, int cycles) {
+				assertSame(cpu, c);
+				calls.add(cycles);
+			}
+		});
+		assertEquals(CPU.RunStatus.CYCLE_LIMIT, cpu.run(options));
+		assertEquals(3, calls.size());
+		assertEquals(30, (int)calls.get(0));
+		assertEquals(90, (int)calls.get(2));
+	}
+
+	@Test
+	public void testBreakpoints() throws Exception {
+		cpu.assembleCode(CODE);
+		cpu.getBreakpoints().add(16);
+		assertEquals(CPU.RunStatus.BREAKPOINT, cpu.run(new RunOptions()));
+		assertEquals(16, cpu.getPC().getAddress().getValue());
+		assertEquals(CPU.RunStatus.FINISHED, cpu.run(new RunOptions()));
+
+		cpu.resetToFirstCycle();
+		RunOptions options = new RunOptions();
+		options.setStopAtBreakpoints(false);
+		assertEquals(CPU.RunStatus.FINISHED, cpu.run(options));
+		assertEquals(10, cpu.getNumberOfExecutedCycles());
+	}
+}
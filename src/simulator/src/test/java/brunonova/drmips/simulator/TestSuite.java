@@ -25,7 +25,24 @@ import org.junit.runners.Suite;
  * This test suite runs all of the tests of the simulator.
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({brunonova.drmips.simulator.components.TestSuite.class})
+@Suite.SuiteClasses({brunonova.drmips.simulator.components.TestSuite.class,
+                     BatchRunnerTest.class,
+                     CPUCopyTest.class,
+                     ModelCacheTest.class,
+                     JSONStreamReaderTest.class,
+                     ComponentRegistryTest.class,
+                     AssemblerLexerTest.class,
+                     AssemblerTest.class,
+                     ProgramImageTest.class,
+                     AssemblyCacheTest.class,
+                     BreakpointsTest.class,
+                     WatchpointsTest.class,
+                     RunOptionsTest.class,
+                     AnimationTest.class,
+                     CPUSnapshotTest.class,
+                     ChangeSetTest.class,
+                     DataTest.class,
+                     PseudoInstructionTest.class})
 public class TestSuite {
 
 }
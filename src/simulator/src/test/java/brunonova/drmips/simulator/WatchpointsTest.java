@@ -0,0 +1,184 @@
+/*
+    DrMIPS - Educational MIPS simulator
+    Copyright (C) 2013-2015 Bruno Nova <brunomb.nova@gmail.com>
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package brunonova.drmips.simulator;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WatchpointsTest {
+	private static final String CODE = "addi $t0, $zero, 5\n" // 0
+		+ "sw $t0, 8($zero)\n" // 4
+		+ "lw $t1, 8($zero)\n" // 8
+		+ "addi $t2, $zero, 7\n" // 12
+		+ "addi $t2, $zero, 9\n"; // 16
+
+	private CPU cpu;
+
+	@Before
+	public void loadCPU() throws Exception {
+		cpu = CPU.createFromJSONFile("cpu/unicycle.cpu");
+		cpu.load(cpu.getAssembler().assembleImage(CODE));
+	}
+
+	@Test
+	public void testWatchpoints() {
+		Watchpoints w = new Watchpoints(4, false);
+		assertTrue(w.isEmpty());
+		w.add(1, Watchpoints.Type.WRITE, 0);
+		w.add(3, Watchpoints.Type.VALUE, -2);
+		w.add(1, Watchpoints.Type.VALUE, 5); // replaces the previous one
+		assertEquals(2, w.size());
+		assertEquals(Arrays.asList(1, 3), w.getIndexes());
+		assertEquals(Watchpoints.Type.VALUE, w.getType(1));
+		assertEquals(5, w.getValue(1));
+		assertNull(w.getType(0));
+		assertFalse(w.has(-1));
+		assertFalse(w.has(4));
+
+		w.checkWrite(1, 4);
+		w.checkWrite(0, 5);
+		w.checkWrite(7, 5);
+		assertFalse(w.isTriggered());
+		w.checkWrite(3, -2);
+		assertEquals(3, w.getTriggered());
+		w.resetTriggered();
+		assertFalse(w.isTriggered());
+
+		Watchpoints copy = new Watchpoints(4, true);
+		copy.copyFrom(w);
+		assertEquals(w.getIndexes(), copy.getIndexes());
+		assertTrue(w.remove(3));
+		assertFalse(w.remove(3));
+		assertEquals(2, copy.size());
+		copy.clear();
+		assertTrue(copy.isEmpty());
+
+		tInvalid(w, 4, Watchpoints.Type.WRITE);
+		tInvalid(w, -1, Watchpoints.Type.WRITE);
+		tInvalid(w, 0, Watchpoints.Type.READ); // not supported
+		copy.add(0, Watchpoints.Type.READ, 0);
+		copy.checkWrite(0, 0);
+		assertFalse(copy.isTriggered());
+		copy.checkRead(0);
+		assertTrue(copy.isTriggered());
+	}
+
+	@Test
+	public void testRegisterWrite() {
+		cpu.addWatchpoint("$t1", Watchpoints.Type.WRITE, 0);
+		assertEquals(CPU.RunStatus.WATCHPOINT, run());
+		assertEquals(12, cpu.getPC().getAddress().getValue()); // stops after the lw
+		assertEquals("$t1 written", cpu.getTriggeredWatchpoint().toString());
+		assertEquals(CPU.RunStatus.FINISHED, run());
+		assertNull(cpu.getTriggeredWatchpoint());
+	}
+
+	@Test
+	public void testRegisterValue() {
+		cpu.addWatchpoint("t2", Watchpoints.Type.VALUE, 9);
+		assertEquals(CPU.RunStatus.WATCHPOINT, run());
+		assertEquals(20, cpu.getPC().getAddress().getValue()); // not when 7 was written
+		assertEquals(9, cpu.getRegBank().getRegister(10).getValue());
+		Watchpoints.Watchpoint w = cpu.getTriggeredWatchpoint();
+		assertFalse(w.isOnMemory());
+		assertEquals(10, w.getIndex());
+		assertEquals("$t2 == 9", w.toString());
+	}
+
+	@Test
+	public void testMemory() {
+		cpu.addWatchpoint("[0x8]", Watchpoints.Type.WRITE, 0);
+		assertEquals(CPU.RunStatus.WATCHPOINT, run());
+		assertEquals(8, cpu.getPC().getAddress().getValue()); // stops after the sw
+		assertEquals("[8] written", cpu.getTriggeredWatchpoint().toString());
+
+		cpu.resetToFirstCycle();
+		cpu.addWatchpoint("[8]", Watchpoints.Type.READ, 0);
+		assertEquals(CPU.RunStatus.WATCHPOINT, run());
+		assertEquals(12, cpu.getPC().getAddress().getValue()); // stops after the lw
+		assertEquals("[8] read", cpu.getTriggeredWatchpoint().toString());
+
+		cpu.resetToFirstCycle();
+		cpu.addWatchpoint("[8]", Watchpoints.Type.VALUE, 6);
+		assertEquals(CPU.RunStatus.FINISHED, run());
+		cpu.resetToFirstCycle();
+		cpu.addWatchpoint("[8]", Watchpoints.Type.VALUE, 5);
+		assertEquals(CPU.RunStatus.WATCHPOINT, run());
+		assertEquals(8, cpu.getPC().getAddress().getValue());
+
+		cpu.resetToFirstCycle();
+		cpu.addWatchpoint("[4]", Watchpoints.Type.WRITE, 0); // other positions aren't triggered
+		cpu.addWatchpoint("[4]", Watchpoints.Type.READ, 0);
+		cpu.removeWatchpoint(cpu.getAllWatchpoints().get(1));
+		assertEquals(CPU.RunStatus.FINISHED, run());
+	}
+
+	@Test
+	public void testCPUWatchpoints() throws Exception {
+		cpu.addWatchpoint("[8]", Watchpoints.Type.READ, 0);
+		cpu.addWatchpoint("$t0", Watchpoints.Type.VALUE, -1);
+		List<Watchpoints.Watchpoint> all = cpu.getAllWatchpoints();
+		assertEquals(2, all.size());
+		assertEquals("$t0 == -1", all.get(0).toString()); // registers first
+		assertEquals("[8] read", all.get(1).toString());
+		assertTrue(all.get(1).isOnMemory());
+		assertEquals(2, all.get(1).getIndex());
+		assertTrue(cpu.hasWatchpoints());
+		assertEquals(2, cpu.copy().getAllWatchpoints().size());
+
+		RunOptions options = new RunOptions();
+		options.setStopAtBreakpoints(false);
+		assertEquals(CPU.RunStatus.FINISHED, cpu.run(options));
+
+		assertTrue(cpu.removeWatchpoint(all.get(0)));
+		assertFalse(cpu.removeWatchpoint(all.get(0)));
+		cpu.clearWatchpoints();
+		assertFalse(cpu.hasWatchpoints());
+
+		tInvalid("$t0", Watchpoints.Type.READ); // not supported on registers
+		tInvalid("$nope", Watchpoints.Type.WRITE);
+		tInvalid("[3]", Watchpoints.Type.WRITE);
+		tInvalid("[0x7FFFFFFC]", Watchpoints.Type.WRITE);
+		tInvalid("[8", Watchpoints.Type.WRITE);
+		assertFalse(cpu.hasWatchpoints());
+	}
+
+	private CPU.RunStatus run() {
+		RunOptions options = new RunOptions();
+		options.setMaxCycles(1000);
+		return cpu.run(options);
+	}
+
+	private void tInvalid(Watchpoints w, int index, Watchpoints.Type type) {
+		try {
+			w.add(index, type, 0);
+			fail("IllegalArgumentException expected");
+		} catch(IllegalArgumentException ex) { }
+	}
+
+	private void tInvalid(String target, Watchpoints.Type type) {
+		try {
+			cpu.addWatchpoint(target, type, 0);
+			fail("IllegalArgumentException expected for " + target);
+		} catch(IllegalArgumentException ex) { }
+	}
+}